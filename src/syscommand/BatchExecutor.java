@@ -0,0 +1,251 @@
+package syscommand;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import syscommand.exception.CommandException;
+
+/**
+ * Executes many commands differing only in their file arguments by as few processes as possible (as xargs does), e.g. thousands of {@link syscommand.concrete.Rm} commands by few rm processes.
+ * Consecutive added commands are batched if they have the same command, arguments (switches) and resolved execution settings (sudo, chroot, working directory, environment etc.)
+ * and differ only in their first last argument (see {@link SingleCommand#addLastArg(String)}): the batch is executed by one process having the first last arguments of all its commands (in their order)
+ * followed by the remaining last arguments (e.g. the common destination of cp). The commands are executed in the order in which they have been added, only neighbours are batched.
+ * The size of the arguments and of the environment of one process does not exceed ARG_MAX (see {@link #getArgMax()}).
+ *
+ * If a batch fails and all its commands have been declared idempotent (see {@link SingleCommand#declareIdempotent()}, e.g. rm -f, mkdir -p), each of them is executed alone
+ * to find out which of them failed (the successful part of the failed batch has been already done then). Otherwise the commands of the failed batch are not repeated
+ * and their results are indeterminate (see {@link BatchResult#isIndeterminate()}), since a repeated command could fail just because it has been already done by the batch.
+ * Commands which can not be batched (without last arguments, with the input set, with a class changing the running as {@link syscommand.concrete.Mount}) are executed alone.
+ * Not thread safe.
+ */
+public class BatchExecutor {
+	
+	/**
+	 * Minimum value of ARG_MAX (32 pages), also used when it can not be determined.
+	 */
+	public static final long MIN_ARG_MAX = 128 * 1024;
+	
+	/**
+	 * Maximum value of ARG_MAX (3/4 of the default stack limit), used for an unlimited stack.
+	 */
+	private static final long MAX_ARG_MAX = 6 * 1024 * 1024;
+	
+	/**
+	 * Number of bytes of ARG_MAX kept unused (for the executable path, possible environment differences etc.).
+	 */
+	private static final long HEADROOM = 4 * 1024;
+	
+	/**
+	 * Determined ARG_MAX (0 if it has not been determined yet).
+	 */
+	private static volatile long argMax = 0;
+	
+	/**
+	 * Context of the executed commands.
+	 */
+	private final CommandContext context;
+	
+	/**
+	 * Commands added and not executed yet.
+	 */
+	private final List<SingleCommand> pending = new ArrayList<SingleCommand>();
+	
+	/**
+	 * Maximum size of the arguments and environment of one process or -1 to use ARG_MAX.
+	 */
+	private long maxExecBytes = -1;
+	
+	/**
+	 * Maximum number of commands in one batch.
+	 */
+	private int maxBatchSize = Integer.MAX_VALUE;
+	
+	/**
+	 * Number of processes started by the last {@link #run()}.
+	 */
+	private int processCount = 0;
+	
+	/**
+	 * Creates the executor.
+	 * @param context command context with logging and execution environment settings used for all the commands
+	 */
+	public BatchExecutor(CommandContext context) {
+		this.context = context;
+	}
+	
+	/**
+	 * Sets the maximum size of the arguments and of the environment of one process (instead of ARG_MAX).
+	 * @param maxExecBytes maximum size in bytes (each string is counted with its terminating null character and a pointer to it)
+	 * @return this executor
+	 */
+	public BatchExecutor maxExecBytes(long maxExecBytes) {
+		if (maxExecBytes <= 0) {
+			throw new IllegalArgumentException("Invalid size: " + maxExecBytes);
+		}
+		this.maxExecBytes = maxExecBytes;
+		return this;
+	}
+	
+	/**
+	 * Sets the maximum number of commands executed by one process (as xargs -n).
+	 * @param maxBatchSize maximum number of commands in one batch (not limited by default)
+	 * @return this executor
+	 */
+	public BatchExecutor maxBatchSize(int maxBatchSize) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("Invalid batch size: " + maxBatchSize);
+		}
+		this.maxBatchSize = maxBatchSize;
+		return this;
+	}
+	
+	/**
+	 * Adds a command to execute by the next {@link #run()}.
+	 * @param command command to execute
+	 * @return this executor
+	 */
+	public BatchExecutor add(SingleCommand command) {
+		pending.add(command);
+		return this;
+	}
+	
+	/**
+	 * Gets the number of commands added and not executed yet.
+	 * @return number of pending commands
+	 */
+	public int getPendingCount() {
+		return pending.size();
+	}
+	
+	/**
+	 * Executes all the added commands (in batches) and removes them from this executor.
+	 * No exception is thrown for a failed command, the failures are described by the results.
+	 * @return results of the commands (in the order in which the commands have been added)
+	 */
+	public List<BatchResult> run() {
+		List<BatchResult> results = new ArrayList<BatchResult>(pending.size());
+		processCount = 0;
+		
+		long limit = ((maxExecBytes != -1) ? maxExecBytes : getArgMax()) - HEADROOM;
+		
+		int count = pending.size();
+		int i = 0;
+		while (i < count) {
+			SingleCommand first = pending.get(i);
+			List<Object> key = first.getBatchKey(context);
+			int end = i + 1;
+			if (key != null) {
+				long bytes = first.getExecBytes(context);
+				while ((end < count) && (end - i < maxBatchSize)) {
+					SingleCommand c = pending.get(end);
+					long b = bytes + SingleCommand.getExecBytes(c.getFirstLastArg());
+					if ((b > limit) || (! key.equals(c.getBatchKey(context)))) {
+						break;
+					}
+					bytes = b;
+					++end;
+				}
+			}
+			runBatch(pending.subList(i, end), results);
+			i = end;
+		}
+		
+		pending.clear();
+		return results;
+	}
+	
+	/**
+	 * Gets the number of processes started by the last {@link #run()} (including the processes executing the commands of failed idempotent batches alone).
+	 * @return number of processes
+	 */
+	public int getProcessCount() {
+		return processCount;
+	}
+	
+	/**
+	 * Gets the maximum size of the arguments and of the environment of a process allowed by the operating system (ARG_MAX).
+	 * It is a quarter of the stack size limit (from /proc/self/limits), but at least {@link #MIN_ARG_MAX} and at most 6 MiB.
+	 * @return ARG_MAX in bytes ({@link #MIN_ARG_MAX} if it can not be determined)
+	 */
+	public static long getArgMax() {
+		long a = argMax;
+		if (a == 0) {
+			a = readArgMax();
+			argMax = a;
+		}
+		return a;
+	}
+	
+	/**
+	 * Executes the commands of one batch, also alone if the batch fails and all its commands are idempotent.
+	 * @param batch commands having the same batch key (or one command)
+	 * @param results list to add the results to
+	 */
+	private void runBatch(List<SingleCommand> batch, List<BatchResult> results) {
+		if (batch.size() > 1) {
+			List<String> firstLastArgs = new ArrayList<String>(batch.size());
+			boolean idempotent = true;
+			for (SingleCommand c : batch) {
+				firstLastArgs.add(c.getFirstLastArg());
+				idempotent &= c.isIdempotent();
+			}
+			
+			CommandException exception = null;
+			try {
+				++processCount;
+				batch.get(0).createBatch(firstLastArgs).run_noout(context);
+			} catch (CommandException e) {
+				exception = e;
+			}
+			
+			if ((exception == null) || (! idempotent)) {
+				for (SingleCommand c : batch) {
+					results.add(new BatchResult(c, exception, batch.size(), exception != null));
+				}
+				return;
+			}
+		}
+		
+		for (SingleCommand c : batch) {
+			CommandException exception = null;
+			try {
+				++processCount;
+				c.run_noout(context);
+			} catch (CommandException e) {
+				exception = e;
+			}
+			results.add(new BatchResult(c, exception, 1, false));
+		}
+	}
+	
+	private static long readArgMax() {
+		try {
+			BufferedReader r = new BufferedReader(new InputStreamReader(new FileInputStream("/proc/self/limits"), "US-ASCII"));
+			try {
+				String line;
+				while ((line = r.readLine()) != null) {
+					if (! line.startsWith("Max stack size")) {
+						continue;
+					}
+					String soft = line.substring("Max stack size".length()).trim().split("\\s+")[0];
+					if (soft.equals("unlimited")) {
+						return MAX_ARG_MAX;
+					}
+					return Math.max(MIN_ARG_MAX, Math.min(MAX_ARG_MAX, Long.parseLong(soft) / 4));
+				}
+			} finally {
+				r.close();
+			}
+		} catch (IOException e) {
+			// nothing
+		} catch (NumberFormatException e) {
+			// nothing
+		}
+		return MIN_ARG_MAX;
+	}
+	
+}
@@ -0,0 +1,84 @@
+package syscommand;
+
+import syscommand.exception.CommandException;
+
+/**
+ * Result of one command executed by {@link BatchExecutor}.
+ * Immutable.
+ */
+public final class BatchResult {
+	
+	private final SingleCommand command;
+	
+	private final CommandException exception;
+	
+	private final int batchSize;
+	
+	private final boolean indeterminate;
+	
+	/**
+	 * Creates the result.
+	 * @param command command added to the executor
+	 * @param exception exception thrown by the process executing the command (or its failed batch if indeterminate) or null if it succeeded
+	 * @param batchSize number of the commands executed by the process which decided the result
+	 * @param indeterminate if the batch of the command failed and the command has not been executed alone, so it is not known whether it succeeded
+	 */
+	BatchResult(SingleCommand command, CommandException exception, int batchSize, boolean indeterminate) {
+		this.command = command;
+		this.exception = exception;
+		this.batchSize = batchSize;
+		this.indeterminate = indeterminate;
+	}
+	
+	/**
+	 * Gets the command added to the executor.
+	 * @return command
+	 */
+	public SingleCommand getCommand() {
+		return command;
+	}
+	
+	/**
+	 * Returns if the command succeeded.
+	 * @return if the command succeeded (false if it failed or its result is indeterminate)
+	 */
+	public boolean isSuccess() {
+		return exception == null;
+	}
+	
+	/**
+	 * Returns if it is not known whether the command succeeded: its batch failed and the command has not been executed alone, since it is not idempotent
+	 * (see {@link SingleCommand#declareIdempotent()}). The command could have been done by the batch.
+	 * @return if the result is indeterminate
+	 */
+	public boolean isIndeterminate() {
+		return indeterminate;
+	}
+	
+	/**
+	 * Gets the exception thrown by the process which executed the command alone (after the batch containing it failed)
+	 * or by the process of the failed batch if the result is indeterminate.
+	 * @return exception or null if the command succeeded
+	 */
+	public CommandException getException() {
+		return exception;
+	}
+	
+	/**
+	 * Gets the number of the commands executed by the process which decided the result (1 if the command has been executed alone).
+	 * @return batch size
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+	
+	/**
+	 * Gets the result description.
+	 * @return result description string
+	 */
+	@Override
+	public String toString() {
+		return command + ": " + ((exception == null) ? "OK" : (indeterminate ? "INDETERMINATE: " : "") + exception.getMessage()) + " (batch of " + batchSize + ")";
+	}
+	
+}
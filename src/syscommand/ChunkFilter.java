@@ -0,0 +1,29 @@
+package syscommand;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Java implementation of a pipeline stage transforming the data chunk by chunk.
+ * Can be used instead of a trivial filtering system command (see {@link Pipeline#add(ChunkFilter)}).
+ */
+public interface ChunkFilter {
+	
+	/**
+	 * Processes one chunk of the input data. The chunk boundaries are arbitrary (the chunks are not aligned to lines or records).
+	 * @param b buffer containing the chunk (must not be used after this method returns)
+	 * @param off offset of the chunk in the buffer
+	 * @param len length of the chunk
+	 * @param os stream to the input of the next pipeline stage
+	 * @throws IOException if the filtering failed (the stage is then considered as failed)
+	 */
+	void process(byte[] b, int off, int len, OutputStream os) throws IOException;
+	
+	/**
+	 * Called after the last chunk has been processed, allows writing the remaining data.
+	 * @param os stream to the input of the next pipeline stage
+	 * @throws IOException if the filtering failed (the stage is then considered as failed)
+	 */
+	void finish(OutputStream os) throws IOException;
+	
+}
@@ -5,17 +5,26 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import syscommand.exception.CommandException;
+import syscommand.exception.InvalidExitStatusException;
+import syscommand.exception.OutputLimitExceededException;
+import syscommand.internal.ChannelOutputStream;
 import syscommand.internal.CommandRunningContext;
+import syscommand.internal.LimitedOutputStream;
+import syscommand.internal.NonClosingOutputStream;
 import syscommand.internal.NullOutputStream;
+import syscommand.internal.ParallelGzipOutputStream;
 import syscommand.internal.StreamCopyRunnable;
 
 /**
@@ -23,11 +32,26 @@ import syscommand.internal.StreamCopyRunnable;
  */
 public abstract class CommandBase {
 	
+	/**
+	 * Buffer size (in bytes) for reading the output by {@link #run_head(CommandContext, int)}.
+	 */
+	private static final int HEAD_BUFFER_SIZE = 8 * 1024;
+	
 	/**
 	 * Stream providing input data for the command.
 	 */
 	private InputStream input = null;
 	
+	/**
+	 * Digests computed over the command output or null.
+	 */
+	private OutputDigests outputDigests = null;
+	
+	/**
+	 * Maximum number of output bytes accumulated in the memory (overrides the context setting) or null if the context setting is used.
+	 */
+	private Long outputLimit = null;
+	
 	/**
 	 * Set of exit statuses which do not cause an exception. Filled with 0 value in constructor.
 	 */
@@ -71,8 +95,43 @@ public abstract class CommandBase {
 		return this;
 	}
 	
+	/**
+	 * Sets the digests to compute over the command output while it is copied (by any of the run_ methods reading the output), so no second pass over the output is needed.
+	 * The digest values are available after the run has finished.
+	 * @param digests digests to compute or null to not compute any
+	 * @return this command
+	 */
+	public CommandBase digestOutput(OutputDigests digests) {
+		outputDigests = digests;
+		return this;
+	}
+	
+	/**
+	 * Sets the maximum number of output bytes of this command accumulated in the memory (by the run_ methods returning the output) regardless of the context setting
+	 * (see {@link CommandContext#setMaxOutputBytes(long)}). If the command exceeds the limit, it is terminated and {@link OutputLimitExceededException} is thrown.
+	 * @param maxBytes maximum number of output bytes or {@link CommandContext#NO_OUTPUT_LIMIT}
+	 * @return this command
+	 */
+	public CommandBase limitOutput(long maxBytes) {
+		if ((maxBytes < 0) && (maxBytes != CommandContext.NO_OUTPUT_LIMIT)) {
+			throw new IllegalArgumentException("Invalid output limit: " + maxBytes);
+		}
+		outputLimit = maxBytes;
+		return this;
+	}
+	
+	/**
+	 * Returns if the input or the output digests have been set for this command (such a command can not be batched with others, see {@link BatchExecutor}).
+	 * @return if the input or the output digests have been set
+	 */
+	boolean hasInputOrDigests() {
+		return (input != null) || (outputDigests != null);
+	}
+	
 	/**
 	 * Runs the command, waits for exit and ignores its output (data written to the standard output).
+	 * The output of a {@link SingleCommand} (or of the last stage of a {@link Pipeline}) started by {@link ProcessBuilderLauncher} is redirected to /dev/null,
+	 * so no data are copied and no copying thread is used.
 	 * @param context command context with logging and execution environment settings
 	 * @throws CommandException if the command creating or running failed (this include input/output exceptions, invalid exit status, terminating etc.)
 	 */
@@ -118,6 +177,86 @@ public abstract class CommandBase {
 		}
 	}
 	
+	/**
+	 * Runs the command until it writes the specified number of lines, then terminates it without waiting for the rest of its output.
+	 * The exit status is validated only if the command has exited before writing the lines (the status of the terminated command is ignored).
+	 * @param context command context with logging and execution environment settings
+	 * @param lines number of lines to read
+	 * @return first lines of the output (fewer if the output has less lines; output bytes are converted using UTF-8 encoding to strings, strings are delimited by the newline character (\n, 10, 0xA), empty lines are skipped as by {@link #run_lines(CommandContext)})
+	 * @throws CommandException if the command creating or running failed (this include input/output exceptions, invalid exit status, terminating etc.)
+	 */
+	public String[] run_head(CommandContext context, int lines) throws CommandException {
+		if (lines < 0) {
+			throw new IllegalArgumentException("Invalid number of lines: " + lines);
+		}
+		
+		long limit = resolveOutputLimit(context);
+		List<String> result = new ArrayList<String>();
+		boolean enough = (lines == 0);
+		boolean exceeded = false;
+		
+		RunningCommand running = startWithoutStdin(context);
+		try {
+			InputStream is = running.getStdout();
+			ByteArrayOutputStream line = new ByteArrayOutputStream();
+			byte[] b = new byte[HEAD_BUFFER_SIZE];
+			long total = 0;
+			int n;
+			while ((! enough) && (! exceeded) && ((n = is.read(b)) != -1)) {
+				int usable = (limit == CommandContext.NO_OUTPUT_LIMIT) ? n : (int) Math.min(n, limit - total);
+				total += usable;
+				int lineStart = 0;
+				for (int i = 0; i < usable; ++i) {
+					if (b[i] == '\n') {
+						line.write(b, lineStart, i - lineStart);
+						lineStart = i + 1;
+						if (line.size() > 0) {
+							result.add(line.toString("UTF-8"));
+							line.reset();
+							if (result.size() == lines) {
+								enough = true;
+								break;
+							}
+						}
+					}
+				}
+				if (! enough) {
+					line.write(b, lineStart, usable - lineStart);
+					exceeded = (usable < n);
+				}
+			}
+			if ((! enough) && (! exceeded) && (line.size() > 0)) {
+				// the last line without the newline character
+				result.add(line.toString("UTF-8"));
+			}
+		} catch (IOException e) {
+			running.close();
+			throw new CommandException("Error while copying data", e);
+		}
+		
+		if (enough || exceeded) {
+			running.close();
+			if (exceeded) {
+				throw new OutputLimitExceededException(limit);
+			}
+		} else {
+			running.awaitExit();
+		}
+		
+		return result.toArray(new String[result.size()]);
+	}
+	
+	/**
+	 * Runs the command until it writes the first line, then terminates it without waiting for the rest of its output (see {@link #run_head(CommandContext, int)}).
+	 * @param context command context with logging and execution environment settings
+	 * @return first line of the output (output bytes are converted using UTF-8 encoding to string, empty lines are skipped) or null if the output has no line
+	 * @throws CommandException if the command creating or running failed (this include input/output exceptions, invalid exit status, terminating etc.)
+	 */
+	public String run_firstLine(CommandContext context) throws CommandException {
+		String[] l = run_head(context, 1);
+		return (l.length > 0) ? l[0] : null;
+	}
+	
 	/**
 	 * Runs the command, waits for exit and returns its output (data written to the standard output) as a string array representing parts of the output separated by the null character.
 	 * @param context command context with logging and execution environment settings
@@ -188,6 +327,150 @@ public abstract class CommandBase {
 		run_toFile_internal(context, file, true);
 	}
 	
+	/**
+	 * Runs the command, waits for its exit while writing its output compressed in the gzip format to a file. If the file already exists, it will be overwritten.
+	 * The output is compressed by more threads in parallel (it is split into blocks), the file can be decompressed by gunzip.
+	 * Use this instead of a gzip pipeline stage when the compression is the bottleneck.
+	 * @param context command context with logging and execution environment settings
+	 * @param file file to write the compressed command output to
+	 * @param level compression level (0-9 or {@link java.util.zip.Deflater#DEFAULT_COMPRESSION})
+	 * @param threads number of compressing threads
+	 * @return compression statistics
+	 * @throws CommandException if the command creating or running failed (this include input/output exceptions, invalid exit status, terminating etc.) or if the compression failed
+	 */
+	public CompressionStats run_writeCompressed(CommandContext context, File file, int level, int threads) throws CommandException {
+		long start = System.nanoTime();
+		
+		FileOutputStream fos;
+		try {
+			fos = new FileOutputStream(file);
+		} catch (FileNotFoundException e) {
+			throw new CommandException("Output file not found: " + file, e);
+		}
+		
+		ParallelGzipOutputStream os;
+		try {
+			os = new ParallelGzipOutputStream(fos, level, threads);
+		} catch (IOException e) {
+			try {
+				fos.close();
+			} catch (Throwable t) {
+				// nothing
+			}
+			throw new CommandException("Unable to write to output file: " + file, e);
+		}
+		
+		boolean success = false;
+		try {
+			run_internal(context, new NonClosingOutputStream(os));
+			success = true;
+		} finally {
+			try {
+				os.close();
+			} catch (IOException e) {
+				if (success) {
+					throw new CommandException("Unable to write to output file: " + file, e);
+				}
+			}
+		}
+		
+		return new CompressionStats(os.getInputBytes(), os.getOutputBytes(), System.nanoTime() - start);
+	}
+	
+	/**
+	 * Runs the command, waits for its exit while passing its output to a consumer as soon as the data are read from the command.
+	 * The output is not accumulated in the memory, so this is suitable for long-running commands producing huge outputs.
+	 * @param context command context with logging and execution environment settings
+	 * @param consumer consumer receiving the output chunks (called from a different thread than the calling one)
+	 * @throws CommandException if the command creating or running failed (this include input/output exceptions, invalid exit status, terminating etc.) or if the consumer has thrown an exception
+	 */
+	public void run_consume(CommandContext context, final OutputConsumer consumer) throws CommandException {
+		run_internal(context, new OutputStream() {
+			
+			@Override
+			public void write(int b) throws IOException {
+				consumer.consume(new byte[] { (byte) b }, 0, 1);
+			}
+			
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				consumer.consume(b, off, len);
+			}
+			
+		});
+	}
+	
+	/**
+	 * Runs the command, waits for its exit while writing its output to a channel (a socket channel, a file channel etc.) as soon as the data are read from the command.
+	 * The channel is not closed after the command exits.
+	 * @param context command context with logging and execution environment settings
+	 * @param channel channel to write the command output to (must be in the blocking mode)
+	 * @throws CommandException if the command creating or running failed (this include input/output exceptions, invalid exit status, terminating etc.)
+	 */
+	public void run_toChannel(CommandContext context, WritableByteChannel channel) throws CommandException {
+		run_internal(context, new ChannelOutputStream(channel));
+	}
+	
+	/**
+	 * Starts the command and returns a handle allowing to write to its input, to read its output and to wait for its exit.
+	 * If the input has been set for the command, it is written to the command in a new thread.
+	 * The returned handle has to be finished by {@link RunningCommand#awaitExit()} or {@link RunningCommand#close()}.
+	 * @param context command context with logging and execution environment settings
+	 * @return handle of the running command
+	 * @throws CommandException if the command creating or running failed
+	 */
+	public RunningCommand start(CommandContext context) throws CommandException {
+		CommandRunningContext current = run(context);
+		
+		if (input != null) {
+			// from input to process
+			new Thread(new StreamCopyRunnable(input, current.stdin)).start();
+		}
+		
+		return new RunningCommand(current, input != null);
+	}
+	
+	/**
+	 * Starts the command whose input is not written by the caller. If no input has been set for the command, its input is closed at once
+	 * (as by the run_* methods), so a command reading its input gets the end of it instead of waiting for it forever.
+	 * @param context command context with logging and execution environment settings
+	 * @return handle of the running command
+	 * @throws CommandException if the command creating or running failed
+	 */
+	RunningCommand startWithoutStdin(CommandContext context) throws CommandException {
+		RunningCommand running = start(context);
+		if (input == null) {
+			try {
+				running.getStdin().close();
+			} catch (IOException e) {
+				// nothing
+			}
+		}
+		return running;
+	}
+	
+	/**
+	 * Creates a publisher of the command output chunks. Each subscription runs the command and reads its output only when the subscriber has requested more chunks,
+	 * so a slow subscriber throttles the command (it blocks writing to its full output pipe) instead of the output being accumulated in the memory.
+	 * Suitable for continuous outputs (tail -F, journalctl -f, inotifywait -m etc.).
+	 * Cancelling the subscription terminates the command, an invalid exit status is signalled by {@link Flow.Subscriber#onError(Throwable)} with a {@link CommandException}.
+	 * @param context command context with logging and execution environment settings
+	 * @return publisher of the output chunks (the chunk boundaries are arbitrary, each buffer is owned by the subscriber)
+	 */
+	public Flow.Publisher<ByteBuffer> publish_raw(CommandContext context) {
+		return new OutputPublisher.Raw(this, context);
+	}
+	
+	/**
+	 * Creates a publisher of the command output lines. Works as {@link #publish_raw(CommandContext)}, but an item is one line of the output
+	 * (output bytes are converted using UTF-8 encoding to strings, strings are delimited by the newline character, empty lines are skipped).
+	 * @param context command context with logging and execution environment settings
+	 * @return publisher of the output lines
+	 */
+	public Flow.Publisher<String> publish_lines(CommandContext context) {
+		return new OutputPublisher.Lines(this, context);
+	}
+	
 	/**
 	 * Runs the command and waits for exit. Ignores the command output.
 	 * @param context command context with logging and execution environment settings
@@ -197,7 +480,7 @@ public abstract class CommandBase {
 		OutputStream os = null;
 		try {
 			os = new NullOutputStream();
-			run_internal(context, os);
+			run_copy_internal(context, os, true).res.waitAndGetResult();
 		} finally {
 			if (os != null) {
 				try {
@@ -215,22 +498,110 @@ public abstract class CommandBase {
 	 * @throws CommandException if the command creating or running failed (this include input/output exceptions, invalid exit status, terminating etc.)
 	 */
 	private byte[] run_toBytes_internal(CommandContext context) throws CommandException {
-		ByteArrayOutputStream os = null;
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		long limit = resolveOutputLimit(context);
+		LimitedOutputStream limited = (limit != CommandContext.NO_OUTPUT_LIMIT) ? new LimitedOutputStream(os, limit) : null;
 		try {
-			os = new ByteArrayOutputStream();
-			run_internal(context, os);
-		} finally {
-			if (os != null) {
-				try {
-					os.close();
-				} catch (Throwable t) {
-					// nothing
-				}
-			}
+			run_internal(context, (limited != null) ? limited : os);
+		} catch (CommandException e) {
+			throw limitFailure(limited, limit, e);
 		}
 		return os.toByteArray();
 	}
 	
+	/**
+	 * Resolves the maximum number of output bytes accumulated in the memory (the command setting overrides the context setting).
+	 * @param context command context
+	 * @return maximum number of output bytes or {@link CommandContext#NO_OUTPUT_LIMIT}
+	 */
+	private long resolveOutputLimit(CommandContext context) {
+		return (outputLimit != null) ? outputLimit : context.getMaxOutputBytes();
+	}
+	
+	/**
+	 * Translates the failure of the output copying caused by the output limit.
+	 * @param limited stream limiting the output or null if the output is not limited
+	 * @param limit output limit
+	 * @param e exception thrown by the run
+	 * @return exception to throw
+	 */
+	private static CommandException limitFailure(LimitedOutputStream limited, long limit, CommandException e) {
+		if ((limited != null) && limited.isExceeded()) {
+			OutputLimitExceededException l = new OutputLimitExceededException(limit);
+			l.initCause(e);
+			return l;
+		}
+		return e;
+	}
+	
+	/**
+	 * Runs the command, waits for exit and returns its exit status, output and standard error output without throwing an exception for an invalid exit status
+	 * (for commands using the exit status as an answer, like grep -q or test). The standard error output is truncated to {@link CommandResult#DEFAULT_MAX_STDERR_BYTES}.
+	 * Note that the exit statuses of the subcommands of a composite command are still validated (except for the last stage of a pipeline, whose exit status is the exit status of the pipeline).
+	 * @param context command context with logging and execution environment settings
+	 * @return command result
+	 * @throws CommandException if the command creating or running failed (this include input/output exceptions, terminating etc.)
+	 */
+	public CommandResult run_result(CommandContext context) throws CommandException {
+		return run_result(context, CommandResult.DEFAULT_MAX_STDERR_BYTES);
+	}
+	
+	/**
+	 * Runs the command, waits for exit and returns its exit status, output and standard error output without throwing an exception for an invalid exit status.
+	 * Note that the exit statuses of the subcommands of a composite command are still validated (except for the last stage of a pipeline, whose exit status is the exit status of the pipeline).
+	 * @param context command context with logging and execution environment settings
+	 * @param maxStderrBytes maximum number of bytes of the standard error output kept in the result
+	 * @return command result
+	 * @throws CommandException if the command creating or running failed (this include input/output exceptions, terminating etc.)
+	 */
+	public CommandResult run_result(CommandContext context, int maxStderrBytes) throws CommandException {
+		return run_result_internal(context, new ByteArrayOutputStream(), maxStderrBytes);
+	}
+	
+	/**
+	 * Runs the command, waits for exit, ignores its output and returns its exit status without throwing an exception for an invalid exit status.
+	 * This is the cheapest way of checking a condition by a command (the output of the result is empty).
+	 * Note that the exit statuses of the subcommands of a composite command are still validated (except for the last stage of a pipeline, whose exit status is the exit status of the pipeline).
+	 * @param context command context with logging and execution environment settings
+	 * @return command result
+	 * @throws CommandException if the command creating or running failed (this include input/output exceptions, terminating etc.)
+	 */
+	public CommandResult run_resultNoout(CommandContext context) throws CommandException {
+		return run_result_internal(context, null, CommandResult.DEFAULT_MAX_STDERR_BYTES);
+	}
+	
+	/**
+	 * Runs the command and creates the result.
+	 * @param os stream collecting the output or null to ignore the output
+	 */
+	private CommandResult run_result_internal(CommandContext context, ByteArrayOutputStream os, int maxStderrBytes) throws CommandException {
+		if (maxStderrBytes < 0) {
+			throw new IllegalArgumentException("Invalid standard error output size: " + maxStderrBytes);
+		}
+		
+		long start = System.nanoTime();
+		long limit = resolveOutputLimit(context);
+		LimitedOutputStream limited = ((os != null) && (limit != CommandContext.NO_OUTPUT_LIMIT)) ? new LimitedOutputStream(os, limit) : null;
+		CommandRunningContext current;
+		try {
+			current = run_copy_internal(context, (limited != null) ? limited : ((os != null) ? os : new NullOutputStream()), os == null);
+		} catch (CommandException e) {
+			throw limitFailure(limited, limit, e);
+		}
+		int exitStatus = current.res.waitForExitStatus();
+		long durationNanos = System.nanoTime() - start;
+		
+		return new CommandResult(
+			exitStatus,
+			validExitStatuses.contains(exitStatus),
+			(os != null) ? os.toByteArray() : new byte[0],
+			current.res.getStderr(),
+			maxStderrBytes,
+			durationNanos,
+			current.res.getResourceUsage()
+		);
+	}
+	
 	/**
 	 * Runs the command, waits for its exit while writing the output to a file.
 	 * @param context command context with logging and execution environment settings
@@ -263,45 +634,146 @@ public abstract class CommandBase {
 	 * @throws CommandException if the command creating or running failed (this include input/output exceptions, invalid exit status, terminating etc.)
 	 */
 	private void run_internal(CommandContext context, OutputStream os) throws CommandException {
-		CommandRunningContext current = run(context);
+		run_copy_internal(context, os, false).res.waitAndGetResult();
+	}
+	
+	/**
+	 * Runs the command and copies its input and output. Waits for the copying to finish, but not for the command to exit.
+	 * @param discardOutput if the output is not needed (the command can redirect it to /dev/null instead of writing it to os, see {@link #runWithoutInputDiscardingOutput(CommandContext)})
+	 * @return command running context of the command
+	 */
+	private CommandRunningContext run_copy_internal(CommandContext context, OutputStream os, boolean discardOutput) throws CommandException {
+		CommandRunningContext current;
+		if (input != null) {
+			current = run(context);
+		} else if (discardOutput && (outputDigests == null)) {
+			current = runWithoutInputDiscardingOutput(context);
+		} else {
+			current = runWithoutInput(context);
+		}
+		
+		CommandListener listener = context.getListener();
 		
 		List<StreamCopyRunnable> copyRunnables = new ArrayList<StreamCopyRunnable>(2);
 		List<Thread> copyRunnableThreads = new ArrayList<Thread>(2);
 		
 		if (input != null) {
 			// from input to process
-			StreamCopyRunnable r = new StreamCopyRunnable(input, current.stdin);
+			StreamCopyRunnable r = new StreamCopyRunnable(input, current.stdin, listener, (listener != null) ? "input of " + this : null, -1);
 			copyRunnables.add(r);
 			Thread t = new Thread(r);
 			copyRunnableThreads.add(t);
 			t.start();
+		} else {
+			// nothing is written to the command, so it gets the end of the input instead of waiting for it forever
+			try {
+				current.stdin.close();
+			} catch (IOException e) {
+				// nothing
+			}
 		}
 		
-		{
+		if (! current.outputDiscarded) {
 			// from process to output
-			StreamCopyRunnable r = new StreamCopyRunnable(current.stdout, os);
+			StreamCopyRunnable r = new StreamCopyRunnable(current.stdout, os, listener, (listener != null) ? "output of " + this : null, -1);
+			if (outputDigests != null) {
+				outputDigests.begin();
+				r.setDigests(outputDigests);
+			}
 			copyRunnables.add(r);
 			Thread t = new Thread(r);
 			copyRunnableThreads.add(t);
 			t.start();
 		}
 		
+		boolean interrupted = false;
 		for (Thread t : copyRunnableThreads) {
-			try {
-				t.join();
-			} catch (InterruptedException e) {
-				throw new CommandException("Thread interrupted", e);
+			while (true) {
+				try {
+					t.join();
+					break;
+				} catch (InterruptedException e) {
+					// the copying ends when the command is terminated, the threads are still joined so that they do not outlive the command
+					if (! interrupted) {
+						interrupted = true;
+						current.res.terminate();
+					}
+				}
 			}
 		}
 		
+		if (outputDigests != null) {
+			outputDigests.end();
+		}
+		
+		if (interrupted) {
+			abandon(current);
+			Thread.currentThread().interrupt();
+			throw new CommandException("Thread interrupted");
+		}
+		
 		for (StreamCopyRunnable r : copyRunnables) {
 			
 			if (! r.isSuccess()) {
-				throw new CommandException("Error while copying data");
+				abandon(current);
+				throw new CommandException("Error while copying data", r.getException());
 			}
 		}
 		
-		current.res.waitAndGetResult();		
+		return current;
+	}
+	
+	/**
+	 * Terminates the command which is not going to be waited for normally and waits for its exit (so no process is left unwaited),
+	 * the exit status is ignored.
+	 * @param current command running context of the command
+	 */
+	static void abandon(CommandRunningContext current) {
+		current.res.terminate();
+		try {
+			current.res.waitForExitStatus();
+		} catch (CommandException e) {
+			// nothing (the failure which caused the abandoning is reported)
+		}
+	}
+	
+	/**
+	 * Validates the exit status of this command.
+	 * @param context command context (the error status ignoring setting is used)
+	 * @param exitStatus exit status returned by the command
+	 * @return the exit status
+	 * @throws InvalidExitStatusException if the exit status is not valid and the error status ignoring is not set
+	 */
+	int checkExitStatus(CommandContext context, int exitStatus) throws InvalidExitStatusException {
+		if (! validExitStatuses.contains(exitStatus)) {
+			if (! context.isIgnoreErrorStatus()) {
+				throw new InvalidExitStatusException(exitStatus);
+			}
+		}
+		return exitStatus;
+	}
+	
+	/**
+	 * Runs the command which has no input set and which is not a part of a composite command.
+	 * The default implementation calls {@link #run(CommandContext)}, a command can override this to share the execution with identical commands (see {@link SingleFlightGroup}).
+	 * @param context command context with logging and environment properties which have to be used when creating and running the command
+	 * @return command running context
+	 * @throws CommandException if the command creating or running failed
+	 */
+	protected CommandRunningContext runWithoutInput(CommandContext context) throws CommandException {
+		return run(context);
+	}
+	
+	/**
+	 * Runs the command which has no input set, which is not a part of a composite command and whose output is not going to be read (see {@link #run_noout(CommandContext)}).
+	 * The default implementation calls {@link #runWithoutInput(CommandContext)}, the output is read and ignored then.
+	 * A command can override this to redirect its output to /dev/null, so no data are copied and no copying thread is needed (see {@link CommandRunningContext#outputDiscarded}).
+	 * @param context command context with logging and environment properties which have to be used when creating and running the command
+	 * @return command running context
+	 * @throws CommandException if the command creating or running failed
+	 */
+	protected CommandRunningContext runWithoutInputDiscardingOutput(CommandContext context) throws CommandException {
+		return runWithoutInput(context);
 	}
 	
 	/**
@@ -341,4 +813,28 @@ public abstract class CommandBase {
 		return p;
 	}
 	
+	/**
+	 * Creates a new pipeline which includes this command and a stage implemented in Java. This is a helper method doing the same as {@link CommandBase#pipe(CommandBase)} with a {@link JavaStage}.
+	 * @param filter filter transforming the output of this command
+	 * @return new created pipeline
+	 */
+	public Pipeline pipe(StreamFilter filter) {
+		Pipeline p = new Pipeline();
+		p.add(this);
+		p.add(filter);
+		return p;
+	}
+	
+	/**
+	 * Creates a new pipeline which includes this command and a stage implemented in Java. This is a helper method doing the same as {@link CommandBase#pipe(CommandBase)} with a {@link JavaStage}.
+	 * @param filter filter transforming the output of this command chunk by chunk
+	 * @return new created pipeline
+	 */
+	public Pipeline pipe(ChunkFilter filter) {
+		Pipeline p = new Pipeline();
+		p.add(this);
+		p.add(filter);
+		return p;
+	}
+	
 }
@@ -10,6 +10,11 @@ import syscommand.exception.InvalidExitStatusException;
  */
 public class CommandContext {
 	
+	/**
+	 * Value of the output limit meaning no limit.
+	 */
+	public static final long NO_OUTPUT_LIMIT = -1;
+	
 	/**
 	 * Current log writer or null, if no writer is set.
 	 */
@@ -35,6 +40,51 @@ public class CommandContext {
 	 */
 	private File workingDir = null;
 	
+	/**
+	 * Current changes of the environment variables.
+	 */
+	private EnvironmentOverlay environment = EnvironmentOverlay.EMPTY;
+	
+	/**
+	 * Current listener of the execution phase events or null, if no listener is set.
+	 */
+	private CommandListener listener = null;
+	
+	/**
+	 * Current launcher starting the processes.
+	 */
+	private ProcessLauncher processLauncher = new ProcessBuilderLauncher();
+	
+	/**
+	 * Current group coalescing identical running commands or null, if no coalescing is set.
+	 */
+	private SingleFlightGroup singleFlightGroup = null;
+	
+	/**
+	 * Current policy for the standard error output of the commands.
+	 */
+	private StderrPolicy stderrPolicy = StderrPolicy.CAPTURE;
+	
+	/**
+	 * Current scheduling policy of the commands.
+	 */
+	private SchedulingPolicy scheduling = SchedulingPolicy.DEFAULT;
+	
+	/**
+	 * If the resource usage of the processes is measured.
+	 */
+	private boolean resourceAccounting = false;
+	
+	/**
+	 * Current maximum number of output bytes of a command accumulated in the memory or {@link #NO_OUTPUT_LIMIT}.
+	 */
+	private long maxOutputBytes = NO_OUTPUT_LIMIT;
+	
+	/**
+	 * Current store of the stamps of the executed commands or null, if the incremental execution is not set.
+	 */
+	private StampStore stampStore = null;
+	
 	/**
 	 * Default context:
 	 * - without logging
@@ -42,6 +92,15 @@ public class CommandContext {
 	 * - without execution using sudo (if not overridden by the specific command)
 	 * - without execution in chroot (if not overridden by the specific command)
 	 * - without working directory specified (working directory of the current java process will be used, if not overridden by the specific command)
+	 * - without changes of the environment variables (environment of the current java process will be used, if not changed by the specific command)
+	 * - without listener of the execution phase events
+	 * - starting the processes directly using {@link ProcessBuilder} (see {@link ProcessBuilderLauncher})
+	 * - without coalescing of identical running commands
+	 * - capturing the standard error output of the commands into memory (see {@link StderrPolicy#CAPTURE})
+	 * - without measuring of the resource usage of the processes
+	 * - without changing the scheduling priority, input/output class, CPU affinity and resource limits of the commands (see {@link SchedulingPolicy#DEFAULT})
+	 * - without limit of the command output accumulated in the memory (see {@link #NO_OUTPUT_LIMIT})
+	 * - without incremental execution (all the commands are executed even if their declared inputs and outputs have not changed)
 	 */
 	public CommandContext() {		
 	}
@@ -163,4 +222,200 @@ public class CommandContext {
 		return workingDir;
 	}
 	
+	/**
+	 * Sets an environment variable for the commands. Note that {@link SingleCommand} can change the environment further for its execution.
+	 * @param name variable name
+	 * @param value variable value
+	 */
+	public void setEnv(String name, String value) {
+		environment = environment.withSet(name, value);
+	}
+	
+	/**
+	 * Unsets an environment variable for the commands. Note that {@link SingleCommand} can change the environment further for its execution.
+	 * @param name variable name
+	 */
+	public void unsetEnv(String name) {
+		environment = environment.withUnset(name);
+	}
+	
+	/**
+	 * Clears the environment of the commands to the minimal one (see {@link EnvironmentOverlay#MINIMAL_VARIABLES}). Variables set afterwards are added to the minimal environment.
+	 */
+	public void clearEnv() {
+		environment = environment.withClear();
+	}
+	
+	/**
+	 * Drops all the environment changes, so the environment of the current java process is used again.
+	 */
+	public void resetEnv() {
+		environment = EnvironmentOverlay.EMPTY;
+	}
+	
+	/**
+	 * Gets current changes of the environment variables.
+	 * @return environment overlay (empty if there are no changes)
+	 */
+	public EnvironmentOverlay getEnvironment() {
+		return environment;
+	}
+	
+	/**
+	 * Sets current listener of the execution phase events (process starting, data copying, waiting, logging).
+	 * @param listener listener or null to disable the events
+	 */
+	public void setListener(CommandListener listener) {
+		this.listener = listener;
+	}
+	
+	/**
+	 * Gets current listener of the execution phase events.
+	 * @return listener or null if it is not set
+	 */
+	public CommandListener getListener() {
+		return listener;
+	}
+	
+	/**
+	 * Sets current launcher starting the processes of the commands.
+	 * @param processLauncher launcher to use
+	 */
+	public void setProcessLauncher(ProcessLauncher processLauncher) {
+		this.processLauncher = processLauncher;
+	}
+	
+	/**
+	 * Gets current launcher starting the processes of the commands.
+	 * @return process launcher
+	 */
+	public ProcessLauncher getProcessLauncher() {
+		return processLauncher;
+	}
+	
+	/**
+	 * Begins coalescing of identical commands: a command attaches to an identical command which is already running in the same group instead of starting a new process.
+	 * Note that only {@link SingleCommand} without input which is not a part of a pipeline or sequence is coalesced.
+	 * @param singleFlightGroup group of the running commands (share it by the contexts of all the threads which should coalesce their commands)
+	 */
+	public void beginSingleFlight(SingleFlightGroup singleFlightGroup) {
+		this.singleFlightGroup = singleFlightGroup;
+	}
+	
+	/**
+	 * Ends coalescing of identical commands.
+	 */
+	public void endSingleFlight() {
+		singleFlightGroup = null;
+	}
+	
+	/**
+	 * Gets current group coalescing identical running commands.
+	 * @return group or null if the coalescing is not set
+	 */
+	public SingleFlightGroup getSingleFlightGroup() {
+		return singleFlightGroup;
+	}
+	
+	/**
+	 * Begins the incremental execution: a command declaring its output files (see {@link SingleCommand#declareOutputs(File...)}) is skipped
+	 * if its stamp written after its last successful execution matches (see {@link StampStore}), its successful execution writes the stamp.
+	 * Note that only {@link SingleCommand} without input is skipped, its standard input and output are not a part of the stamp.
+	 * @param stampStore store of the stamps (share it by the contexts of all the threads and processes building the same files)
+	 */
+	public void beginIncremental(StampStore stampStore) {
+		this.stampStore = stampStore;
+	}
+	
+	/**
+	 * Ends the incremental execution (all the commands are executed again, no stamps are written).
+	 */
+	public void endIncremental() {
+		stampStore = null;
+	}
+	
+	/**
+	 * Gets current store of the stamps of the executed commands.
+	 * @return stamp store or null if the incremental execution is not set
+	 */
+	public StampStore getStampStore() {
+		return stampStore;
+	}
+	
+	/**
+	 * Sets current policy for the standard error output of the commands. Note that {@link SingleCommand} can override this for its execution.
+	 * @param stderrPolicy standard error output policy
+	 */
+	public void setStderrPolicy(StderrPolicy stderrPolicy) {
+		this.stderrPolicy = stderrPolicy;
+	}
+	
+	/**
+	 * Gets current policy for the standard error output of the commands.
+	 * @return standard error output policy
+	 */
+	public StderrPolicy getStderrPolicy() {
+		return stderrPolicy;
+	}
+	
+	/**
+	 * Sets current scheduling policy (priority, input/output class, CPU affinity, resource limits) of the commands. Note that {@link SingleCommand} can override this for its execution.
+	 * @param scheduling scheduling policy ({@link SchedulingPolicy#DEFAULT} to not change anything)
+	 */
+	public void setScheduling(SchedulingPolicy scheduling) {
+		this.scheduling = scheduling;
+	}
+	
+	/**
+	 * Gets current scheduling policy of the commands.
+	 * @return scheduling policy
+	 */
+	public SchedulingPolicy getScheduling() {
+		return scheduling;
+	}
+	
+	/**
+	 * Begins measuring of the resource usage (CPU time, peak memory, storage input/output) of the processes.
+	 * The usage is written to the log, reported to the listener and available by {@link RunningCommand#getResourceUsage()}.
+	 */
+	public void beginResourceAccounting() {
+		resourceAccounting = true;
+	}
+	
+	/**
+	 * Ends measuring of the resource usage of the processes.
+	 */
+	public void endResourceAccounting() {
+		resourceAccounting = false;
+	}
+	
+	/**
+	 * Returns if the resource usage of the processes is currently measured.
+	 * @return if the resource accounting is set
+	 */
+	public boolean isResourceAccounting() {
+		return resourceAccounting;
+	}
+	
+	/**
+	 * Sets current maximum number of output bytes of a command accumulated in the memory (by the run_ methods returning the output, e.g. {@link CommandBase#run_raw(CommandContext)}).
+	 * A command exceeding the limit is terminated and {@link syscommand.exception.OutputLimitExceededException} is thrown. Note that {@link CommandBase} can override this for its execution.
+	 * The output written to a file, a channel or a consumer is not limited.
+	 * @param maxOutputBytes maximum number of output bytes or {@link #NO_OUTPUT_LIMIT}
+	 */
+	public void setMaxOutputBytes(long maxOutputBytes) {
+		if ((maxOutputBytes < 0) && (maxOutputBytes != NO_OUTPUT_LIMIT)) {
+			throw new IllegalArgumentException("Invalid output limit: " + maxOutputBytes);
+		}
+		this.maxOutputBytes = maxOutputBytes;
+	}
+	
+	/**
+	 * Gets current maximum number of output bytes of a command accumulated in the memory.
+	 * @return maximum number of output bytes or {@link #NO_OUTPUT_LIMIT}
+	 */
+	public long getMaxOutputBytes() {
+		return maxOutputBytes;
+	}
+	
 }
@@ -0,0 +1,482 @@
+package syscommand;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import syscommand.exception.CommandException;
+import syscommand.internal.CommandResultWaiting;
+import syscommand.internal.CommandRunningContext;
+import syscommand.internal.NullOutputStream;
+
+/**
+ * Command which executes its subcommands (nodes) respecting the dependencies between them, running the independent ones in parallel
+ * (e.g. mkdir before cp into the directory, mount before the commands in the mounted chroot).
+ * A node is started as soon as all its dependencies have succeeded and a slot is free (at most {@link #parallelism(int)} nodes run at the same time).
+ * If a node fails, the nodes depending on it (directly or indirectly) are skipped, the independent branches are still executed.
+ * The subcommands get no input and their output is ignored (the output of the graph is empty). The exit status of the graph is 0 if all the nodes have succeeded,
+ * otherwise the failure of the node which has failed first is thrown.
+ * The state and timing of each node and the critical path are written to the log and available by {@link #run_report(CommandContext)}.
+ */
+public class CommandGraph extends CompositeCommand {
+	
+	/**
+	 * Buffer size (in bytes) for reading and ignoring the output of the nodes.
+	 */
+	private static final int BUFFER_SIZE = 8 * 1024;
+	
+	/**
+	 * Dependencies (indexes of the nodes) of each node.
+	 */
+	private final List<List<Integer>> dependencies = new ArrayList<List<Integer>>();
+	
+	/**
+	 * Indexes of the nodes by their commands.
+	 */
+	private final Map<CommandBase, Integer> indexes = new IdentityHashMap<CommandBase, Integer>();
+	
+	/**
+	 * Maximum number of nodes running at the same time.
+	 */
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	
+	/**
+	 * Adds a node. The dependencies have to be added before, so the graph can not contain a cycle.
+	 * @param command command of the node (one command instance can be added only once)
+	 * @param dependsOn commands which have to succeed before this command is started
+	 * @return this graph
+	 * @throws IllegalArgumentException if the command has been already added or if some of the dependencies has not been added
+	 */
+	public CommandGraph add(CommandBase command, CommandBase... dependsOn) {
+		if (indexes.containsKey(command)) {
+			throw new IllegalArgumentException("Command already added: " + command);
+		}
+		
+		List<Integer> d = new ArrayList<Integer>(dependsOn.length);
+		for (CommandBase dependency : dependsOn) {
+			Integer index = indexes.get(dependency);
+			if (index == null) {
+				throw new IllegalArgumentException("Dependency not added: " + dependency);
+			}
+			if (! d.contains(index)) {
+				d.add(index);
+			}
+		}
+		
+		indexes.put(command, list.size());
+		list.add(command);
+		dependencies.add(Collections.unmodifiableList(d));
+		return this;
+	}
+	
+	/**
+	 * Sets the maximum number of nodes running at the same time.
+	 * @param parallelism maximum number of running nodes (the number of processors by default)
+	 * @return this graph
+	 */
+	public CommandGraph parallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+		}
+		this.parallelism = parallelism;
+		return this;
+	}
+	
+	/**
+	 * Runs all the nodes and waits for them. No exception is thrown for a failed node, the failures are described by the report.
+	 * @param context command context with logging and execution environment settings
+	 * @return report of the run (state and timing of each node, critical path)
+	 * @throws CommandException if the waiting has been interrupted (the running nodes are terminated then)
+	 */
+	public GraphReport run_report(CommandContext context) throws CommandException {
+		Execution execution = new Execution(context);
+		execution.start();
+		return execution.await();
+	}
+	
+	/**
+	 * Starts the execution of the nodes.
+	 * @param context command context used for getting logging and execution environment properties (note that each {@link SingleCommand} which is a node of the graph can override these properties for its own execution)
+	 * @return command running context used to wait for the graph to finish (the output is empty)
+	 * @throws CommandException if the command creating or running failed
+	 */
+	@Override
+	protected CommandRunningContext run(final CommandContext context) throws CommandException {
+		final Execution execution = new Execution(context);
+		execution.start();
+		
+		CommandRunningContext result = new CommandRunningContext();
+		result.stdin = new NullOutputStream();
+		result.stdout = new ByteArrayInputStream(new byte[0]);
+		result.res = new CommandResultWaiting() {
+			
+			@Override
+			public int waitAndGetResult() throws CommandException {
+				return checkExitStatus(context, waitForExitStatus());
+			}
+			
+			@Override
+			public int waitForExitStatus() throws CommandException {
+				CommandException failure = execution.await().getFirstFailure();
+				if (failure != null) {
+					throw failure;
+				}
+				return 0;
+			}
+			
+			@Override
+			public void terminate() {
+				execution.terminate();
+			}
+			
+			@Override
+			public byte[] getStderr() {
+				return execution.getStderr();
+			}
+			
+			@Override
+			public ResourceUsage getResourceUsage() {
+				return execution.getResourceUsage();
+			}
+			
+		};
+		return result;
+	}
+	
+	/**
+	 * Gets the description of the graph (the nodes with the indexes of their dependencies).
+	 * @return graph description
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("graph(").append(parallelism).append("):");
+		for (int i = 0; i < list.size(); ++i) {
+			sb.append(' ').append(i).append('=').append(list.get(i));
+			if (! dependencies.get(i).isEmpty()) {
+				sb.append(" after ").append(dependencies.get(i));
+			}
+			sb.append(';');
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * One run of the graph.
+	 */
+	private class Execution {
+		
+		private final CommandContext context;
+		
+		private final int count = list.size();
+		
+		/**
+		 * Nodes of the graph (copied, so the graph can be modified while running).
+		 */
+		private final List<CommandBase> nodes = new ArrayList<CommandBase>(list);
+		
+		private final List<List<Integer>> nodeDependencies = new ArrayList<List<Integer>>(dependencies);
+		
+		/**
+		 * Nodes depending on each node.
+		 */
+		private final List<List<Integer>> dependents = new ArrayList<List<Integer>>(count);
+		
+		/**
+		 * Number of dependencies of each node which have not succeeded yet.
+		 */
+		private final int[] remaining = new int[count];
+		
+		private final GraphReport.NodeState[] states = new GraphReport.NodeState[count];
+		
+		private final long[] startNanos = new long[count];
+		
+		private final long[] durationNanos = new long[count];
+		
+		private final CommandException[] exceptions = new CommandException[count];
+		
+		private final byte[][] stderrs = new byte[count][];
+		
+		private final ResourceUsage[] resourceUsages = new ResourceUsage[count];
+		
+		/**
+		 * Running nodes (for terminating).
+		 */
+		private final Map<Integer, CommandRunningContext> running = new HashMap<Integer, CommandRunningContext>();
+		
+		/**
+		 * Number of nodes which have not finished and have not been skipped yet.
+		 */
+		private int unfinished = count;
+		
+		private boolean terminated = false;
+		
+		private long start;
+		
+		private long end;
+		
+		private GraphReport report = null;
+		
+		private final ExecutorService executor;
+		
+		Execution(CommandContext context) {
+			this.context = context;
+			for (int i = 0; i < count; ++i) {
+				dependents.add(new ArrayList<Integer>());
+			}
+			for (int i = 0; i < count; ++i) {
+				remaining[i] = nodeDependencies.get(i).size();
+				for (int d : nodeDependencies.get(i)) {
+					dependents.get(d).add(i);
+				}
+			}
+			this.executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, count)), new ThreadFactory() {
+				
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r);
+					t.setDaemon(true);
+					return t;
+				}
+				
+			});
+		}
+		
+		synchronized void start() {
+			start = System.nanoTime();
+			end = start;
+			for (int i = 0; i < count; ++i) {
+				if (remaining[i] == 0) {
+					submit(i);
+				}
+			}
+			checkFinished();
+		}
+		
+		/**
+		 * Submits a node whose dependencies have succeeded.
+		 */
+		private void submit(final int index) {
+			executor.execute(new Runnable() {
+				
+				@Override
+				public void run() {
+					runNode(index);
+				}
+				
+			});
+		}
+		
+		/**
+		 * Runs one node in a thread of the executor.
+		 */
+		private void runNode(int index) {
+			CommandBase command = nodes.get(index);
+			long nodeStart = System.nanoTime();
+			CommandException exception = null;
+			CommandRunningContext current = null;
+			synchronized(this) {
+				if (terminated) {
+					skip(index);
+					return;
+				}
+			}
+			try {
+				current = command.run(context);
+				synchronized(this) {
+					running.put(index, current);
+					if (terminated) {
+						current.res.terminate();
+					}
+				}
+				
+				try {
+					current.stdin.close();
+				} catch (IOException e) {
+					// nothing
+				}
+				boolean outputSuccess = true;
+				try {
+					InputStream is = current.stdout;
+					byte[] b = new byte[BUFFER_SIZE];
+					while (is.read(b) != -1) {
+						// ignoring the output
+					}
+				} catch (IOException e) {
+					outputSuccess = false;
+				} finally {
+					try {
+						current.stdout.close();
+					} catch (IOException e) {
+						// nothing
+					}
+				}
+				current.res.waitAndGetResult();
+				if (! outputSuccess) {
+					throw new CommandException("Error while copying data");
+				}
+			} catch (CommandException e) {
+				exception = e;
+			} catch (RuntimeException e) {
+				exception = new CommandException("Node failed: " + command, e);
+			}
+			finished(index, current, nodeStart, exception);
+		}
+		
+		/**
+		 * Records the finished node and submits or skips its dependents.
+		 */
+		private synchronized void finished(int index, CommandRunningContext current, long nodeStart, CommandException exception) {
+			long now = System.nanoTime();
+			running.remove(index);
+			startNanos[index] = nodeStart - start;
+			durationNanos[index] = now - nodeStart;
+			end = Math.max(end, now);
+			if (current != null) {
+				stderrs[index] = current.res.getStderr();
+				resourceUsages[index] = current.res.getResourceUsage();
+			}
+			--unfinished;
+			
+			if (exception == null) {
+				states[index] = GraphReport.NodeState.SUCCEEDED;
+				for (int d : dependents.get(index)) {
+					if ((--remaining[d] == 0) && (states[d] == null)) {
+						submit(d);
+					}
+				}
+			} else {
+				states[index] = GraphReport.NodeState.FAILED;
+				exceptions[index] = exception;
+				skipDependents(index);
+			}
+			
+			checkFinished();
+		}
+		
+		/**
+		 * Skips the submitted node which has not been started before the graph has been terminated.
+		 */
+		private synchronized void skip(int index) {
+			states[index] = GraphReport.NodeState.SKIPPED;
+			--unfinished;
+			skipDependents(index);
+			checkFinished();
+		}
+		
+		/**
+		 * Skips all the nodes depending (directly or indirectly) on the failed or skipped node.
+		 */
+		private void skipDependents(int index) {
+			for (int d : dependents.get(index)) {
+				if (states[d] == null) {
+					states[d] = GraphReport.NodeState.SKIPPED;
+					--unfinished;
+					skipDependents(d);
+				}
+			}
+		}
+		
+		/**
+		 * Stops the executor and wakes up the waiting thread if there is no node left.
+		 */
+		private void checkFinished() {
+			if (unfinished == 0) {
+				executor.shutdown();
+				notifyAll();
+			}
+		}
+		
+		/**
+		 * Terminates the running nodes, the nodes not started yet are skipped.
+		 */
+		synchronized void terminate() {
+			terminated = true;
+			for (CommandRunningContext c : running.values()) {
+				c.res.terminate();
+			}
+		}
+		
+		/**
+		 * Waits for all the nodes and creates the report (once).
+		 */
+		synchronized GraphReport await() throws CommandException {
+			if (report != null) {
+				return report;
+			}
+			
+			boolean interrupted = false;
+			while (unfinished > 0) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					if (! interrupted) {
+						interrupted = true;
+						terminate();
+					}
+				}
+			}
+			
+			List<GraphReport.Node> reportNodes = new ArrayList<GraphReport.Node>(count);
+			for (int i = 0; i < count; ++i) {
+				GraphReport.NodeState state = (states[i] != null) ? states[i] : GraphReport.NodeState.SKIPPED;
+				reportNodes.add(new GraphReport.Node(i, nodes.get(i), nodeDependencies.get(i), state, startNanos[i], durationNanos[i], exceptions[i]));
+			}
+			report = new GraphReport(reportNodes, end - start);
+			writeLog();
+			
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+				throw new CommandException("Thread interrupted");
+			}
+			return report;
+		}
+		
+		synchronized byte[] getStderr() {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			for (byte[] b : stderrs) {
+				if (b != null) {
+					baos.write(b, 0, b.length);
+				}
+			}
+			return baos.toByteArray();
+		}
+		
+		synchronized ResourceUsage getResourceUsage() {
+			if ((report == null) || (! context.isResourceAccounting())) {
+				return null;
+			}
+			List<ResourceUsage> l = new ArrayList<ResourceUsage>(count);
+			Collections.addAll(l, resourceUsages);
+			return ResourceUsage.concurrent(CommandGraph.this.toString(), l);
+		}
+		
+		private void writeLog() {
+			try {
+				Writer logWriter = context.getLogWriter();
+				if (logWriter != null) {
+					synchronized(logWriter) {
+						logWriter.write("----------------------------\n");
+						logWriter.write("GRAPH: " + CommandGraph.this.toString() + '\n');
+						logWriter.write(report.toString());
+					}
+				}
+			} catch (IOException e) {
+				// nothing
+			}
+		}
+		
+	}
+	
+}
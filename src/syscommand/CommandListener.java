@@ -0,0 +1,60 @@
+package syscommand;
+
+/**
+ * Receives timing events of the command execution phases (process starting, data copying, waiting for the exit, logging) and the measured resource usage.
+ * Allows finding out where the time is spent when running many commands (see {@link CommandContext#setListener(CommandListener)}).
+ * The events are not created at all when no listener is set.
+ * Thread safety note: The methods are called from different threads (copying threads, waiting threads etc.) concurrently, they should return quickly.
+ */
+public interface CommandListener {
+	
+	/**
+	 * Called after a process has been started.
+	 * @param command command description
+	 * @param durationNanos time spent by starting the process (in nanoseconds)
+	 */
+	void processStarted(String command, long durationNanos);
+	
+	/**
+	 * Called after a process has exited (and its standard error output has been read).
+	 * @param command command description
+	 * @param exitStatus exit status of the process
+	 * @param durationNanos time spent by waiting for the process to exit (in nanoseconds)
+	 */
+	void processExited(String command, int exitStatus, long durationNanos);
+	
+	/**
+	 * Called after copying of data between a command and a stream or between two pipeline stages has finished.
+	 * @param description copying description
+	 * @param stageIndex index of the pipeline stage receiving the data or -1 if the copying is not between pipeline stages
+	 * @param bytes number of copied bytes
+	 * @param durationNanos time spent by copying (in nanoseconds)
+	 * @param success if the copying was successful
+	 */
+	void dataCopied(String description, int stageIndex, long bytes, long durationNanos, boolean success);
+	
+	/**
+	 * Called after waiting for a pipeline stage has finished.
+	 * @param pipeline pipeline description
+	 * @param stageIndex index of the stage
+	 * @param stage stage description
+	 * @param durationNanos time spent by waiting for the stage (in nanoseconds)
+	 * @param success if the stage has finished successfully (with a valid exit status)
+	 */
+	void pipelineStageFinished(String pipeline, int stageIndex, String stage, long durationNanos, boolean success);
+	
+	/**
+	 * Called after a log entry has been written to the log writer (including waiting for the log writer lock).
+	 * @param command command description
+	 * @param durationNanos time spent by writing the log entry (in nanoseconds)
+	 */
+	void logWritten(String command, long durationNanos);
+	
+	/**
+	 * Called after the resource usage of a finished process or pipeline has been measured (only if the resource accounting is set, see {@link CommandContext#beginResourceAccounting()}).
+	 * The usage of a pipeline contains the usage of each stage as its parts (the processes of the stages are reported separately as well).
+	 * @param usage resources used
+	 */
+	void resourcesMeasured(ResourceUsage usage);
+	
+}
@@ -0,0 +1,32 @@
+package syscommand;
+
+/**
+ * Listener ignoring all the events. Extend it and override only the methods for the events you are interested in.
+ */
+public abstract class CommandListenerAdapter implements CommandListener {
+	
+	@Override
+	public void processStarted(String command, long durationNanos) {
+	}
+	
+	@Override
+	public void processExited(String command, int exitStatus, long durationNanos) {
+	}
+	
+	@Override
+	public void dataCopied(String description, int stageIndex, long bytes, long durationNanos, boolean success) {
+	}
+	
+	@Override
+	public void pipelineStageFinished(String pipeline, int stageIndex, String stage, long durationNanos, boolean success) {
+	}
+	
+	@Override
+	public void logWritten(String command, long durationNanos) {
+	}
+	
+	@Override
+	public void resourcesMeasured(ResourceUsage usage) {
+	}
+	
+}
@@ -0,0 +1,141 @@
+package syscommand;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+/**
+ * Result of a finished command returned by {@link CommandBase#run_result(CommandContext)}: exit status, output, standard error output (truncated) and duration.
+ * No exception is thrown for an invalid exit status, {@link #isSuccess()} tells if the exit status is valid.
+ * Immutable.
+ */
+public final class CommandResult {
+	
+	/**
+	 * Default maximum number of bytes of the standard error output kept in the result.
+	 */
+	public static final int DEFAULT_MAX_STDERR_BYTES = 4 * 1024;
+	
+	private final int exitStatus;
+	
+	private final boolean success;
+	
+	private final byte[] output;
+	
+	private final byte[] stderr;
+	
+	private final boolean stderrTruncated;
+	
+	private final long durationNanos;
+	
+	private final ResourceUsage resourceUsage;
+	
+	/**
+	 * Creates the result.
+	 * @param exitStatus exit status of the command
+	 * @param success if the exit status is valid for the command
+	 * @param output output data (not copied)
+	 * @param stderr whole standard error output data
+	 * @param maxStderrBytes maximum number of bytes of the standard error output to keep (the beginning is kept)
+	 * @param durationNanos time from the start of the command to its exit (in nanoseconds)
+	 * @param resourceUsage resources used or null if they have not been measured
+	 */
+	CommandResult(int exitStatus, boolean success, byte[] output, byte[] stderr, int maxStderrBytes, long durationNanos, ResourceUsage resourceUsage) {
+		this.exitStatus = exitStatus;
+		this.success = success;
+		this.output = output;
+		this.stderrTruncated = (stderr.length > maxStderrBytes);
+		this.stderr = stderrTruncated ? Arrays.copyOf(stderr, maxStderrBytes) : stderr;
+		this.durationNanos = durationNanos;
+		this.resourceUsage = resourceUsage;
+	}
+	
+	/**
+	 * Gets the exit status of the command.
+	 * @return exit status
+	 */
+	public int getExitStatus() {
+		return exitStatus;
+	}
+	
+	/**
+	 * Returns if the exit status is valid for the command (0 or specified by {@link CommandBase#addValidExitStatus(int)}).
+	 * @return if the command succeeded
+	 */
+	public boolean isSuccess() {
+		return success;
+	}
+	
+	/**
+	 * Gets the output of the command (data written to the standard output).
+	 * @return copy of the output data
+	 */
+	public byte[] getOutput() {
+		return output.clone();
+	}
+	
+	/**
+	 * Gets the output of the command as a string.
+	 * @return output data as string (output bytes are converted using UTF-8 encoding to string)
+	 */
+	public String getOutputString() {
+		return toString(output);
+	}
+	
+	/**
+	 * Gets the beginning of the standard error output of the command.
+	 * @return copy of the standard error output data (truncated to the maximum size)
+	 */
+	public byte[] getStderr() {
+		return stderr.clone();
+	}
+	
+	/**
+	 * Gets the beginning of the standard error output of the command as a string.
+	 * @return standard error output data (bytes are converted using UTF-8 encoding to string, truncated to the maximum size)
+	 */
+	public String getStderrString() {
+		return toString(stderr);
+	}
+	
+	/**
+	 * Returns if the standard error output has been truncated.
+	 * @return if the standard error output was longer than the maximum size
+	 */
+	public boolean isStderrTruncated() {
+		return stderrTruncated;
+	}
+	
+	/**
+	 * Gets the time from the start of the command to its exit.
+	 * @return duration in nanoseconds
+	 */
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+	
+	/**
+	 * Gets the resources used by the command (see {@link CommandContext#beginResourceAccounting()}).
+	 * @return resource usage or null if it has not been measured
+	 */
+	public ResourceUsage getResourceUsage() {
+		return resourceUsage;
+	}
+	
+	/**
+	 * Gets the result description.
+	 * @return result description string
+	 */
+	@Override
+	public String toString() {
+		return "exit status " + exitStatus + (success ? "" : " (invalid)") + ", " + output.length + " bytes of output, " + (durationNanos / 1000000) + " ms";
+	}
+	
+	private static String toString(byte[] b) {
+		try {
+			return new String(b, "UTF-8");
+		} catch (UnsupportedEncodingException u) {
+			throw new RuntimeException(u);
+		}
+	}
+	
+}
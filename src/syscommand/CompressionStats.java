@@ -0,0 +1,88 @@
+package syscommand;
+
+/**
+ * Statistics of the compression of a command output (see {@link CommandBase#run_writeCompressed(CommandContext, java.io.File, int, int)}).
+ * Immutable.
+ */
+public class CompressionStats {
+	
+	private final long inputBytes;
+	
+	private final long outputBytes;
+	
+	private final long durationNanos;
+	
+	/**
+	 * Creates the statistics.
+	 * @param inputBytes number of uncompressed bytes
+	 * @param outputBytes number of compressed bytes
+	 * @param durationNanos duration of the command running and compression (in nanoseconds)
+	 */
+	public CompressionStats(long inputBytes, long outputBytes, long durationNanos) {
+		this.inputBytes = inputBytes;
+		this.outputBytes = outputBytes;
+		this.durationNanos = durationNanos;
+	}
+	
+	/**
+	 * Gets the number of uncompressed bytes (the command output size).
+	 * @return number of input bytes
+	 */
+	public long getInputBytes() {
+		return inputBytes;
+	}
+	
+	/**
+	 * Gets the number of compressed bytes (the written file size).
+	 * @return number of output bytes
+	 */
+	public long getOutputBytes() {
+		return outputBytes;
+	}
+	
+	/**
+	 * Gets the duration of the command running and compression.
+	 * @return duration in nanoseconds
+	 */
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+	
+	/**
+	 * Gets the compression ratio.
+	 * @return output bytes divided by input bytes (0 if there was no input)
+	 */
+	public double getRatio() {
+		return (inputBytes == 0) ? 0 : ((double) outputBytes / inputBytes);
+	}
+	
+	/**
+	 * Gets the input throughput.
+	 * @return uncompressed bytes per second
+	 */
+	public double getInputThroughput() {
+		return perSecond(inputBytes);
+	}
+	
+	/**
+	 * Gets the output throughput.
+	 * @return compressed bytes per second
+	 */
+	public double getOutputThroughput() {
+		return perSecond(outputBytes);
+	}
+	
+	private double perSecond(long bytes) {
+		return (durationNanos == 0) ? 0 : (bytes * 1e9 / durationNanos);
+	}
+	
+	/**
+	 * Gets the statistics description.
+	 * @return statistics description
+	 */
+	@Override
+	public String toString() {
+		return inputBytes + " -> " + outputBytes + " bytes (ratio " + String.format("%.3f", getRatio()) + ", " + String.format("%.1f", getInputThroughput() / (1024 * 1024)) + " MiB/s)";
+	}
+	
+}
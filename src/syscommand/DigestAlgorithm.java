@@ -0,0 +1,21 @@
+package syscommand;
+
+/**
+ * Algorithm of a digest computed over the data copied from or between the commands (see {@link OutputDigests} and {@link DigestAlgorithms}).
+ * Implement it to plug in another algorithm.
+ */
+public interface DigestAlgorithm {
+	
+	/**
+	 * Gets the name of the algorithm (used to get the digest value from {@link OutputDigests}).
+	 * @return algorithm name
+	 */
+	String getName();
+	
+	/**
+	 * Creates a new digest computation.
+	 * @return new digest
+	 */
+	StreamDigest newDigest();
+	
+}
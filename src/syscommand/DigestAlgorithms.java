@@ -0,0 +1,169 @@
+package syscommand;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Checksum;
+
+import syscommand.internal.Crc32c;
+import syscommand.internal.Xxh64;
+
+/**
+ * Predefined digest algorithms.
+ */
+public class DigestAlgorithms {
+	
+	/**
+	 * CRC-32 (as used by gzip and zip).
+	 */
+	public static final DigestAlgorithm CRC32 = new DigestAlgorithm() {
+		
+		@Override
+		public String getName() {
+			return "CRC32";
+		}
+		
+		@Override
+		public StreamDigest newDigest() {
+			return new ChecksumDigest(new java.util.zip.CRC32());
+		}
+		
+	};
+	
+	/**
+	 * CRC-32C (Castagnoli, as used by iSCSI, ext4 and btrfs).
+	 */
+	public static final DigestAlgorithm CRC32C = new DigestAlgorithm() {
+		
+		@Override
+		public String getName() {
+			return "CRC32C";
+		}
+		
+		@Override
+		public StreamDigest newDigest() {
+			return new ChecksumDigest(new Crc32c());
+		}
+		
+	};
+	
+	/**
+	 * XXH64 with the zero seed (fast non-cryptographic hash, the same value as xxhsum -H64 prints).
+	 */
+	public static final DigestAlgorithm XXH64 = new DigestAlgorithm() {
+		
+		@Override
+		public String getName() {
+			return "XXH64";
+		}
+		
+		@Override
+		public StreamDigest newDigest() {
+			final Xxh64 x = new Xxh64(0);
+			return new StreamDigest() {
+				
+				@Override
+				public void update(byte[] b, int off, int len) {
+					x.update(b, off, len);
+				}
+				
+				@Override
+				public byte[] digest() {
+					return toBytes(x.getValue(), 8);
+				}
+				
+			};
+		}
+		
+	};
+	
+	/**
+	 * SHA-256 (the same value as sha256sum prints).
+	 */
+	public static final DigestAlgorithm SHA256 = messageDigest("SHA-256");
+	
+	private DigestAlgorithms() {
+	}
+	
+	/**
+	 * Gets the algorithm using {@link MessageDigest} (any algorithm provided by the java security providers: MD5, SHA-1, SHA-512 etc.).
+	 * @param name message digest algorithm name
+	 * @return digest algorithm
+	 * @throws IllegalArgumentException if the message digest algorithm is not available
+	 */
+	public static DigestAlgorithm messageDigest(final String name) {
+		try {
+			MessageDigest.getInstance(name);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalArgumentException("Unknown digest algorithm: " + name, e);
+		}
+		
+		return new DigestAlgorithm() {
+			
+			@Override
+			public String getName() {
+				return name;
+			}
+			
+			@Override
+			public StreamDigest newDigest() {
+				final MessageDigest md;
+				try {
+					md = MessageDigest.getInstance(name);
+				} catch (NoSuchAlgorithmException e) {
+					throw new IllegalStateException(e);
+				}
+				
+				return new StreamDigest() {
+					
+					@Override
+					public void update(byte[] b, int off, int len) {
+						md.update(b, off, len);
+					}
+					
+					@Override
+					public byte[] digest() {
+						return md.digest();
+					}
+					
+				};
+			}
+			
+		};
+	}
+	
+	/**
+	 * Converts the value to bytes in the big-endian order.
+	 */
+	private static byte[] toBytes(long value, int length) {
+		byte[] b = new byte[length];
+		for (int i = length - 1; i >= 0; --i) {
+			b[i] = (byte) value;
+			value >>>= 8;
+		}
+		return b;
+	}
+	
+	/**
+	 * Digest computed by a 32-bit {@link Checksum}.
+	 */
+	private static class ChecksumDigest implements StreamDigest {
+		
+		private final Checksum checksum;
+		
+		public ChecksumDigest(Checksum checksum) {
+			this.checksum = checksum;
+		}
+		
+		@Override
+		public void update(byte[] b, int off, int len) {
+			checksum.update(b, off, len);
+		}
+		
+		@Override
+		public byte[] digest() {
+			return toBytes(checksum.getValue(), 4);
+		}
+		
+	}
+	
+}
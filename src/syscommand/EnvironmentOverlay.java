@@ -0,0 +1,209 @@
+package syscommand;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable set of changes of the environment variables of a command: setting variables, unsetting variables and clearing the environment to the minimal one.
+ * The resolved environment is computed once and cached, so the same overlay can be used for many commands cheaply.
+ */
+public final class EnvironmentOverlay {
+	
+	/**
+	 * Overlay without any change.
+	 */
+	public static final EnvironmentOverlay EMPTY = new EnvironmentOverlay(false, Collections.<String, String>emptyMap(), Collections.<String>emptySet());
+	
+	/**
+	 * Variables kept when the environment is cleared.
+	 */
+	public static final List<String> MINIMAL_VARIABLES = Collections.unmodifiableList(Arrays.asList("PATH"));
+	
+	/**
+	 * If the environment is cleared (only the {@link #MINIMAL_VARIABLES} are kept) before setting the variables.
+	 */
+	private final boolean clear;
+	
+	/**
+	 * Variables to set.
+	 */
+	private final Map<String, String> set;
+	
+	/**
+	 * Variables to unset.
+	 */
+	private final Set<String> unset;
+	
+	/**
+	 * Cached environment of the current java process with this overlay applied or null if not yet computed.
+	 */
+	private volatile Map<String, String> resolved = null;
+	
+	private EnvironmentOverlay(boolean clear, Map<String, String> set, Set<String> unset) {
+		this.clear = clear;
+		this.set = set;
+		this.unset = unset;
+	}
+	
+	/**
+	 * Creates an overlay which additionally sets the variable.
+	 * @param name variable name
+	 * @param value variable value
+	 * @return new overlay
+	 */
+	public EnvironmentOverlay withSet(String name, String value) {
+		Map<String, String> newSet = new LinkedHashMap<String, String>(set);
+		newSet.put(name, value);
+		Set<String> newUnset = new LinkedHashSet<String>(unset);
+		newUnset.remove(name);
+		return new EnvironmentOverlay(clear, Collections.unmodifiableMap(newSet), Collections.unmodifiableSet(newUnset));
+	}
+	
+	/**
+	 * Creates an overlay which additionally unsets the variable.
+	 * @param name variable name
+	 * @return new overlay
+	 */
+	public EnvironmentOverlay withUnset(String name) {
+		Map<String, String> newSet = new LinkedHashMap<String, String>(set);
+		newSet.remove(name);
+		Set<String> newUnset = new LinkedHashSet<String>(unset);
+		newUnset.add(name);
+		return new EnvironmentOverlay(clear, Collections.unmodifiableMap(newSet), Collections.unmodifiableSet(newUnset));
+	}
+	
+	/**
+	 * Creates an overlay which clears the environment (only the {@link #MINIMAL_VARIABLES} are kept). All the changes of this overlay are dropped.
+	 * @return new overlay
+	 */
+	public EnvironmentOverlay withClear() {
+		return new EnvironmentOverlay(true, Collections.<String, String>emptyMap(), Collections.<String>emptySet());
+	}
+	
+	/**
+	 * Creates an overlay which applies the changes of this overlay and then the changes of the other overlay.
+	 * @param other overlay applied after this one
+	 * @return combined overlay
+	 */
+	public EnvironmentOverlay then(EnvironmentOverlay other) {
+		if (other.isEmpty()) {
+			return this;
+		}
+		if (isEmpty() || other.clear) {
+			return other;
+		}
+		
+		Map<String, String> newSet = new LinkedHashMap<String, String>(set);
+		Set<String> newUnset = new LinkedHashSet<String>(unset);
+		for (String name : other.unset) {
+			newSet.remove(name);
+			newUnset.add(name);
+		}
+		for (Map.Entry<String, String> e : other.set.entrySet()) {
+			newUnset.remove(e.getKey());
+			newSet.put(e.getKey(), e.getValue());
+		}
+		return new EnvironmentOverlay(clear, Collections.unmodifiableMap(newSet), Collections.unmodifiableSet(newUnset));
+	}
+	
+	/**
+	 * Checks if the overlay does not change anything.
+	 * @return if the overlay is empty
+	 */
+	public boolean isEmpty() {
+		return (! clear) && set.isEmpty() && unset.isEmpty();
+	}
+	
+	/**
+	 * Gets the environment of the current java process with this overlay applied. The result is computed once and cached.
+	 * @return unmodifiable resolved environment
+	 */
+	public Map<String, String> resolve() {
+		Map<String, String> result = resolved;
+		if (result == null) {
+			Map<String, String> base = System.getenv();
+			Map<String, String> m = new HashMap<String, String>();
+			if (clear) {
+				for (String name : MINIMAL_VARIABLES) {
+					if (base.containsKey(name)) {
+						m.put(name, base.get(name));
+					}
+				}
+			} else {
+				m.putAll(base);
+			}
+			for (String name : unset) {
+				m.remove(name);
+			}
+			m.putAll(set);
+			result = Collections.unmodifiableMap(m);
+			resolved = result;
+		}
+		return result;
+	}
+	
+	/**
+	 * Gets the arguments of the env command applying this overlay to the environment the command would get otherwise (used with sudo and chroot, which do not pass the environment of the current java process).
+	 * @return env command and its arguments (without the command to execute)
+	 */
+	public List<String> toEnvCommand() {
+		List<String> l = new ArrayList<String>();
+		l.add("env");
+		if (clear) {
+			l.add("-i");
+			for (String name : MINIMAL_VARIABLES) {
+				String value = System.getenv(name);
+				if (value != null) {
+					l.add(name + "=" + value);
+				}
+			}
+		}
+		for (String name : unset) {
+			l.add("-u");
+			l.add(name);
+		}
+		for (Map.Entry<String, String> e : set.entrySet()) {
+			l.add(e.getKey() + "=" + e.getValue());
+		}
+		return l;
+	}
+	
+	/**
+	 * Gets the overlay description in the form of the env command arguments.
+	 * @return overlay description
+	 */
+	@Override
+	public String toString() {
+		List<String> l = toEnvCommand();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 1; i < l.size(); ++i) {
+			if (i > 1) {
+				sb.append(' ');
+			}
+			sb.append(l.get(i));
+		}
+		return sb.toString();
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		if (! (o instanceof EnvironmentOverlay)) {
+			return false;
+		}
+		EnvironmentOverlay other = (EnvironmentOverlay) o;
+		return (clear == other.clear) && set.equals(other.set) && unset.equals(other.unset);
+	}
+	
+	@Override
+	public int hashCode() {
+		return (clear ? 1 : 0) + 31 * set.hashCode() + 961 * unset.hashCode();
+	}
+	
+}
@@ -0,0 +1,284 @@
+package syscommand;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Launcher which does not start any process, it returns the prepared responses instead (for testing the code running the commands).
+ * The responses are matched by the full command line (including the sudo, chroot and env prefixes) joined by spaces.
+ * All the launches are recorded including the data written to the standard input of the fake process.
+ * The standard error output policy is applied to the prepared response: the merged standard error output follows the standard output, the redirected one is dropped.
+ * Thread safe.
+ */
+public class FakeProcessLauncher implements ProcessLauncher {
+	
+	/**
+	 * Prepared responses by the command lines.
+	 */
+	private final Map<String, Response> responses = new HashMap<String, Response>();
+	
+	/**
+	 * Response used if no response is prepared for the command line or null (then the launching fails).
+	 */
+	private Response defaultResponse = null;
+	
+	/**
+	 * Recorded launches.
+	 */
+	private final List<Launch> launches = new ArrayList<Launch>();
+	
+	/**
+	 * Prepares the response for the command line.
+	 * @param commandLine command and arguments joined by spaces
+	 * @param exitStatus exit status of the fake process
+	 * @param stdout standard output of the fake process (converted to bytes using UTF-8 encoding)
+	 * @param stderr standard error output of the fake process (converted to bytes using UTF-8 encoding)
+	 * @return this launcher
+	 */
+	public synchronized FakeProcessLauncher addResponse(String commandLine, int exitStatus, String stdout, String stderr) {
+		responses.put(commandLine, new Response(exitStatus, toBytes(stdout), toBytes(stderr)));
+		return this;
+	}
+	
+	/**
+	 * Sets the response for the command lines without a prepared response. If not set, launching of such command lines fails with {@link IOException}.
+	 * @param exitStatus exit status of the fake process
+	 * @param stdout standard output of the fake process (converted to bytes using UTF-8 encoding)
+	 * @param stderr standard error output of the fake process (converted to bytes using UTF-8 encoding)
+	 * @return this launcher
+	 */
+	public synchronized FakeProcessLauncher setDefaultResponse(int exitStatus, String stdout, String stderr) {
+		defaultResponse = new Response(exitStatus, toBytes(stdout), toBytes(stderr));
+		return this;
+	}
+	
+	/**
+	 * Gets the recorded launches in the launching order.
+	 * @return copy of the list of the launches
+	 */
+	public synchronized List<Launch> getLaunches() {
+		return new ArrayList<Launch>(launches);
+	}
+	
+	/**
+	 * Creates the fake process with the response prepared for the command line and records the launch.
+	 * @param commandLine command and arguments
+	 * @param workingDir working directory (only recorded)
+	 * @param environment environment (only recorded)
+	 * @param stderrPolicy where the standard error output of the fake process goes
+	 * @return fake process which has already exited
+	 * @throws IOException if there is no response for the command line
+	 */
+	@Override
+	public synchronized Process launch(List<String> commandLine, File workingDir, Map<String, String> environment, StderrPolicy stderrPolicy) throws IOException {
+		String key = join(commandLine);
+		Response response = responses.get(key);
+		if (response == null) {
+			response = defaultResponse;
+		}
+		if (response == null) {
+			throw new IOException("No fake response for: " + key);
+		}
+		
+		Launch launch = new Launch(commandLine, workingDir, environment, stderrPolicy);
+		launches.add(launch);
+		
+		return new FakeProcess(response, stderrPolicy, launch.input);
+	}
+	
+	private static String join(List<String> l) {
+		StringBuilder sb = new StringBuilder();
+		boolean first = true;
+		for (String s : l) {
+			if (first) {
+				first = false;
+			} else {
+				sb.append(' ');
+			}
+			sb.append(s);
+		}
+		return sb.toString();
+	}
+	
+	private static byte[] toBytes(String s) {
+		try {
+			return s.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException u) {
+			throw new RuntimeException(u);
+		}
+	}
+	
+	/**
+	 * One recorded launch.
+	 */
+	public static class Launch {
+		
+		private final List<String> commandLine;
+		
+		private final File workingDir;
+		
+		private final Map<String, String> environment;
+		
+		private final StderrPolicy stderrPolicy;
+		
+		/**
+		 * Data written to the standard input of the fake process.
+		 */
+		private final ByteArrayOutputStream input = new ByteArrayOutputStream();
+		
+		private Launch(List<String> commandLine, File workingDir, Map<String, String> environment, StderrPolicy stderrPolicy) {
+			this.commandLine = Collections.unmodifiableList(new ArrayList<String>(commandLine));
+			this.workingDir = workingDir;
+			this.environment = (environment != null) ? Collections.unmodifiableMap(new HashMap<String, String>(environment)) : null;
+			this.stderrPolicy = stderrPolicy;
+		}
+		
+		/**
+		 * Gets the launched command and arguments.
+		 * @return unmodifiable command line
+		 */
+		public List<String> getCommandLine() {
+			return commandLine;
+		}
+		
+		/**
+		 * Gets the working directory of the launch.
+		 * @return working directory or null if the working directory of the current java process was requested
+		 */
+		public File getWorkingDir() {
+			return workingDir;
+		}
+		
+		/**
+		 * Gets the environment of the launch.
+		 * @return unmodifiable environment or null if the environment of the current java process was requested
+		 */
+		public Map<String, String> getEnvironment() {
+			return environment;
+		}
+		
+		/**
+		 * Gets the standard error output policy of the launch.
+		 * @return standard error output policy
+		 */
+		public StderrPolicy getStderrPolicy() {
+			return stderrPolicy;
+		}
+		
+		/**
+		 * Gets the data written to the standard input of the fake process so far.
+		 * @return input data
+		 */
+		public byte[] getInput() {
+			synchronized(input) {
+				return input.toByteArray();
+			}
+		}
+		
+	}
+	
+	/**
+	 * Prepared response.
+	 */
+	private static class Response {
+		
+		private final int exitStatus;
+		
+		private final byte[] stdout;
+		
+		private final byte[] stderr;
+		
+		public Response(int exitStatus, byte[] stdout, byte[] stderr) {
+			this.exitStatus = exitStatus;
+			this.stdout = stdout;
+			this.stderr = stderr;
+		}
+		
+	}
+	
+	/**
+	 * Fake process which has already exited. Its output is the prepared response, its input is recorded.
+	 */
+	private static class FakeProcess extends Process {
+		
+		private final Response response;
+		
+		private final OutputStream stdin;
+		
+		private final InputStream stdout;
+		
+		private final InputStream stderr;
+		
+		public FakeProcess(Response response, StderrPolicy stderrPolicy, final ByteArrayOutputStream input) {
+			this.response = response;
+			this.stdin = new OutputStream() {
+				
+				@Override
+				public void write(int b) throws IOException {
+					synchronized(input) {
+						input.write(b);
+					}
+				}
+				
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					synchronized(input) {
+						input.write(b, off, len);
+					}
+				}
+				
+			};
+			if (stderrPolicy.getType() == StderrPolicy.Type.MERGE) {
+				byte[] merged = new byte[response.stdout.length + response.stderr.length];
+				System.arraycopy(response.stdout, 0, merged, 0, response.stdout.length);
+				System.arraycopy(response.stderr, 0, merged, response.stdout.length, response.stderr.length);
+				this.stdout = new ByteArrayInputStream(merged);
+			} else {
+				this.stdout = new ByteArrayInputStream(response.stdout);
+			}
+			this.stderr = new ByteArrayInputStream(stderrPolicy.isRead() ? response.stderr : new byte[0]);
+		}
+		
+		@Override
+		public OutputStream getOutputStream() {
+			return stdin;
+		}
+		
+		@Override
+		public InputStream getInputStream() {
+			return stdout;
+		}
+		
+		@Override
+		public InputStream getErrorStream() {
+			return stderr;
+		}
+		
+		@Override
+		public int waitFor() {
+			return response.exitStatus;
+		}
+		
+		@Override
+		public int exitValue() {
+			return response.exitStatus;
+		}
+		
+		@Override
+		public void destroy() {
+			// nothing
+		}
+		
+	}
+	
+}
@@ -0,0 +1,76 @@
+package syscommand;
+
+/**
+ * Interfaces of demand-driven (reactive) streams used by {@link CommandBase#publish_raw(CommandContext)} and {@link CommandBase#publish_lines(CommandContext)}.
+ * They have the same methods and the same contract as the interfaces of java.util.concurrent.Flow (Java 9+) and of the Reactive Streams project,
+ * so they can be adapted to them by simple delegating classes.
+ */
+public final class Flow {
+	
+	private Flow() {
+	}
+	
+	/**
+	 * Producer of items received by subscribers.
+	 * @param <T> item type
+	 */
+	public interface Publisher<T> {
+		
+		/**
+		 * Adds a subscriber. The subscriber receives {@link Subscriber#onSubscribe(Subscription)} first and then the items requested by it.
+		 * @param subscriber subscriber
+		 */
+		void subscribe(Subscriber<? super T> subscriber);
+		
+	}
+	
+	/**
+	 * Receiver of items. The methods are called one after another (never concurrently), but not necessarily from the same thread.
+	 * @param <T> item type
+	 */
+	public interface Subscriber<T> {
+		
+		/**
+		 * Called before any other method.
+		 * @param subscription subscription used to request items or to cancel
+		 */
+		void onSubscribe(Subscription subscription);
+		
+		/**
+		 * Receives the next item. Called only for requested items.
+		 * @param item item
+		 */
+		void onNext(T item);
+		
+		/**
+		 * Called when the publisher has failed, no other method is called after this one.
+		 * @param throwable failure reason
+		 */
+		void onError(Throwable throwable);
+		
+		/**
+		 * Called when all items have been received, no other method is called after this one.
+		 */
+		void onComplete();
+		
+	}
+	
+	/**
+	 * Connection of a publisher and a subscriber.
+	 */
+	public interface Subscription {
+		
+		/**
+		 * Requests more items. Can be called from any thread, also from {@link Subscriber#onNext(Object)}.
+		 * @param n number of items added to the demand (positive, {@link Long#MAX_VALUE} means no limit)
+		 */
+		void request(long n);
+		
+		/**
+		 * Stops receiving the items. Can be called from any thread, no more items are received (but some may be received while cancelling).
+		 */
+		void cancel();
+		
+	}
+	
+}
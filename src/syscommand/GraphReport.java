@@ -0,0 +1,280 @@
+package syscommand;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import syscommand.exception.CommandException;
+
+/**
+ * Report of one run of a {@link CommandGraph}: state and timing of each node and the critical path.
+ * Immutable.
+ */
+public final class GraphReport {
+	
+	/**
+	 * State of a node after the run of the graph.
+	 */
+	public enum NodeState {
+		/**
+		 * The command has succeeded.
+		 */
+		SUCCEEDED,
+		/**
+		 * The command has failed (see {@link Node#getException()}).
+		 */
+		FAILED,
+		/**
+		 * The command has not been executed because some of its (direct or indirect) dependencies has failed or because the graph has been terminated.
+		 */
+		SKIPPED
+	}
+	
+	/**
+	 * State and timing of one node.
+	 */
+	public static final class Node {
+		
+		private final int index;
+		
+		private final CommandBase command;
+		
+		private final List<Integer> dependencies;
+		
+		private final NodeState state;
+		
+		private final long startNanos;
+		
+		private final long durationNanos;
+		
+		private final CommandException exception;
+		
+		Node(int index, CommandBase command, List<Integer> dependencies, NodeState state, long startNanos, long durationNanos, CommandException exception) {
+			this.index = index;
+			this.command = command;
+			this.dependencies = dependencies;
+			this.state = state;
+			this.startNanos = startNanos;
+			this.durationNanos = durationNanos;
+			this.exception = exception;
+		}
+		
+		/**
+		 * Gets the index of the node (the order in which it has been added to the graph).
+		 * @return node index
+		 */
+		public int getIndex() {
+			return index;
+		}
+		
+		/**
+		 * Gets the command of the node.
+		 * @return command
+		 */
+		public CommandBase getCommand() {
+			return command;
+		}
+		
+		/**
+		 * Gets the indexes of the nodes this node depends on.
+		 * @return dependency indexes
+		 */
+		public List<Integer> getDependencies() {
+			return dependencies;
+		}
+		
+		/**
+		 * Gets the state of the node.
+		 * @return node state
+		 */
+		public NodeState getState() {
+			return state;
+		}
+		
+		/**
+		 * Gets the time from the start of the graph to the start of the command.
+		 * @return start time in nanoseconds (0 if the command has been skipped)
+		 */
+		public long getStartNanos() {
+			return startNanos;
+		}
+		
+		/**
+		 * Gets the time the command has been running.
+		 * @return duration in nanoseconds (0 if the command has been skipped)
+		 */
+		public long getDurationNanos() {
+			return durationNanos;
+		}
+		
+		/**
+		 * Gets the exception thrown by the command.
+		 * @return exception or null if the command has not failed
+		 */
+		public CommandException getException() {
+			return exception;
+		}
+		
+		/**
+		 * Gets the node description.
+		 * @return node description
+		 */
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(index).append(" (").append(command).append("): ").append(state);
+			if (state != NodeState.SKIPPED) {
+				sb.append(", start ").append(formatSeconds(startNanos)).append(", duration ").append(formatSeconds(durationNanos));
+			}
+			if (exception != null) {
+				sb.append(", ").append(exception.getMessage());
+			}
+			return sb.toString();
+		}
+		
+	}
+	
+	private final List<Node> nodes;
+	
+	private final long wallNanos;
+	
+	private final List<Node> criticalPath;
+	
+	/**
+	 * Creates the report and finds the critical path.
+	 * @param nodes nodes in the order of their indexes (each node depends only on nodes with lower indexes)
+	 * @param wallNanos time from the start of the graph to the end of its last command
+	 */
+	GraphReport(List<Node> nodes, long wallNanos) {
+		this.nodes = Collections.unmodifiableList(new ArrayList<Node>(nodes));
+		this.wallNanos = wallNanos;
+		this.criticalPath = Collections.unmodifiableList(findCriticalPath(nodes));
+	}
+	
+	/**
+	 * Gets the nodes of the graph.
+	 * @return nodes in the order of their indexes
+	 */
+	public List<Node> getNodes() {
+		return nodes;
+	}
+	
+	/**
+	 * Gets the time from the start of the graph to the end of its last command.
+	 * @return wall time in nanoseconds
+	 */
+	public long getWallNanos() {
+		return wallNanos;
+	}
+	
+	/**
+	 * Returns if all the commands have succeeded.
+	 * @return if no node has failed or has been skipped
+	 */
+	public boolean isSuccess() {
+		for (Node n : nodes) {
+			if (n.state != NodeState.SUCCEEDED) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Gets the first failure (of the node which has finished first among the failed nodes).
+	 * @return exception or null if no node has failed
+	 */
+	public CommandException getFirstFailure() {
+		Node first = null;
+		for (Node n : nodes) {
+			if ((n.state == NodeState.FAILED) && ((first == null) || (n.startNanos + n.durationNanos < first.startNanos + first.durationNanos))) {
+				first = n;
+			}
+		}
+		return (first != null) ? first.exception : null;
+	}
+	
+	/**
+	 * Gets the critical path: the chain of dependent executed nodes with the longest total duration.
+	 * It is the lower bound of the wall time with unlimited parallelism, the rest of the wall time is spent waiting for a free slot (see {@link CommandGraph#parallelism(int)}).
+	 * @return nodes of the critical path (from the first to the last)
+	 */
+	public List<Node> getCriticalPath() {
+		return criticalPath;
+	}
+	
+	/**
+	 * Gets the total duration of the nodes of the critical path.
+	 * @return critical path duration in nanoseconds
+	 */
+	public long getCriticalPathNanos() {
+		long total = 0;
+		for (Node n : criticalPath) {
+			total += n.durationNanos;
+		}
+		return total;
+	}
+	
+	/**
+	 * Gets the report description (one line for each node and the critical path).
+	 * @return report description
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (Node n : nodes) {
+			sb.append("  NODE ").append(n).append('\n');
+		}
+		sb.append("  CRITICAL PATH: ");
+		boolean first = true;
+		for (Node n : criticalPath) {
+			if (first) {
+				first = false;
+			} else {
+				sb.append(" -> ");
+			}
+			sb.append(n.index);
+		}
+		sb.append(" (").append(formatSeconds(getCriticalPathNanos())).append(" of wall time ").append(formatSeconds(wallNanos)).append(")\n");
+		return sb.toString();
+	}
+	
+	private static List<Node> findCriticalPath(List<Node> nodes) {
+		int count = nodes.size();
+		long[] best = new long[count];
+		int[] previous = new int[count];
+		int last = -1;
+		for (int i = 0; i < count; ++i) {
+			Node n = nodes.get(i);
+			previous[i] = -1;
+			if (n.state == NodeState.SKIPPED) {
+				best[i] = -1;
+				continue;
+			}
+			long longest = 0;
+			for (int d : n.dependencies) {
+				if ((best[d] >= 0) && ((previous[i] == -1) || (best[d] > longest))) {
+					longest = best[d];
+					previous[i] = d;
+				}
+			}
+			best[i] = longest + n.durationNanos;
+			if ((last == -1) || (best[i] > best[last])) {
+				last = i;
+			}
+		}
+		
+		List<Node> path = new ArrayList<Node>();
+		for (int i = last; i != -1; i = previous[i]) {
+			path.add(nodes.get(i));
+		}
+		Collections.reverse(path);
+		return path;
+	}
+	
+	private static String formatSeconds(long nanos) {
+		long millis = nanos / 1000000;
+		return (millis / 1000) + "." + String.format("%03d", millis % 1000) + " s";
+	}
+	
+}
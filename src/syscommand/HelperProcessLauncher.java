@@ -0,0 +1,468 @@
+package syscommand;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import syscommand.internal.ShellQuoting;
+
+/**
+ * Launcher starting the processes by a small persistent helper process (a shell loop) instead of forking the current java process.
+ * Forking a java process with a large heap is slow and can cause memory accounting spikes, the helper is small, so the forking is cheap.
+ * Create the launcher early (when the java process is still small), only the helper itself is started from the java process.
+ *
+ * The requests are sent to the helper by its standard input, the standard input and outputs of the started processes are connected
+ * to the current java process by named pipes (FIFOs) created in a private temporary directory (java 7 does not support Unix domain sockets).
+ *
+ * Differences from {@link ProcessBuilderLauncher}:
+ * - a command which cannot be found or executed does not cause an exception, the process exits with the 127 or 126 exit status (as in the shell)
+ * - a missing working directory does not cause an exception, the process exits with the 2 exit status
+ * - commands with a newline character in an argument or in the environment cannot be sent to the helper, they are started using the fallback launcher
+ *
+ * Thread safe. Close the launcher to stop the helper (the already started processes keep running).
+ */
+public class HelperProcessLauncher implements ProcessLauncher, Closeable {
+	
+	/**
+	 * Helper shell script. The first argument is the directory for the named pipes.
+	 * Requests (one per line): "L id script" starts the script with the standard input and outputs connected to the named pipes id.i, id.o and id.e,
+	 * "K pid" terminates the process.
+	 * Responses (one per line): "R id" when the named pipes are ready, "F id" if they could not be created,
+	 * "P id pid" when the process has been started, "X id status" when it has exited.
+	 * The asynchronous process gets its standard input from file descriptor 4, because the shell redirects the standard input of asynchronous lists to /dev/null.
+	 */
+	private static final String HELPER_SCRIPT =
+		"d=\"$1\"\n" +
+		"while read -r op id script; do\n" +
+		"	case \"$op\" in\n" +
+		"	L)\n" +
+		"		if mkfifo \"$d/$id.i\" \"$d/$id.o\" \"$d/$id.e\"; then\n" +
+		"			echo \"R $id\"\n" +
+		"		else\n" +
+		"			echo \"F $id\"\n" +
+		"			continue\n" +
+		"		fi\n" +
+		"		(\n" +
+		"			exec 4<\"$d/$id.i\" >\"$d/$id.o\" 2>\"$d/$id.e\"\n" +
+		"			rm -f \"$d/$id.i\" \"$d/$id.o\" \"$d/$id.e\"\n" +
+		"			eval \"$script\" <&4 4<&- 3>&- &\n" +
+		"			p=$!\n" +
+		"			exec 4<&-\n" +
+		"			echo \"P $id $p\" >&3\n" +
+		"			wait \"$p\"\n" +
+		"			echo \"X $id $?\" >&3\n" +
+		"		) 3>&1 </dev/null &\n" +
+		"		;;\n" +
+		"	K)\n" +
+		"		kill \"$id\" 2>/dev/null\n" +
+		"		;;\n" +
+		"	esac\n" +
+		"done\n";
+	
+	/**
+	 * Launcher used for the commands which cannot be sent to the helper.
+	 */
+	private final ProcessLauncher fallback;
+	
+	/**
+	 * Private directory for the named pipes.
+	 */
+	private final File dir;
+	
+	/**
+	 * Helper process.
+	 */
+	private final Process helper;
+	
+	/**
+	 * Writer of the requests to the helper (guarded by itself).
+	 */
+	private final Writer requests;
+	
+	/**
+	 * Processes which have not exited yet by their ids (guarded by this).
+	 */
+	private final Map<Long, HelperProcess> processes = new HashMap<Long, HelperProcess>();
+	
+	/**
+	 * Id of the next process (guarded by this).
+	 */
+	private long nextId = 0;
+	
+	/**
+	 * If the helper has exited or the launcher has been closed (guarded by this).
+	 */
+	private boolean closed = false;
+	
+	/**
+	 * Creates the launcher and starts the helper process. Uses {@link ProcessBuilderLauncher} as the fallback launcher.
+	 * @throws IOException if the helper could not be started
+	 */
+	public HelperProcessLauncher() throws IOException {
+		this(new ProcessBuilderLauncher());
+	}
+	
+	/**
+	 * Creates the launcher and starts the helper process.
+	 * @param fallback launcher used for the commands which cannot be sent to the helper (with a newline character in an argument or in the environment)
+	 * @throws IOException if the helper could not be started
+	 */
+	public HelperProcessLauncher(ProcessLauncher fallback) throws IOException {
+		this.fallback = fallback;
+		this.dir = Files.createTempDirectory("syscommand-launcher").toFile();
+		
+		ProcessBuilder processBuilder = new ProcessBuilder("sh", "-c", HELPER_SCRIPT, "sh", dir.getPath());
+		processBuilder.redirectError(Redirect.to(new File("/dev/null")));
+		try {
+			helper = processBuilder.start();
+		} catch (IOException e) {
+			deleteDir();
+			throw e;
+		}
+		requests = new OutputStreamWriter(helper.getOutputStream(), "UTF-8");
+		
+		Thread t = new Thread(new ResponseReadingRunnable(helper.getInputStream()));
+		t.setDaemon(true);
+		t.start();
+	}
+	
+	/**
+	 * Starts a process by the helper (or by the fallback launcher if the command cannot be sent to the helper).
+	 * @param commandLine command and arguments to execute
+	 * @param workingDir working directory of the process or null to use the working directory of the current java process
+	 * @param environment whole environment of the process or null to use the environment of the current java process
+	 * @param stderrPolicy where the standard error output of the process goes
+	 * @return started process
+	 * @throws IOException if the process could not be started or the helper has exited
+	 */
+	@Override
+	public Process launch(List<String> commandLine, File workingDir, Map<String, String> environment, StderrPolicy stderrPolicy) throws IOException {
+		String script = buildScript(commandLine, workingDir, environment, stderrPolicy);
+		if (script == null) {
+			return fallback.launch(commandLine, workingDir, environment, stderrPolicy);
+		}
+		
+		HelperProcess process;
+		synchronized(this) {
+			if (closed) {
+				throw new IOException("Launcher helper not running");
+			}
+			process = new HelperProcess(nextId++);
+			processes.put(process.id, process);
+		}
+		
+		sendRequest("L " + process.id + " " + script);
+		process.awaitReady();
+		
+		// the same order as the helper opens the named pipes
+		String prefix = dir.getPath() + File.separator + process.id;
+		process.stdin = new FileOutputStream(prefix + ".i");
+		process.stdout = new FileInputStream(prefix + ".o");
+		process.stderr = new FileInputStream(prefix + ".e");
+		
+		return process;
+	}
+	
+	/**
+	 * Stops the helper process and deletes the directory for the named pipes. The already started processes keep running.
+	 */
+	@Override
+	public void close() {
+		synchronized(requests) {
+			try {
+				requests.close();
+			} catch (IOException e) {
+				// nothing
+			}
+		}
+		
+		try {
+			helper.waitFor();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		deleteDir();
+	}
+	
+	/**
+	 * Builds the shell script starting the command.
+	 * @return script or null if the command cannot be sent to the helper
+	 */
+	private static String buildScript(List<String> commandLine, File workingDir, Map<String, String> environment, StderrPolicy stderrPolicy) {
+		List<String> l = new ArrayList<String>();
+		if (environment != null) {
+			l.add("env");
+			l.add("-i");
+			for (Map.Entry<String, String> e : environment.entrySet()) {
+				l.add(e.getKey() + "=" + e.getValue());
+			}
+		}
+		l.addAll(commandLine);
+		
+		StringBuilder sb = new StringBuilder();
+		if (workingDir != null) {
+			sb.append("cd ").append(ShellQuoting.quote(workingDir.getPath())).append(" && ");
+		}
+		sb.append("exec ").append(ShellQuoting.quoteAll(l)).append(stderrPolicy.toShellRedirection());
+		
+		String script = sb.toString();
+		if ((script.indexOf('\n') != -1) || (script.indexOf('\0') != -1)) {
+			return null;
+		}
+		return script;
+	}
+	
+	/**
+	 * Sends one request line to the helper.
+	 */
+	private void sendRequest(String request) throws IOException {
+		synchronized(requests) {
+			requests.write(request);
+			requests.write('\n');
+			requests.flush();
+		}
+	}
+	
+	/**
+	 * Deletes the directory for the named pipes including the remaining named pipes.
+	 */
+	private void deleteDir() {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+		dir.delete();
+	}
+	
+	/**
+	 * Processes one response line of the helper.
+	 */
+	private synchronized void processResponse(String line) {
+		String[] parts = line.split(" ");
+		if (parts.length < 2) {
+			return;
+		}
+		
+		HelperProcess process;
+		try {
+			process = processes.get(Long.parseLong(parts[1]));
+		} catch (NumberFormatException e) {
+			return;
+		}
+		if (process == null) {
+			return;
+		}
+		
+		try {
+			if (parts[0].equals("R")) {
+				process.setReady(true);
+			} else if (parts[0].equals("F")) {
+				process.setReady(false);
+				processes.remove(process.id);
+			} else if (parts[0].equals("P") && (parts.length == 3)) {
+				process.setPid(Long.parseLong(parts[2]));
+			} else if (parts[0].equals("X") && (parts.length == 3)) {
+				process.setExited(Integer.parseInt(parts[2]));
+				processes.remove(process.id);
+			}
+		} catch (NumberFormatException e) {
+			// nothing
+		}
+	}
+	
+	/**
+	 * Marks the helper as not running and all the waiting processes as failed.
+	 */
+	private synchronized void helperExited() {
+		closed = true;
+		for (HelperProcess process : processes.values()) {
+			process.setReady(false);
+			process.setExited(-1);
+		}
+		processes.clear();
+	}
+	
+	/**
+	 * Reads the responses of the helper.
+	 */
+	private class ResponseReadingRunnable implements Runnable {
+		
+		private final InputStream is;
+		
+		public ResponseReadingRunnable(InputStream is) {
+			this.is = is;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+				String line;
+				while ((line = reader.readLine()) != null) {
+					processResponse(line);
+				}
+			} catch (IOException e) {
+				// nothing
+			} finally {
+				try {
+					is.close();
+				} catch (Throwable t) {
+					// nothing
+				}
+				helperExited();
+			}
+		}
+		
+	}
+	
+	/**
+	 * Process started by the helper.
+	 */
+	private class HelperProcess extends Process {
+		
+		private final long id;
+		
+		private OutputStream stdin;
+		
+		private InputStream stdout;
+		
+		private InputStream stderr;
+		
+		/**
+		 * Null until the named pipes are created, then if they have been created successfully (guarded by this).
+		 */
+		private Boolean ready = null;
+		
+		/**
+		 * Process id or -1 if not known yet (guarded by this).
+		 */
+		private long pid = -1;
+		
+		/**
+		 * If the process has exited (guarded by this).
+		 */
+		private boolean exited = false;
+		
+		/**
+		 * Exit status (guarded by this).
+		 */
+		private int exitStatus = -1;
+		
+		public HelperProcess(long id) {
+			this.id = id;
+		}
+		
+		public synchronized void setReady(boolean ready) {
+			if (this.ready == null) {
+				this.ready = ready;
+				notifyAll();
+			}
+		}
+		
+		public synchronized void setPid(long pid) {
+			this.pid = pid;
+			notifyAll();
+		}
+		
+		public synchronized void setExited(int exitStatus) {
+			if (! exited) {
+				this.exited = true;
+				this.exitStatus = exitStatus;
+				notifyAll();
+			}
+		}
+		
+		/**
+		 * Waits until the named pipes are created.
+		 * @throws IOException if they could not be created
+		 */
+		public synchronized void awaitReady() throws IOException {
+			try {
+				while (ready == null) {
+					wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Thread interrupted", e);
+			}
+			if (! ready) {
+				throw new IOException("Launcher helper failed to start the process");
+			}
+		}
+		
+		@Override
+		public OutputStream getOutputStream() {
+			return stdin;
+		}
+		
+		@Override
+		public InputStream getInputStream() {
+			return stdout;
+		}
+		
+		@Override
+		public InputStream getErrorStream() {
+			return stderr;
+		}
+		
+		@Override
+		public synchronized int waitFor() throws InterruptedException {
+			while (! exited) {
+				wait();
+			}
+			return exitStatus;
+		}
+		
+		@Override
+		public synchronized int exitValue() {
+			if (! exited) {
+				throw new IllegalThreadStateException("Process has not exited");
+			}
+			return exitStatus;
+		}
+		
+		@Override
+		public void destroy() {
+			long p;
+			synchronized(this) {
+				try {
+					while ((pid == -1) && (! exited)) {
+						wait();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				if (exited) {
+					return;
+				}
+				p = pid;
+			}
+			
+			try {
+				sendRequest("K " + p);
+			} catch (IOException e) {
+				// nothing
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,268 @@
+package syscommand;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+
+import syscommand.exception.CommandException;
+import syscommand.internal.CommandResultWaiting;
+import syscommand.internal.CommandRunningContext;
+import syscommand.internal.RingBuffer;
+
+/**
+ * Pipeline stage implemented in Java instead of a system command (no process is created for it).
+ * The stage is connected to its neighbours by bounded in-memory buffers and runs in its own thread.
+ * The stage exit status is 0 if the filter finished successfully and 1 if it has thrown an exception, it is validated the same way as the exit status of a system command.
+ */
+public class JavaStage extends CommandBase {
+	
+	/**
+	 * Exit status of a stage whose filter has thrown an exception.
+	 */
+	public static final int FAILURE_STATUS = 1;
+	
+	/**
+	 * Filter doing the work.
+	 */
+	private final StreamFilter filter;
+	
+	/**
+	 * Stage name used for logging.
+	 */
+	private final String name;
+	
+	/**
+	 * Capacity (in bytes) of each of the buffers connecting the stage with its neighbours.
+	 */
+	private int bufferCapacity = RingBuffer.DEFAULT_CAPACITY;
+	
+	/**
+	 * Creates the stage using a stream filter.
+	 * @param filter filter transforming the input stream to the output stream
+	 */
+	public JavaStage(StreamFilter filter) {
+		this(filter.getClass().getName(), filter);
+	}
+	
+	/**
+	 * Creates the stage using a stream filter.
+	 * @param name stage name used for logging
+	 * @param filter filter transforming the input stream to the output stream
+	 */
+	public JavaStage(String name, StreamFilter filter) {
+		this.name = name;
+		this.filter = filter;
+	}
+	
+	/**
+	 * Creates the stage using a chunk filter.
+	 * @param filter filter transforming the data chunk by chunk
+	 */
+	public JavaStage(ChunkFilter filter) {
+		this(filter.getClass().getName(), filter);
+	}
+	
+	/**
+	 * Creates the stage using a chunk filter.
+	 * @param name stage name used for logging
+	 * @param filter filter transforming the data chunk by chunk
+	 */
+	public JavaStage(String name, ChunkFilter filter) {
+		this(name, new ChunkStreamFilter(filter));
+	}
+	
+	/**
+	 * Sets the capacity of the buffers connecting the stage with its neighbours.
+	 * @param bytes capacity of each buffer in bytes
+	 * @return this stage
+	 */
+	public JavaStage bufferCapacity(int bytes) {
+		if (bytes <= 0) {
+			throw new IllegalArgumentException("Invalid capacity: " + bytes);
+		}
+		
+		bufferCapacity = bytes;
+		return this;
+	}
+	
+	/**
+	 * Starts the filter in a new thread.
+	 * @param context command context used for logging and for the error status ignoring setting
+	 * @return command running context used to access input and output streams and to wait for the filter to finish
+	 * @throws CommandException never thrown by this implementation (declared by the overridden method)
+	 */
+	@Override
+	protected CommandRunningContext run(final CommandContext context) throws CommandException {
+		final RingBuffer input = new RingBuffer(bufferCapacity);
+		final RingBuffer output = new RingBuffer(bufferCapacity);
+		
+		final FilterRunnable r = new FilterRunnable(filter, input.getInputStream(), output.getOutputStream());
+		final Thread t = new Thread(r);
+		t.start();
+		
+		CommandRunningContext result = new CommandRunningContext();
+		result.stdin = input.getOutputStream();
+		result.stdout = output.getInputStream();
+		
+		final CommandBase self = this;
+		result.res = new CommandResultWaiting() {
+			
+			@Override
+			public int waitAndGetResult() throws CommandException {
+				return checkExitStatus(context, waitForExitStatus());
+			}
+			
+			@Override
+			public int waitForExitStatus() throws CommandException {
+				try {
+					t.join();
+				} catch (InterruptedException e) {
+					throw new CommandException("Thread interrupted", e);
+				}
+				
+				int exitStatus = (r.getFailure() == null) ? 0 : FAILURE_STATUS;
+				
+				try {
+					Writer logWriter = context.getLogWriter();
+					if (logWriter != null) {
+						synchronized(logWriter) {
+							logWriter.write("----------------------------\n");
+							logWriter.write("  JAVA STAGE: " + self.toString() + '\n');
+							logWriter.write("  RETURNS: " + exitStatus + '\n');
+							logWriter.write("-------\n");
+							if (r.getFailure() != null) {
+								logWriter.write(r.getFailure().toString() + '\n');
+							}
+							logWriter.write("-------\n");
+						}
+					}
+				} catch (IOException e) {
+					// nothing
+				}
+				
+				return exitStatus;
+			}
+			
+			@Override
+			public void terminate() {
+				try {
+					input.getInputStream().close();
+					output.getOutputStream().close();
+				} catch (IOException e) {
+					// nothing
+				}
+				t.interrupt();
+			}
+			
+			@Override
+			public byte[] getStderr() {
+				Throwable failure = r.getFailure();
+				if (failure == null) {
+					return new byte[0];
+				}
+				try {
+					return (failure.toString() + '\n').getBytes("UTF-8");
+				} catch (UnsupportedEncodingException u) {
+					throw new RuntimeException(u);
+				}
+			}
+			
+			@Override
+			public ResourceUsage getResourceUsage() {
+				// no process
+				return null;
+			}
+			
+		};
+		
+		return result;
+	}
+	
+	/**
+	 * Gets the stage name.
+	 * @return stage description string
+	 */
+	@Override
+	public String toString() {
+		return "java:" + name;
+	}
+	
+	/**
+	 * Runs the filter and closes its streams afterwards (so the next stage gets the end of data and the previous stage gets a broken pipe if it still writes).
+	 */
+	private static class FilterRunnable implements Runnable {
+		
+		private final StreamFilter filter;
+		
+		private final InputStream is;
+		
+		private final OutputStream os;
+		
+		/**
+		 * Exception thrown by the filter or null if it finished successfully.
+		 */
+		private volatile Throwable failure = null;
+		
+		public FilterRunnable(StreamFilter filter, InputStream is, OutputStream os) {
+			this.filter = filter;
+			this.is = is;
+			this.os = os;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				filter.filter(is, os);
+			} catch (Throwable t) {
+				failure = t;
+			} finally {
+				try {
+					os.close();
+				} catch (Throwable t) {
+					// nothing
+				}
+				try {
+					is.close();
+				} catch (Throwable t) {
+					// nothing
+				}
+			}
+		}
+		
+		public Throwable getFailure() {
+			return failure;
+		}
+		
+	}
+	
+	/**
+	 * Adapts a chunk filter to a stream filter.
+	 */
+	private static class ChunkStreamFilter implements StreamFilter {
+		
+		/**
+		 * Buffer size (in bytes) for reading the chunks.
+		 */
+		private static final int BUFFER_SIZE = 64 * 1024;
+		
+		private final ChunkFilter chunkFilter;
+		
+		public ChunkStreamFilter(ChunkFilter chunkFilter) {
+			this.chunkFilter = chunkFilter;
+		}
+		
+		@Override
+		public void filter(InputStream is, OutputStream os) throws IOException {
+			byte[] b = new byte[BUFFER_SIZE];
+			int partLen;
+			while ((partLen = is.read(b)) != -1) {
+				chunkFilter.process(b, 0, partLen, os);
+			}
+			chunkFilter.finish(os);
+		}
+		
+	}
+	
+}
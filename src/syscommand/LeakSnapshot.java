@@ -0,0 +1,206 @@
+package syscommand;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts of the operating system resources held by this java process which leak when commands are not finished properly:
+ * open file descriptors (from /proc/self/fd), live threads and child processes (from /proc/&lt;pid&gt;/stat, including the zombies, i.e. exited but not waited for).
+ * Intended for soak tests and for diagnostics of long-running applications: take a snapshot before running the commands
+ * and compare it with a snapshot taken after all of them have finished (see {@link #awaitBaseline(LeakSnapshot, int, int, long)}).
+ * Immutable.
+ */
+public final class LeakSnapshot {
+	
+	/**
+	 * Interval (in milliseconds) between two snapshots when waiting for the baseline.
+	 */
+	private static final long POLL_INTERVAL_MILLIS = 50;
+	
+	/**
+	 * Name of the threads of the java runtime waiting for the processes to exit. They are pooled and end only after some time of idleness, so they are not counted.
+	 */
+	private static final String PROCESS_REAPER_THREAD_NAME = "process reaper";
+	
+	/**
+	 * Maximum size (in bytes) of a /proc file read.
+	 */
+	private static final int MAX_FILE_SIZE = 4 * 1024;
+	
+	private final int openFileDescriptors;
+	
+	private final int liveThreads;
+	
+	private final int childProcesses;
+	
+	private final int zombieChildren;
+	
+	private LeakSnapshot(int openFileDescriptors, int liveThreads, int childProcesses, int zombieChildren) {
+		this.openFileDescriptors = openFileDescriptors;
+		this.liveThreads = liveThreads;
+		this.childProcesses = childProcesses;
+		this.zombieChildren = zombieChildren;
+	}
+	
+	/**
+	 * Takes the snapshot of the current counts.
+	 * @return snapshot
+	 */
+	public static LeakSnapshot take() {
+		int fds = -1;
+		String[] fdNames = new File("/proc/self/fd").list();
+		if (fdNames != null) {
+			// the directory listing itself holds one descriptor
+			fds = fdNames.length - 1;
+		}
+		
+		int threads = 0;
+		for (Thread t : Thread.getAllStackTraces().keySet()) {
+			if (! t.getName().equals(PROCESS_REAPER_THREAD_NAME)) {
+				++threads;
+			}
+		}
+		
+		int children = -1;
+		int zombies = -1;
+		String selfPid = null;
+		try {
+			selfPid = new File("/proc/self").getCanonicalFile().getName();
+		} catch (IOException e) {
+			// nothing
+		}
+		String[] pids = new File("/proc").list();
+		if ((selfPid != null) && (pids != null)) {
+			children = 0;
+			zombies = 0;
+			for (String pid : pids) {
+				if ((pid.length() == 0) || (! Character.isDigit(pid.charAt(0)))) {
+					continue;
+				}
+				String stat;
+				try {
+					stat = readFile("/proc/" + pid + "/stat");
+				} catch (IOException e) {
+					// exited meanwhile
+					continue;
+				}
+				// the command name can contain spaces and parentheses, the state and the parent identifier follow the last parenthesis
+				int p = stat.lastIndexOf(')');
+				if (p == -1) {
+					continue;
+				}
+				String[] fields = stat.substring(p + 1).trim().split(" ");
+				if ((fields.length < 2) || (! fields[1].equals(selfPid))) {
+					continue;
+				}
+				++children;
+				if (fields[0].equals("Z")) {
+					++zombies;
+				}
+			}
+		}
+		
+		return new LeakSnapshot(fds, threads, children, zombies);
+	}
+	
+	/**
+	 * Waits until the counts return to the baseline (the threads and processes of finished commands may need a moment to end).
+	 * @param baseline snapshot taken before running the commands
+	 * @param fdSlack number of additional open file descriptors tolerated (e.g. opened by the application meanwhile)
+	 * @param threadSlack number of additional live threads tolerated (e.g. the shared background threads started by the first use)
+	 * @param timeoutMillis maximum time to wait in milliseconds
+	 * @return last snapshot taken (check it by {@link #isWithin(LeakSnapshot, int, int)} to find out if the baseline has been reached)
+	 * @throws InterruptedException if the waiting has been interrupted
+	 */
+	public static LeakSnapshot awaitBaseline(LeakSnapshot baseline, int fdSlack, int threadSlack, long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (true) {
+			LeakSnapshot s = take();
+			if (s.isWithin(baseline, fdSlack, threadSlack) || (System.currentTimeMillis() >= deadline)) {
+				return s;
+			}
+			Thread.sleep(POLL_INTERVAL_MILLIS);
+		}
+	}
+	
+	/**
+	 * Returns if the counts do not exceed the baseline. No additional child process (neither running nor zombie) is tolerated.
+	 * The counts which could not be determined are not compared.
+	 * @param baseline snapshot taken before running the commands
+	 * @param fdSlack number of additional open file descriptors tolerated
+	 * @param threadSlack number of additional live threads tolerated
+	 * @return if nothing has leaked
+	 */
+	public boolean isWithin(LeakSnapshot baseline, int fdSlack, int threadSlack) {
+		return isWithin(openFileDescriptors, baseline.openFileDescriptors, fdSlack)
+			&& isWithin(liveThreads, baseline.liveThreads, threadSlack)
+			&& isWithin(childProcesses, baseline.childProcesses, 0)
+			&& isWithin(zombieChildren, baseline.zombieChildren, 0);
+	}
+	
+	/**
+	 * Gets the number of open file descriptors.
+	 * @return number of open file descriptors or -1 if it could not be determined
+	 */
+	public int getOpenFileDescriptors() {
+		return openFileDescriptors;
+	}
+	
+	/**
+	 * Gets the number of live threads (the idle process reaper threads of the java runtime are not counted).
+	 * @return number of live threads
+	 */
+	public int getLiveThreads() {
+		return liveThreads;
+	}
+	
+	/**
+	 * Gets the number of child processes (including the zombies).
+	 * @return number of child processes or -1 if it could not be determined
+	 */
+	public int getChildProcesses() {
+		return childProcesses;
+	}
+	
+	/**
+	 * Gets the number of child processes which have exited, but have not been waited for.
+	 * @return number of zombie child processes or -1 if it could not be determined
+	 */
+	public int getZombieChildren() {
+		return zombieChildren;
+	}
+	
+	/**
+	 * Gets the snapshot description.
+	 * @return snapshot description
+	 */
+	@Override
+	public String toString() {
+		return "fds " + openFileDescriptors + ", threads " + liveThreads + ", children " + childProcesses + " (zombies " + zombieChildren + ")";
+	}
+	
+	private static boolean isWithin(int value, int baseline, int slack) {
+		if ((value == -1) || (baseline == -1)) {
+			return true;
+		}
+		return value <= baseline + slack;
+	}
+	
+	private static String readFile(String path) throws IOException {
+		InputStream is = new FileInputStream(path);
+		try {
+			byte[] b = new byte[MAX_FILE_SIZE];
+			int length = 0;
+			int n;
+			while ((length < b.length) && ((n = is.read(b, length, b.length - length)) != -1)) {
+				length += n;
+			}
+			return new String(b, 0, length, "US-ASCII");
+		} finally {
+			is.close();
+		}
+	}
+	
+}
@@ -0,0 +1,19 @@
+package syscommand;
+
+import java.io.IOException;
+
+/**
+ * Receives the output of a running command chunk by chunk (see {@link CommandBase#run_consume(CommandContext, OutputConsumer)}).
+ */
+public interface OutputConsumer {
+	
+	/**
+	 * Processes one chunk of the command output. Called as soon as the chunk has been read from the command, the chunk boundaries are arbitrary.
+	 * @param b buffer containing the chunk (must not be used after this method returns)
+	 * @param off offset of the chunk in the buffer
+	 * @param len length of the chunk
+	 * @throws IOException if the chunk could not be processed (the command then fails)
+	 */
+	void consume(byte[] b, int off, int len) throws IOException;
+	
+}
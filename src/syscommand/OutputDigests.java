@@ -0,0 +1,150 @@
+package syscommand;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Digests computed during the copying of the data (the command output, see {@link CommandBase#digestOutput(OutputDigests)},
+ * or the data passed between pipeline stages, see {@link Pipeline#digestStageInput(int, OutputDigests)}), so no second pass over the data is needed.
+ * The digests are computed again on each run of the command, the values are available after the run has finished.
+ * Thread safety note: Do not use one instance for more commands running at the same time.
+ */
+public class OutputDigests {
+	
+	/**
+	 * Algorithms of the computed digests.
+	 */
+	private final List<DigestAlgorithm> algorithms;
+	
+	/**
+	 * Digests being computed.
+	 */
+	private List<StreamDigest> digests = null;
+	
+	/**
+	 * Number of bytes digested.
+	 */
+	private long length = 0;
+	
+	/**
+	 * Computed values by the algorithm names or null if not yet computed.
+	 */
+	private Map<String, byte[]> values = null;
+	
+	/**
+	 * Creates the digests.
+	 * @param algorithms algorithms of the digests to compute
+	 */
+	public OutputDigests(DigestAlgorithm... algorithms) {
+		List<DigestAlgorithm> l = new ArrayList<DigestAlgorithm>(algorithms.length);
+		Collections.addAll(l, algorithms);
+		this.algorithms = Collections.unmodifiableList(l);
+	}
+	
+	/**
+	 * Starts the computation (drops the previous values).
+	 */
+	void begin() {
+		List<StreamDigest> l = new ArrayList<StreamDigest>(algorithms.size());
+		for (DigestAlgorithm a : algorithms) {
+			l.add(a.newDigest());
+		}
+		digests = l;
+		length = 0;
+		values = null;
+	}
+	
+	/**
+	 * Updates all the digests with the data.
+	 * @param b buffer with the data
+	 * @param off offset of the data in the buffer
+	 * @param len length of the data
+	 */
+	public void update(byte[] b, int off, int len) {
+		List<StreamDigest> l = digests;
+		if (l == null) {
+			// completed (the copying has been abandoned)
+			return;
+		}
+		for (StreamDigest d : l) {
+			d.update(b, off, len);
+		}
+		length += len;
+	}
+	
+	/**
+	 * Completes the computation.
+	 */
+	void end() {
+		Map<String, byte[]> m = new LinkedHashMap<String, byte[]>();
+		for (int i = 0; i < algorithms.size(); ++i) {
+			m.put(algorithms.get(i).getName(), digests.get(i).digest());
+		}
+		values = Collections.unmodifiableMap(m);
+		digests = null;
+	}
+	
+	/**
+	 * Gets the algorithms of the computed digests.
+	 * @return unmodifiable list of the algorithms
+	 */
+	public List<DigestAlgorithm> getAlgorithms() {
+		return algorithms;
+	}
+	
+	/**
+	 * Gets the number of digested bytes.
+	 * @return number of bytes
+	 */
+	public long getLength() {
+		return length;
+	}
+	
+	/**
+	 * Gets all the digest values.
+	 * @return unmodifiable map of the digest values by the algorithm names
+	 * @throws IllegalStateException if the digests have not been computed yet
+	 */
+	public Map<String, byte[]> getAll() {
+		if (values == null) {
+			throw new IllegalStateException("Digests not computed");
+		}
+		return values;
+	}
+	
+	/**
+	 * Gets the digest value.
+	 * @param algorithmName algorithm name (see {@link DigestAlgorithm#getName()})
+	 * @return digest value
+	 * @throws IllegalStateException if the digests have not been computed yet
+	 * @throws IllegalArgumentException if the digest of the algorithm is not computed
+	 */
+	public byte[] get(String algorithmName) {
+		byte[] value = getAll().get(algorithmName);
+		if (value == null) {
+			throw new IllegalArgumentException("Digest not computed: " + algorithmName);
+		}
+		return value.clone();
+	}
+	
+	/**
+	 * Gets the digest value as a lowercase hexadecimal string (as printed by sha256sum etc.).
+	 * @param algorithmName algorithm name (see {@link DigestAlgorithm#getName()})
+	 * @return digest value as a hexadecimal string
+	 * @throws IllegalStateException if the digests have not been computed yet
+	 * @throws IllegalArgumentException if the digest of the algorithm is not computed
+	 */
+	public String getHex(String algorithmName) {
+		byte[] value = get(algorithmName);
+		StringBuilder sb = new StringBuilder(value.length * 2);
+		for (byte b : value) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+			sb.append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+	
+}
@@ -0,0 +1,310 @@
+package syscommand;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+import syscommand.exception.CommandException;
+
+/**
+ * Publisher of the output of a command (see {@link CommandBase#publish_raw(CommandContext)} and {@link CommandBase#publish_lines(CommandContext)}).
+ * Each subscription starts the command and reads its output by one thread only while there is an unsatisfied demand,
+ * so a slow subscriber makes the command block on its full output pipe instead of the output being accumulated in the memory.
+ * @param <T> item type
+ */
+abstract class OutputPublisher<T> implements Flow.Publisher<T> {
+	
+	/**
+	 * Command to run.
+	 */
+	private final CommandBase command;
+	
+	/**
+	 * Context of the command runs.
+	 */
+	private final CommandContext context;
+	
+	/**
+	 * Creates the publisher.
+	 * @param command command to run for each subscription
+	 * @param context command context with logging and execution environment settings
+	 */
+	OutputPublisher(CommandBase command, CommandContext context) {
+		this.command = command;
+		this.context = context;
+	}
+	
+	@Override
+	public void subscribe(Flow.Subscriber<? super T> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException();
+		}
+		Thread t = new Thread(new CommandSubscription(subscriber));
+		t.setDaemon(true);
+		t.start();
+	}
+	
+	/**
+	 * Opens the reading of the command output.
+	 * @param stdout output stream of the command
+	 * @return stream to read the items from
+	 */
+	protected InputStream open(InputStream stdout) {
+		return stdout;
+	}
+	
+	/**
+	 * Reads the next item from the command output. Blocks until the whole item is available.
+	 * @param is stream returned by {@link #open(InputStream)}
+	 * @return item or null if the output has ended
+	 * @throws IOException if the output could not be read
+	 */
+	protected abstract T readItem(InputStream is) throws IOException;
+	
+	/**
+	 * Publisher of the output chunks as they are read from the command (the chunk boundaries are arbitrary).
+	 */
+	static class Raw extends OutputPublisher<ByteBuffer> {
+		
+		/**
+		 * Maximum size (in bytes) of a chunk.
+		 */
+		private static final int CHUNK_SIZE = 64 * 1024;
+		
+		Raw(CommandBase command, CommandContext context) {
+			super(command, context);
+		}
+		
+		@Override
+		protected ByteBuffer readItem(InputStream is) throws IOException {
+			byte[] b = new byte[CHUNK_SIZE];
+			int n = is.read(b);
+			if (n == -1) {
+				return null;
+			}
+			return ByteBuffer.wrap(b, 0, n);
+		}
+		
+	}
+	
+	/**
+	 * Publisher of the output lines (delimited by the newline character, empty lines are skipped as by {@link CommandBase#run_lines(CommandContext)}).
+	 */
+	static class Lines extends OutputPublisher<String> {
+		
+		/**
+		 * Buffer size (in bytes) for reading the output (at most this is read ahead of the demand).
+		 */
+		private static final int BUFFER_SIZE = 8 * 1024;
+		
+		Lines(CommandBase command, CommandContext context) {
+			super(command, context);
+		}
+		
+		@Override
+		protected InputStream open(InputStream stdout) {
+			return new BufferedInputStream(stdout, BUFFER_SIZE);
+		}
+		
+		@Override
+		protected String readItem(InputStream is) throws IOException {
+			ByteArrayOutputStream line = new ByteArrayOutputStream();
+			while (true) {
+				int b = is.read();
+				if (b == -1) {
+					if (line.size() == 0) {
+						return null;
+					}
+					break;
+				}
+				if (b == '\n') {
+					if (line.size() == 0) {
+						continue;
+					}
+					break;
+				}
+				line.write(b);
+			}
+			try {
+				return line.toString("UTF-8");
+			} catch (UnsupportedEncodingException u) {
+				throw new RuntimeException(u);
+			}
+		}
+		
+	}
+	
+	/**
+	 * Subscription running the command and passing the requested items to the subscriber (all signals come from the thread running this).
+	 */
+	private class CommandSubscription implements Flow.Subscription, Runnable {
+		
+		private final Flow.Subscriber<? super T> subscriber;
+		
+		/**
+		 * Number of requested items not passed yet ({@link Long#MAX_VALUE} means no limit).
+		 */
+		private long demand = 0;
+		
+		private boolean cancelled = false;
+		
+		/**
+		 * Exception for an invalid request or null.
+		 */
+		private IllegalArgumentException invalidRequest = null;
+		
+		/**
+		 * Handle of the started command or null if it has not been started yet.
+		 */
+		private RunningCommand running = null;
+		
+		CommandSubscription(Flow.Subscriber<? super T> subscriber) {
+			this.subscriber = subscriber;
+		}
+		
+		@Override
+		public synchronized void request(long n) {
+			if (n <= 0) {
+				if (invalidRequest == null) {
+					invalidRequest = new IllegalArgumentException("Non-positive request: " + n);
+				}
+				terminate();
+			} else if (demand > Long.MAX_VALUE - n) {
+				demand = Long.MAX_VALUE;
+			} else {
+				demand += n;
+			}
+			notifyAll();
+		}
+		
+		@Override
+		public synchronized void cancel() {
+			cancelled = true;
+			terminate();
+			notifyAll();
+		}
+		
+		/**
+		 * Terminates the command if it has been started (unblocks the reading).
+		 */
+		private synchronized void terminate() {
+			if (running != null) {
+				running.terminate();
+			}
+		}
+		
+		/**
+		 * Waits until an item can be passed.
+		 * @return if an item can be passed (false if the subscription has been cancelled or an invalid request has been made)
+		 */
+		private synchronized boolean awaitDemand() {
+			try {
+				while ((demand == 0) && (! cancelled) && (invalidRequest == null)) {
+					wait();
+				}
+			} catch (InterruptedException e) {
+				cancelled = true;
+			}
+			return (! cancelled) && (invalidRequest == null);
+		}
+		
+		/**
+		 * Takes one item from the demand.
+		 * @return if the item can be passed
+		 */
+		private synchronized boolean takeDemand() {
+			if (cancelled || (invalidRequest != null)) {
+				return false;
+			}
+			if (demand != Long.MAX_VALUE) {
+				--demand;
+			}
+			return true;
+		}
+		
+		private synchronized boolean isCancelled() {
+			return cancelled;
+		}
+		
+		@Override
+		public void run() {
+			subscriber.onSubscribe(this);
+			
+			RunningCommand r;
+			try {
+				r = command.startWithoutStdin(context);
+			} catch (CommandException e) {
+				if (! isCancelled()) {
+					subscriber.onError(e);
+				}
+				return;
+			}
+			synchronized(this) {
+				running = r;
+				if (cancelled || (invalidRequest != null)) {
+					r.terminate();
+				}
+			}
+			
+			InputStream is = open(r.getStdout());
+			boolean ended = false;
+			boolean outputSuccess = true;
+			try {
+				while (awaitDemand()) {
+					T item = readItem(is);
+					if (item == null) {
+						ended = true;
+						break;
+					}
+					if (! takeDemand()) {
+						break;
+					}
+					try {
+						subscriber.onNext(item);
+					} catch (Throwable t) {
+						// the subscriber has failed, the subscription is considered cancelled
+						cancel();
+						break;
+					}
+				}
+			} catch (IOException e) {
+				outputSuccess = false;
+			}
+			
+			if (ended) {
+				try {
+					r.awaitExit();
+				} catch (CommandException e) {
+					if (! isCancelled()) {
+						subscriber.onError(e);
+					}
+					return;
+				}
+				if (! isCancelled()) {
+					subscriber.onComplete();
+				}
+				return;
+			}
+			
+			r.close();
+			
+			if (isCancelled()) {
+				return;
+			}
+			IllegalArgumentException invalid;
+			synchronized(this) {
+				invalid = invalidRequest;
+			}
+			if (invalid != null) {
+				subscriber.onError(invalid);
+			} else if (! outputSuccess) {
+				subscriber.onError(new CommandException("Error while copying data"));
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,755 @@
+package syscommand;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+import syscommand.exception.CommandException;
+import syscommand.internal.CommandResultWaiting;
+import syscommand.internal.CommandRunningContext;
+import syscommand.internal.RingBuffer;
+
+/**
+ * Pipeline stage running more copies of a command at once (like parallel --pipe).
+ * The input is split into chunks aligned to the record boundaries (lines by default), each chunk is passed to a new copy of the command
+ * and the outputs of the copies are merged in the order of the input chunks.
+ * At most the specified number of copies runs at the same time and the number of chunks in memory (read, being processed or waiting for merging) is limited.
+ * The command must process each record independently (the chunk boundaries are not visible in the output).
+ * The exit status of each copy is validated by the command itself, the exit status of the stage is 0 if all the copies succeeded
+ * (or the first nonzero exit status of a copy if the error statuses are ignored).
+ * The measured resource usage of the stage contains the usage of each copy as its parts, the peak memory is the peak of one copy.
+ */
+public class ParallelStage extends CommandBase {
+	
+	/**
+	 * Default size (in bytes) of the chunks.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+	
+	/**
+	 * Separator value meaning that the chunks are not aligned to records.
+	 */
+	private static final int NO_SEPARATOR = -1;
+	
+	/**
+	 * Command a copy of which processes each chunk.
+	 */
+	private final CommandBase stage;
+	
+	/**
+	 * Maximum number of copies running at the same time.
+	 */
+	private final int parallelism;
+	
+	/**
+	 * Minimum size (in bytes) of a chunk (except for the last one), a chunk is extended to the end of the record.
+	 */
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	
+	/**
+	 * Maximum number of chunks in memory.
+	 */
+	private int maxInFlight;
+	
+	/**
+	 * Byte terminating the records or {@link #NO_SEPARATOR}.
+	 */
+	private int separator = '\n';
+	
+	/**
+	 * Capacity (in bytes) of each of the buffers connecting the stage with its neighbours.
+	 */
+	private int bufferCapacity = RingBuffer.DEFAULT_CAPACITY;
+	
+	/**
+	 * Creates the stage splitting the input into lines.
+	 * @param stage command processing the chunks
+	 * @param parallelism maximum number of copies of the command running at the same time
+	 * @throws IllegalArgumentException if the parallelism is not positive
+	 */
+	public ParallelStage(CommandBase stage, int parallelism) {
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+		}
+		
+		this.stage = stage;
+		this.parallelism = parallelism;
+		this.maxInFlight = parallelism * 2;
+	}
+	
+	/**
+	 * Aligns the chunks to the lines (records terminated by the newline character). This is the default.
+	 * @return this stage
+	 */
+	public ParallelStage splitLines() {
+		separator = '\n';
+		return this;
+	}
+	
+	/**
+	 * Aligns the chunks to the records terminated by the null character (like the output of find -print0).
+	 * @return this stage
+	 */
+	public ParallelStage splitNullSeparated() {
+		separator = 0;
+		return this;
+	}
+	
+	/**
+	 * Splits the input into chunks of exactly the chunk size (except for the last one) without any record alignment.
+	 * @return this stage
+	 */
+	public ParallelStage splitFixedSize() {
+		separator = NO_SEPARATOR;
+		return this;
+	}
+	
+	/**
+	 * Sets the chunk size.
+	 * @param bytes minimum size of a chunk in bytes (a chunk is extended to the end of the record, the last chunk can be smaller)
+	 * @return this stage
+	 */
+	public ParallelStage chunkSize(int bytes) {
+		if (bytes <= 0) {
+			throw new IllegalArgumentException("Invalid chunk size: " + bytes);
+		}
+		
+		chunkSize = bytes;
+		return this;
+	}
+	
+	/**
+	 * Sets the maximum number of chunks in memory (read from the input, being processed or waiting for merging). The default is twice the parallelism.
+	 * @param chunks maximum number of chunks
+	 * @return this stage
+	 */
+	public ParallelStage maxInFlight(int chunks) {
+		if (chunks <= 0) {
+			throw new IllegalArgumentException("Invalid number of chunks: " + chunks);
+		}
+		
+		maxInFlight = chunks;
+		return this;
+	}
+	
+	/**
+	 * Sets the capacity of the buffers connecting the stage with its neighbours.
+	 * @param bytes capacity of each buffer in bytes
+	 * @return this stage
+	 */
+	public ParallelStage bufferCapacity(int bytes) {
+		if (bytes <= 0) {
+			throw new IllegalArgumentException("Invalid capacity: " + bytes);
+		}
+		
+		bufferCapacity = bytes;
+		return this;
+	}
+	
+	/**
+	 * Starts splitting the input and merging the outputs in new threads. The copies of the command are started when the chunks are available.
+	 * @param context command context used for running the copies of the command and for logging
+	 * @return command running context used to access input and output streams and to wait for all the copies to finish
+	 * @throws CommandException never thrown by this implementation (declared by the overridden method)
+	 */
+	@Override
+	protected CommandRunningContext run(final CommandContext context) throws CommandException {
+		final RingBuffer input = new RingBuffer(bufferCapacity);
+		final RingBuffer output = new RingBuffer(bufferCapacity);
+		
+		final Execution execution = new Execution(context, input.getInputStream(), output.getOutputStream());
+		execution.start();
+		
+		CommandRunningContext result = new CommandRunningContext();
+		result.stdin = input.getOutputStream();
+		result.stdout = output.getInputStream();
+		
+		final CommandBase self = this;
+		result.res = new CommandResultWaiting() {
+			
+			@Override
+			public int waitAndGetResult() throws CommandException {
+				// the exit statuses are validated by the copies
+				return waitForExitStatus();
+			}
+			
+			@Override
+			public int waitForExitStatus() throws CommandException {
+				execution.join();
+				
+				Throwable failure = execution.getFailure();
+				int exitStatus = execution.getExitStatus();
+				
+				try {
+					Writer logWriter = context.getLogWriter();
+					if (logWriter != null) {
+						synchronized(logWriter) {
+							logWriter.write("----------------------------\n");
+							logWriter.write("  PARALLEL STAGE: " + self.toString() + '\n');
+							logWriter.write("  CHUNKS: " + execution.getChunkCount() + '\n');
+							if (failure == null) {
+								logWriter.write("  RETURNS: " + exitStatus + '\n');
+							}
+							logWriter.write("-------\n");
+							if (failure != null) {
+								logWriter.write(failure.toString() + '\n');
+							}
+							logWriter.write("-------\n");
+						}
+					}
+				} catch (IOException e) {
+					// nothing
+				}
+				
+				if (failure instanceof CommandException) {
+					throw (CommandException) failure;
+				}
+				if (failure != null) {
+					throw new CommandException("Parallel stage failed: " + self.toString(), failure);
+				}
+				
+				return exitStatus;
+			}
+			
+			@Override
+			public void terminate() {
+				execution.fail(new CommandException("Terminated"), null);
+			}
+			
+			@Override
+			public byte[] getStderr() {
+				return execution.getStderr();
+			}
+			
+			@Override
+			public ResourceUsage getResourceUsage() {
+				return execution.getResourceUsage();
+			}
+			
+		};
+		
+		return result;
+	}
+	
+	/**
+	 * Gets the stage description.
+	 * @return stage description string
+	 */
+	@Override
+	public String toString() {
+		return "parallel(" + parallelism + "):" + stage.toString();
+	}
+	
+	/**
+	 * One run of the stage: splits the input, runs the copies of the command and merges their outputs.
+	 */
+	private class Execution {
+		
+		private final CommandContext context;
+		
+		/**
+		 * Input of the stage.
+		 */
+		private final InputStream is;
+		
+		/**
+		 * Output of the stage.
+		 */
+		private final OutputStream os;
+		
+		/**
+		 * Threads running the copies of the command.
+		 */
+		private final ExecutorService executor;
+		
+		/**
+		 * Permits for the chunks in memory.
+		 */
+		private final Semaphore inFlight = new Semaphore(maxInFlight);
+		
+		/**
+		 * Chunks in the input order (ended by {@link #end}).
+		 */
+		private final BlockingQueue<Chunk> chunks = new LinkedBlockingQueue<Chunk>();
+		
+		/**
+		 * Marker of the end of {@link #chunks}.
+		 */
+		private final Chunk end = new Chunk(-1, null, 0);
+		
+		/**
+		 * Copies of the command which are running.
+		 */
+		private final Set<CommandRunningContext> running = new HashSet<CommandRunningContext>();
+		
+		private final Thread splitter;
+		
+		private final Thread merger;
+		
+		/**
+		 * Why the stage failed (the first failure) or null.
+		 */
+		private Throwable failure = null;
+		
+		/**
+		 * Standard error output of the copy which failed or null.
+		 */
+		private byte[] failureStderr = null;
+		
+		/**
+		 * First nonzero exit status of a copy (if the error statuses are ignored) or 0.
+		 */
+		private volatile int exitStatus = 0;
+		
+		/**
+		 * Resources used by the merged copies in the input order or null if the resource usage is not measured.
+		 */
+		private final List<ResourceUsage> resourceUsages;
+		
+		/**
+		 * Number of chunks read from the input.
+		 */
+		private volatile int chunkCount = 0;
+		
+		public Execution(CommandContext context, InputStream is, OutputStream os) {
+			this.context = context;
+			this.is = is;
+			this.os = os;
+			this.resourceUsages = context.isResourceAccounting() ? new ArrayList<ResourceUsage>() : null;
+			this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+				
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r);
+					t.setDaemon(true);
+					return t;
+				}
+				
+			});
+			this.splitter = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					split();
+				}
+				
+			});
+			this.merger = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					merge();
+				}
+				
+			});
+		}
+		
+		public void start() {
+			splitter.start();
+			merger.start();
+		}
+		
+		/**
+		 * Waits for the splitting and merging to finish.
+		 */
+		public void join() throws CommandException {
+			try {
+				splitter.join();
+				merger.join();
+			} catch (InterruptedException e) {
+				throw new CommandException("Thread interrupted", e);
+			} finally {
+				executor.shutdown();
+			}
+		}
+		
+		/**
+		 * Records the failure (if it is the first one) and stops everything: the input is closed (so the previous stage gets a broken pipe),
+		 * the running copies of the command are terminated and the waiting chunks are dropped.
+		 * @param t why the stage failed
+		 * @param stderr standard error output of the failed copy or null
+		 */
+		public void fail(Throwable t, byte[] stderr) {
+			List<CommandRunningContext> toTerminate;
+			synchronized(this) {
+				if (failure != null) {
+					return;
+				}
+				failure = t;
+				failureStderr = stderr;
+				toTerminate = new ArrayList<CommandRunningContext>(running);
+			}
+			
+			try {
+				is.close();
+			} catch (IOException e) {
+				// nothing
+			}
+			splitter.interrupt();
+			for (Runnable r : executor.shutdownNow()) {
+				((Chunk) r).cancel();
+			}
+			for (CommandRunningContext c : toTerminate) {
+				c.res.terminate();
+			}
+			chunks.add(end);
+		}
+		
+		public synchronized Throwable getFailure() {
+			return failure;
+		}
+		
+		public synchronized byte[] getStderr() {
+			return (failureStderr != null) ? failureStderr : new byte[0];
+		}
+		
+		public int getExitStatus() {
+			return exitStatus;
+		}
+		
+		/**
+		 * Gets the aggregate resource usage of the copies (after the stage has finished).
+		 */
+		public synchronized ResourceUsage getResourceUsage() {
+			return (resourceUsages != null) ? ResourceUsage.sequential(ParallelStage.this.toString(), resourceUsages) : null;
+		}
+		
+		public int getChunkCount() {
+			return chunkCount;
+		}
+		
+		/**
+		 * Reads the input, splits it into chunks and submits them for processing.
+		 */
+		private void split() {
+			try {
+				byte[] buffer = new byte[chunkSize];
+				int length = 0;
+				// bytes at the beginning of the buffer which are known to contain no separator
+				int scanned = 0;
+				boolean eof = false;
+				while (! eof) {
+					if (length == buffer.length) {
+						buffer = Arrays.copyOf(buffer, buffer.length * 2);
+					}
+					int n = is.read(buffer, length, buffer.length - length);
+					if (n == -1) {
+						eof = true;
+					} else {
+						length += n;
+					}
+					
+					int chunkEnd;
+					if (eof) {
+						chunkEnd = length;
+					} else if (length < chunkSize) {
+						continue;
+					} else if (separator == NO_SEPARATOR) {
+						chunkEnd = chunkSize;
+					} else {
+						chunkEnd = lastSeparator(buffer, scanned, length) + 1;
+						scanned = length;
+					}
+					
+					if (chunkEnd == 0) {
+						continue;
+					}
+					
+					inFlight.acquire();
+					synchronized(this) {
+						if (failure != null) {
+							return;
+						}
+					}
+					
+					byte[] rest = new byte[Math.max(chunkSize, length - chunkEnd)];
+					System.arraycopy(buffer, chunkEnd, rest, 0, length - chunkEnd);
+					
+					Chunk chunk = new Chunk(chunkCount, buffer, chunkEnd);
+					++chunkCount;
+					executor.execute(chunk);
+					chunks.add(chunk);
+					
+					buffer = rest;
+					length -= chunkEnd;
+					scanned = (separator == NO_SEPARATOR) ? 0 : length;
+				}
+			} catch (InterruptedException e) {
+				fail(new CommandException("Thread interrupted", e), null);
+			} catch (Throwable t) {
+				fail(t, null);
+			} finally {
+				try {
+					is.close();
+				} catch (IOException e) {
+					// nothing
+				}
+				chunks.add(end);
+			}
+		}
+		
+		/**
+		 * Writes the outputs of the chunks to the output of the stage in the input order.
+		 */
+		private void merge() {
+			try {
+				while (true) {
+					Chunk chunk = chunks.take();
+					if (chunk == end) {
+						break;
+					}
+					
+					chunk.await();
+					if (resourceUsages != null) {
+						synchronized(this) {
+							resourceUsages.add(chunk.getResourceUsage());
+						}
+					}
+					if (chunk.getFailure() != null) {
+						fail(chunk.getFailure(), chunk.getStderr());
+						break;
+					}
+					if ((chunk.getExitStatus() != 0) && (exitStatus == 0)) {
+						exitStatus = chunk.getExitStatus();
+					}
+					
+					os.write(chunk.getOutput());
+					chunk.release();
+					inFlight.release();
+				}
+			} catch (InterruptedException e) {
+				fail(new CommandException("Thread interrupted", e), null);
+			} catch (Throwable t) {
+				fail(t, null);
+			} finally {
+				try {
+					os.close();
+				} catch (IOException e) {
+					// nothing
+				}
+			}
+		}
+		
+		/**
+		 * Runs a copy of the command with the chunk as its input.
+		 * @return exit status of the copy
+		 */
+		private int process(Chunk chunk) throws Throwable {
+			CommandRunningContext c = stage.run(context);
+			synchronized(this) {
+				if (failure != null) {
+					c.res.terminate();
+					throw new CommandException("Terminated");
+				}
+				running.add(c);
+			}
+			
+			try {
+				ChunkWriter w = new ChunkWriter(c.stdin, chunk.data, chunk.length);
+				Thread t = new Thread(w);
+				t.start();
+				
+				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				try {
+					byte[] b = new byte[64 * 1024];
+					int partLen;
+					while ((partLen = c.stdout.read(b)) != -1) {
+						baos.write(b, 0, partLen);
+					}
+				} finally {
+					c.stdout.close();
+				}
+				t.join();
+				
+				int status;
+				try {
+					status = c.res.waitAndGetResult();
+				} catch (CommandException e) {
+					chunk.setStderr(c.res.getStderr());
+					throw e;
+				} finally {
+					chunk.setResourceUsage(c.res.getResourceUsage());
+				}
+				
+				if (w.getException() != null) {
+					throw new CommandException("Error while writing chunk " + chunk.index + " to " + stage.toString(), w.getException());
+				}
+				
+				chunk.setOutput(baos.toByteArray());
+				return status;
+			} finally {
+				synchronized(this) {
+					running.remove(c);
+				}
+			}
+		}
+		
+		/**
+		 * Chunk of the input and the result of its processing.
+		 */
+		private class Chunk implements Runnable {
+			
+			private final int index;
+			
+			private byte[] data;
+			
+			private final int length;
+			
+			private final CountDownLatch done = new CountDownLatch(1);
+			
+			private byte[] output = null;
+			
+			private byte[] stderr = null;
+			
+			private int exitStatus = 0;
+			
+			private Throwable failure = null;
+			
+			private ResourceUsage resourceUsage = null;
+			
+			public Chunk(int index, byte[] data, int length) {
+				this.index = index;
+				this.data = data;
+				this.length = length;
+			}
+			
+			@Override
+			public void run() {
+				try {
+					exitStatus = process(this);
+				} catch (Throwable t) {
+					failure = t;
+				} finally {
+					data = null;
+					done.countDown();
+				}
+			}
+			
+			/**
+			 * Marks the chunk as not processed because the stage has failed.
+			 */
+			public void cancel() {
+				failure = new CommandException("Terminated");
+				data = null;
+				done.countDown();
+			}
+			
+			public void await() throws InterruptedException {
+				done.await();
+			}
+			
+			/**
+			 * Drops the output after it has been merged.
+			 */
+			public void release() {
+				output = null;
+			}
+			
+			public byte[] getOutput() {
+				return output;
+			}
+			
+			public void setOutput(byte[] output) {
+				this.output = output;
+			}
+			
+			public byte[] getStderr() {
+				return stderr;
+			}
+			
+			public void setStderr(byte[] stderr) {
+				this.stderr = stderr;
+			}
+			
+			public int getExitStatus() {
+				return exitStatus;
+			}
+			
+			public Throwable getFailure() {
+				return failure;
+			}
+			
+			public ResourceUsage getResourceUsage() {
+				return resourceUsage;
+			}
+			
+			public void setResourceUsage(ResourceUsage resourceUsage) {
+				this.resourceUsage = resourceUsage;
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Finds the last separator in the specified part of the buffer.
+	 * @return index of the separator or -1
+	 */
+	private int lastSeparator(byte[] buffer, int from, int to) {
+		byte s = (byte) separator;
+		for (int i = to - 1; i >= from; --i) {
+			if (buffer[i] == s) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Writes a chunk to the input of a copy of the command and closes it.
+	 */
+	private static class ChunkWriter implements Runnable {
+		
+		private final OutputStream os;
+		
+		private final byte[] data;
+		
+		private final int length;
+		
+		/**
+		 * Exception which caused the writing to fail or null.
+		 */
+		private volatile Throwable exception = null;
+		
+		public ChunkWriter(OutputStream os, byte[] data, int length) {
+			this.os = os;
+			this.data = data;
+			this.length = length;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				os.write(data, 0, length);
+			} catch (Throwable t) {
+				exception = t;
+			} finally {
+				try {
+					os.close();
+				} catch (Throwable t) {
+					// nothing
+				}
+			}
+		}
+		
+		public Throwable getException() {
+			return exception;
+		}
+		
+	}
+	
+}
@@ -1,12 +1,21 @@
 package syscommand;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import syscommand.exception.CommandException;
 import syscommand.exception.InvalidExitStatusException;
+import syscommand.exception.PipelineStageException;
 import syscommand.internal.CommandResultWaiting;
 import syscommand.internal.CommandRunningContext;
 import syscommand.internal.StreamCopyRunnable;
@@ -18,6 +27,26 @@ import syscommand.internal.StreamCopyRunnable;
  */
 public class Pipeline extends CompositeCommand {
 	
+	/**
+	 * How long (in milliseconds) to wait for a stage failure after a copying error in the pipefail mode.
+	 */
+	private static final long COPY_FAILURE_GRACE_MILLIS = 100;
+	
+	/**
+	 * How long (in milliseconds) to wait for the last stage to finish after a failure of another stage in the pipefail mode before terminating it.
+	 */
+	private static final long LAST_STAGE_GRACE_MILLIS = 100;
+	
+	/**
+	 * If the pipefail mode is enabled.
+	 */
+	private boolean pipefail = false;
+	
+	/**
+	 * Digests computed over the input data of the stages by the stage indexes.
+	 */
+	private Map<Integer, OutputDigests> stageInputDigests = new HashMap<Integer, OutputDigests>();
+	
 	/**
 	 * Adds a subcommand to the end of the pipeline.
 	 * @param command some command
@@ -38,6 +67,80 @@ public class Pipeline extends CompositeCommand {
 		return this;
 	}
 	
+	/**
+	 * Adds a stage implemented in Java to the end of the pipeline. This is a helper method doing the same as {@link #add(CommandBase)} with a {@link JavaStage}.
+	 * No process is created for the stage, it is connected to its neighbours by in-memory buffers.
+	 * @param filter filter transforming the output of the previous stage to the input of the next stage
+	 * @return this pipeline
+	 */
+	public Pipeline add(StreamFilter filter) {
+		list.add(new JavaStage(filter));
+		return this;
+	}
+	
+	/**
+	 * Adds a stage implemented in Java to the end of the pipeline. This is a helper method doing the same as {@link #add(CommandBase)} with a {@link JavaStage}.
+	 * No process is created for the stage, it is connected to its neighbours by in-memory buffers.
+	 * @param filter filter transforming the output of the previous stage chunk by chunk
+	 * @return this pipeline
+	 */
+	public Pipeline add(ChunkFilter filter) {
+		list.add(new JavaStage(filter));
+		return this;
+	}
+	
+	/**
+	 * Makes the last added stage parallel: its input is split into chunks of lines, each chunk is processed by a new copy of the stage (at most the specified number of copies run at once)
+	 * and the outputs are merged in the input order. This is a helper method doing the same as replacing the last stage by a {@link ParallelStage} (use it directly for more settings).
+	 * @param parallelism maximum number of copies of the stage running at the same time
+	 * @return this pipeline
+	 * @throws IllegalStateException if the pipeline has no stage
+	 */
+	public Pipeline parallel(int parallelism) {
+		if (list.isEmpty()) {
+			throw new IllegalStateException("No stage to make parallel");
+		}
+		
+		int last = list.size() - 1;
+		list.set(last, new ParallelStage(list.get(last), parallelism));
+		return this;
+	}
+	
+	/**
+	 * Enables the pipefail mode: all the stages are watched concurrently since they are started and on the first failure (invalid exit status of any stage
+	 * except the last one or data copying error), all the remaining stages are terminated immediately (instead of waiting for them to finish),
+	 * so also the output of the pipeline ends (the output can still be being read when a stage fails). The last stage gets the end of its input
+	 * and it is terminated only if it does not finish within 100 ms, so the output it has already written is not lost.
+	 * The exit status of the last stage is validated when the result is requested (a failed last stage closes its input, so the previous stages end anyway).
+	 * The thrown exception describes the stage which failed first ({@link PipelineStageException} if it exited with an invalid exit status).
+	 * @return this pipeline
+	 */
+	public Pipeline pipefail() {
+		pipefail = true;
+		return this;
+	}
+	
+	/**
+	 * Sets the digests to compute over the data passed from the previous stage to the specified stage (while the data are copied, so no second pass over the data is needed).
+	 * The digest values are available after the pipeline has finished.
+	 * @param stageIndex index of the stage receiving the data (1 for the second stage etc.)
+	 * @param digests digests to compute or null to not compute any
+	 * @return this pipeline
+	 * @throws IllegalArgumentException if the stage index is less than 1 (the input of the first stage is not copied between stages, see {@link CommandBase#digestOutput(OutputDigests)} for the output of the whole pipeline)
+	 */
+	public Pipeline digestStageInput(int stageIndex, OutputDigests digests) {
+		if (stageIndex < 1) {
+			throw new IllegalArgumentException("Invalid stage index: " + stageIndex);
+		}
+		
+		if (digests != null) {
+			stageInputDigests.put(stageIndex, digests);
+		} else {
+			stageInputDigests.remove(stageIndex);
+		}
+		return this;
+	}
+	
 	/**
 	 * Connects the subcommands with streams and executes them.
 	 * @param context command context used for getting logging and execution environment properties (note that each {@link SingleCommand} which is a subcommand of the pipeline can override these properties for its own execution) 
@@ -45,7 +148,29 @@ public class Pipeline extends CompositeCommand {
 	 * @throws CommandException if the command creating or running failed (this include input/output exceptions, invalid exit status, terminating etc.)
 	 */
 	@Override
-	protected CommandRunningContext run(final CommandContext context) throws CommandException {		
+	protected CommandRunningContext run(CommandContext context) throws CommandException {
+		return runStages(context, false);
+	}
+	
+	/**
+	 * Executes the pipeline whose output is not going to be read. The output of the last stage is redirected to /dev/null
+	 * if it is a {@link SingleCommand} started by {@link ProcessBuilderLauncher}, otherwise it is read and ignored.
+	 * @param context command context used for getting logging and execution environment properties
+	 * @return command running context used to wait for the pipeline to exit
+	 * @throws CommandException if the command creating or running failed (this include input/output exceptions, invalid exit status, terminating etc.)
+	 */
+	@Override
+	protected CommandRunningContext runWithoutInputDiscardingOutput(CommandContext context) throws CommandException {
+		return runStages(context, true);
+	}
+	
+	/**
+	 * Connects the subcommands with streams and executes them.
+	 * @param context command context
+	 * @param discardOutput if the output of the last stage can be redirected to /dev/null
+	 * @return command running context
+	 */
+	private CommandRunningContext runStages(final CommandContext context, boolean discardOutput) throws CommandException {
 		CommandRunningContext result = new CommandRunningContext();
 		
 		int count = list.size();
@@ -55,89 +180,563 @@ public class Pipeline extends CompositeCommand {
 		final List<StreamCopyRunnable> copyRunnables = new ArrayList<StreamCopyRunnable>(count * 2);
 		final List<Thread> copyRunnableThreads = new ArrayList<Thread>(count * 2);
 		
+		final boolean pipefail = this.pipefail;
+		final CommandListener listener = context.getListener();
+		final BlockingQueue<StageEvent> events = new LinkedBlockingQueue<StageEvent>();
+		final List<OutputDigests> usedDigests = new ArrayList<OutputDigests>();
+		final boolean accounting = context.isResourceAccounting();
+		
 		CommandRunningContext previous = null;
-		for (CommandBase command : list) {
-			CommandRunningContext current = command.run(context);
-			
-			if (previous == null) {
-				result.stdin = current.stdin;
+		boolean started = false;
+		try {
+			for (CommandBase command : list) {
+				CommandRunningContext current;
+				if (discardOutput && (processes.size() == count - 1) && (command instanceof SingleCommand)) {
+					current = ((SingleCommand) command).runDiscardingOutput(context);
+				} else {
+					current = command.run(context);
+				}
+				
+				if (previous == null) {
+					result.stdin = current.stdin;
+				}
+				
+				if (previous != null) {
+					// between processes
+					final StreamCopyRunnable r = new StreamCopyRunnable(previous.stdout, current.stdin, listener, (listener != null) ? "pipeline stage " + processes.size() + ": " + command : null, processes.size());
+					OutputDigests digests = stageInputDigests.get(processes.size());
+					if (digests != null) {
+						digests.begin();
+						r.setDigests(digests);
+						usedDigests.add(digests);
+					}
+					copyRunnables.add(r);
+					Thread t;
+					if (pipefail) {
+						final int stageIndex = processes.size();
+						t = new Thread(new Runnable() {
+							
+							@Override
+							public void run() {
+								r.run();
+								events.add(StageEvent.copied(stageIndex, r.getException()));
+							}
+							
+						});
+					} else {
+						t = new Thread(r);
+					}
+					copyRunnableThreads.add(t);
+					t.start();
+				}
+				
+				processes.add(current);
+				
+				previous = current;
 			}
-			
-			if (previous != null) {
-				// between processes
-				StreamCopyRunnable r = new StreamCopyRunnable(previous.stdout, current.stdin);
-				copyRunnables.add(r);
-				Thread t = new Thread(r);
-				copyRunnableThreads.add(t);
-				t.start();
+			started = true;
+		} finally {
+			if (! started) {
+				// a stage could not be started, the already started ones would never be waited for
+				abandonStages(processes, copyRunnableThreads);
 			}
-			
-			processes.add(current);
-			
-			previous = current;
 		}
 		
-		result.stdout = previous.stdout;
+		result.outputDiscarded = previous.outputDiscarded;
+		
+		final PipefailMonitor monitor;
+		if (pipefail) {
+			monitor = new PipefailMonitor(context, processes, copyRunnableThreads.size(), events, listener);
+			result.stdout = new PipefailOutputStream(previous.stdout, monitor);
+			monitor.start();
+		} else {
+			monitor = null;
+			result.stdout = previous.stdout;
+		}
 		
 		final CommandBase self = this;
 		result.res = new CommandResultWaiting() {
 			
+			private volatile ResourceUsage resourceUsage = null;
+			
 			@Override
 			public int waitAndGetResult() throws CommandException {
+				return checkExitStatus(context, waitForStages(true));
+			}
+			
+			@Override
+			public int waitForExitStatus() throws CommandException {
+				// the exit status of the last stage is the exit status of the pipeline
+				return waitForStages(false);
+			}
+			
+			/**
+			 * Waits for all the stages.
+			 * @param validateLast if the exit status of the last stage has to be validated
+			 * @return exit status of the last stage
+			 */
+			private int waitForStages(boolean validateLast) throws CommandException {
 				try {
 					Writer logWriter = context.getLogWriter();
 					if (logWriter != null) {
+						long start = (listener != null) ? System.nanoTime() : 0;
+						
 						synchronized(logWriter) {
 							logWriter.write("----------------------------\n");
 							logWriter.write("PIPELINE: " + self.toString() + '\n');
 						}
+						
+						if (listener != null) {
+							listener.logWritten(self.toString(), System.nanoTime() - start);
+						}
 					}
 				} catch (IOException e) {
 					// nothing
 				}
 				
-				for (Thread t : copyRunnableThreads) {
-					try {
-						t.join();
-					} catch (InterruptedException e) {
-						throw new CommandException("Thread interrupted", e);
+				int lastStatus;
+				try {
+					if (pipefail) {
+						lastStatus = waitPipefail(monitor, processes, validateLast);
+					} else {
+						lastStatus = waitSequentially(processes, copyRunnables, copyRunnableThreads, listener, validateLast);
+					}
+				} finally {
+					// the copying has finished (unless interrupted)
+					for (OutputDigests digests : usedDigests) {
+						digests.end();
+					}
+					
+					if (accounting) {
+						List<ResourceUsage> stageUsages = new ArrayList<ResourceUsage>(processes.size());
+						for (int i = 0; i < processes.size(); ++i) {
+							ResourceUsage stageUsage = processes.get(i).res.getResourceUsage();
+							stageUsages.add((stageUsage != null) ? stageUsage : new ResourceUsage(list.get(i).toString(), false, 0, 0, 0, 0, 0));
+						}
+						resourceUsage = ResourceUsage.concurrent(self.toString(), stageUsages);
+						reportResourceUsage(context, resourceUsage);
 					}
 				}
 				
-				for (StreamCopyRunnable r : copyRunnables) {
+				return lastStatus;
+			}
+			
+			@Override
+			public void terminate() {
+				for (CommandRunningContext p : processes) {
+					p.res.terminate();
+				}
+			}
+			
+			@Override
+			public byte[] getStderr() {
+				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				for (CommandRunningContext p : processes) {
+					byte[] b = p.res.getStderr();
+					baos.write(b, 0, b.length);
+				}
+				return baos.toByteArray();
+			}
+			
+			@Override
+			public ResourceUsage getResourceUsage() {
+				return resourceUsage;
+			}
+		};
+			
+		return result;
+	}
+	
+	/**
+	 * Waits for all the copying threads and then for all the stages one by one.
+	 * @return exit status of the last stage
+	 */
+	private int waitSequentially(List<CommandRunningContext> processes, List<StreamCopyRunnable> copyRunnables, List<Thread> copyRunnableThreads, CommandListener listener, boolean validateLast) throws CommandException {
+		boolean interrupted = false;
+		for (Thread t : copyRunnableThreads) {
+			while (true) {
+				try {
+					t.join();
+					break;
+				} catch (InterruptedException e) {
+					// the copying ends when the stages are terminated, the stages are still waited for
+					if (! interrupted) {
+						interrupted = true;
+						terminateAll(processes);
+					}
+				}
+			}
+		}
+		
+		CommandException failure = null;
+		if (interrupted) {
+			failure = new CommandException("Thread interrupted");
+		}
+		
+		for (int i = 0; (failure == null) && (i < copyRunnables.size()); ++i) {
+			StreamCopyRunnable r = copyRunnables.get(i);
+			
+			if (! r.isSuccess()) {
+				// the copying to the stage i + 1 has failed, the stages which could otherwise block forever are terminated and still waited for
+				failure = new CommandException("Error while copying data to pipeline stage " + (i + 1) + " (" + list.get(i + 1) + ")", r.getException());
+				terminateAll(processes);
+			}
+		}
+		
+		int lastStatus = 0;
+		for (int i = 0; i < processes.size(); ++i) {
+			CommandRunningContext p = processes.get(i);
+			
+			long start = (listener != null) ? System.nanoTime() : 0;
+			boolean success = false;
+			try {
+				lastStatus = waitForStage(p, validateLast || (i < processes.size() - 1));
+				success = true;
+			} catch (Exception ex) {
+				if (failure == null) {
+					failure = stageFailure(i, ex, p.res.getStderr());
+				}
+			} finally {
+				if (listener != null) {
+					listener.pipelineStageFinished(toString(), i, list.get(i).toString(), System.nanoTime() - start, success);
+				}
+			}
+		}
+		
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		
+		if (failure != null) {
+			throw failure;
+		}
+		
+		return lastStatus;
+	}
+	
+	/**
+	 * Waits for the monitor watching the stages in the pipefail mode.
+	 * @return exit status of the last stage
+	 */
+	private int waitPipefail(PipefailMonitor monitor, List<CommandRunningContext> processes, boolean validateLast) throws CommandException {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				monitor.thread.join();
+				break;
+			} catch (InterruptedException e) {
+				// the monitor ends when the stages are terminated
+				if (! interrupted) {
+					interrupted = true;
+					terminateAll(processes);
+				}
+			}
+		}
+		
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+			throw new CommandException("Thread interrupted");
+		}
+		
+		int last = processes.size() - 1;
+		if (validateLast && (monitor.lastInvalid != null)) {
+			throw stageFailure(last, monitor.lastInvalid, processes.get(last).res.getStderr());
+		}
+		
+		StageEvent failure = monitor.failure;
+		if (failure != null) {
+			if (failure.copy) {
+				throw new CommandException("Error while copying data to pipeline stage " + failure.stageIndex + " (" + list.get(failure.stageIndex) + ")", failure.exception);
+			}
+			throw stageFailure(failure.stageIndex, failure.exception, processes.get(failure.stageIndex).res.getStderr());
+		}
+		
+		return monitor.lastStatus;
+	}
+	
+	/**
+	 * Watches all the stages and copying threads concurrently since the pipeline is started, terminates all the stages on the first failure.
+	 * The exit status of the last stage is collected without terminating the other stages, it is validated only if the caller requests it.
+	 */
+	private class PipefailMonitor implements Runnable {
+		
+		private final CommandContext context;
+		
+		private final List<CommandRunningContext> processes;
+		
+		/**
+		 * Number of the copying threads (each reports one event).
+		 */
+		private final int copyCount;
+		
+		private final BlockingQueue<StageEvent> events;
+		
+		private final CommandListener listener;
+		
+		private final Thread thread = new Thread(this);
+		
+		/**
+		 * Exit status of the last stage.
+		 */
+		private volatile int lastStatus = 0;
+		
+		/**
+		 * First failure or null.
+		 */
+		private volatile StageEvent failure = null;
+		
+		/**
+		 * Invalid exit status of the last stage if it has finished before any failure or null.
+		 */
+		private volatile InvalidExitStatusException lastInvalid = null;
+		
+		public PipefailMonitor(CommandContext context, List<CommandRunningContext> processes, int copyCount, BlockingQueue<StageEvent> events, CommandListener listener) {
+			this.context = context;
+			this.processes = processes;
+			this.copyCount = copyCount;
+			this.events = events;
+			this.listener = listener;
+		}
+		
+		/**
+		 * Starts watching the stages.
+		 */
+		public void start() {
+			final int count = processes.size();
+			for (int i = 0; i < count; ++i) {
+				final int stageIndex = i;
+				final CommandRunningContext p = processes.get(i);
+				new Thread(new Runnable() {
+					
+					@Override
+					public void run() {
+						long start = (listener != null) ? System.nanoTime() : 0;
+						StageEvent e;
+						boolean success = false;
+						try {
+							if (stageIndex < count - 1) {
+								e = StageEvent.exited(stageIndex, p.res.waitAndGetResult());
+								success = true;
+							} else {
+								int status = p.res.waitForExitStatus();
+								try {
+									list.get(stageIndex).checkExitStatus(context, status);
+									e = StageEvent.exited(stageIndex, status);
+									success = true;
+								} catch (InvalidExitStatusException x) {
+									e = StageEvent.exitedInvalid(stageIndex, status, x);
+								}
+							}
+						} catch (Throwable t) {
+							e = StageEvent.failed(stageIndex, t);
+						}
+						if (listener != null) {
+							listener.pipelineStageFinished(Pipeline.this.toString(), stageIndex, list.get(stageIndex).toString(), System.nanoTime() - start, success);
+						}
+						events.add(e);
+					}
 					
-					if (! r.isSuccess()) {
-						throw new CommandException("Error while copying data");
+				}).start();
+			}
+			thread.start();
+		}
+		
+		@Override
+		public void run() {
+			int count = processes.size();
+			int remaining = count + copyCount;
+			boolean[] finished = new boolean[count];
+			long lastStageDeadline = 0;
+			boolean lastStageTerminated = false;
+			while (remaining > 0) {
+				StageEvent e;
+				try {
+					if ((failure != null) && (! finished[count - 1]) && (! lastStageTerminated)) {
+						long wait = lastStageDeadline - System.currentTimeMillis();
+						e = (wait > 0) ? events.poll(wait, TimeUnit.MILLISECONDS) : null;
+						if (e == null) {
+							processes.get(count - 1).res.terminate();
+							lastStageTerminated = true;
+							continue;
+						}
+					} else {
+						e = events.take();
 					}
+				} catch (InterruptedException ex) {
+					// nothing (nobody interrupts the monitor)
+					continue;
+				}
+				--remaining;
+				if (! e.copy) {
+					finished[e.stageIndex] = true;
 				}
 				
-				int lastStatus = 0;
-				boolean wasException = false;
-				for (int i = 0; i < processes.size(); ++i) {
-					CommandRunningContext p = processes.get(i);
-					
-					try {
-						lastStatus = p.res.waitAndGetResult();
-					} catch (Exception ex) {
-						wasException = true;
+				if (e.exception == null) {
+					if ((! e.copy) && (e.stageIndex == count - 1)) {
+						lastStatus = e.status;
+						if ((e.invalidStatus != null) && (failure == null)) {
+							lastInvalid = e.invalidStatus;
+						}
 					}
+					continue;
 				}
 				
-				if (wasException) {
-					throw new CommandException("One or more commands in the pipeline failed");
+				if (failure != null) {
+					continue;
 				}
 				
-				if (! validExitStatuses.contains(lastStatus)) {
-					if (! context.isIgnoreErrorStatus()) {
-						throw new InvalidExitStatusException(lastStatus);
+				if (e.copy) {
+					// a copying error is usually caused by a stage which has just failed, prefer reporting the stage
+					long deadline = System.currentTimeMillis() + COPY_FAILURE_GRACE_MILLIS;
+					long wait;
+					while ((remaining > 0) && ((wait = deadline - System.currentTimeMillis()) > 0)) {
+						StageEvent next;
+						try {
+							next = events.poll(wait, TimeUnit.MILLISECONDS);
+						} catch (InterruptedException ex) {
+							break;
+						}
+						if (next == null) {
+							break;
+						}
+						--remaining;
+						if (! next.copy) {
+							finished[next.stageIndex] = true;
+						}
+						if ((next.exception == null) && (! next.copy) && (next.stageIndex == count - 1)) {
+							lastStatus = next.status;
+							if ((next.invalidStatus != null) && (lastInvalid == null)) {
+								lastInvalid = next.invalidStatus;
+							}
+						}
+						if ((next.exception != null) && (! next.copy)) {
+							e = next;
+							break;
+						}
 					}
 				}
+				failure = e;
 				
-				return lastStatus;
+				// the previous stages are terminated at once, so the last stage gets the end of its input;
+				// it is terminated only if it does not finish in a while, so the output of the last stage which has already finished is not lost
+				for (int i = 0; i < count - 1; ++i) {
+					if (! finished[i]) {
+						processes.get(i).res.terminate();
+					}
+				}
+				lastStageDeadline = System.currentTimeMillis() + LAST_STAGE_GRACE_MILLIS;
 			}
-		};
-			
-		return result;
+		}
+		
+	}
+	
+	/**
+	 * Writes the resource usage of each stage and of the whole pipeline to the log and reports it to the listener.
+	 */
+	private void reportResourceUsage(CommandContext context, ResourceUsage resourceUsage) {
+		CommandListener listener = context.getListener();
+		if (listener != null) {
+			listener.resourcesMeasured(resourceUsage);
+		}
+		
+		try {
+			Writer logWriter = context.getLogWriter();
+			if (logWriter != null) {
+				synchronized(logWriter) {
+					logWriter.write("----------------------------\n");
+					logWriter.write("PIPELINE RESOURCES: " + toString() + '\n');
+					int stageIndex = 0;
+					for (ResourceUsage stageUsage : resourceUsage.getParts()) {
+						logWriter.write("  STAGE " + stageIndex + " (" + stageUsage.getName() + "): " + stageUsage + '\n');
+						++stageIndex;
+					}
+					logWriter.write("  TOTAL: " + resourceUsage + '\n');
+				}
+			}
+		} catch (IOException e) {
+			// nothing
+		}
+	}
+	
+	/**
+	 * Waits for a stage.
+	 * @param validate if the exit status of the stage has to be validated
+	 * @return exit status of the stage
+	 */
+	private static int waitForStage(CommandRunningContext stage, boolean validate) throws CommandException {
+		return validate ? stage.res.waitAndGetResult() : stage.res.waitForExitStatus();
+	}
+	
+	/**
+	 * Terminates the already started stages of a pipeline which could not be started completely and waits for them (their exit statuses are ignored).
+	 * @param processes started stages
+	 * @param copyRunnableThreads started threads copying the data between the stages
+	 */
+	private static void abandonStages(List<CommandRunningContext> processes, List<Thread> copyRunnableThreads) {
+		terminateAll(processes);
+		
+		if (! processes.isEmpty()) {
+			// nobody else is going to close the pipeline input and output
+			try {
+				processes.get(0).stdin.close();
+			} catch (IOException e) {
+				// nothing
+			}
+			try {
+				processes.get(processes.size() - 1).stdout.close();
+			} catch (IOException e) {
+				// nothing
+			}
+		}
+		
+		boolean interrupted = false;
+		for (Thread t : copyRunnableThreads) {
+			while (true) {
+				try {
+					t.join();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		
+		for (CommandRunningContext p : processes) {
+			try {
+				p.res.waitForExitStatus();
+			} catch (CommandException e) {
+				// nothing (the failure of the starting is reported)
+			}
+		}
+		
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Terminates all the stages.
+	 */
+	private static void terminateAll(List<CommandRunningContext> processes) {
+		for (CommandRunningContext p : processes) {
+			p.res.terminate();
+		}
+	}
+	
+	/**
+	 * Creates the exception describing the failed stage.
+	 * @param stageIndex index of the failed stage
+	 * @param cause exception thrown when waiting for the stage
+	 * @param stderr standard error output of the failed stage
+	 * @return exception to throw
+	 */
+	private CommandException stageFailure(int stageIndex, Throwable cause, byte[] stderr) {
+		if (cause instanceof InvalidExitStatusException) {
+			PipelineStageException e = new PipelineStageException(stageIndex, list.get(stageIndex).toString(), ((InvalidExitStatusException) cause).getStatus(), stderr);
+			e.initCause(cause);
+			return e;
+		}
+		return new CommandException("Pipeline stage " + stageIndex + " (" + list.get(stageIndex) + ") failed", cause);
 	}
 	
 	/**
@@ -159,4 +758,93 @@ public class Pipeline extends CompositeCommand {
 		return sb.toString();
 	}
 	
+	/**
+	 * Output of the pipeline in the pipefail mode. The output stream of the last stage is closed when the stage is terminated after a failure of another stage,
+	 * the reading ends then as if the output has ended (the failure is reported when the pipeline is waited for).
+	 */
+	private static class PipefailOutputStream extends FilterInputStream {
+		
+		private final PipefailMonitor monitor;
+		
+		public PipefailOutputStream(InputStream in, PipefailMonitor monitor) {
+			super(in);
+			this.monitor = monitor;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			try {
+				return super.read();
+			} catch (IOException e) {
+				if (monitor.failure != null) {
+					return -1;
+				}
+				throw e;
+			}
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			try {
+				return super.read(b, off, len);
+			} catch (IOException e) {
+				if (monitor.failure != null) {
+					return -1;
+				}
+				throw e;
+			}
+		}
+		
+	}
+	
+	/**
+	 * Finished stage or finished copying between two stages in the pipefail mode.
+	 */
+	private static class StageEvent {
+		
+		/**
+		 * If this is the copying to the stage (otherwise the stage itself).
+		 */
+		private final boolean copy;
+		
+		private final int stageIndex;
+		
+		private final int status;
+		
+		/**
+		 * Failure or null if successful.
+		 */
+		private final Throwable exception;
+		
+		/**
+		 * Invalid exit status of a finished stage which is not validated by waiting for it (the last one) or null.
+		 */
+		private final InvalidExitStatusException invalidStatus;
+		
+		private StageEvent(boolean copy, int stageIndex, int status, Throwable exception, InvalidExitStatusException invalidStatus) {
+			this.copy = copy;
+			this.stageIndex = stageIndex;
+			this.status = status;
+			this.exception = exception;
+			this.invalidStatus = invalidStatus;
+		}
+		
+		public static StageEvent copied(int stageIndex, Throwable exception) {
+			return new StageEvent(true, stageIndex, 0, exception, null);
+		}
+		
+		public static StageEvent exited(int stageIndex, int status) {
+			return new StageEvent(false, stageIndex, status, null, null);
+		}
+		
+		public static StageEvent exitedInvalid(int stageIndex, int status, InvalidExitStatusException invalidStatus) {
+			return new StageEvent(false, stageIndex, status, null, invalidStatus);
+		}
+		
+		public static StageEvent failed(int stageIndex, Throwable exception) {
+			return new StageEvent(false, stageIndex, 0, exception, null);
+		}
+		
+	}
+	
 }
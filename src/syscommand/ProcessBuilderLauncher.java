@@ -0,0 +1,57 @@
+package syscommand;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Default launcher starting the processes directly from the current java process using {@link ProcessBuilder}.
+ */
+public class ProcessBuilderLauncher implements ProcessLauncher {
+	
+	/**
+	 * Starts a process using {@link ProcessBuilder}.
+	 * @param commandLine command and arguments to execute
+	 * @param workingDir working directory of the process or null to use the working directory of the current java process
+	 * @param environment whole environment of the process or null to use the environment of the current java process (which avoids copying it)
+	 * @param stderrPolicy where the standard error output of the process goes
+	 * @return started process
+	 * @throws IOException if the process could not be started
+	 */
+	@Override
+	public Process launch(List<String> commandLine, File workingDir, Map<String, String> environment, StderrPolicy stderrPolicy) throws IOException {
+		return launch(commandLine, workingDir, environment, stderrPolicy, false);
+	}
+	
+	/**
+	 * Starts a process using {@link ProcessBuilder}, optionally with the standard output redirected to /dev/null by the operating system
+	 * (the output is not read then, {@link Process#getInputStream()} is at its end immediately).
+	 * @param commandLine command and arguments to execute
+	 * @param workingDir working directory of the process or null to use the working directory of the current java process
+	 * @param environment whole environment of the process or null to use the environment of the current java process (which avoids copying it)
+	 * @param stderrPolicy where the standard error output of the process goes (merged into /dev/null with the output for {@link StderrPolicy#MERGE})
+	 * @param discardOutput if the standard output is redirected to /dev/null
+	 * @return started process
+	 * @throws IOException if the process could not be started
+	 */
+	Process launch(List<String> commandLine, File workingDir, Map<String, String> environment, StderrPolicy stderrPolicy, boolean discardOutput) throws IOException {
+		ProcessBuilder processBuilder = new ProcessBuilder(commandLine);
+		if (workingDir != null) {
+			processBuilder.directory(workingDir);
+		}
+		if (environment != null) {
+			Map<String, String> e = processBuilder.environment();
+			e.clear();
+			e.putAll(environment);
+		}
+		stderrPolicy.applyTo(processBuilder);
+		if (discardOutput) {
+			processBuilder.redirectOutput(Redirect.to(StderrPolicy.NULL_FILE));
+		}
+		
+		return processBuilder.start();
+	}
+	
+}
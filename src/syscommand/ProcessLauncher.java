@@ -0,0 +1,26 @@
+package syscommand;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Starts the processes of the commands (see {@link CommandContext#setProcessLauncher(ProcessLauncher)}).
+ * Implementations: {@link ProcessBuilderLauncher} (default), {@link HelperProcessLauncher}, {@link FakeProcessLauncher}.
+ * Thread safety note: The launcher can be used by more commands running in different threads concurrently, so implementations must be thread safe.
+ */
+public interface ProcessLauncher {
+	
+	/**
+	 * Starts a process.
+	 * @param commandLine command and arguments to execute
+	 * @param workingDir working directory of the process or null to use the working directory of the current java process
+	 * @param environment whole environment of the process or null to use the environment of the current java process
+	 * @param stderrPolicy where the standard error output of the process goes ({@link Process#getErrorStream()} is used only if the policy reads it, see {@link StderrPolicy#isRead()})
+	 * @return started process
+	 * @throws IOException if the process could not be started
+	 */
+	Process launch(List<String> commandLine, File workingDir, Map<String, String> environment, StderrPolicy stderrPolicy) throws IOException;
+	
+}
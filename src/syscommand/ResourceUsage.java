@@ -0,0 +1,181 @@
+package syscommand;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resources used by a command (CPU time, peak memory, storage input/output) measured when resource accounting is enabled (see {@link CommandContext#beginResourceAccounting()}).
+ * The usage of a composite command (pipeline, sequence, parallel stage) is the aggregate of the usage of its parts, which are available by {@link #getParts()}.
+ * Immutable.
+ */
+public final class ResourceUsage {
+	
+	private final String name;
+	
+	private final boolean sampled;
+	
+	private final long userCpuNanos;
+	
+	private final long systemCpuNanos;
+	
+	private final long maxRssBytes;
+	
+	private final long readBytes;
+	
+	private final long writeBytes;
+	
+	private final List<ResourceUsage> parts;
+	
+	/**
+	 * Creates the usage of one process.
+	 * @param name command description
+	 * @param sampled if the values have been measured (false if the process could not be observed, the values are zeros then)
+	 * @param userCpuNanos CPU time spent in the user mode in nanoseconds
+	 * @param systemCpuNanos CPU time spent in the kernel mode in nanoseconds
+	 * @param maxRssBytes peak resident set size in bytes
+	 * @param readBytes number of bytes read from the storage
+	 * @param writeBytes number of bytes written to the storage
+	 */
+	public ResourceUsage(String name, boolean sampled, long userCpuNanos, long systemCpuNanos, long maxRssBytes, long readBytes, long writeBytes) {
+		this(name, sampled, userCpuNanos, systemCpuNanos, maxRssBytes, readBytes, writeBytes, Collections.<ResourceUsage>emptyList());
+	}
+	
+	private ResourceUsage(String name, boolean sampled, long userCpuNanos, long systemCpuNanos, long maxRssBytes, long readBytes, long writeBytes, List<ResourceUsage> parts) {
+		this.name = name;
+		this.sampled = sampled;
+		this.userCpuNanos = userCpuNanos;
+		this.systemCpuNanos = systemCpuNanos;
+		this.maxRssBytes = maxRssBytes;
+		this.readBytes = readBytes;
+		this.writeBytes = writeBytes;
+		this.parts = parts;
+	}
+	
+	/**
+	 * Creates the aggregate usage of parts running at the same time (e.g. pipeline stages). The peak memory is the sum of the peaks of the parts (an upper bound).
+	 * @param name command description
+	 * @param parts usage of the parts (null items are skipped)
+	 * @return aggregate usage
+	 */
+	public static ResourceUsage concurrent(String name, List<ResourceUsage> parts) {
+		return aggregate(name, parts, true);
+	}
+	
+	/**
+	 * Creates the aggregate usage of parts running one after another (e.g. sequence subcommands). The peak memory is the maximum of the peaks of the parts.
+	 * @param name command description
+	 * @param parts usage of the parts (null items are skipped)
+	 * @return aggregate usage
+	 */
+	public static ResourceUsage sequential(String name, List<ResourceUsage> parts) {
+		return aggregate(name, parts, false);
+	}
+	
+	private static ResourceUsage aggregate(String name, List<ResourceUsage> parts, boolean concurrent) {
+		List<ResourceUsage> nonNull = new ArrayList<ResourceUsage>(parts.size());
+		boolean sampled = false;
+		long userCpuNanos = 0;
+		long systemCpuNanos = 0;
+		long maxRssBytes = 0;
+		long readBytes = 0;
+		long writeBytes = 0;
+		for (ResourceUsage u : parts) {
+			if (u == null) {
+				continue;
+			}
+			nonNull.add(u);
+			sampled |= u.sampled;
+			userCpuNanos += u.userCpuNanos;
+			systemCpuNanos += u.systemCpuNanos;
+			maxRssBytes = concurrent ? (maxRssBytes + u.maxRssBytes) : Math.max(maxRssBytes, u.maxRssBytes);
+			readBytes += u.readBytes;
+			writeBytes += u.writeBytes;
+		}
+		return new ResourceUsage(name, sampled, userCpuNanos, systemCpuNanos, maxRssBytes, readBytes, writeBytes, Collections.unmodifiableList(nonNull));
+	}
+	
+	/**
+	 * Gets the description of the command.
+	 * @return command description
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Returns if the values have been measured. A process can not be observed if its identifier is unknown, if /proc is not available
+	 * or if it has exited before the first sample.
+	 * @return if the values have been measured (for an aggregate: if any of its parts has been measured)
+	 */
+	public boolean isSampled() {
+		return sampled;
+	}
+	
+	/**
+	 * Gets the CPU time spent in the user mode (including the waited-for children of the process).
+	 * @return user CPU time in nanoseconds
+	 */
+	public long getUserCpuNanos() {
+		return userCpuNanos;
+	}
+	
+	/**
+	 * Gets the CPU time spent in the kernel mode (including the waited-for children of the process).
+	 * @return system CPU time in nanoseconds
+	 */
+	public long getSystemCpuNanos() {
+		return systemCpuNanos;
+	}
+	
+	/**
+	 * Gets the peak resident set size.
+	 * @return maximum resident set size in bytes
+	 */
+	public long getMaxRssBytes() {
+		return maxRssBytes;
+	}
+	
+	/**
+	 * Gets the number of bytes read from the storage (read_bytes of /proc/&lt;pid&gt;/io).
+	 * @return number of bytes read
+	 */
+	public long getReadBytes() {
+		return readBytes;
+	}
+	
+	/**
+	 * Gets the number of bytes written to the storage (write_bytes of /proc/&lt;pid&gt;/io).
+	 * @return number of bytes written
+	 */
+	public long getWriteBytes() {
+		return writeBytes;
+	}
+	
+	/**
+	 * Gets the usage of the parts of a composite command (e.g. of each pipeline stage).
+	 * @return usage of the parts (empty for a single process)
+	 */
+	public List<ResourceUsage> getParts() {
+		return parts;
+	}
+	
+	/**
+	 * Gets the usage description (without the parts).
+	 * @return usage description
+	 */
+	@Override
+	public String toString() {
+		if (! sampled) {
+			return "not sampled";
+		}
+		return "user " + formatSeconds(userCpuNanos) + ", system " + formatSeconds(systemCpuNanos)
+			+ ", max RSS " + (maxRssBytes / 1024) + " KiB, read " + readBytes + " B, written " + writeBytes + " B";
+	}
+	
+	private static String formatSeconds(long nanos) {
+		long millis = nanos / 1000000;
+		return (millis / 1000) + "." + String.format("%03d", millis % 1000) + " s";
+	}
+	
+}
@@ -0,0 +1,191 @@
+package syscommand;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+
+import syscommand.exception.CommandException;
+import syscommand.internal.CommandRunningContext;
+
+/**
+ * Handle of a started command allowing to interact with it while it is running (see {@link CommandBase#start(CommandContext)}).
+ * Suitable for long-lived interactive commands (bc, sqlite3 etc.) which process more requests during one execution.
+ * Thread safety note: The input and the output of the command can be used from different threads, other methods should be called from one thread.
+ */
+public class RunningCommand implements Closeable {
+	
+	/**
+	 * Buffer size (in bytes) for reading the remaining output.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	/**
+	 * Streams and exit status waiting of the started command.
+	 */
+	private final CommandRunningContext current;
+	
+	/**
+	 * If the input of the command is provided by the input set by {@link CommandBase#input_string(String)}.
+	 */
+	private final boolean inputSet;
+	
+	/**
+	 * If the command has already finished (by waiting for its exit or by closing).
+	 */
+	private boolean finished = false;
+	
+	/**
+	 * Creates the handle.
+	 * @param current streams and exit status waiting of the started command
+	 * @param inputSet if the input of the command is already provided by the input set for the command
+	 */
+	RunningCommand(CommandRunningContext current, boolean inputSet) {
+		this.current = current;
+		this.inputSet = inputSet;
+	}
+	
+	/**
+	 * Gets the stream to write data to the command (to its standard input). Flush the stream to make sure the command receives the written data.
+	 * @return command input stream
+	 * @throws IllegalStateException if the input has been set for the command before starting it
+	 */
+	public OutputStream getStdin() {
+		if (inputSet) {
+			throw new IllegalStateException("Input already set");
+		}
+		
+		return current.stdin;
+	}
+	
+	/**
+	 * Gets the stream to read data from the command (from its standard output).
+	 * @return command output stream
+	 */
+	public InputStream getStdout() {
+		return current.stdout;
+	}
+	
+	/**
+	 * Gets the number of bytes which can be read from the command output without blocking.
+	 * @return number of available bytes
+	 * @throws IOException if the output could not be checked
+	 */
+	public int available() throws IOException {
+		return current.stdout.available();
+	}
+	
+	/**
+	 * Gets the data written by the command to its standard error output so far.
+	 * @return standard error output data
+	 */
+	public byte[] getStderr() {
+		return current.res.getStderr();
+	}
+	
+	/**
+	 * Gets the data written by the command to its standard error output so far as a string.
+	 * @return standard error output data (bytes are converted using UTF-8 encoding to string)
+	 */
+	public String getStderrString() {
+		try {
+			return new String(getStderr(), "UTF-8");
+		} catch (UnsupportedEncodingException u) {
+			throw new RuntimeException(u);
+		}
+	}
+	
+	/**
+	 * Gets the resources used by the processes of the command (see {@link CommandContext#beginResourceAccounting()}). Available after {@link #awaitExit()} has returned.
+	 * @return resource usage or null if it has not been measured
+	 */
+	public ResourceUsage getResourceUsage() {
+		return current.res.getResourceUsage();
+	}
+	
+	/**
+	 * Closes the command input, reads and ignores the remaining command output and waits for the command to exit.
+	 * @return exit status
+	 * @throws CommandException if the command running failed (this include input/output exceptions, invalid exit status, terminating etc.)
+	 * @throws IllegalStateException if the command has already finished
+	 */
+	public int awaitExit() throws CommandException {
+		if (finished) {
+			throw new IllegalStateException("Command already finished");
+		}
+		finished = true;
+		
+		if (! inputSet) {
+			try {
+				current.stdin.close();
+			} catch (IOException e) {
+				// nothing
+			}
+		}
+		
+		boolean outputSuccess = true;
+		try {
+			byte[] b = new byte[BUFFER_SIZE];
+			while (current.stdout.read(b) != -1) {
+				// ignoring the remaining output
+			}
+		} catch (IOException e) {
+			outputSuccess = false;
+		} finally {
+			try {
+				current.stdout.close();
+			} catch (IOException e) {
+				// nothing
+			}
+		}
+		
+		int status = current.res.waitAndGetResult();
+		
+		if (! outputSuccess) {
+			throw new CommandException("Error while copying data");
+		}
+		
+		return status;
+	}
+	
+	/**
+	 * Terminates the command without waiting for it (the output then ends). The handle still has to be finished by {@link #awaitExit()} or {@link #close()}.
+	 * Unlike the other methods, this can be called from any thread.
+	 */
+	void terminate() {
+		current.res.terminate();
+	}
+	
+	/**
+	 * Terminates the command if it is still running and closes its streams. Does nothing if the command has already finished.
+	 * The exit status is not validated and no exception is thrown for it.
+	 */
+	@Override
+	public void close() {
+		if (finished) {
+			return;
+		}
+		finished = true;
+		
+		current.res.terminate();
+		
+		try {
+			current.stdin.close();
+		} catch (IOException e) {
+			// nothing
+		}
+		try {
+			current.stdout.close();
+		} catch (IOException e) {
+			// nothing
+		}
+		
+		try {
+			current.res.waitAndGetResult();
+		} catch (CommandException e) {
+			// terminated
+		}
+	}
+	
+}
@@ -0,0 +1,294 @@
+package syscommand;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Specifies the scheduling priority, input/output scheduling class, CPU affinity and resource limits of a command
+ * (see {@link CommandContext#setScheduling(SchedulingPolicy)} and {@link SingleCommand#overrideScheduling(SchedulingPolicy)}).
+ * The settings are applied by the nice, ionice, taskset and prlimit commands prefixed to the command line (after sudo and before chroot).
+ * Each of them replaces itself by the next command (exec), so no additional process stays running.
+ * Immutable, the with* methods return a modified copy.
+ */
+public final class SchedulingPolicy {
+	
+	/**
+	 * Input/output scheduling class (see ionice).
+	 */
+	public enum IoClass {
+		/**
+		 * Real time class (the level is 0-7, 0 is the highest priority).
+		 */
+		REALTIME(1),
+		/**
+		 * Best effort class (the level is 0-7, 0 is the highest priority).
+		 */
+		BEST_EFFORT(2),
+		/**
+		 * Idle class (input/output only when no other process needs it, there is no level).
+		 */
+		IDLE(3);
+		
+		private final int number;
+		
+		private IoClass(int number) {
+			this.number = number;
+		}
+	}
+	
+	/**
+	 * Policy not changing anything (no prefix command is used).
+	 */
+	public static final SchedulingPolicy DEFAULT = new SchedulingPolicy(null, null, -1, null, Collections.<String, String>emptyMap());
+	
+	/**
+	 * Resources which can be limited by prlimit.
+	 */
+	private static final Set<String> LIMIT_RESOURCES = new HashSet<String>(Arrays.asList(
+		"as", "core", "cpu", "data", "fsize", "locks", "memlock", "msgqueue", "nice", "nofile", "nproc", "rss", "rtprio", "rttime", "sigpending", "stack"
+	));
+	
+	/**
+	 * Value of the limit meaning no limit.
+	 */
+	public static final long UNLIMITED = -1;
+	
+	/**
+	 * Niceness or null if it is not changed.
+	 */
+	private final Integer nice;
+	
+	/**
+	 * Input/output scheduling class or null if it is not changed.
+	 */
+	private final IoClass ioClass;
+	
+	/**
+	 * Input/output scheduling level or -1 if the default level of the class is used.
+	 */
+	private final int ioLevel;
+	
+	/**
+	 * CPU list (taskset format) or null if the affinity is not changed.
+	 */
+	private final String cpuList;
+	
+	/**
+	 * Resource limits (soft:hard values) by the resource names.
+	 */
+	private final Map<String, String> limits;
+	
+	private SchedulingPolicy(Integer nice, IoClass ioClass, int ioLevel, String cpuList, Map<String, String> limits) {
+		this.nice = nice;
+		this.ioClass = ioClass;
+		this.ioLevel = ioLevel;
+		this.cpuList = cpuList;
+		this.limits = limits;
+	}
+	
+	/**
+	 * Sets the niceness (nice -n).
+	 * @param niceness niceness from -20 (the highest priority, needs root) to 19 (the lowest priority)
+	 * @return modified policy
+	 */
+	public SchedulingPolicy withNice(int niceness) {
+		if ((niceness < -20) || (niceness > 19)) {
+			throw new IllegalArgumentException("Invalid niceness: " + niceness);
+		}
+		return new SchedulingPolicy(niceness, ioClass, ioLevel, cpuList, limits);
+	}
+	
+	/**
+	 * Sets the input/output scheduling class with its default level (ionice -c).
+	 * @param ioClass scheduling class
+	 * @return modified policy
+	 */
+	public SchedulingPolicy withIoClass(IoClass ioClass) {
+		return new SchedulingPolicy(nice, ioClass, -1, cpuList, limits);
+	}
+	
+	/**
+	 * Sets the input/output scheduling class and level (ionice -c -n).
+	 * @param ioClass scheduling class ({@link IoClass#REALTIME} or {@link IoClass#BEST_EFFORT})
+	 * @param level level from 0 (the highest priority) to 7 (the lowest priority)
+	 * @return modified policy
+	 */
+	public SchedulingPolicy withIoClass(IoClass ioClass, int level) {
+		if (ioClass == IoClass.IDLE) {
+			throw new IllegalArgumentException("Idle class has no level");
+		}
+		if ((level < 0) || (level > 7)) {
+			throw new IllegalArgumentException("Invalid level: " + level);
+		}
+		return new SchedulingPolicy(nice, ioClass, level, cpuList, limits);
+	}
+	
+	/**
+	 * Sets the CPU affinity (taskset -c).
+	 * @param cpus CPU numbers the command can run on
+	 * @return modified policy
+	 */
+	public SchedulingPolicy withCpuAffinity(int... cpus) {
+		if (cpus.length == 0) {
+			throw new IllegalArgumentException("No CPU specified");
+		}
+		StringBuilder sb = new StringBuilder();
+		for (int cpu : cpus) {
+			if (cpu < 0) {
+				throw new IllegalArgumentException("Invalid CPU: " + cpu);
+			}
+			if (sb.length() > 0) {
+				sb.append(',');
+			}
+			sb.append(cpu);
+		}
+		return new SchedulingPolicy(nice, ioClass, ioLevel, sb.toString(), limits);
+	}
+	
+	/**
+	 * Sets the CPU affinity (taskset -c).
+	 * @param cpuList CPU list in the taskset format (e.g. "0-3,8")
+	 * @return modified policy
+	 */
+	public SchedulingPolicy withCpuAffinity(String cpuList) {
+		if (! cpuList.matches("[0-9]+(-[0-9]+(:[0-9]+)?)?(,[0-9]+(-[0-9]+(:[0-9]+)?)?)*")) {
+			throw new IllegalArgumentException("Invalid CPU list: " + cpuList);
+		}
+		return new SchedulingPolicy(nice, ioClass, ioLevel, cpuList, limits);
+	}
+	
+	/**
+	 * Sets the soft and hard limit of a resource (prlimit).
+	 * @param resource resource name as the prlimit option without dashes (e.g. "nofile", "as", "cpu")
+	 * @param soft soft limit or {@link #UNLIMITED}
+	 * @param hard hard limit or {@link #UNLIMITED}
+	 * @return modified policy
+	 */
+	public SchedulingPolicy withLimit(String resource, long soft, long hard) {
+		if (! LIMIT_RESOURCES.contains(resource)) {
+			throw new IllegalArgumentException("Unknown resource: " + resource);
+		}
+		Map<String, String> newLimits = new TreeMap<String, String>(limits);
+		newLimits.put(resource, limitValue(soft) + ":" + limitValue(hard));
+		return new SchedulingPolicy(nice, ioClass, ioLevel, cpuList, Collections.unmodifiableMap(newLimits));
+	}
+	
+	/**
+	 * Sets both the soft and hard limit of a resource (prlimit).
+	 * @param resource resource name as the prlimit option without dashes (e.g. "nofile", "as", "cpu")
+	 * @param limit limit or {@link #UNLIMITED}
+	 * @return modified policy
+	 */
+	public SchedulingPolicy withLimit(String resource, long limit) {
+		return withLimit(resource, limit, limit);
+	}
+	
+	/**
+	 * Returns if the policy changes nothing.
+	 * @return if no prefix command is needed
+	 */
+	public boolean isEmpty() {
+		return (nice == null) && (ioClass == null) && (cpuList == null) && limits.isEmpty();
+	}
+	
+	/**
+	 * Gets the prefix commands applying the policy.
+	 * @return command line prefix (empty if the policy changes nothing)
+	 */
+	public List<String> toPrefix() {
+		List<String> l = new ArrayList<String>();
+		if (nice != null) {
+			l.add("nice");
+			l.add("-n");
+			l.add(nice.toString());
+		}
+		if (ioClass != null) {
+			l.add("ionice");
+			l.add("-c");
+			l.add(Integer.toString(ioClass.number));
+			if (ioLevel != -1) {
+				l.add("-n");
+				l.add(Integer.toString(ioLevel));
+			}
+		}
+		if (cpuList != null) {
+			l.add("taskset");
+			l.add("-c");
+			l.add(cpuList);
+		}
+		if (! limits.isEmpty()) {
+			l.add("prlimit");
+			for (Map.Entry<String, String> e : limits.entrySet()) {
+				l.add("--" + e.getKey() + "=" + e.getValue());
+			}
+		}
+		return l;
+	}
+	
+	/**
+	 * Gets the policy description.
+	 * @return policy description
+	 */
+	@Override
+	public String toString() {
+		List<String> l = new ArrayList<String>();
+		if (nice != null) {
+			l.add("nice " + nice);
+		}
+		if (ioClass != null) {
+			l.add("io " + ioClass + ((ioLevel != -1) ? " " + ioLevel : ""));
+		}
+		if (cpuList != null) {
+			l.add("cpus " + cpuList);
+		}
+		for (Map.Entry<String, String> e : limits.entrySet()) {
+			l.add("limit " + e.getKey() + "=" + e.getValue());
+		}
+		if (l.isEmpty()) {
+			return "DEFAULT";
+		}
+		StringBuilder sb = new StringBuilder();
+		for (String s : l) {
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append(s);
+		}
+		return sb.toString();
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		if (! (o instanceof SchedulingPolicy)) {
+			return false;
+		}
+		SchedulingPolicy other = (SchedulingPolicy) o;
+		return ((nice == null) ? (other.nice == null) : nice.equals(other.nice))
+			&& (ioClass == other.ioClass)
+			&& (ioLevel == other.ioLevel)
+			&& ((cpuList == null) ? (other.cpuList == null) : cpuList.equals(other.cpuList))
+			&& limits.equals(other.limits);
+	}
+	
+	@Override
+	public int hashCode() {
+		return toPrefix().hashCode();
+	}
+	
+	private static String limitValue(long value) {
+		if (value == UNLIMITED) {
+			return "unlimited";
+		}
+		if (value < 0) {
+			throw new IllegalArgumentException("Invalid limit: " + value);
+		}
+		return Long.toString(value);
+	}
+	
+}
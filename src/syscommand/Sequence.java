@@ -0,0 +1,578 @@
+package syscommand;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import syscommand.exception.CommandException;
+import syscommand.exception.InvalidExitStatusException;
+import syscommand.internal.CommandResultWaiting;
+import syscommand.internal.CommandRunningContext;
+import syscommand.internal.MarkerSplittingOutputStream;
+import syscommand.internal.NullOutputStream;
+import syscommand.internal.ResourceSampler;
+import syscommand.internal.RingBuffer;
+import syscommand.internal.ShellQuoting;
+import syscommand.internal.StreamCopyRunnable;
+
+/**
+ * Command which executes all its subcommands one after another (like shell commands joined by &amp;&amp;).
+ * The execution stops at the first subcommand which fails (exits with an invalid exit status or can not be executed).
+ * The output of the sequence is the output of all the executed subcommands, the subcommands get no input (data written to the input of the sequence are ignored).
+ * The exit status of the last subcommand is considered as an exit status of the sequence.
+ */
+public class Sequence extends CompositeCommand {
+	
+	/**
+	 * Buffer size (in bytes) for copying the output of the subcommands.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	/**
+	 * If the subcommands have to be executed by one shell process.
+	 */
+	private boolean fused = false;
+	
+	/**
+	 * Adds a subcommand to the end of the sequence.
+	 * @param command some command
+	 * @return this sequence
+	 */
+	public Sequence add(CommandBase command) {
+		list.add(command);
+		return this;
+	}
+	
+	/**
+	 * Adds a command with arguments specified by strings to the sequence. This is a helper method doing the same as {@link #add(CommandBase)} without the need to construct the {@link SingleCommand}.
+	 * @param commandAndArgs command string and arguments strings (each argument is one string)
+	 * @return this sequence
+	 */
+	public Sequence add(String... commandAndArgs) {
+		list.add(new SingleCommand(commandAndArgs));
+		return this;
+	}
+	
+	/**
+	 * Makes the sequence execute all its subcommands using one shell process (sh -c) instead of creating a process for each of them.
+	 * If all the subcommands use sudo, the shell itself is executed using sudo once. Environment changes are applied using the env command.
+	 * The exit statuses and standard error outputs of the subcommands are still logged and validated separately for each subcommand.
+	 * All the subcommands must be instances of {@link SingleCommand} (their input is not used) which do not override their running
+	 * (e.g. {@link syscommand.concrete.Mount} skipping itself when the directory is already mounted) and are not skipped by the incremental execution
+	 * (see {@link CommandContext#beginIncremental(StampStore)}), the fused sequence fails otherwise, because the shell script executes the command lines directly.
+	 * The standard error output policy of each subcommand is applied by a redirection in the script ({@link StderrPolicy#LOG} is logged as captured).
+	 * A subcommand whose working directory can not be entered fails with the exit status 1.
+	 * @return this sequence
+	 */
+	public Sequence fuse() {
+		fused = true;
+		return this;
+	}
+	
+	/**
+	 * Starts the execution of the subcommands.
+	 * @param context command context used for getting logging and execution environment properties (note that each {@link SingleCommand} which is a subcommand of the sequence can override these properties for its own execution)
+	 * @return command running context used to access the output of the subcommands and to wait for the sequence to finish
+	 * @throws CommandException if the command creating or running failed (this include input/output exceptions, invalid exit status, terminating etc.)
+	 */
+	@Override
+	protected CommandRunningContext run(CommandContext context) throws CommandException {
+		if (fused) {
+			return runFused(context);
+		} else {
+			return runSequentially(context);
+		}
+	}
+	
+	/**
+	 * Executes the subcommands one by one in a new thread.
+	 */
+	private CommandRunningContext runSequentially(final CommandContext context) throws CommandException {
+		RingBuffer output = new RingBuffer();
+		
+		final boolean accounting = context.isResourceAccounting();
+		final SequentialRunnable r = new SequentialRunnable(context, output.getOutputStream());
+		final Thread t = new Thread(r);
+		t.start();
+		
+		CommandRunningContext result = new CommandRunningContext();
+		result.stdin = new NullOutputStream();
+		result.stdout = output.getInputStream();
+		
+		result.res = new CommandResultWaiting() {
+			
+			@Override
+			public int waitAndGetResult() throws CommandException {
+				return checkExitStatus(context, waitForExitStatus());
+			}
+			
+			@Override
+			public int waitForExitStatus() throws CommandException {
+				try {
+					t.join();
+				} catch (InterruptedException e) {
+					throw new CommandException("Thread interrupted", e);
+				}
+				
+				if (r.failure != null) {
+					throw r.failure;
+				}
+				
+				return r.lastStatus;
+			}
+			
+			@Override
+			public void terminate() {
+				r.terminate();
+			}
+			
+			@Override
+			public byte[] getStderr() {
+				return r.getStderr();
+			}
+			
+			@Override
+			public ResourceUsage getResourceUsage() {
+				return accounting ? ResourceUsage.sequential(Sequence.this.toString(), r.resourceUsages) : null;
+			}
+			
+		};
+		
+		return result;
+	}
+	
+	/**
+	 * Compiles the subcommands into one shell script and executes it.
+	 * After each subcommand, the script writes a marker with the subcommand exit status to its standard error output.
+	 * The markers are removed and used to split the standard error output between the subcommands, the standard output is passed unchanged
+	 * (so it is not delayed by matching a marker).
+	 * Terminating the script terminates also the running subcommand.
+	 */
+	private CommandRunningContext runFused(final CommandContext context) throws CommandException {
+		final List<SingleCommand> commands = new ArrayList<SingleCommand>(list.size());
+		for (CommandBase command : list) {
+			if (! (command instanceof SingleCommand)) {
+				throw new CommandException("Only single commands can be fused: " + command);
+			}
+			if (SingleCommand.changesRunning(command.getClass())) {
+				throw new CommandException("Command changing its running (e.g. skipping itself) can not be fused: " + command);
+			}
+			if (((SingleCommand) command).isIncremental(context)) {
+				throw new CommandException("Command checking its stamp (incremental execution) can not be fused: " + command);
+			}
+			commands.add((SingleCommand) command);
+		}
+		
+		final int count = commands.size();
+		final boolean[] useSudo = new boolean[count];
+		final SchedulingPolicy[] schedulings = new SchedulingPolicy[count];
+		final File[] chrootDirs = new File[count];
+		final EnvironmentOverlay[] environments = new EnvironmentOverlay[count];
+		boolean allSudo = (count > 0);
+		for (int i = 0; i < count; ++i) {
+			useSudo[i] = commands.get(i).resolveSudo(context);
+			schedulings[i] = commands.get(i).resolveScheduling(context);
+			chrootDirs[i] = commands.get(i).resolveChrootDir(context);
+			environments[i] = commands.get(i).resolveEnvironment(context);
+			allSudo &= useSudo[i];
+		}
+		
+		String token = "SYSCOMMAND-" + UUID.randomUUID().toString().replace("-", "");
+		
+		StringBuilder script = new StringBuilder();
+		// the subcommands run in the background, so the terminated shell can terminate the running one (it keeps the output pipes open otherwise)
+		script.append("p=\n");
+		script.append("trap '[ -n \"$p\" ] && kill $p 2>/dev/null; exit 143' TERM\n");
+		for (int i = 0; i < count; ++i) {
+			SingleCommand command = commands.get(i);
+			File workingDir = command.resolveWorkingDir(context);
+			
+			script.append("( ");
+			if (workingDir != null) {
+				script.append("cd ").append(ShellQuoting.quote(workingDir.getPath())).append(" || exit 1; ");
+			}
+			script.append("exec ").append(ShellQuoting.quoteAll(command.buildCommandLine(useSudo[i] && ! allSudo, schedulings[i], chrootDirs[i], environments[i].isEmpty() ? null : environments[i])));
+			script.append(command.resolveStderrPolicy(context).toShellRedirection());
+			script.append(" ) </dev/null &\n");
+			script.append("p=$!\n");
+			script.append("wait $p\n");
+			script.append("s=$?\n");
+			script.append("p=\n");
+			script.append("printf '\\n%s %d %d\\n' ").append(token).append(' ').append(i).append(" $s >&2\n");
+			
+			if (! context.isIgnoreErrorStatus()) {
+				script.append("case $s in ");
+				boolean first = true;
+				for (Integer status : command.validExitStatuses) {
+					if (first) {
+						first = false;
+					} else {
+						script.append('|');
+					}
+					script.append(status);
+				}
+				script.append(") ;; *) exit $s ;; esac\n");
+			}
+		}
+		
+		List<String> shell = new ArrayList<String>(4);
+		if (allSudo) {
+			shell.add("sudo");
+		}
+		shell.add("sh");
+		shell.add("-c");
+		shell.add(script.toString());
+		
+		final Process process = SingleCommand.startProcess(context.getProcessLauncher(), shell, null, null, StderrPolicy.CAPTURE);
+		final ResourceSampler.Handle sampling = context.isResourceAccounting() ? ResourceSampler.start(process) : null;
+		
+		try {
+			process.getOutputStream().close();
+		} catch (IOException e) {
+			// nothing
+		}
+		
+		byte[] markerPrefix = null;
+		try {
+			markerPrefix = (token + " ").getBytes("UTF-8");
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		
+		RingBuffer output = new RingBuffer();
+		final StreamCopyRunnable stdoutCopy = new StreamCopyRunnable(process.getInputStream(), output.getOutputStream());
+		final Thread stdoutThread = new Thread(stdoutCopy);
+		stdoutThread.start();
+		
+		final StderrSplittingOutputStream stderrSplitter = new StderrSplittingOutputStream(markerPrefix);
+		final Thread stderrThread = new Thread(new StreamCopyRunnable(process.getErrorStream(), stderrSplitter));
+		stderrThread.start();
+		
+		CommandRunningContext result = new CommandRunningContext();
+		result.stdin = new NullOutputStream();
+		result.stdout = output.getInputStream();
+		
+		final CommandBase self = this;
+		result.res = new CommandResultWaiting() {
+			
+			private volatile ResourceUsage resourceUsage = null;
+			
+			@Override
+			public int waitAndGetResult() throws CommandException {
+				return checkExitStatus(context, waitForExitStatus());
+			}
+			
+			@Override
+			public int waitForExitStatus() throws CommandException {
+				int shellStatus;
+				try {
+					stdoutThread.join();
+					stderrThread.join();
+					shellStatus = process.waitFor();
+				} catch (InterruptedException e) {
+					throw new CommandException("Thread interrupted", e);
+				}
+				
+				if (sampling != null) {
+					// the shell waits for the subcommands, so their usage is included
+					resourceUsage = sampling.finish(self.toString());
+					CommandListener listener = context.getListener();
+					if (listener != null) {
+						listener.resourcesMeasured(resourceUsage);
+					}
+				}
+				
+				try {
+					Writer logWriter = context.getLogWriter();
+					if (logWriter != null) {
+						synchronized(logWriter) {
+							logWriter.write("----------------------------\n");
+							logWriter.write("FUSED SEQUENCE: " + self.toString() + '\n');
+							if (resourceUsage != null) {
+								logWriter.write("  RESOURCES: " + resourceUsage + '\n');
+							}
+						}
+					}
+				} catch (IOException e) {
+					// nothing
+				}
+				
+				List<Integer> statuses = stderrSplitter.getStatuses();
+				for (int i = 0; i < statuses.size(); ++i) {
+					commands.get(i).writeLog(context, useSudo[i], schedulings[i], chrootDirs[i], environments[i], statuses.get(i), stderrSplitter.getSegment(i), false, null);
+				}
+				
+				if (! context.isIgnoreErrorStatus()) {
+					for (int i = 0; i < statuses.size(); ++i) {
+						int status = statuses.get(i);
+						if (! commands.get(i).validExitStatuses.contains(status)) {
+							throw new InvalidExitStatusException(status);
+						}
+					}
+				}
+				
+				if (! stdoutCopy.isSuccess()) {
+					throw new CommandException("Error while copying data");
+				}
+				
+				if (statuses.size() < count) {
+					throw new CommandException("Fused sequence terminated unexpectedly with exit status " + shellStatus);
+				}
+				
+				int lastStatus = (count > 0) ? statuses.get(count - 1) : 0;
+				return lastStatus;
+			}
+			
+			@Override
+			public void terminate() {
+				process.destroy();
+			}
+			
+			@Override
+			public byte[] getStderr() {
+				return stderrSplitter.getAll();
+			}
+			
+			@Override
+			public ResourceUsage getResourceUsage() {
+				return resourceUsage;
+			}
+			
+		};
+		
+		return result;
+	}
+	
+	/**
+	 * Returns the sequence description as a string. The strings contains string descriptions for all the subcommands delimited by &amp;&amp;.
+	 * @return sequence description string
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		boolean first = true;
+		for (CommandBase c : list) {
+			if (first) {
+				first = false;
+			} else {
+				sb.append(" && ");
+			}
+			sb.append(c.toString());
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Executes the subcommands one by one, copies their output to the provided stream and stops at the first failure.
+	 */
+	private class SequentialRunnable implements Runnable {
+		
+		private final CommandContext context;
+		
+		private final OutputStream os;
+		
+		/**
+		 * Exit status of the last executed subcommand.
+		 */
+		private int lastStatus = 0;
+		
+		/**
+		 * Failure which stopped the execution or null if all the subcommands have been executed successfully.
+		 */
+		private CommandException failure = null;
+		
+		/**
+		 * Subcommand being executed.
+		 */
+		private volatile CommandRunningContext current = null;
+		
+		/**
+		 * If the execution has been terminated.
+		 */
+		private volatile boolean terminated = false;
+		
+		/**
+		 * Resources used by the finished subcommands.
+		 */
+		private final List<ResourceUsage> resourceUsages = new ArrayList<ResourceUsage>();
+		
+		/**
+		 * Standard error output of the finished subcommands.
+		 */
+		private final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+		
+		public SequentialRunnable(CommandContext context, OutputStream os) {
+			this.context = context;
+			this.os = os;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				Writer logWriter = context.getLogWriter();
+				if (logWriter != null) {
+					synchronized(logWriter) {
+						logWriter.write("----------------------------\n");
+						logWriter.write("SEQUENCE: " + Sequence.this.toString() + '\n');
+					}
+				}
+			} catch (IOException e) {
+				// nothing
+			}
+			
+			try {
+				byte[] b = new byte[BUFFER_SIZE];
+				for (CommandBase command : list) {
+					if (terminated) {
+						throw new CommandException("Sequence terminated");
+					}
+					
+					CommandRunningContext current = command.run(context);
+					this.current = current;
+					if (terminated) {
+						current.res.terminate();
+					}
+					
+					try {
+						current.stdin.close();
+					} catch (IOException e) {
+						// nothing
+					}
+					
+					IOException copyException = null;
+					try {
+						copy(current.stdout, os, b);
+					} catch (IOException e) {
+						copyException = e;
+					} finally {
+						try {
+							current.stdout.close();
+						} catch (IOException e) {
+							// nothing
+						}
+					}
+					
+					if (copyException != null) {
+						try {
+							current.res.waitAndGetResult();
+						} catch (CommandException e) {
+							// the copying error is reported
+						}
+						throw new CommandException("Error while copying data", copyException);
+					}
+					
+					try {
+						lastStatus = current.res.waitAndGetResult();
+					} finally {
+						byte[] currentStderr = current.res.getStderr();
+						stderr.write(currentStderr, 0, currentStderr.length);
+						resourceUsages.add(current.res.getResourceUsage());
+						this.current = null;
+					}
+				}
+			} catch (CommandException e) {
+				failure = e;
+			} catch (RuntimeException e) {
+				failure = new CommandException("Sequence failed: " + Sequence.this, e);
+			} finally {
+				try {
+					os.close();
+				} catch (IOException e) {
+					// nothing
+				}
+			}
+		}
+		
+		/**
+		 * Terminates the subcommand being executed and stops the execution of the next subcommands.
+		 */
+		public void terminate() {
+			terminated = true;
+			CommandRunningContext c = current;
+			if (c != null) {
+				c.res.terminate();
+			}
+		}
+		
+		/**
+		 * Gets the standard error output of the finished subcommands and of the subcommand being executed.
+		 */
+		public byte[] getStderr() {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			byte[] b = stderr.toByteArray();
+			baos.write(b, 0, b.length);
+			CommandRunningContext c = current;
+			if (c != null) {
+				b = c.res.getStderr();
+				baos.write(b, 0, b.length);
+			}
+			return baos.toByteArray();
+		}
+		
+		private void copy(InputStream is, OutputStream os, byte[] b) throws IOException {
+			int partLen;
+			while ((partLen = is.read(b)) != -1) {
+				os.write(b, 0, partLen);
+			}
+		}
+		
+	}
+	
+	/**
+	 * Splits the standard error output of the fused sequence into segments (one segment for each executed subcommand) and collects the exit statuses from the markers.
+	 */
+	private static class StderrSplittingOutputStream extends MarkerSplittingOutputStream {
+		
+		private final List<ByteArrayOutputStream> segments = new ArrayList<ByteArrayOutputStream>();
+		
+		/**
+		 * Exit statuses of the executed subcommands.
+		 */
+		private final List<Integer> statuses = new ArrayList<Integer>();
+		
+		public StderrSplittingOutputStream(byte[] markerPrefix) {
+			super(markerPrefix);
+			segments.add(new ByteArrayOutputStream());
+		}
+		
+		@Override
+		protected synchronized OutputStream getTarget() {
+			return segments.get(segments.size() - 1);
+		}
+		
+		@Override
+		protected synchronized void markerFound(String text) throws IOException {
+			String[] parts = text.split(" ");
+			if (parts.length != 2) {
+				throw new IOException("Invalid marker: " + text);
+			}
+			statuses.add(Integer.parseInt(parts[1]));
+			segments.add(new ByteArrayOutputStream());
+		}
+		
+		public synchronized List<Integer> getStatuses() {
+			return new ArrayList<Integer>(statuses);
+		}
+		
+		public synchronized byte[] getSegment(int index) {
+			return segments.get(index).toByteArray();
+		}
+		
+		public synchronized byte[] getAll() {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			for (ByteArrayOutputStream segment : segments) {
+				byte[] b = segment.toByteArray();
+				baos.write(b, 0, b.length);
+			}
+			return baos.toByteArray();
+		}
+		
+	}
+	
+}
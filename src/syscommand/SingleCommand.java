@@ -3,15 +3,28 @@ package syscommand;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import syscommand.exception.CommandException;
-import syscommand.exception.InvalidExitStatusException;
 import syscommand.internal.CommandResultWaiting;
 import syscommand.internal.CommandRunningContext;
+import syscommand.internal.LineLoggingRunnable;
+import syscommand.internal.NullOutputStream;
+import syscommand.internal.ResourceSampler;
+import syscommand.internal.SharedExecution;
+import syscommand.internal.ShellQuoting;
 import syscommand.internal.StreamCopyRunnable;
 
 /**
@@ -19,6 +32,21 @@ import syscommand.internal.StreamCopyRunnable;
  */
 public class SingleCommand extends CommandBase {
 	
+	/**
+	 * Buffer size (in bytes) for reading the standard error output (it is usually small).
+	 */
+	private static final int STDERR_BUFFER_SIZE = 8 * 1024;
+	
+	/**
+	 * Size (in bytes) of a pointer in the argument and environment arrays passed to a process (64-bit systems).
+	 */
+	private static final int POINTER_SIZE = 8;
+	
+	/**
+	 * Cached results of checking if the command classes override the running (see {@link #changesRunning(Class)}).
+	 */
+	private static final Map<Class<?>, Boolean> RUNNING_CHANGES = new ConcurrentHashMap<Class<?>, Boolean>();
+	
 	/**
 	 * Command (first string in the list) and arguments (other strings).
 	 */
@@ -62,6 +90,43 @@ public class SingleCommand extends CommandBase {
 	 */
 	protected boolean overrideWorkingDir_disable = false;
 	
+	/**
+	 * Changes of the environment variables for this command (applied after the changes from the command context).
+	 */
+	protected EnvironmentOverlay overrideEnvironment = EnvironmentOverlay.EMPTY;
+	
+	/**
+	 * Standard error output policy override for this command.
+	 * If null, the policy from the command context is used.
+	 */
+	protected StderrPolicy overrideStderrPolicy = null;
+	
+	/**
+	 * Scheduling policy override for this command.
+	 * If null, the policy from the command context is used.
+	 */
+	protected SchedulingPolicy overrideScheduling = null;
+	
+	/**
+	 * Last combination of the context environment changes with the changes of this command (cached, so it is not combined again for each execution).
+	 */
+	private volatile CombinedEnvironment combinedEnvironment = null;
+	
+	/**
+	 * Files read by this command (see {@link #declareInputs(File...)}).
+	 */
+	private List<File> declaredInputs = new LinkedList<File>();
+	
+	/**
+	 * Files written by this command (see {@link #declareOutputs(File...)}).
+	 */
+	private List<File> declaredOutputs = new LinkedList<File>();
+	
+	/**
+	 * If repeating this command after it has been (partially) done has the same result (see {@link #declareIdempotent()}).
+	 */
+	private boolean idempotent = false;
+	
 	/**
 	 * Creates new single command. The command is not yet specified and the argument list is empty.
 	 */
@@ -274,6 +339,98 @@ public class SingleCommand extends CommandBase {
 		return this;
 	}
 	
+	/**
+	 * Sets an environment variable for this command (in addition to the environment changes from the command context).
+	 * @param name variable name
+	 * @param value variable value
+	 * @return this command
+	 */
+	public CommandBase overrideEnv_set(String name, String value) {
+		overrideEnvironment = overrideEnvironment.withSet(name, value);
+		return this;
+	}
+	
+	/**
+	 * Unsets an environment variable for this command (in addition to the environment changes from the command context).
+	 * @param name variable name
+	 * @return this command
+	 */
+	public CommandBase overrideEnv_unset(String name) {
+		overrideEnvironment = overrideEnvironment.withUnset(name);
+		return this;
+	}
+	
+	/**
+	 * Clears the environment of this command to the minimal one regardless of the environment changes from the command context (see {@link EnvironmentOverlay#MINIMAL_VARIABLES}).
+	 * Variables set afterwards are added to the minimal environment.
+	 * @return this command
+	 */
+	public CommandBase overrideEnv_clear() {
+		overrideEnvironment = overrideEnvironment.withClear();
+		return this;
+	}
+	
+	/**
+	 * Overrides the policy for the standard error output of this command.
+	 * @param stderrPolicy policy to use regardless of the policy in the command context
+	 * @return this command
+	 */
+	public CommandBase overrideStderr(StderrPolicy stderrPolicy) {
+		overrideStderrPolicy = stderrPolicy;
+		return this;
+	}
+	
+	/**
+	 * Overrides the scheduling policy (priority, input/output class, CPU affinity, resource limits) of this command.
+	 * @param scheduling policy to use regardless of the policy in the command context ({@link SchedulingPolicy#DEFAULT} to not change anything)
+	 * @return this command
+	 */
+	public CommandBase overrideScheduling(SchedulingPolicy scheduling) {
+		overrideScheduling = scheduling;
+		return this;
+	}
+	
+	/**
+	 * Declares the files read by this command. When the incremental execution is set (see {@link CommandContext#beginIncremental(StampStore)}),
+	 * their modification times and sizes are a part of the stamp of the command, so a change of an input causes the execution of the command.
+	 * @param files input files (as used by the command - relative to its working directory, inside its chroot directory)
+	 * @return this command
+	 */
+	public SingleCommand declareInputs(File... files) {
+		declaredInputs.addAll(Arrays.asList(files));
+		return this;
+	}
+	
+	/**
+	 * Declares the files written by this command. When the incremental execution is set (see {@link CommandContext#beginIncremental(StampStore)}),
+	 * the command is skipped if all its outputs exist unchanged since its last successful execution with the same command line and inputs.
+	 * A command without declared outputs is always executed.
+	 * @param files output files (as used by the command - relative to its working directory, inside its chroot directory)
+	 * @return this command
+	 */
+	public SingleCommand declareOutputs(File... files) {
+		declaredOutputs.addAll(Arrays.asList(files));
+		return this;
+	}
+	
+	/**
+	 * Declares that repeating this command after it has been (partially) done has the same result (e.g. rm -f, mkdir -p).
+	 * Only the commands of a failed batch which are all idempotent are executed again alone by {@link BatchExecutor}.
+	 * @return this command
+	 */
+	public SingleCommand declareIdempotent() {
+		idempotent = true;
+		return this;
+	}
+	
+	/**
+	 * Returns if this command has been declared idempotent (see {@link #declareIdempotent()}).
+	 * @return if repeating this command is safe
+	 */
+	boolean isIdempotent() {
+		return idempotent;
+	}
+	
 	/**
 	 * Single command creation and running.
 	 * @param context command context used for getting logging and execution environment properties (if not overridden by this command settings) 
@@ -281,97 +438,731 @@ public class SingleCommand extends CommandBase {
 	 * @throws CommandException if the command creating or running failed (this include input/output exceptions, invalid exit status, terminating etc.)
 	 */
 	@Override
-	protected CommandRunningContext run(final CommandContext context) throws CommandException {
-		List<String> l = new LinkedList<String>();
+	protected CommandRunningContext run(CommandContext context) throws CommandException {
+		return runProcess(context, false);
+	}
+	
+	/**
+	 * Runs the command with its output redirected to /dev/null (if it is started by {@link ProcessBuilderLauncher}, otherwise the output is read and ignored).
+	 * The command is coalesced with an identical running command instead if coalescing is set in the context (see {@link CommandContext#beginSingleFlight(SingleFlightGroup)}),
+	 * a command class changing the running is run by {@link #runWithoutInput(CommandContext)}.
+	 * @param context command context used for getting logging and execution environment properties (if not overridden by this command settings) 
+	 * @return command running context used to access input and output streams and to wait for the command to exit
+	 * @throws CommandException if the command creating or running failed (this include input/output exceptions, invalid exit status, terminating etc.)
+	 */
+	@Override
+	protected CommandRunningContext runWithoutInputDiscardingOutput(CommandContext context) throws CommandException {
+		if (changesRunning(getClass()) || ((context.getSingleFlightGroup() != null) && (! isIncremental(context)))) {
+			return runWithoutInput(context);
+		}
+		return runProcess(context, true);
+	}
+	
+	/**
+	 * Runs the command whose output is not going to be read (e.g. the last stage of a pipeline run by {@link #run_noout(CommandContext)}).
+	 * The output is redirected to /dev/null if the process is started by {@link ProcessBuilderLauncher}. A command class changing the running is run normally.
+	 * @param context command context
+	 * @return command running context ({@link CommandRunningContext#outputDiscarded} tells if the output has been redirected)
+	 * @throws CommandException if the command creating or running failed
+	 */
+	CommandRunningContext runDiscardingOutput(CommandContext context) throws CommandException {
+		if (changesRunning(getClass())) {
+			return run(context);
+		}
+		return runProcess(context, true);
+	}
+	
+	/**
+	 * Starts the process of the command (or skips it when it is up to date, see {@link CommandContext#beginIncremental(StampStore)}).
+	 * @param context command context
+	 * @param discardOutput if the output can be redirected to /dev/null
+	 * @return command running context
+	 * @throws CommandException if the command creating or running failed
+	 */
+	private CommandRunningContext runProcess(final CommandContext context, boolean discardOutput) throws CommandException {
+		final boolean useSudo = resolveSudo(context);
+		final File chrootDir = resolveChrootDir(context);
+		final SchedulingPolicy scheduling = resolveScheduling(context);
+		final File workingDir = resolveWorkingDir(context);
+		final EnvironmentOverlay environment = resolveEnvironment(context);
 		
-		final boolean useSudo = (overrideSudo != null) ? overrideSudo : context.isSudo();
-		final File chrootDir = (overrideChroot_disable) ? null : ((overrideChroot_enable != null) ? overrideChroot_enable : context.getChrootDir());
-		final File workingDir = (overrideWorkingDir_disable) ? null : ((overrideWorkingDir_enable != null) ? overrideWorkingDir_enable : context.getWorkingDir());
+		// sudo and chroot do not pass the environment, so it is set by the env command then
+		final boolean envCommand = (useSudo || (chrootDir != null)) && (! environment.isEmpty());
 		
-		if (useSudo) {
-			l.add("sudo");
+		final StampStore stampStore = isIncremental(context) ? context.getStampStore() : null;
+		final String stampKey;
+		final String stampInputs;
+		if (stampStore != null) {
+			stampKey = ShellQuoting.quoteAll(buildCommandLine(useSudo, scheduling, chrootDir, environment.isEmpty() ? null : environment))
+				+ ((workingDir != null) ? " in " + workingDir.getPath() : "");
+			try {
+				stampInputs = stampStore.describeInputs(resolveHostPaths(context, declaredInputs));
+				String stamp = stampStore.read(stampKey);
+				if (stamp != null) {
+					String outputs = StampStore.describeOutputs(resolveHostPaths(context, declaredOutputs));
+					if ((outputs != null) && stamp.equals(StampStore.createStamp(stampKey, stampInputs, outputs))) {
+						return skip(context, "up to date");
+					}
+					// the outdated stamp is not needed anymore (a failed execution leaves no stamp)
+					stampStore.remove(stampKey);
+				}
+			} catch (IOException e) {
+				throw new CommandException("Unable to check the stamp of the command", e);
+			}
+		} else {
+			stampKey = null;
+			stampInputs = null;
 		}
 		
-		if (chrootDir != null) {
-			l.add("sudo");
-			l.add("chroot");
-			l.add(chrootDir.getPath());
-		}
+		final CommandListener listener = context.getListener();
+		long startStart = (listener != null) ? System.nanoTime() : 0;
 		
-		l.addAll(commandAndArgs);
-		l.addAll(lastArgs);
+		final StderrPolicy stderrPolicy = resolveStderrPolicy(context);
 		
-		ProcessBuilder processBuilder = new ProcessBuilder(l);
-		if (workingDir != null) {
-			processBuilder.directory(workingDir);
+		// a subclass of the launcher could start the process differently
+		boolean redirectOutput = discardOutput && (context.getProcessLauncher().getClass() == ProcessBuilderLauncher.class);
+		List<String> commandLine = buildCommandLine(useSudo, scheduling, chrootDir, envCommand ? environment : null);
+		Map<String, String> processEnvironment = (envCommand || environment.isEmpty()) ? null : environment.resolve();
+		final Process process_f;
+		if (redirectOutput) {
+			try {
+				process_f = ((ProcessBuilderLauncher) context.getProcessLauncher()).launch(commandLine, workingDir, processEnvironment, stderrPolicy, true);
+			} catch (IOException e) {
+				throw new CommandException("Unable to start process builder", e);
+			}
+		} else {
+			process_f = startProcess(context.getProcessLauncher(), commandLine, workingDir, processEnvironment, stderrPolicy);
 		}
 		
-		Process process = null;
-		try {
-			process = processBuilder.start();
-		} catch (IOException e) {
-			throw new CommandException("Unable to start process builder", e);
+		if (listener != null) {
+			listener.processStarted(toString(), System.nanoTime() - startStart);
 		}
 		
-		final Process process_f = process;
+		final ResourceSampler.Handle sampling = context.isResourceAccounting() ? ResourceSampler.start(process_f) : null;
 		
 		CommandRunningContext result = new CommandRunningContext();
 		result.stdin = process_f.getOutputStream();
 		result.stdout = process_f.getInputStream();
+		result.outputDiscarded = redirectOutput;
 		
 		// stderr
-		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		StreamCopyRunnable r = new StreamCopyRunnable(process_f.getErrorStream(), baos);
-		new Thread(r).start();
+		final ByteArrayOutputStream baos = (stderrPolicy.getType() == StderrPolicy.Type.CAPTURE) ? new ByteArrayOutputStream() : null;
+		final Thread stderrThread = startStderrReading(context, process_f, stderrPolicy, baos);
 		
-		final CommandBase self = this;
 		result.res = new CommandResultWaiting() {
 			
+			private volatile ResourceUsage resourceUsage = null;
+			
 			@Override
 			public int waitAndGetResult() throws CommandException {
+				return checkExitStatus(context, waitForExitStatus());
+			}
+			
+			@Override
+			public int waitForExitStatus() throws CommandException {
+				long waitStart = (listener != null) ? System.nanoTime() : 0;
 				int exitStatus;
 				try {
 					exitStatus = process_f.waitFor();
+					if (stderrThread != null) {
+						stderrThread.join();
+					}
 				} catch (InterruptedException e) {
 					throw new CommandException("Thread interrupted", e);
 				}
 				
-				try {
-					Writer logWriter = context.getLogWriter();
-					if (logWriter != null) {
-						synchronized(logWriter) {
-							context.getLogWriter().write("----------------------------\n");
-							context.getLogWriter().write("  COMMAND: " + self.toString() + '\n');
-							if (useSudo) {
-								context.getLogWriter().write("  WITH SUDO" + '\n');
-							}
-							if (chrootDir != null) {
-								context.getLogWriter().write("  WITH CHROOT: " + chrootDir.getPath() + '\n');
-							}
-							context.getLogWriter().write("  RETURNS: " + exitStatus + '\n');
-							context.getLogWriter().write("-------\n");
-							context.getLogWriter().write(new String(baos.toByteArray(), "UTF-8"));
-							context.getLogWriter().write("-------\n");
-						}
+				if (sampling != null) {
+					resourceUsage = sampling.finish(SingleCommand.this.toString());
+				}
+				
+				if (listener != null) {
+					listener.processExited(SingleCommand.this.toString(), exitStatus, System.nanoTime() - waitStart);
+					if (resourceUsage != null) {
+						listener.resourcesMeasured(resourceUsage);
 					}
-				} catch (IOException e) {
-					// nothing
 				}
 				
-				if (! validExitStatuses.contains(exitStatus)) {
-					if (! context.isIgnoreErrorStatus()) {
-						throw new InvalidExitStatusException(exitStatus);
+				writeLog(context, useSudo, scheduling, chrootDir, environment, exitStatus, (baos != null) ? baos.toByteArray() : new byte[0], false, resourceUsage);
+				
+				if ((stampStore != null) && validExitStatuses.contains(exitStatus)) {
+					writeStamp(context, stampStore, stampKey, stampInputs);
+				}
+				
+				return exitStatus;
+			}
+			
+			@Override
+			public void terminate() {
+				process_f.destroy();
+			}
+			
+			@Override
+			public byte[] getStderr() {
+				return (baos != null) ? baos.toByteArray() : new byte[0];
+			}
+			
+			@Override
+			public ResourceUsage getResourceUsage() {
+				return resourceUsage;
+			}
+			
+		};
+		
+		return result;
+	}
+	
+	/**
+	 * Runs the command without input. If coalescing of identical commands is set in the context (see {@link CommandContext#beginSingleFlight(SingleFlightGroup)}),
+	 * attaches to an identical running command or starts a new shared process.
+	 * @param context command context used for getting logging and execution environment properties (if not overridden by this command settings) 
+	 * @return command running context used to access input and output streams and to wait for the command to exit
+	 * @throws CommandException if the command creating or running failed (this include input/output exceptions, invalid exit status, terminating etc.)
+	 */
+	@Override
+	protected CommandRunningContext runWithoutInput(final CommandContext context) throws CommandException {
+		final SingleFlightGroup group = context.getSingleFlightGroup();
+		// a command skipped or stamped by the incremental execution changes the system state, so it is not coalesced
+		if ((group == null) || isIncremental(context)) {
+			return run(context);
+		}
+		
+		final boolean useSudo = resolveSudo(context);
+		final File chrootDir = resolveChrootDir(context);
+		final SchedulingPolicy scheduling = resolveScheduling(context);
+		final File workingDir = resolveWorkingDir(context);
+		final EnvironmentOverlay environment = resolveEnvironment(context);
+		
+		final boolean envCommand = (useSudo || (chrootDir != null)) && (! environment.isEmpty());
+		final List<String> commandLine = buildCommandLine(useSudo, scheduling, chrootDir, envCommand ? environment : null);
+		final StderrPolicy stderrPolicy = resolveStderrPolicy(context);
+		
+		final List<Object> key = Arrays.<Object>asList(commandLine, workingDir, environment, stderrPolicy);
+		final SharedExecution execution = group.get(key);
+		final SharedExecution.Participant participant = execution.attach();
+		if (participant == null) {
+			// the running identical command has already dropped the beginning of its output
+			return run(context);
+		}
+		final boolean first = participant.isFirst();
+		
+		if (first) {
+			final CommandListener listener = context.getListener();
+			long startStart = (listener != null) ? System.nanoTime() : 0;
+			
+			final Process process;
+			try {
+				process = startProcess(context.getProcessLauncher(), commandLine, workingDir, (envCommand || environment.isEmpty()) ? null : environment.resolve(), stderrPolicy);
+			} catch (CommandException e) {
+				group.remove(key, execution);
+				execution.startFailed(e);
+				throw e;
+			}
+			
+			if (listener != null) {
+				listener.processStarted(toString(), System.nanoTime() - startStart);
+			}
+			
+			// no input for the shared process
+			try {
+				process.getOutputStream().close();
+			} catch (IOException e) {
+				// nothing
+			}
+			
+			ByteArrayOutputStream baos = (stderrPolicy.getType() == StderrPolicy.Type.CAPTURE) ? new ByteArrayOutputStream() : null;
+			final Thread stderrThread = startStderrReading(context, process, stderrPolicy, baos);
+			
+			execution.started(process, baos);
+			
+			final ResourceSampler.Handle sampling = context.isResourceAccounting() ? ResourceSampler.start(process) : null;
+			
+			new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					StreamCopyRunnable r = new StreamCopyRunnable(process.getInputStream(), execution.getOutputSink());
+					r.run();
+					
+					long waitStart = (listener != null) ? System.nanoTime() : 0;
+					int exitStatus;
+					try {
+						exitStatus = process.waitFor();
+						if (stderrThread != null) {
+							stderrThread.join();
+						}
+					} catch (InterruptedException e) {
+						group.remove(key, execution);
+						execution.failed(e);
+						return;
+					}
+					
+					ResourceUsage resourceUsage = (sampling != null) ? sampling.finish(SingleCommand.this.toString()) : null;
+					execution.setResourceUsage(resourceUsage);
+					
+					if (listener != null) {
+						listener.processExited(SingleCommand.this.toString(), exitStatus, System.nanoTime() - waitStart);
+						if (resourceUsage != null) {
+							listener.resourcesMeasured(resourceUsage);
+						}
+					}
+					
+					group.remove(key, execution);
+					if (r.isSuccess()) {
+						execution.exited(exitStatus);
+					} else {
+						execution.failed(r.getException());
 					}
 				}
 				
+			}).start();
+		} else {
+			execution.awaitStarted();
+		}
+		
+		CommandRunningContext result = new CommandRunningContext();
+		result.stdin = new NullOutputStream();
+		result.stdout = participant;
+		
+		result.res = new CommandResultWaiting() {
+			
+			@Override
+			public int waitAndGetResult() throws CommandException {
+				return checkExitStatus(context, waitForExitStatus());
+			}
+			
+			@Override
+			public int waitForExitStatus() throws CommandException {
+				int exitStatus = execution.awaitExit();
+				
+				writeLog(context, useSudo, scheduling, chrootDir, environment, exitStatus, execution.getStderr(), ! first, getResourceUsage());
+				
 				return exitStatus;
 			}
 			
+			@Override
+			public void terminate() {
+				participant.detach();
+			}
+			
+			@Override
+			public byte[] getStderr() {
+				return execution.getStderr();
+			}
+			
+			@Override
+			public ResourceUsage getResourceUsage() {
+				// the usage is reported only by the participant which started the process
+				return first ? execution.getResourceUsage() : null;
+			}
+			
 		};
 		
 		return result;
 	}
 	
+	/**
+	 * Resolves if this command has to be executed using sudo (the command setting overrides the context setting).
+	 * @param context command context
+	 * @return if sudo has to be used
+	 */
+	protected boolean resolveSudo(CommandContext context) {
+		return (overrideSudo != null) ? overrideSudo : context.isSudo();
+	}
+	
+	/**
+	 * Resolves the chroot directory for this command (the command setting overrides the context setting).
+	 * @param context command context
+	 * @return chroot directory or null if chroot is not used
+	 */
+	protected File resolveChrootDir(CommandContext context) {
+		return (overrideChroot_disable) ? null : ((overrideChroot_enable != null) ? overrideChroot_enable : context.getChrootDir());
+	}
+	
+	/**
+	 * Resolves the working directory for this command (the command setting overrides the context setting).
+	 * @param context command context
+	 * @return working directory or null if the working directory of the current java process is used
+	 */
+	protected File resolveWorkingDir(CommandContext context) {
+		return (overrideWorkingDir_disable) ? null : ((overrideWorkingDir_enable != null) ? overrideWorkingDir_enable : context.getWorkingDir());
+	}
+	
+	/**
+	 * Resolves the environment changes for this command (the changes of this command are applied after the changes from the context).
+	 * @param context command context
+	 * @return environment overlay (empty if there are no changes)
+	 */
+	protected EnvironmentOverlay resolveEnvironment(CommandContext context) {
+		EnvironmentOverlay contextEnvironment = context.getEnvironment();
+		if (overrideEnvironment.isEmpty()) {
+			return contextEnvironment;
+		}
+		
+		CombinedEnvironment c = combinedEnvironment;
+		if ((c == null) || (c.contextEnvironment != contextEnvironment) || (c.commandEnvironment != overrideEnvironment)) {
+			c = new CombinedEnvironment(contextEnvironment, overrideEnvironment);
+			combinedEnvironment = c;
+		}
+		return c.combined;
+	}
+	
+	/**
+	 * Resolves the policy for the standard error output of this command (the command setting overrides the context setting).
+	 * The logging policy is resolved to the discarding one if there is no log writer.
+	 * @param context command context
+	 * @return standard error output policy
+	 */
+	protected StderrPolicy resolveStderrPolicy(CommandContext context) {
+		StderrPolicy policy = (overrideStderrPolicy != null) ? overrideStderrPolicy : context.getStderrPolicy();
+		if ((policy.getType() == StderrPolicy.Type.LOG) && (context.getLogWriter() == null)) {
+			return StderrPolicy.DISCARD;
+		}
+		return policy;
+	}
+	
+	/**
+	 * Resolves the scheduling policy for this command (the command setting overrides the context setting).
+	 * @param context command context
+	 * @return scheduling policy
+	 */
+	protected SchedulingPolicy resolveScheduling(CommandContext context) {
+		return (overrideScheduling != null) ? overrideScheduling : context.getScheduling();
+	}
+	
+	/**
+	 * Starts the thread reading the standard error output of the process if the policy requires it.
+	 * @param context command context
+	 * @param process started process
+	 * @param stderrPolicy resolved standard error output policy
+	 * @param baos buffer for the captured standard error output (used only by the capturing policy)
+	 * @return started thread or null if the standard error output is not read
+	 */
+	private Thread startStderrReading(CommandContext context, Process process, StderrPolicy stderrPolicy, ByteArrayOutputStream baos) {
+		Runnable r;
+		switch (stderrPolicy.getType()) {
+			case CAPTURE:
+				r = new StreamCopyRunnable(process.getErrorStream(), baos, STDERR_BUFFER_SIZE);
+				break;
+			case LOG:
+				r = new LineLoggingRunnable(process.getErrorStream(), context.getLogWriter(), "  STDERR (" + toString() + "): ");
+				break;
+			default:
+				return null;
+		}
+		
+		Thread t = new Thread(r);
+		t.start();
+		return t;
+	}
+	
+	/**
+	 * Resolves a path used by this command to the path seen by the current java process (the chroot directory and the working directory are taken into account).
+	 * @param context command context
+	 * @param file path as used by the command
+	 * @return absolute normalized path
+	 */
+	protected File resolveHostPath(CommandContext context, File file) {
+		File chrootDir = resolveChrootDir(context);
+		File workingDir = resolveWorkingDir(context);
+		
+		Path path;
+		if (chrootDir != null) {
+			// chroot changes the working directory to the new root directory
+			path = Paths.get(chrootDir.getPath(), file.getPath());
+		} else if ((! file.isAbsolute()) && (workingDir != null)) {
+			path = Paths.get(workingDir.getPath(), file.getPath());
+		} else {
+			path = Paths.get(file.getPath());
+		}
+		return path.toAbsolutePath().normalize().toFile();
+	}
+	
+	/**
+	 * Resolves the paths used by this command to the paths seen by the current java process (see {@link #resolveHostPath(CommandContext, File)}).
+	 * @param context command context
+	 * @param files paths as used by the command
+	 * @return absolute normalized paths
+	 */
+	private List<File> resolveHostPaths(CommandContext context, List<File> files) {
+		List<File> l = new ArrayList<File>(files.size());
+		for (File f : files) {
+			l.add(resolveHostPath(context, f));
+		}
+		return l;
+	}
+	
+	/**
+	 * Returns if this command is skipped when it is up to date and stamped after its successful execution (see {@link CommandContext#beginIncremental(StampStore)}).
+	 * @param context command context
+	 * @return if the incremental execution is set and this command has declared outputs and no input
+	 */
+	boolean isIncremental(CommandContext context) {
+		return (context.getStampStore() != null) && (! declaredOutputs.isEmpty()) && (! hasInputOrDigests());
+	}
+	
+	/**
+	 * Writes the stamp of this command after its successful execution.
+	 * @param context command context
+	 * @param stampStore store of the stamps
+	 * @param key command line and working directory of the command
+	 * @param inputs description of the inputs taken before the command has been started
+	 * @throws CommandException if the stamp can not be written
+	 */
+	private void writeStamp(CommandContext context, StampStore stampStore, String key, String inputs) throws CommandException {
+		try {
+			String outputs = StampStore.describeOutputs(resolveHostPaths(context, declaredOutputs));
+			if (outputs == null) {
+				// a declared output has not been created, so the command is executed next time
+				return;
+			}
+			stampStore.write(key, StampStore.createStamp(key, inputs, outputs));
+		} catch (IOException e) {
+			throw new CommandException("Unable to write the stamp of the command", e);
+		}
+	}
+	
+	/**
+	 * Skips the execution of this command. Writes the log entry with the reason and returns the context of a command which has exited with the 0 exit status.
+	 * @param context command context
+	 * @param reason why the command is not executed
+	 * @return command running context of the skipped command
+	 */
+	protected CommandRunningContext skip(CommandContext context, String reason) {
+		try {
+			Writer logWriter = context.getLogWriter();
+			if (logWriter != null) {
+				synchronized(logWriter) {
+					logWriter.write("----------------------------\n");
+					logWriter.write("  COMMAND: " + toString() + '\n');
+					logWriter.write("  SKIPPED: " + reason + '\n');
+				}
+			}
+		} catch (IOException e) {
+			// nothing
+		}
+		
+		return CommandRunningContext.finished(0);
+	}
+	
+	/**
+	 * Gets the key of batching by {@link BatchExecutor}. The commands with equal keys have the same command, arguments and resolved execution settings
+	 * and differ only in their first last argument, so they can be executed by one process having the first last arguments of all of them.
+	 * @param context command context
+	 * @return key or null if this command can not be batched (it has no last argument, has the input or the output digests set, its class changes the running or it is executed incrementally)
+	 */
+	List<Object> getBatchKey(CommandContext context) {
+		if (lastArgs.isEmpty() || hasInputOrDigests() || changesRunning(getClass()) || isIncremental(context)) {
+			return null;
+		}
+		return Arrays.<Object>asList(
+			getClass(),
+			new LinkedList<String>(commandAndArgs),
+			new LinkedList<String>(lastArgs.subList(1, lastArgs.size())),
+			resolveSudo(context),
+			resolveScheduling(context),
+			resolveChrootDir(context),
+			resolveWorkingDir(context),
+			resolveEnvironment(context),
+			resolveStderrPolicy(context),
+			new HashSet<Integer>(validExitStatuses)
+		);
+	}
+	
+	/**
+	 * Gets the first last argument (the one which differs between the commands of a batch, see {@link #getBatchKey(CommandContext)}).
+	 * @return first last argument
+	 */
+	String getFirstLastArg() {
+		return lastArgs.get(0);
+	}
+	
+	/**
+	 * Creates the command executing a batch of commands having the same batch key as this command.
+	 * @param firstLastArgs first last arguments of all the commands of the batch (in their order)
+	 * @return command with the settings of this command, but with the first last arguments of all the commands followed by the remaining last arguments of this command
+	 */
+	SingleCommand createBatch(List<String> firstLastArgs) {
+		SingleCommand batch = new SingleCommand();
+		batch.commandAndArgs.addAll(commandAndArgs);
+		batch.lastArgs.addAll(firstLastArgs);
+		batch.lastArgs.addAll(lastArgs.subList(1, lastArgs.size()));
+		batch.validExitStatuses = new HashSet<Integer>(validExitStatuses);
+		batch.overrideSudo = overrideSudo;
+		batch.overrideChroot_enable = overrideChroot_enable;
+		batch.overrideChroot_disable = overrideChroot_disable;
+		batch.overrideWorkingDir_enable = overrideWorkingDir_enable;
+		batch.overrideWorkingDir_disable = overrideWorkingDir_disable;
+		batch.overrideEnvironment = overrideEnvironment;
+		batch.overrideStderrPolicy = overrideStderrPolicy;
+		batch.overrideScheduling = overrideScheduling;
+		return batch;
+	}
+	
+	/**
+	 * Gets the size of the arguments and of the environment passed to the process as counted by the operating system against ARG_MAX
+	 * (each string with its terminating null character and a pointer to it).
+	 * @param context command context
+	 * @return size in bytes
+	 */
+	long getExecBytes(CommandContext context) {
+		boolean useSudo = resolveSudo(context);
+		File chrootDir = resolveChrootDir(context);
+		EnvironmentOverlay environment = resolveEnvironment(context);
+		boolean envCommand = (useSudo || (chrootDir != null)) && (! environment.isEmpty());
+		
+		long bytes = 0;
+		for (String arg : buildCommandLine(useSudo, resolveScheduling(context), chrootDir, envCommand ? environment : null)) {
+			bytes += getExecBytes(arg);
+		}
+		Map<String, String> processEnvironment = (envCommand || environment.isEmpty()) ? System.getenv() : environment.resolve();
+		for (Map.Entry<String, String> e : processEnvironment.entrySet()) {
+			bytes += getExecBytes(e.getKey() + '=' + e.getValue());
+		}
+		return bytes;
+	}
+	
+	/**
+	 * Gets the size of one argument or environment variable as counted by the operating system against ARG_MAX.
+	 * @param s argument or environment variable (name=value)
+	 * @return size in bytes (including the terminating null character and the pointer)
+	 */
+	static long getExecBytes(String s) {
+		try {
+			return s.getBytes("UTF-8").length + 1 + POINTER_SIZE;
+		} catch (UnsupportedEncodingException u) {
+			throw new RuntimeException(u);
+		}
+	}
+	
+	/**
+	 * Returns if the class of a command overrides the running of the command (e.g. skips it in some cases), so its commands can not be batched.
+	 * @param c class of the command
+	 * @return if any of the running methods is overridden
+	 */
+	static boolean changesRunning(Class<?> c) {
+		Boolean changes = RUNNING_CHANGES.get(c);
+		if (changes == null) {
+			changes = false;
+			for (Class<?> k = c; (k != SingleCommand.class) && (! changes); k = k.getSuperclass()) {
+				for (Method m : k.getDeclaredMethods()) {
+					if ((m.getName().equals("run") || m.getName().equals("runWithoutInput")) && Arrays.equals(m.getParameterTypes(), new Class<?>[] { CommandContext.class })) {
+						changes = true;
+						break;
+					}
+				}
+			}
+			RUNNING_CHANGES.put(c, changes);
+		}
+		return changes;
+	}
+	
+	/**
+	 * Builds the full command line of this command including the sudo, scheduling, chroot and env prefixes.
+	 * @param useSudo if sudo has to be used
+	 * @param scheduling scheduling policy to apply using the prefix commands
+	 * @param chrootDir chroot directory or null if chroot is not used
+	 * @param environment environment changes to apply using the env command or null if the env command is not used
+	 * @return command and arguments to execute
+	 */
+	List<String> buildCommandLine(boolean useSudo, SchedulingPolicy scheduling, File chrootDir, EnvironmentOverlay environment) {
+		List<String> l = new LinkedList<String>();
+		
+		if (useSudo) {
+			l.add("sudo");
+		}
+		
+		// before chroot, so the tools do not have to be present in the chroot directory
+		l.addAll(scheduling.toPrefix());
+		
+		if (chrootDir != null) {
+			l.add("sudo");
+			l.add("chroot");
+			l.add(chrootDir.getPath());
+		}
+		
+		if (environment != null) {
+			l.addAll(environment.toEnvCommand());
+		}
+		
+		l.addAll(commandAndArgs);
+		l.addAll(lastArgs);
+		
+		return l;
+	}
+	
+	/**
+	 * Writes the log entry about the finished command to the log writer of the context (if it is set).
+	 * @param context command context
+	 * @param useSudo if the command has been executed using sudo
+	 * @param scheduling scheduling policy used for the command
+	 * @param chrootDir chroot directory or null if chroot has not been used
+	 * @param environment environment changes used for the command
+	 * @param exitStatus exit status of the command
+	 * @param stderr data written by the command to its standard error output
+	 * @param shared if the command has been attached to an identical running command instead of starting its own process
+	 * @param resourceUsage resources used by the process or null if they have not been measured
+	 */
+	void writeLog(CommandContext context, boolean useSudo, SchedulingPolicy scheduling, File chrootDir, EnvironmentOverlay environment, int exitStatus, byte[] stderr, boolean shared, ResourceUsage resourceUsage) {
+		try {
+			Writer logWriter = context.getLogWriter();
+			if (logWriter != null) {
+				CommandListener listener = context.getListener();
+				long start = (listener != null) ? System.nanoTime() : 0;
+				
+				synchronized(logWriter) {
+					logWriter.write("----------------------------\n");
+					logWriter.write("  COMMAND: " + toString() + '\n');
+					if (useSudo) {
+						logWriter.write("  WITH SUDO" + '\n');
+					}
+					if (! scheduling.isEmpty()) {
+						logWriter.write("  WITH SCHEDULING: " + scheduling + '\n');
+					}
+					if (chrootDir != null) {
+						logWriter.write("  WITH CHROOT: " + chrootDir.getPath() + '\n');
+					}
+					if (! environment.isEmpty()) {
+						logWriter.write("  WITH ENVIRONMENT: " + environment + '\n');
+					}
+					if (shared) {
+						logWriter.write("  SHARED WITH RUNNING COMMAND" + '\n');
+					}
+					logWriter.write("  RETURNS: " + exitStatus + '\n');
+					if (resourceUsage != null) {
+						logWriter.write("  RESOURCES: " + resourceUsage + '\n');
+					}
+					logWriter.write("-------\n");
+					logWriter.write(new String(stderr, "UTF-8"));
+					logWriter.write("-------\n");
+				}
+				
+				if (listener != null) {
+					listener.logWritten(toString(), System.nanoTime() - start);
+				}
+			}
+		} catch (IOException e) {
+			// nothing
+		}
+	}
+	
+	/**
+	 * Starts a process.
+	 * @param launcher launcher starting the process
+	 * @param commandLine command and arguments to execute
+	 * @param workingDir working directory of the process or null to use the working directory of the current java process
+	 * @param environment whole environment of the process or null to use the environment of the current java process (which avoids copying it)
+	 * @param stderrPolicy resolved standard error output policy
+	 * @return started process
+	 * @throws CommandException if the process could not be started
+	 */
+	static Process startProcess(ProcessLauncher launcher, List<String> commandLine, File workingDir, Map<String, String> environment, StderrPolicy stderrPolicy) throws CommandException {
+		try {
+			return launcher.launch(commandLine, workingDir, environment, stderrPolicy);
+		} catch (IOException e) {
+			throw new CommandException("Unable to start process builder", e);
+		}
+	}
+	
 	/**
 	 * Gets the command with its arguments as a string. The command and arguments are delimited by spaces.
 	 * @return command description string
@@ -395,5 +1186,24 @@ public class SingleCommand extends CommandBase {
 		}
 		return sb.toString();
 	}
+	
+	/**
+	 * Combination of the context environment changes with the changes of the command.
+	 */
+	private static class CombinedEnvironment {
+		
+		private final EnvironmentOverlay contextEnvironment;
+		
+		private final EnvironmentOverlay commandEnvironment;
+		
+		private final EnvironmentOverlay combined;
+		
+		public CombinedEnvironment(EnvironmentOverlay contextEnvironment, EnvironmentOverlay commandEnvironment) {
+			this.contextEnvironment = contextEnvironment;
+			this.commandEnvironment = commandEnvironment;
+			this.combined = contextEnvironment.then(commandEnvironment);
+		}
+		
+	}
 
 }
@@ -0,0 +1,62 @@
+package syscommand;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import syscommand.internal.SharedExecution;
+
+/**
+ * Coalesces identical commands running at the same time (see {@link CommandContext#beginSingleFlight(SingleFlightGroup)}).
+ * When a command is started while an identical command is already running, it does not start a new process, it attaches to the running one instead.
+ * All the attached commands get the same output and exit status (each validates the exit status using its own valid exit statuses).
+ * Nothing is cached after the process exits - the next identical command starts a new process.
+ *
+ * The commands are identical if they have the same command line (including sudo and chroot), working directory and environment changes.
+ * Only the commands which are not a part of a pipeline or sequence and which have no input set are coalesced.
+ * Suitable for read-only commands (reading a status file, listing the mounts etc.). The output of the shared process is kept in memory only until all the attached commands have read it
+ * (at most {@link SharedExecution#MAX_BUFFERED} bytes, the slowest command holds the others back then), so a command started after the beginning of the output has been dropped
+ * starts its own process.
+ * Thread safe. Share one group by the contexts of more threads.
+ */
+public class SingleFlightGroup {
+	
+	/**
+	 * Running executions by their keys.
+	 */
+	private final Map<Object, SharedExecution> executions = new HashMap<Object, SharedExecution>();
+	
+	/**
+	 * Gets the running execution with the key or creates a new one.
+	 * The caller has to attach to it then (see {@link SharedExecution#attach()}), which also finds out if the process has to be started.
+	 * @param key command line, working directory and environment of the command
+	 * @return execution
+	 */
+	synchronized SharedExecution get(Object key) {
+		SharedExecution execution = executions.get(key);
+		if (execution == null) {
+			execution = new SharedExecution();
+			executions.put(key, execution);
+		}
+		return execution;
+	}
+	
+	/**
+	 * Removes the execution (after its process has exited), so the next identical command starts a new process.
+	 * @param key command line, working directory and environment of the command
+	 * @param execution execution to remove
+	 */
+	synchronized void remove(Object key, SharedExecution execution) {
+		if (executions.get(key) == execution) {
+			executions.remove(key);
+		}
+	}
+	
+	/**
+	 * Gets the number of the executions currently running.
+	 * @return number of running executions
+	 */
+	public synchronized int getRunningCount() {
+		return executions.size();
+	}
+	
+}
@@ -0,0 +1,369 @@
+package syscommand;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Persistent store of the stamps of the successfully executed commands used by the incremental execution (see {@link CommandContext#beginIncremental(StampStore)}).
+ * A command declaring its input and output files (see {@link SingleCommand#declareInputs(File...)} and {@link SingleCommand#declareOutputs(File...)}) is skipped
+ * if the stamp written after its last successful execution matches: the same command line (including sudo, scheduling, chroot and environment changes) and working directory,
+ * the same modification times and sizes (and optionally content digests) of the inputs and the outputs still existing with the modification times and sizes they had after the execution.
+ *
+ * Each stamp is one file in the store directory (named by the SHA-256 of the command line). It is written to a temporary file which is synced and atomically renamed then,
+ * so a crash never leaves a partially written stamp and any number of threads and processes can use the same directory without locking (the last writer wins).
+ * The input state is taken before the command is started, so an input changed while the command is running causes its execution next time.
+ * The stamp is removed before the command is executed, an output damaged by a crash (e.g. truncated) has a different size or modification time, so the command is executed again.
+ *
+ * Directory inputs are compared including their whole content (the relative paths, modification times and sizes of all the files), directory outputs are only checked to exist
+ * (their content is usually changed by other commands, e.g. by copying into a directory created by mkdir).
+ * Special file inputs (devices, FIFOs, sockets) are compared only by their type, they are never read.
+ * Thread safe.
+ */
+public final class StampStore {
+	
+	/**
+	 * First line of each stamp (the format version).
+	 */
+	private static final String HEADER = "syscommand stamp 1";
+	
+	/**
+	 * Suffix of the temporary files of the stamps being written.
+	 */
+	private static final String TEMP_SUFFIX = ".tmp";
+	
+	/**
+	 * Age (in milliseconds) after which a temporary file is considered to be left by a crashed writer and deleted.
+	 */
+	private static final long STALE_TEMP_MILLIS = 60 * 60 * 1000;
+	
+	/**
+	 * Buffer size (in bytes) for reading the input files when their digests are computed.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private final File dir;
+	
+	private final DigestAlgorithm contentDigest;
+	
+	/**
+	 * Opens the store comparing the inputs by their modification times and sizes.
+	 * @param dir store directory (created if it does not exist)
+	 * @throws IOException if the directory can not be created
+	 */
+	public StampStore(File dir) throws IOException {
+		this(dir, null);
+	}
+	
+	/**
+	 * Opens the store. The temporary files left by crashed writers are deleted.
+	 * @param dir store directory (created if it does not exist)
+	 * @param contentDigest algorithm of the digests of the input file contents or null to compare only the modification times and sizes
+	 *   (the digests detect the changes keeping the size within the resolution of the modification time, but all the inputs are read on each check)
+	 * @throws IOException if the directory can not be created
+	 */
+	public StampStore(File dir, DigestAlgorithm contentDigest) throws IOException {
+		this.dir = dir;
+		this.contentDigest = contentDigest;
+		Files.createDirectories(dir.toPath());
+		deleteStaleTempFiles();
+	}
+	
+	/**
+	 * Gets the store directory.
+	 * @return store directory
+	 */
+	public File getDir() {
+		return dir;
+	}
+	
+	/**
+	 * Removes all the stamps, so all the commands are executed next time.
+	 * @throws IOException if a stamp can not be removed
+	 */
+	public void clear() throws IOException {
+		File[] subdirs = dir.listFiles();
+		if (subdirs == null) {
+			throw new IOException("Unable to list: " + dir);
+		}
+		for (File subdir : subdirs) {
+			File[] files = subdir.listFiles();
+			if (files == null) {
+				continue;
+			}
+			for (File f : files) {
+				if (! f.getName().endsWith(TEMP_SUFFIX)) {
+					Files.deleteIfExists(f.toPath());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Reads the stamp.
+	 * @param key command line and working directory of the command
+	 * @return stamp or null if there is no stamp for the key
+	 * @throws IOException if the stamp can not be read
+	 */
+	String read(String key) throws IOException {
+		byte[] b;
+		try {
+			b = Files.readAllBytes(getFile(key).toPath());
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+		return new String(b, "UTF-8");
+	}
+	
+	/**
+	 * Writes the stamp atomically (to a synced temporary file renamed then).
+	 * @param key command line and working directory of the command
+	 * @param stamp stamp
+	 * @throws IOException if the stamp can not be written
+	 */
+	void write(String key, String stamp) throws IOException {
+		File file = getFile(key);
+		File subdir = file.getParentFile();
+		Files.createDirectories(subdir.toPath());
+		
+		File temp = File.createTempFile(file.getName() + ".", TEMP_SUFFIX, subdir);
+		boolean moved = false;
+		try {
+			FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE);
+			try {
+				OutputStream os = Channels.newOutputStream(channel);
+				os.write(stamp.getBytes("UTF-8"));
+				os.flush();
+				channel.force(true);
+			} finally {
+				channel.close();
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			moved = true;
+		} finally {
+			if (! moved) {
+				Files.deleteIfExists(temp.toPath());
+			}
+		}
+		syncDir(subdir);
+	}
+	
+	/**
+	 * Removes the stamp.
+	 * @param key command line and working directory of the command
+	 * @throws IOException if the stamp can not be removed
+	 */
+	void remove(String key) throws IOException {
+		Files.deleteIfExists(getFile(key).toPath());
+	}
+	
+	/**
+	 * Creates the stamp of a command.
+	 * @param key command line and working directory of the command
+	 * @param inputs description of the inputs (see {@link #describeInputs(List)})
+	 * @param outputs description of the outputs (see {@link #describeOutputs(List)})
+	 * @return stamp
+	 */
+	static String createStamp(String key, String inputs, String outputs) {
+		return HEADER + '\n' + "key " + escape(key) + '\n' + inputs + outputs;
+	}
+	
+	/**
+	 * Describes the current state of the input files.
+	 * @param inputs input files (host paths)
+	 * @return description of the inputs
+	 * @throws IOException if an input can not be read
+	 */
+	String describeInputs(List<File> inputs) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (File f : inputs) {
+			describeInput(sb, f.toPath(), "in " + escape(f.getPath()), true);
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Describes one input. A link given as an input is followed (as the commands do), the links inside the input directories are described by their targets only.
+	 */
+	private void describeInput(StringBuilder sb, Path path, String name, boolean followLinks) throws IOException {
+		BasicFileAttributes attributes;
+		try {
+			if (followLinks) {
+				attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			} else {
+				attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			}
+		} catch (NoSuchFileException e) {
+			sb.append(name).append(" missing\n");
+			return;
+		}
+		
+		if (attributes.isSymbolicLink()) {
+			sb.append(name).append(" link ").append(escape(Files.readSymbolicLink(path).toString())).append('\n');
+			return;
+		}
+		
+		if (attributes.isDirectory()) {
+			sb.append(name).append(" dir\n");
+			String[] children = path.toFile().list();
+			if (children == null) {
+				throw new IOException("Unable to list: " + path);
+			}
+			Arrays.sort(children);
+			for (String child : children) {
+				describeInput(sb, path.resolve(child), name + "/" + escape(child), false);
+			}
+			return;
+		}
+		
+		if (! attributes.isRegularFile()) {
+			// a device, FIFO or socket has no meaningful modification time and size and reading it may never end
+			sb.append(name).append(" special\n");
+			return;
+		}
+		
+		sb.append(name).append(" file ").append(attributes.lastModifiedTime()).append(' ').append(attributes.size());
+		if (contentDigest != null) {
+			sb.append(' ').append(contentDigest.getName()).append(':').append(digest(path));
+		}
+		sb.append('\n');
+	}
+	
+	/**
+	 * Describes the current state of the output files.
+	 * @param outputs output files (host paths)
+	 * @return description of the outputs or null if an output does not exist
+	 * @throws IOException if the state of an output can not be read
+	 */
+	static String describeOutputs(List<File> outputs) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (File f : outputs) {
+			BasicFileAttributes attributes;
+			try {
+				attributes = Files.readAttributes(f.toPath(), BasicFileAttributes.class);
+			} catch (NoSuchFileException e) {
+				return null;
+			}
+			sb.append("out ").append(escape(f.getPath()));
+			if (attributes.isDirectory()) {
+				sb.append(" dir\n");
+			} else {
+				sb.append(" file ").append(attributes.lastModifiedTime()).append(' ').append(attributes.size()).append('\n');
+			}
+		}
+		return sb.toString();
+	}
+	
+	private String digest(Path path) throws IOException {
+		StreamDigest digest = contentDigest.newDigest();
+		InputStream is;
+		try {
+			is = new FileInputStream(path.toFile());
+		} catch (FileNotFoundException e) {
+			// not readable (the command would fail then) or removed meanwhile
+			return "-";
+		}
+		try {
+			byte[] b = new byte[BUFFER_SIZE];
+			int n;
+			while ((n = is.read(b)) != -1) {
+				digest.update(b, 0, n);
+			}
+		} finally {
+			is.close();
+		}
+		return toHex(digest.digest());
+	}
+	
+	/**
+	 * Gets the file of the stamp. The stamps are spread into 256 subdirectories by the first byte of the hash.
+	 */
+	private File getFile(String key) {
+		StreamDigest digest = DigestAlgorithms.SHA256.newDigest();
+		byte[] b;
+		try {
+			b = key.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException u) {
+			throw new RuntimeException(u);
+		}
+		digest.update(b, 0, b.length);
+		String hash = toHex(digest.digest());
+		return new File(new File(dir, hash.substring(0, 2)), hash.substring(2));
+	}
+	
+	private void deleteStaleTempFiles() {
+		File[] subdirs = dir.listFiles();
+		if (subdirs == null) {
+			return;
+		}
+		long staleBefore = System.currentTimeMillis() - STALE_TEMP_MILLIS;
+		for (File subdir : subdirs) {
+			File[] files = subdir.listFiles();
+			if (files == null) {
+				continue;
+			}
+			for (File f : files) {
+				if (f.getName().endsWith(TEMP_SUFFIX) && (f.lastModified() < staleBefore)) {
+					f.delete();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Syncs the directory, so the rename of the stamp file survives a crash.
+	 */
+	private static void syncDir(File dir) {
+		try {
+			FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ);
+			try {
+				channel.force(true);
+			} finally {
+				channel.close();
+			}
+		} catch (IOException e) {
+			// nothing (not supported by all the platforms and file systems)
+		}
+	}
+	
+	/**
+	 * Escapes the backslashes and the line ends, so each stamp entry is one line.
+	 */
+	private static String escape(String s) {
+		return s.replace("\\", "\\\\").replace("\n", "\\n");
+	}
+	
+	private static String toHex(byte[] value) {
+		StringBuilder sb = new StringBuilder(value.length * 2);
+		for (byte b : value) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+			sb.append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Gets the store description.
+	 * @return store description
+	 */
+	@Override
+	public String toString() {
+		return "stamps in " + dir.getPath() + ((contentDigest != null) ? " (" + contentDigest.getName() + " of inputs)" : "");
+	}
+	
+}
@@ -0,0 +1,191 @@
+package syscommand;
+
+import java.io.File;
+import java.lang.ProcessBuilder.Redirect;
+
+import syscommand.internal.ShellQuoting;
+
+/**
+ * Specifies what happens with the standard error output of a command (see {@link CommandContext#setStderrPolicy(StderrPolicy)} and {@link SingleCommand#overrideStderr(StderrPolicy)}).
+ * Except for {@link #CAPTURE} and {@link #LOG}, the standard error output is redirected by the operating system, so no thread and no buffer is needed for it.
+ * Immutable.
+ */
+public final class StderrPolicy {
+	
+	/**
+	 * Kind of the policy.
+	 */
+	public enum Type {
+		/**
+		 * Standard error output is read into memory (it is written to the log and available by {@link RunningCommand#getStderr()}).
+		 */
+		CAPTURE,
+		/**
+		 * Standard error output is redirected to /dev/null.
+		 */
+		DISCARD,
+		/**
+		 * Standard error output is redirected to a file.
+		 */
+		FILE,
+		/**
+		 * Standard error output is merged into the standard output.
+		 */
+		MERGE,
+		/**
+		 * Standard error output is written to the log line by line while the command is running (discarded if there is no log writer).
+		 */
+		LOG
+	}
+	
+	/**
+	 * Standard error output is read into memory (default).
+	 */
+	public static final StderrPolicy CAPTURE = new StderrPolicy(Type.CAPTURE, null, false);
+	
+	/**
+	 * Standard error output is redirected to /dev/null.
+	 */
+	public static final StderrPolicy DISCARD = new StderrPolicy(Type.DISCARD, null, false);
+	
+	/**
+	 * Standard error output is merged into the standard output.
+	 */
+	public static final StderrPolicy MERGE = new StderrPolicy(Type.MERGE, null, false);
+	
+	/**
+	 * Standard error output is written to the log line by line while the command is running.
+	 */
+	public static final StderrPolicy LOG = new StderrPolicy(Type.LOG, null, false);
+	
+	/**
+	 * File used by /dev/null redirection.
+	 */
+	static final File NULL_FILE = new File("/dev/null");
+	
+	private final Type type;
+	
+	private final File file;
+	
+	private final boolean append;
+	
+	private StderrPolicy(Type type, File file, boolean append) {
+		this.type = type;
+		this.file = file;
+		this.append = append;
+	}
+	
+	/**
+	 * Creates the policy redirecting the standard error output to a file (the file is truncated).
+	 * @param file file to write to
+	 * @return policy
+	 */
+	public static StderrPolicy toFile(File file) {
+		return new StderrPolicy(Type.FILE, file, false);
+	}
+	
+	/**
+	 * Creates the policy redirecting the standard error output to the end of a file.
+	 * @param file file to append to
+	 * @return policy
+	 */
+	public static StderrPolicy appendToFile(File file) {
+		return new StderrPolicy(Type.FILE, file, true);
+	}
+	
+	/**
+	 * Gets the kind of the policy.
+	 * @return policy type
+	 */
+	public Type getType() {
+		return type;
+	}
+	
+	/**
+	 * Gets the file the standard error output is redirected to.
+	 * @return file or null if the type is not {@link Type#FILE}
+	 */
+	public File getFile() {
+		return file;
+	}
+	
+	/**
+	 * Returns if the standard error output is appended to the file.
+	 * @return if the file is appended to (instead of truncated)
+	 */
+	public boolean isAppend() {
+		return append;
+	}
+	
+	/**
+	 * Returns if the standard error output is read by the current java process (so it has to be read by a thread).
+	 * @return if the standard error output is read
+	 */
+	public boolean isRead() {
+		return (type == Type.CAPTURE) || (type == Type.LOG);
+	}
+	
+	/**
+	 * Sets up the standard error output redirection of the process builder according to this policy.
+	 * @param processBuilder process builder to set up
+	 */
+	public void applyTo(ProcessBuilder processBuilder) {
+		switch (type) {
+			case DISCARD:
+				processBuilder.redirectError(Redirect.to(NULL_FILE));
+				break;
+			case FILE:
+				processBuilder.redirectError(append ? Redirect.appendTo(file) : Redirect.to(file));
+				break;
+			case MERGE:
+				processBuilder.redirectErrorStream(true);
+				break;
+			default:
+				break;
+		}
+	}
+	
+	/**
+	 * Gets the shell redirection applying this policy to a command executed by a shell script.
+	 * @return redirection with a leading space or an empty string if the standard error output is read from the script ({@link #CAPTURE} and {@link #LOG})
+	 */
+	String toShellRedirection() {
+		switch (type) {
+			case DISCARD:
+				return " 2>/dev/null";
+			case FILE:
+				return (append ? " 2>>" : " 2>") + ShellQuoting.quote(file.getPath());
+			case MERGE:
+				return " 2>&1";
+			default:
+				return "";
+		}
+	}
+	
+	/**
+	 * Gets the policy description.
+	 * @return policy description
+	 */
+	@Override
+	public String toString() {
+		if (type == Type.FILE) {
+			return type + (append ? " >> " : " > ") + file.getPath();
+		}
+		return type.toString();
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		if (! (o instanceof StderrPolicy)) {
+			return false;
+		}
+		StderrPolicy other = (StderrPolicy) o;
+		return (type == other.type) && (append == other.append) && ((file == null) ? (other.file == null) : file.equals(other.file));
+	}
+	
+	@Override
+	public int hashCode() {
+		return type.hashCode() + 31 * ((file != null) ? file.hashCode() : 0) + (append ? 1 : 0);
+	}
+	
+}
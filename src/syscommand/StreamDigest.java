@@ -0,0 +1,23 @@
+package syscommand;
+
+/**
+ * Checksum or hash computed incrementally over a stream of data (see {@link DigestAlgorithm}).
+ * Not thread safe (it is updated by one copying thread).
+ */
+public interface StreamDigest {
+	
+	/**
+	 * Updates the digest with the data.
+	 * @param b buffer with the data
+	 * @param off offset of the data in the buffer
+	 * @param len length of the data
+	 */
+	void update(byte[] b, int off, int len);
+	
+	/**
+	 * Completes the computation. The digest must not be updated afterwards.
+	 * @return digest value (checksums are in the big-endian byte order)
+	 */
+	byte[] digest();
+	
+}
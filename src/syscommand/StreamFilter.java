@@ -0,0 +1,21 @@
+package syscommand;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Java implementation of a pipeline stage transforming the input data to the output data.
+ * Can be used instead of a trivial filtering system command (see {@link Pipeline#add(StreamFilter)}).
+ */
+public interface StreamFilter {
+	
+	/**
+	 * Reads the input data and writes the transformed data. The streams are closed after this method returns.
+	 * @param is stream with the output of the previous pipeline stage
+	 * @param os stream to the input of the next pipeline stage
+	 * @throws IOException if the filtering failed (the stage is then considered as failed)
+	 */
+	void filter(InputStream is, OutputStream os) throws IOException;
+	
+}
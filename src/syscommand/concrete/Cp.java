@@ -10,6 +10,8 @@ public class Cp extends SingleCommand {
 		setCommand("cp");
 		addLastArg(source.getPath());
 		addLastArg(destination.getPath());
+		declareInputs(source);
+		declareOutputs(destination);
 	}
 	
 	public Cp preserveAllAttributes() {
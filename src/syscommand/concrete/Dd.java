@@ -12,6 +12,7 @@ public class Dd extends SingleCommand {
 	
 	public Dd inputFile(File file) {
 		addArg_equal("if", file.getPath());
+		declareInputs(file);
 		return this;
 	}
 	
@@ -32,6 +33,7 @@ public class Dd extends SingleCommand {
 	
 	public Dd outputFile(File file) {
 		addArg_equal("of", file.getPath());
+		declareOutputs(file);
 		return this;
 	}
 	
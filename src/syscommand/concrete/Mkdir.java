@@ -9,10 +9,12 @@ public class Mkdir extends SingleCommand {
 	public Mkdir(File dir) {
 		setCommand("mkdir");
 		addLastArg(dir.getPath());
+		declareOutputs(dir);
 	}
 	
 	public Mkdir createParents() {
 		addArg_switch("p");
+		declareIdempotent();
 		return this;
 	}
 	
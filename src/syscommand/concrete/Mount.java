@@ -1,23 +1,53 @@
 package syscommand.concrete;
 
 import java.io.File;
+import java.io.IOException;
 
+import syscommand.CommandContext;
 import syscommand.SingleCommand;
+import syscommand.exception.CommandException;
+import syscommand.internal.CommandRunningContext;
 
 public class Mount extends SingleCommand {
 	
+	private final String source;
+	
+	/**
+	 * If the source is a path (resolved like the target), not e.g. a file system name.
+	 */
+	private final boolean sourceIsPath;
+	
+	private final File target;
+	
+	/**
+	 * If the source is compared with the source of the existing mount (the mount table shows the device of a bind or loop mount instead).
+	 */
+	private boolean sourceCompared = true;
+	
+	/**
+	 * Mount table used to skip the mounting if the source is already mounted at the target or null if the mounting is never skipped.
+	 */
+	private MountTable skipIfMountedTable = null;
+	
 	public Mount(File source, File target) {
 		setCommand("mount");
 		addLastArg(source.getPath());
 		addLastArg(target.getPath());
+		this.source = source.getPath();
+		this.sourceIsPath = true;
+		this.target = target;
 	}
 	
 	public Mount(String source, File target) {
 		setCommand("mount");
 		addLastArg(source);
 		addLastArg(target.getPath());
+		this.source = source;
+		this.sourceIsPath = source.startsWith("/");
+		this.target = target;
 	}
-		
+	
+	
 	public Mount specifyType(String type) {
 		addArg_switch("t", type);
 		return this;
@@ -25,12 +55,73 @@ public class Mount extends SingleCommand {
 	
 	public Mount bind() {
 		addArg_switch("o", "bind");
+		sourceCompared = false;
 		return this;
 	}
 	
 	public Mount loop() {
 		addArg_switch("o", "loop");
+		sourceCompared = false;
+		return this;
+	}
+	
+	/**
+	 * Skips the mounting (without creating a process) if the source is already mounted at the target directory according to /proc/self/mountinfo.
+	 * The symbolic links in the target (and in the source device path) are resolved. A different source mounted at the target does not skip the mounting.
+	 * For the bind and loop mounts, only the target is checked (the mount table shows the underlying device as their source).
+	 * @return this command
+	 */
+	public Mount skipIfMounted() {
+		return skipIfMounted(MountTable.getDefault());
+	}
+	
+	/**
+	 * Skips the mounting (without creating a process) if the source is already mounted at the target directory according to the specified mount table
+	 * (see {@link #skipIfMounted()}).
+	 * @param table mount table to check
+	 * @return this command
+	 */
+	public Mount skipIfMounted(MountTable table) {
+		skipIfMountedTable = table;
 		return this;
 	}
 	
+	/**
+	 * The mounting changes the system state, so it is never coalesced with an identical running command (see {@link syscommand.SingleFlightGroup}).
+	 */
+	@Override
+	protected CommandRunningContext runWithoutInput(CommandContext context) throws CommandException {
+		return run(context);
+	}
+	
+	@Override
+	protected CommandRunningContext run(CommandContext context) throws CommandException {
+		if (skipIfMountedTable != null) {
+			File hostTarget = resolveHostPath(context, target);
+			try {
+				MountEntry entry = skipIfMountedTable.findByTarget(hostTarget);
+				if ((entry != null) && isSameSource(context, entry)) {
+					return skip(context, "already mounted: " + hostTarget.getPath());
+				}
+			} catch (IOException e) {
+				throw new CommandException("Unable to read mount table", e);
+			}
+		}
+		
+		return super.run(context);
+	}
+	
+	/**
+	 * Checks if the existing mount has the source of this command.
+	 */
+	private boolean isSameSource(CommandContext context, MountEntry entry) {
+		if (! sourceCompared) {
+			return true;
+		}
+		if (entry.getSource().equals(source)) {
+			return true;
+		}
+		return sourceIsPath && entry.getSource().equals(MountTable.realPath(resolveHostPath(context, new File(source))));
+	}
+	
 }
@@ -0,0 +1,96 @@
+package syscommand.concrete;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One mount as described by a line of /proc/self/mountinfo (see {@link MountTable}).
+ */
+public class MountEntry {
+	
+	private final int mountId;
+	
+	private final int parentId;
+	
+	private final String root;
+	
+	private final String target;
+	
+	private final List<String> options;
+	
+	private final String fsType;
+	
+	private final String source;
+	
+	private final List<String> superOptions;
+	
+	/**
+	 * Creates the entry.
+	 * @param mountId unique identifier of the mount
+	 * @param parentId identifier of the parent mount
+	 * @param root path of the directory of the mounted filesystem which forms the root of the mount (not "/" for bind mounts of subdirectories)
+	 * @param target mount point
+	 * @param options per-mount options (comma separated)
+	 * @param fsType filesystem type
+	 * @param source mount source (device etc.)
+	 * @param superOptions per-filesystem options (comma separated)
+	 */
+	public MountEntry(int mountId, int parentId, String root, String target, String options, String fsType, String source, String superOptions) {
+		this.mountId = mountId;
+		this.parentId = parentId;
+		this.root = root;
+		this.target = target;
+		this.options = Collections.unmodifiableList(Arrays.asList(options.split(",")));
+		this.fsType = fsType;
+		this.source = source;
+		this.superOptions = Collections.unmodifiableList(Arrays.asList(superOptions.split(",")));
+	}
+	
+	public int getMountId() {
+		return mountId;
+	}
+	
+	public int getParentId() {
+		return parentId;
+	}
+	
+	public String getRoot() {
+		return root;
+	}
+	
+	public String getTarget() {
+		return target;
+	}
+	
+	public List<String> getOptions() {
+		return options;
+	}
+	
+	public String getFsType() {
+		return fsType;
+	}
+	
+	public String getSource() {
+		return source;
+	}
+	
+	public List<String> getSuperOptions() {
+		return superOptions;
+	}
+	
+	/**
+	 * Checks if the mount has the specified option (per-mount or per-filesystem).
+	 * @param option option name (or name=value)
+	 * @return if the option is set
+	 */
+	public boolean hasOption(String option) {
+		return options.contains(option) || superOptions.contains(option);
+	}
+	
+	@Override
+	public String toString() {
+		return source + " on " + target + " type " + fsType;
+	}
+	
+}
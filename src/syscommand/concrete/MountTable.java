@@ -0,0 +1,228 @@
+package syscommand.concrete;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the table of mounts directly from /proc/self/mountinfo (no process is created).
+ * The parsed table is cached, the file is read again on each query (which is cheap) and parsed again only if its contents have changed.
+ * Thread safe.
+ */
+public class MountTable {
+	
+	/**
+	 * File with the mounts of the current process.
+	 */
+	public static final File MOUNTINFO_FILE = new File("/proc/self/mountinfo");
+	
+	/**
+	 * Buffer size (in bytes) for reading the file.
+	 */
+	private static final int BUFFER_SIZE = 16 * 1024;
+	
+	/**
+	 * Shared table reading {@link #MOUNTINFO_FILE}.
+	 */
+	private static final MountTable DEFAULT = new MountTable(MOUNTINFO_FILE);
+	
+	/**
+	 * File to read the mounts from.
+	 */
+	private final File file;
+	
+	/**
+	 * File contents from which {@link #entries} have been parsed or null if nothing is cached.
+	 */
+	private byte[] cachedContents = null;
+	
+	/**
+	 * Cached parsed entries.
+	 */
+	private List<MountEntry> entries = null;
+	
+	/**
+	 * Creates the table reading the specified file.
+	 * @param file file in the mountinfo format
+	 */
+	public MountTable(File file) {
+		this.file = file;
+	}
+	
+	/**
+	 * Gets the shared table reading /proc/self/mountinfo.
+	 * @return shared mount table
+	 */
+	public static MountTable getDefault() {
+		return DEFAULT;
+	}
+	
+	/**
+	 * Gets all the current mounts in the order of the file (a later mount can hide an earlier mount with the same mount point).
+	 * @return unmodifiable list of the mounts
+	 * @throws IOException if the file could not be read or parsed
+	 */
+	public synchronized List<MountEntry> getEntries() throws IOException {
+		byte[] contents = read();
+		if ((cachedContents == null) || (! Arrays.equals(contents, cachedContents))) {
+			entries = Collections.unmodifiableList(parse(new String(contents, "UTF-8")));
+			cachedContents = contents;
+		}
+		return entries;
+	}
+	
+	/**
+	 * Finds the visible mount with the specified mount point. The symbolic links in the path are resolved first (the mount points in the table are resolved by the kernel).
+	 * @param target mount point (absolute path as seen by the current process)
+	 * @return the mount or null if nothing is mounted there
+	 * @throws IOException if the file could not be read or parsed
+	 */
+	public MountEntry findByTarget(File target) throws IOException {
+		String path = realPath(target);
+		List<MountEntry> l = getEntries();
+		for (int i = l.size() - 1; i >= 0; --i) {
+			if (l.get(i).getTarget().equals(path)) {
+				return l.get(i);
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Checks if something is mounted at the specified mount point.
+	 * @param target mount point (absolute path as seen by the current process)
+	 * @return if something is mounted there
+	 * @throws IOException if the file could not be read or parsed
+	 */
+	public boolean isMounted(File target) throws IOException {
+		return findByTarget(target) != null;
+	}
+	
+	/**
+	 * Resolves the symbolic links in the path.
+	 * @param file absolute path
+	 * @return resolved path or the path itself if it does not exist (or can not be resolved)
+	 */
+	static String realPath(File file) {
+		try {
+			return file.toPath().toRealPath().toString();
+		} catch (IOException e) {
+			return file.getPath();
+		}
+	}
+	
+	/**
+	 * Drops the cached table, so the next query parses the file again.
+	 */
+	public synchronized void invalidate() {
+		cachedContents = null;
+		entries = null;
+	}
+	
+	/**
+	 * Reads the whole file (the size of the files in /proc is not known in advance).
+	 */
+	private byte[] read() throws IOException {
+		InputStream is = null;
+		try {
+			is = new FileInputStream(file);
+			ByteArrayOutputStream baos = new ByteArrayOutputStream(BUFFER_SIZE);
+			byte[] b = new byte[BUFFER_SIZE];
+			int partLen;
+			while ((partLen = is.read(b)) != -1) {
+				baos.write(b, 0, partLen);
+			}
+			return baos.toByteArray();
+		} finally {
+			if (is != null) {
+				try {
+					is.close();
+				} catch (Throwable t) {
+					// nothing
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Parses the mountinfo lines. Format of a line:
+	 * mount-id parent-id major:minor root mount-point mount-options [optional-fields...] - fs-type source super-options
+	 */
+	private static List<MountEntry> parse(String contents) throws IOException {
+		List<MountEntry> result = new ArrayList<MountEntry>();
+		for (String line : contents.split("\n")) {
+			if (line.length() == 0) {
+				continue;
+			}
+			
+			String[] fields = line.split(" ");
+			int separator = -1;
+			for (int i = 6; i < fields.length; ++i) {
+				if (fields[i].equals("-")) {
+					separator = i;
+					break;
+				}
+			}
+			if ((separator == -1) || (fields.length < separator + 4)) {
+				throw new IOException("Invalid mountinfo line: " + line);
+			}
+			
+			try {
+				result.add(new MountEntry(
+					Integer.parseInt(fields[0]),
+					Integer.parseInt(fields[1]),
+					unescape(fields[3]),
+					unescape(fields[4]),
+					fields[5],
+					unescape(fields[separator + 1]),
+					unescape(fields[separator + 2]),
+					fields[separator + 3]
+				));
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid mountinfo line: " + line, e);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Replaces the octal escape sequences (\040 for space etc.) by the characters.
+	 */
+	private static String unescape(String s) {
+		if (s.indexOf('\\') == -1) {
+			return s;
+		}
+		
+		StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); ++i) {
+			char c = s.charAt(i);
+			if ((c == '\\') && isOctal(s, i + 1, 3)) {
+				sb.append((char) Integer.parseInt(s.substring(i + 1, i + 4), 8));
+				i += 3;
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+	
+	private static boolean isOctal(String s, int from, int count) {
+		if (from + count > s.length()) {
+			return false;
+		}
+		for (int i = from; i < from + count; ++i) {
+			char c = s.charAt(i);
+			if ((c < '0') || (c > '7')) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+}
@@ -21,4 +21,10 @@ public class Rm extends SingleCommand {
 		return this;
 	}
 	
+	public Rm force() {
+		addArg_switch("f");
+		declareIdempotent();
+		return this;
+	}
+	
 }
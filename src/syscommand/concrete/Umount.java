@@ -1,14 +1,68 @@
 package syscommand.concrete;
 
 import java.io.File;
+import java.io.IOException;
 
+import syscommand.CommandContext;
 import syscommand.SingleCommand;
+import syscommand.exception.CommandException;
+import syscommand.internal.CommandRunningContext;
 
 public class Umount extends SingleCommand {
 	
+	private final File dir;
+	
+	/**
+	 * Mount table used to skip the unmounting if the directory is not a mount point or null if the unmounting is never skipped.
+	 */
+	private MountTable skipIfNotMountedTable = null;
+	
 	public Umount(File dir) {
 		setCommand("umount");
 		addLastArg(dir.getPath());
+		this.dir = dir;
+	}
+	
+	/**
+	 * Skips the unmounting (without creating a process) if nothing is mounted at the directory according to /proc/self/mountinfo.
+	 * @return this command
+	 */
+	public Umount skipIfNotMounted() {
+		return skipIfNotMounted(MountTable.getDefault());
+	}
+	
+	/**
+	 * Skips the unmounting (without creating a process) if nothing is mounted at the directory according to the specified mount table.
+	 * @param table mount table to check
+	 * @return this command
+	 */
+	public Umount skipIfNotMounted(MountTable table) {
+		skipIfNotMountedTable = table;
+		return this;
+	}
+	
+	/**
+	 * The unmounting changes the system state, so it is never coalesced with an identical running command (see {@link syscommand.SingleFlightGroup}).
+	 */
+	@Override
+	protected CommandRunningContext runWithoutInput(CommandContext context) throws CommandException {
+		return run(context);
+	}
+	
+	@Override
+	protected CommandRunningContext run(CommandContext context) throws CommandException {
+		if (skipIfNotMountedTable != null) {
+			File hostDir = resolveHostPath(context, dir);
+			try {
+				if (! skipIfNotMountedTable.isMounted(hostDir)) {
+					return skip(context, "not mounted: " + hostDir.getPath());
+				}
+			} catch (IOException e) {
+				throw new CommandException("Unable to read mount table", e);
+			}
+		}
+		
+		return super.run(context);
 	}
 	
 }
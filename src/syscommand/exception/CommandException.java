@@ -11,6 +11,11 @@ public class CommandException extends Exception {
 
 	private static final long serialVersionUID = 1L;
 	
+	/**
+	 * If the exceptions are created without the stack trace (set by the system property syscommand.lightweightExceptions or by {@link #setLightweight(boolean)}).
+	 */
+	private static volatile boolean lightweight = Boolean.getBoolean("syscommand.lightweightExceptions");
+	
 	/**
 	 * Creates the exception with the specified message.
 	 * @param message user readable message
@@ -27,5 +32,34 @@ public class CommandException extends Exception {
 	public CommandException(String message, Throwable cause) {
 		super(message, cause);
 	}
+	
+	/**
+	 * Sets if the command exceptions are created without the stack trace. Filling in the stack trace is the most expensive part of creating an exception,
+	 * which matters when many commands fail (the message and the cause are still available).
+	 * @param lightweight true to not fill in the stack traces
+	 */
+	public static void setLightweight(boolean lightweight) {
+		CommandException.lightweight = lightweight;
+	}
+	
+	/**
+	 * Returns if the command exceptions are created without the stack trace.
+	 * @return if the exceptions are lightweight
+	 */
+	public static boolean isLightweight() {
+		return lightweight;
+	}
+	
+	/**
+	 * Fills in the stack trace unless the exceptions are lightweight.
+	 * @return this exception
+	 */
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		if (lightweight) {
+			return this;
+		}
+		return super.fillInStackTrace();
+	}
 
 }
@@ -23,6 +23,16 @@ public class InvalidExitStatusException extends CommandException {
 		this.status = status;
 	}
 	
+	/**
+	 * Creates the exception with the information about the exit status and a custom message.
+	 * @param message user readable message
+	 * @param status exit status returned by the process
+	 */
+	protected InvalidExitStatusException(String message, int status) {
+		super(message);
+		this.status = status;
+	}
+	
 	/**
 	 * Gets the exit status returned by the process.
 	 * @return exit status
@@ -0,0 +1,36 @@
+package syscommand.exception;
+
+import syscommand.CommandBase;
+import syscommand.CommandContext;
+
+/**
+ * Thrown when a command has written more output than allowed to accumulate in the memory (see {@link CommandContext#setMaxOutputBytes(long)} and {@link CommandBase#limitOutput(long)}).
+ * The command is terminated as soon as the limit is exceeded.
+ */
+public class OutputLimitExceededException extends CommandException {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Maximum number of output bytes allowed.
+	 */
+	private final long limit;
+	
+	/**
+	 * Creates the exception with the information about the limit.
+	 * @param limit maximum number of output bytes allowed
+	 */
+	public OutputLimitExceededException(long limit) {
+		super("Output limit exceeded: " + limit + " bytes");
+		this.limit = limit;
+	}
+	
+	/**
+	 * Gets the maximum number of output bytes allowed.
+	 * @return output limit in bytes
+	 */
+	public long getLimit() {
+		return limit;
+	}
+	
+}
@@ -0,0 +1,104 @@
+package syscommand.exception;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+import syscommand.CommandResult;
+
+/**
+ * Thrown when a stage of a pipeline exited with invalid exit status. Holds the information about the failed stage
+ * including the beginning of its standard error output (at most {@link CommandResult#DEFAULT_MAX_STDERR_BYTES}, as {@link CommandResult}).
+ */
+public class PipelineStageException extends InvalidExitStatusException {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Maximum length (in characters) of the standard error output included in the message.
+	 */
+	private static final int MAX_MESSAGE_STDERR_LENGTH = 1024;
+	
+	/**
+	 * Index of the failed stage (0 is the first stage).
+	 */
+	private final int stageIndex;
+	
+	/**
+	 * Description of the failed stage.
+	 */
+	private final String stage;
+	
+	/**
+	 * Beginning of the standard error output of the failed stage.
+	 */
+	private final byte[] stderr;
+	
+	private final boolean stderrTruncated;
+	
+	/**
+	 * Creates the exception.
+	 * @param stageIndex index of the failed stage (0 is the first stage)
+	 * @param stage description of the failed stage
+	 * @param status exit status returned by the stage
+	 * @param stderr whole standard error output of the failed stage (only its beginning is kept)
+	 */
+	public PipelineStageException(int stageIndex, String stage, int status, byte[] stderr) {
+		super(createMessage(stageIndex, stage, status, stderr), status);
+		this.stageIndex = stageIndex;
+		this.stage = stage;
+		this.stderrTruncated = (stderr.length > CommandResult.DEFAULT_MAX_STDERR_BYTES);
+		this.stderr = stderrTruncated ? Arrays.copyOf(stderr, CommandResult.DEFAULT_MAX_STDERR_BYTES) : stderr;
+	}
+	
+	/**
+	 * Gets the index of the failed stage.
+	 * @return stage index (0 is the first stage)
+	 */
+	public int getStageIndex() {
+		return stageIndex;
+	}
+	
+	/**
+	 * Gets the description of the failed stage.
+	 * @return stage description
+	 */
+	public String getStage() {
+		return stage;
+	}
+	
+	/**
+	 * Gets the beginning of the standard error output of the failed stage.
+	 * @return standard error output data (truncated to {@link CommandResult#DEFAULT_MAX_STDERR_BYTES})
+	 */
+	public byte[] getStderr() {
+		return stderr;
+	}
+	
+	/**
+	 * Returns if the standard error output has been truncated.
+	 * @return if the standard error output was longer than {@link CommandResult#DEFAULT_MAX_STDERR_BYTES}
+	 */
+	public boolean isStderrTruncated() {
+		return stderrTruncated;
+	}
+	
+	private static String createMessage(int stageIndex, String stage, int status, byte[] stderr) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Pipeline stage ").append(stageIndex).append(" (").append(stage).append(") exited with invalid exit status: ").append(status);
+		
+		String s = null;
+		try {
+			s = new String(stderr, "UTF-8").trim();
+		} catch (UnsupportedEncodingException u) {
+			throw new RuntimeException(u);
+		}
+		if (s.length() > MAX_MESSAGE_STDERR_LENGTH) {
+			s = s.substring(0, MAX_MESSAGE_STDERR_LENGTH) + "...";
+		}
+		if (s.length() > 0) {
+			sb.append(", stderr: ").append(s);
+		}
+		return sb.toString();
+	}
+	
+}
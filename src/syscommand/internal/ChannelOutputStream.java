@@ -0,0 +1,44 @@
+package syscommand.internal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Output stream writing all the data to a channel. Closing the stream does not close the channel.
+ */
+public class ChannelOutputStream extends OutputStream {
+	
+	/**
+	 * Channel to write to.
+	 */
+	private final WritableByteChannel channel;
+	
+	/**
+	 * Creates the stream writing to the specified channel.
+	 * @param channel channel to write to (must be in the blocking mode)
+	 */
+	public ChannelOutputStream(WritableByteChannel channel) {
+		this.channel = channel;
+	}
+	
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ByteBuffer bb = ByteBuffer.wrap(b, off, len);
+		while (bb.hasRemaining()) {
+			channel.write(bb);
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		// the channel is owned by the caller
+	}
+	
+}
@@ -1,5 +1,6 @@
 package syscommand.internal;
 
+import syscommand.ResourceUsage;
 import syscommand.exception.CommandException;
 
 /**
@@ -14,4 +15,30 @@ public interface CommandResultWaiting {
 	 */
 	int waitAndGetResult() throws CommandException;
 	
+	/**
+	 * Waits for command end and returns the status without validating it (the exit statuses of the subcommands of a composite command are still validated, except for the last stage of a pipeline).
+	 * Only one of this method and {@link #waitAndGetResult()} may be called.
+	 * @return exit status
+	 * @throws CommandException on some execution errors (input/output, terminating, invalid exit status of a subcommand...)
+	 */
+	int waitForExitStatus() throws CommandException;
+	
+	/**
+	 * Terminates the command (kills its processes and closes its streams). Does nothing if the command has already exited.
+	 * {@link #waitAndGetResult()} should still be called afterwards to finish the command.
+	 */
+	void terminate();
+	
+	/**
+	 * Gets the data written by the command to its standard error output so far.
+	 * @return standard error output data (empty if the command does not provide them)
+	 */
+	byte[] getStderr();
+	
+	/**
+	 * Gets the resources used by the processes of the command (see {@link syscommand.CommandContext#beginResourceAccounting()}). Available after {@link #waitAndGetResult()} has returned.
+	 * @return resource usage or null if it has not been measured
+	 */
+	ResourceUsage getResourceUsage();
+	
 }
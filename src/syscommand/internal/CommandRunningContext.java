@@ -1,8 +1,11 @@
 package syscommand.internal;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 
+import syscommand.ResourceUsage;
+
 /**
  * Holds objects for interaction with the running command (streams and an object for waiting for the command to exit)
  */
@@ -18,9 +21,55 @@ public class CommandRunningContext {
 	 */
 	public InputStream stdout;
 	
+	/**
+	 * If the standard output of the process has been redirected to /dev/null by the operating system, so there is nothing to read from {@link #stdout}.
+	 */
+	public boolean outputDiscarded = false;
+	
 	/**
 	 * Object used for waiting for the command to exit and to get its exit status.
 	 */
 	public CommandResultWaiting res;
 	
+	/**
+	 * Creates the context of a command which has already exited (or has not been executed at all) without any output.
+	 * The input written to the context is ignored.
+	 * @param exitStatus exit status to return when waiting for the command
+	 * @return command running context
+	 */
+	public static CommandRunningContext finished(final int exitStatus) {
+		CommandRunningContext result = new CommandRunningContext();
+		result.stdin = new NullOutputStream();
+		result.stdout = new ByteArrayInputStream(new byte[0]);
+		result.res = new CommandResultWaiting() {
+			
+			@Override
+			public int waitAndGetResult() {
+				return exitStatus;
+			}
+			
+			@Override
+			public int waitForExitStatus() {
+				return exitStatus;
+			}
+			
+			@Override
+			public void terminate() {
+				// nothing
+			}
+			
+			@Override
+			public byte[] getStderr() {
+				return new byte[0];
+			}
+			
+			@Override
+			public ResourceUsage getResourceUsage() {
+				return null;
+			}
+			
+		};
+		return result;
+	}
+	
 }
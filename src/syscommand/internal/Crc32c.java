@@ -0,0 +1,79 @@
+package syscommand.internal;
+
+import java.util.zip.Checksum;
+
+/**
+ * CRC-32C (Castagnoli) checksum computed by the slicing-by-8 method (java 7 does not provide it).
+ */
+public class Crc32c implements Checksum {
+	
+	/**
+	 * Reversed Castagnoli polynomial.
+	 */
+	private static final int POLYNOMIAL = 0x82F63B78;
+	
+	/**
+	 * Lookup tables: TABLE[k][b] is the CRC of the byte b followed by k zero bytes.
+	 */
+	private static final int[][] TABLE = new int[8][256];
+	
+	static {
+		for (int b = 0; b < 256; ++b) {
+			int c = b;
+			for (int i = 0; i < 8; ++i) {
+				c = ((c & 1) != 0) ? ((c >>> 1) ^ POLYNOMIAL) : (c >>> 1);
+			}
+			TABLE[0][b] = c;
+		}
+		for (int b = 0; b < 256; ++b) {
+			int c = TABLE[0][b];
+			for (int k = 1; k < 8; ++k) {
+				c = TABLE[0][c & 0xFF] ^ (c >>> 8);
+				TABLE[k][b] = c;
+			}
+		}
+	}
+	
+	/**
+	 * Current CRC register (inverted).
+	 */
+	private int crc = 0xFFFFFFFF;
+	
+	@Override
+	public void update(int b) {
+		crc = TABLE[0][(crc ^ b) & 0xFF] ^ (crc >>> 8);
+	}
+	
+	@Override
+	public void update(byte[] b, int off, int len) {
+		int c = crc;
+		int[] t0 = TABLE[0], t1 = TABLE[1], t2 = TABLE[2], t3 = TABLE[3], t4 = TABLE[4], t5 = TABLE[5], t6 = TABLE[6], t7 = TABLE[7];
+		
+		while (len >= 8) {
+			int lo = c ^ ((b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8) | ((b[off + 2] & 0xFF) << 16) | ((b[off + 3] & 0xFF) << 24));
+			int hi = (b[off + 4] & 0xFF) | ((b[off + 5] & 0xFF) << 8) | ((b[off + 6] & 0xFF) << 16) | ((b[off + 7] & 0xFF) << 24);
+			c = t7[lo & 0xFF] ^ t6[(lo >>> 8) & 0xFF] ^ t5[(lo >>> 16) & 0xFF] ^ t4[lo >>> 24]
+				^ t3[hi & 0xFF] ^ t2[(hi >>> 8) & 0xFF] ^ t1[(hi >>> 16) & 0xFF] ^ t0[hi >>> 24];
+			off += 8;
+			len -= 8;
+		}
+		while (len > 0) {
+			c = t0[(c ^ b[off]) & 0xFF] ^ (c >>> 8);
+			++off;
+			--len;
+		}
+		
+		crc = c;
+	}
+	
+	@Override
+	public long getValue() {
+		return (~crc) & 0xFFFFFFFFL;
+	}
+	
+	@Override
+	public void reset() {
+		crc = 0xFFFFFFFF;
+	}
+	
+}
@@ -0,0 +1,80 @@
+package syscommand.internal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream passing the data to another stream until their total size exceeds a limit. Then the writing fails (the data exceeding the limit are not passed).
+ */
+public class LimitedOutputStream extends OutputStream {
+	
+	/**
+	 * Stream to pass the data to.
+	 */
+	private final OutputStream os;
+	
+	/**
+	 * Maximum number of bytes to pass.
+	 */
+	private final long limit;
+	
+	/**
+	 * Number of bytes passed so far.
+	 */
+	private long count = 0;
+	
+	/**
+	 * If the limit has been exceeded.
+	 */
+	private volatile boolean exceeded = false;
+	
+	/**
+	 * Creates the stream.
+	 * @param os stream to pass the data to
+	 * @param limit maximum number of bytes to pass
+	 */
+	public LimitedOutputStream(OutputStream os, long limit) {
+		this.os = os;
+		this.limit = limit;
+	}
+	
+	@Override
+	public void write(int b) throws IOException {
+		check(1);
+		os.write(b);
+		++count;
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		check(len);
+		os.write(b, off, len);
+		count += len;
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		os.flush();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		os.close();
+	}
+	
+	/**
+	 * Returns if the writing has failed because of the limit.
+	 * @return if the limit has been exceeded
+	 */
+	public boolean isExceeded() {
+		return exceeded;
+	}
+	
+	private void check(int len) throws IOException {
+		if (count + len > limit) {
+			exceeded = true;
+			throw new IOException("Output limit exceeded: " + limit + " bytes");
+		}
+	}
+	
+}
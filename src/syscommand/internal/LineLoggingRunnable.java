@@ -0,0 +1,129 @@
+package syscommand.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Runnable writing the lines read from the provided input stream to the log writer as soon as they are read.
+ * Each line is written with the specified prefix. Closes the input stream after reading.
+ * The input is always read to its end (the process would get SIGPIPE or block otherwise), also when the log writer fails (the rest of the lines is discarded then).
+ */
+public class LineLoggingRunnable implements Runnable {
+	
+	/**
+	 * Maximum number of the characters of a written line, the rest of a longer line is discarded.
+	 */
+	private static final int MAX_LINE_LENGTH = 64 * 1024;
+	
+	/**
+	 * Marker appended to a shortened line.
+	 */
+	private static final String TRUNCATED = " [truncated]";
+	
+	/**
+	 * Buffer size (in characters) for reading.
+	 */
+	private static final int BUFFER_SIZE = 8 * 1024;
+	
+	/**
+	 * Input stream to read the lines from.
+	 */
+	private final InputStream is;
+	
+	/**
+	 * Log writer (the writing is synchronized on it).
+	 */
+	private final Writer logWriter;
+	
+	/**
+	 * Prefix of each written line.
+	 */
+	private final String prefix;
+	
+	/**
+	 * Creates new line logging runnable.
+	 * @param is input stream to read the lines from (bytes are converted using UTF-8 encoding)
+	 * @param logWriter log writer
+	 * @param prefix prefix of each written line
+	 */
+	public LineLoggingRunnable(InputStream is, Writer logWriter, String prefix) {
+		this.is = is;
+		this.logWriter = logWriter;
+		this.prefix = prefix;
+	}
+	
+	/**
+	 * Reads the lines and writes them to the log writer.
+	 */
+	@Override
+	public void run() {
+		try {
+			Reader reader = new InputStreamReader(is, "UTF-8");
+			char[] b = new char[BUFFER_SIZE];
+			StringBuilder line = new StringBuilder();
+			boolean truncated = false;
+			boolean logging = true;
+			int n;
+			while ((n = reader.read(b)) != -1) {
+				if (! logging) {
+					continue;
+				}
+				int lineStart = 0;
+				for (int i = 0; i <= n; ++i) {
+					if ((i < n) && (b[i] != '\n')) {
+						continue;
+					}
+					if (! truncated) {
+						int length = Math.min(i - lineStart, MAX_LINE_LENGTH - line.length());
+						line.append(b, lineStart, length);
+						truncated = (length < i - lineStart);
+					}
+					if (i == n) {
+						break;
+					}
+					logging = writeLine(line, truncated);
+					if (! logging) {
+						break;
+					}
+					line.setLength(0);
+					truncated = false;
+					lineStart = i + 1;
+				}
+			}
+			if (logging && ((line.length() > 0) || truncated)) {
+				writeLine(line, truncated);
+			}
+		} catch (IOException e) {
+			// nothing
+		} finally {
+			try {
+				is.close();
+			} catch (Throwable t) {
+				// nothing
+			}
+		}
+	}
+	
+	/**
+	 * Writes one line to the log writer.
+	 * @return false if the log writer failed
+	 */
+	private boolean writeLine(StringBuilder line, boolean truncated) {
+		int end = line.length();
+		if ((end > 0) && (line.charAt(end - 1) == '\r')) {
+			--end;
+		}
+		try {
+			synchronized(logWriter) {
+				logWriter.write(prefix + line.substring(0, end) + (truncated ? TRUNCATED : "") + '\n');
+			}
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+	
+}
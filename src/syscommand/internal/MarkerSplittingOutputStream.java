@@ -0,0 +1,121 @@
+package syscommand.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream which removes marker lines from the data and passes the rest of the data to the target stream.
+ * A marker is a newline character followed by the marker prefix and by the marker text ending with another newline character.
+ * The marker prefix must not contain the newline character.
+ */
+public abstract class MarkerSplittingOutputStream extends OutputStream {
+	
+	/**
+	 * Byte sequence starting a marker (newline character and the marker prefix).
+	 */
+	private final byte[] pattern;
+	
+	/**
+	 * Number of bytes of the pattern matched so far.
+	 */
+	private int matched = 0;
+	
+	/**
+	 * If the marker text is being read.
+	 */
+	private boolean inMarker = false;
+	
+	/**
+	 * Text of the marker being read.
+	 */
+	private final ByteArrayOutputStream markerText = new ByteArrayOutputStream();
+	
+	/**
+	 * Creates the stream.
+	 * @param markerPrefix bytes following the newline character which start a marker
+	 */
+	public MarkerSplittingOutputStream(byte[] markerPrefix) {
+		pattern = new byte[markerPrefix.length + 1];
+		pattern[0] = '\n';
+		System.arraycopy(markerPrefix, 0, pattern, 1, markerPrefix.length);
+	}
+	
+	/**
+	 * Gets the stream to pass the data which are not part of a marker to.
+	 * @return current target stream
+	 */
+	protected abstract OutputStream getTarget();
+	
+	/**
+	 * Called when a whole marker has been read.
+	 * @param text marker text (without the prefix and without the newline characters)
+	 * @throws IOException if the marker could not be processed
+	 */
+	protected abstract void markerFound(String text) throws IOException;
+	
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		int end = off + len;
+		int spanStart = off;
+		for (int i = off; i < end; ++i) {
+			byte c = b[i];
+			
+			if (inMarker) {
+				if (c == '\n') {
+					inMarker = false;
+					markerFound(new String(markerText.toByteArray(), "UTF-8"));
+					markerText.reset();
+				} else {
+					markerText.write(c);
+				}
+				spanStart = i + 1;
+				continue;
+			}
+			
+			if (matched > 0) {
+				if (c == pattern[matched]) {
+					++matched;
+					if (matched == pattern.length) {
+						inMarker = true;
+						matched = 0;
+					}
+					spanStart = i + 1;
+					continue;
+				}
+				
+				// not a marker, the newline character is not repeated in the pattern so the matching can start again from this byte
+				getTarget().write(pattern, 0, matched);
+				matched = 0;
+			}
+			
+			if (c == pattern[0]) {
+				getTarget().write(b, spanStart, i - spanStart);
+				matched = 1;
+				spanStart = i + 1;
+			}
+		}
+		
+		if (spanStart < end) {
+			getTarget().write(b, spanStart, end - spanStart);
+		}
+	}
+	
+	/**
+	 * Passes the partially matched pattern (which can not be a marker anymore) to the target stream.
+	 * Does not close the target stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (matched > 0) {
+			getTarget().write(pattern, 0, matched);
+			matched = 0;
+		}
+	}
+	
+}
@@ -0,0 +1,34 @@
+package syscommand.internal;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream passing the data to the underlying stream, which is only flushed (not closed) when this stream is closed.
+ * Allows the owner of the underlying stream to close it itself and to handle the closing errors.
+ */
+public class NonClosingOutputStream extends FilterOutputStream {
+	
+	/**
+	 * Creates the stream.
+	 * @param os underlying stream
+	 */
+	public NonClosingOutputStream(OutputStream os) {
+		super(os);
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+	}
+	
+	/**
+	 * Flushes the underlying stream, but does not close it.
+	 */
+	@Override
+	public void close() throws IOException {
+		out.flush();
+	}
+	
+}
@@ -3,6 +3,9 @@ package syscommand.internal;
 import java.io.IOException;
 import java.io.OutputStream;
 
+/**
+ * Output stream ignoring all the data written to it.
+ */
 public class NullOutputStream extends OutputStream {
 
 	@Override
@@ -10,4 +13,12 @@ public class NullOutputStream extends OutputStream {
 		// nothing
 	}
 
+	/**
+	 * Ignores the whole buffer at once (the inherited implementation would call {@link #write(int)} for each byte).
+	 */
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		// nothing
+	}
+	
 }
@@ -0,0 +1,298 @@
+package syscommand.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Output stream compressing the data in the gzip format using more threads (like pigz).
+ * The data are split into blocks, which are compressed in parallel and written in the original order.
+ * The result is one gzip member (readable by gunzip): each block is a part of one deflate stream ending with a sync flush,
+ * the last 32 KiB of the previous block are used as the dictionary of the next block, so the compression ratio is almost the same as for sequential compression.
+ * Closes the underlying stream when closed.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+	
+	/**
+	 * Size (in bytes) of the blocks compressed in parallel.
+	 */
+	public static final int BLOCK_SIZE = 128 * 1024;
+	
+	/**
+	 * Size (in bytes) of the deflate dictionary (window).
+	 */
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+	
+	/**
+	 * Gzip header: magic, deflate method, no flags, no modification time, no extra flags, unknown operating system.
+	 */
+	private static final byte[] HEADER = new byte[] { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+	
+	/**
+	 * Underlying stream.
+	 */
+	private final OutputStream os;
+	
+	/**
+	 * Compression level (see {@link Deflater}).
+	 */
+	private final int level;
+	
+	/**
+	 * Threads compressing the blocks.
+	 */
+	private final ExecutorService executor;
+	
+	/**
+	 * Maximum number of blocks being compressed at the same time (limits the memory used).
+	 */
+	private final int maxPending;
+	
+	/**
+	 * Blocks being compressed in the original order.
+	 */
+	private final Queue<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+	
+	/**
+	 * Checksum of the uncompressed data.
+	 */
+	private final CRC32 crc = new CRC32();
+	
+	/**
+	 * Block being filled.
+	 */
+	private byte[] block = new byte[BLOCK_SIZE];
+	
+	/**
+	 * Number of bytes in {@link #block}.
+	 */
+	private int blockLength = 0;
+	
+	/**
+	 * Dictionary for the next block (the end of the previous block) or null for the first block.
+	 */
+	private byte[] dictionary = null;
+	
+	/**
+	 * Number of uncompressed bytes.
+	 */
+	private long inputBytes = 0;
+	
+	/**
+	 * Number of bytes written to the underlying stream.
+	 */
+	private long outputBytes = 0;
+	
+	private boolean closed = false;
+	
+	/**
+	 * Creates the stream and starts the compressing threads.
+	 * @param os underlying stream to write the compressed data to
+	 * @param level compression level (0-9 or {@link Deflater#DEFAULT_COMPRESSION})
+	 * @param threads number of compressing threads
+	 * @throws IOException if the header could not be written
+	 * @throws IllegalArgumentException if the level or the number of threads is invalid
+	 */
+	public ParallelGzipOutputStream(OutputStream os, int level, int threads) throws IOException {
+		if (((level < 0) || (level > 9)) && (level != Deflater.DEFAULT_COMPRESSION)) {
+			throw new IllegalArgumentException("Invalid compression level: " + level);
+		}
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Invalid number of threads: " + threads);
+		}
+		
+		this.os = os;
+		this.level = level;
+		this.maxPending = threads * 2;
+		this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r);
+				t.setDaemon(true);
+				return t;
+			}
+			
+		});
+		
+		writeOutput(HEADER);
+	}
+	
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		
+		crc.update(b, off, len);
+		inputBytes += len;
+		
+		while (len > 0) {
+			int n = Math.min(len, BLOCK_SIZE - blockLength);
+			System.arraycopy(b, off, block, blockLength, n);
+			blockLength += n;
+			off += n;
+			len -= n;
+			
+			if (blockLength == BLOCK_SIZE) {
+				submitBlock(false);
+			}
+		}
+	}
+	
+	/**
+	 * Compresses the remaining data, writes the gzip trailer, stops the compressing threads and closes the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		
+		try {
+			submitBlock(true);
+			while (! pending.isEmpty()) {
+				writeNext();
+			}
+			
+			byte[] trailer = new byte[8];
+			writeIntLE(trailer, 0, crc.getValue());
+			writeIntLE(trailer, 4, inputBytes);
+			writeOutput(trailer);
+		} finally {
+			executor.shutdownNow();
+			os.close();
+		}
+	}
+	
+	/**
+	 * Gets the number of uncompressed bytes written to this stream.
+	 * @return number of input bytes
+	 */
+	public long getInputBytes() {
+		return inputBytes;
+	}
+	
+	/**
+	 * Gets the number of compressed bytes written to the underlying stream (including the gzip header and trailer).
+	 * @return number of output bytes
+	 */
+	public long getOutputBytes() {
+		return outputBytes;
+	}
+	
+	/**
+	 * Submits the filled block for compressing. Writes the oldest compressed blocks first if there are too many pending blocks.
+	 * @param last if this is the last block (the deflate stream is finished then)
+	 */
+	private void submitBlock(final boolean last) throws IOException {
+		while (pending.size() >= maxPending) {
+			writeNext();
+		}
+		
+		final byte[] data = block;
+		final int dataLength = blockLength;
+		final byte[] dict = dictionary;
+		
+		if (! last) {
+			// only the last block can be shorter than the dictionary
+			dictionary = new byte[DICTIONARY_SIZE];
+			System.arraycopy(data, dataLength - DICTIONARY_SIZE, dictionary, 0, DICTIONARY_SIZE);
+		}
+		
+		pending.add(executor.submit(new Callable<byte[]>() {
+			
+			@Override
+			public byte[] call() {
+				return compress(data, dataLength, dict, last);
+			}
+			
+		}));
+		
+		block = last ? null : new byte[BLOCK_SIZE];
+		blockLength = 0;
+	}
+	
+	/**
+	 * Waits for the oldest pending block and writes it.
+	 */
+	private void writeNext() throws IOException {
+		Future<byte[]> f = pending.remove();
+		byte[] compressed;
+		try {
+			compressed = f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Thread interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Compression failed", e.getCause());
+		}
+		writeOutput(compressed);
+	}
+	
+	private void writeOutput(byte[] b) throws IOException {
+		os.write(b);
+		outputBytes += b.length;
+	}
+	
+	/**
+	 * Compresses one block as a part of the deflate stream.
+	 * @param data uncompressed data
+	 * @param length number of bytes in data
+	 * @param dictionary end of the previous block or null for the first block
+	 * @param last if the deflate stream has to be finished (otherwise it is sync flushed, so the next block can follow)
+	 * @return compressed data
+	 */
+	private byte[] compress(byte[] data, int length, byte[] dictionary, boolean last) {
+		Deflater deflater = new Deflater(level, true);
+		try {
+			if (dictionary != null) {
+				deflater.setDictionary(dictionary);
+			}
+			deflater.setInput(data, 0, length);
+			
+			ByteArrayOutputStream baos = new ByteArrayOutputStream(length / 2 + 64);
+			byte[] buffer = new byte[64 * 1024];
+			if (last) {
+				deflater.finish();
+				while (! deflater.finished()) {
+					int n = deflater.deflate(buffer, 0, buffer.length, Deflater.NO_FLUSH);
+					baos.write(buffer, 0, n);
+				}
+			} else {
+				int n;
+				do {
+					n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+					baos.write(buffer, 0, n);
+				} while (n == buffer.length);
+			}
+			return baos.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+	
+	private static void writeIntLE(byte[] b, int off, long value) {
+		b[off] = (byte) value;
+		b[off + 1] = (byte) (value >> 8);
+		b[off + 2] = (byte) (value >> 16);
+		b[off + 3] = (byte) (value >> 24);
+	}
+	
+}
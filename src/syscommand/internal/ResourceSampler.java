@@ -0,0 +1,300 @@
+package syscommand.internal;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import syscommand.ResourceUsage;
+
+/**
+ * Samples the resource usage of running processes from /proc/&lt;pid&gt;/stat, status and io.
+ * The operating system does not keep the values after the process is reaped and the process is reaped by the java runtime as soon as it exits,
+ * so the processes are sampled periodically by one background thread and the last sample taken while the process was running is used.
+ * The CPU time of the waited-for children of the process is included (e.g. of the commands executed by a shell).
+ */
+public class ResourceSampler {
+	
+	/**
+	 * Interval (in milliseconds) between two samples of a process.
+	 */
+	public static final long SAMPLE_INTERVAL_MILLIS = 20;
+	
+	/**
+	 * Length (in nanoseconds) of the clock tick in which /proc reports the CPU times (USER_HZ is 100 for all Linux user space).
+	 */
+	private static final long NANOS_PER_TICK = 10000000L;
+	
+	/**
+	 * Maximum size (in bytes) of a /proc file read.
+	 */
+	private static final int MAX_FILE_SIZE = 8 * 1024;
+	
+	private static final ResourceSampler INSTANCE = new ResourceSampler();
+	
+	/**
+	 * Processes being sampled.
+	 */
+	private final List<Handle> handles = new ArrayList<Handle>();
+	
+	private Thread thread = null;
+	
+	private ResourceSampler() {
+	}
+	
+	/**
+	 * Starts sampling of the process.
+	 * @param process started process
+	 * @return handle used to stop the sampling and to get the result
+	 */
+	public static Handle start(Process process) {
+		Handle h = new Handle(process, getPid(process));
+		if (h.pid > 0) {
+			h.sample();
+			INSTANCE.add(h);
+		}
+		return h;
+	}
+	
+	/**
+	 * Gets the identifier of the process.
+	 * @param process some process
+	 * @return process identifier or -1 if it is not known
+	 */
+	public static long getPid(Process process) {
+		try {
+			// java 9+
+			Method m = Process.class.getMethod("pid");
+			return ((Number) m.invoke(process)).longValue();
+		} catch (Exception e) {
+			// nothing
+		}
+		for (Class<?> c = process.getClass(); c != null; c = c.getSuperclass()) {
+			try {
+				Field f = c.getDeclaredField("pid");
+				f.setAccessible(true);
+				return ((Number) f.get(process)).longValue();
+			} catch (Exception e) {
+				// nothing
+			}
+		}
+		return -1;
+	}
+	
+	private synchronized void add(Handle h) {
+		handles.add(h);
+		if (thread == null) {
+			thread = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					sampleLoop();
+				}
+				
+			});
+			thread.setDaemon(true);
+			thread.start();
+		}
+		notifyAll();
+	}
+	
+	private synchronized void remove(Handle h) {
+		handles.remove(h);
+	}
+	
+	private void sampleLoop() {
+		while (true) {
+			List<Handle> current;
+			synchronized(this) {
+				try {
+					while (handles.isEmpty()) {
+						wait();
+					}
+				} catch (InterruptedException e) {
+					thread = null;
+					return;
+				}
+				current = new ArrayList<Handle>(handles);
+			}
+			
+			for (Handle h : current) {
+				h.sample();
+			}
+			
+			try {
+				Thread.sleep(SAMPLE_INTERVAL_MILLIS);
+			} catch (InterruptedException e) {
+				synchronized(this) {
+					thread = null;
+				}
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Sampling of one process.
+	 */
+	public static class Handle {
+		
+		private final Process process;
+		
+		private final long pid;
+		
+		private boolean sampled = false;
+		
+		private boolean finished = false;
+		
+		private long userCpuNanos = 0;
+		
+		private long systemCpuNanos = 0;
+		
+		private long maxRssBytes = 0;
+		
+		private long readBytes = 0;
+		
+		private long writeBytes = 0;
+		
+		private Handle(Process process, long pid) {
+			this.process = process;
+			this.pid = pid;
+		}
+		
+		/**
+		 * Stops the sampling (should be called after the process has exited).
+		 * @param name command description
+		 * @return last sampled values
+		 */
+		public ResourceUsage finish(String name) {
+			if (pid > 0) {
+				INSTANCE.remove(this);
+			}
+			synchronized(this) {
+				finished = true;
+				return new ResourceUsage(name, sampled, userCpuNanos, systemCpuNanos, maxRssBytes, readBytes, writeBytes);
+			}
+		}
+		
+		/**
+		 * Reads the current values. The values are dropped if the process has exited meanwhile (the identifier could have been reused already).
+		 */
+		private void sample() {
+			String stat;
+			String status;
+			String io;
+			try {
+				stat = readFile("/proc/" + pid + "/stat");
+				status = readFile("/proc/" + pid + "/status");
+			} catch (IOException e) {
+				return;
+			}
+			try {
+				io = readFile("/proc/" + pid + "/io");
+			} catch (IOException e) {
+				// not permitted e.g. for setuid processes
+				io = null;
+			}
+			
+			if (! isRunning()) {
+				return;
+			}
+			
+			long[] times = parseStatTimes(stat);
+			long hwm = parseField(status, "VmHWM:");
+			
+			synchronized(this) {
+				if (finished) {
+					return;
+				}
+				if (times != null) {
+					userCpuNanos = Math.max(userCpuNanos, times[0] * NANOS_PER_TICK);
+					systemCpuNanos = Math.max(systemCpuNanos, times[1] * NANOS_PER_TICK);
+				}
+				if (hwm >= 0) {
+					maxRssBytes = Math.max(maxRssBytes, hwm * 1024);
+				}
+				if (io != null) {
+					readBytes = Math.max(readBytes, parseField(io, "read_bytes:"));
+					writeBytes = Math.max(writeBytes, parseField(io, "write_bytes:"));
+				}
+				sampled = true;
+			}
+		}
+		
+		private boolean isRunning() {
+			try {
+				process.exitValue();
+				return false;
+			} catch (IllegalThreadStateException e) {
+				return true;
+			}
+		}
+		
+	}
+	
+	/**
+	 * Parses the user and system CPU times (including the waited-for children) from the content of /proc/&lt;pid&gt;/stat.
+	 * @return user and system time in clock ticks or null if the content is not valid
+	 */
+	private static long[] parseStatTimes(String stat) {
+		// the command name can contain spaces and parentheses, the fields follow the last parenthesis
+		int p = stat.lastIndexOf(')');
+		if (p == -1) {
+			return null;
+		}
+		String[] fields = stat.substring(p + 1).trim().split(" ");
+		// fields[0] is the field 3 (state), utime, stime, cutime and cstime are the fields 14-17
+		if (fields.length < 15) {
+			return null;
+		}
+		try {
+			long utime = Long.parseLong(fields[11]) + Long.parseLong(fields[13]);
+			long stime = Long.parseLong(fields[12]) + Long.parseLong(fields[14]);
+			return new long[] { utime, stime };
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Parses the numeric value of a "name: value" line.
+	 * @return value or -1 if there is no such line
+	 */
+	private static long parseField(String content, String name) {
+		int p = content.indexOf(name);
+		if (p == -1) {
+			return -1;
+		}
+		int start = p + name.length();
+		while ((start < content.length()) && (content.charAt(start) == ' ' || content.charAt(start) == '\t')) {
+			++start;
+		}
+		int end = start;
+		while ((end < content.length()) && Character.isDigit(content.charAt(end))) {
+			++end;
+		}
+		if (end == start) {
+			return -1;
+		}
+		return Long.parseLong(content.substring(start, end));
+	}
+	
+	private static String readFile(String path) throws IOException {
+		InputStream is = new FileInputStream(path);
+		try {
+			byte[] b = new byte[MAX_FILE_SIZE];
+			int length = 0;
+			int n;
+			while ((length < b.length) && ((n = is.read(b, length, b.length - length)) != -1)) {
+				length += n;
+			}
+			return new String(b, 0, length, "US-ASCII");
+		} finally {
+			is.close();
+		}
+	}
+	
+}
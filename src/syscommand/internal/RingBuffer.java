@@ -0,0 +1,237 @@
+package syscommand.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * Bounded in-memory buffer connecting one writing thread with one reading thread.
+ * The writer blocks while the buffer is full, the reader blocks while the buffer is empty.
+ * Closing the output stream signals the end of data to the reader, closing the input stream causes the next writes to fail (like a broken pipe).
+ */
+public class RingBuffer {
+	
+	/**
+	 * Default buffer capacity (in bytes), the same as the default capacity of a pipe on Linux.
+	 */
+	public static final int DEFAULT_CAPACITY = 64 * 1024;
+	
+	/**
+	 * Buffered data.
+	 */
+	private final byte[] buffer;
+	
+	/**
+	 * Position of the first unread byte in the buffer.
+	 */
+	private int readPos = 0;
+	
+	/**
+	 * Number of unread bytes in the buffer.
+	 */
+	private int count = 0;
+	
+	/**
+	 * If the writing side has been closed (no more data will come).
+	 */
+	private boolean writerClosed = false;
+	
+	/**
+	 * If the reading side has been closed (no more data will be read).
+	 */
+	private boolean readerClosed = false;
+	
+	/**
+	 * Stream for reading the data from the buffer.
+	 */
+	private final InputStream inputStream = new RingBufferInputStream();
+	
+	/**
+	 * Stream for writing the data to the buffer.
+	 */
+	private final OutputStream outputStream = new RingBufferOutputStream();
+	
+	/**
+	 * Creates the buffer with the default capacity.
+	 */
+	public RingBuffer() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Creates the buffer with the specified capacity.
+	 * @param capacity buffer capacity in bytes
+	 * @throws IllegalArgumentException if the capacity is not positive
+	 */
+	public RingBuffer(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		}
+		buffer = new byte[capacity];
+	}
+	
+	/**
+	 * Gets the stream for reading the data from the buffer. Only one thread should read from it.
+	 * @return input stream of this buffer
+	 */
+	public InputStream getInputStream() {
+		return inputStream;
+	}
+	
+	/**
+	 * Gets the stream for writing the data to the buffer. Only one thread should write to it.
+	 * @return output stream of this buffer
+	 */
+	public OutputStream getOutputStream() {
+		return outputStream;
+	}
+	
+	/**
+	 * Reads up to len bytes, blocks until at least one byte is available or the writing side is closed.
+	 * @return number of bytes read or -1 at the end of data
+	 */
+	private synchronized int read(byte[] b, int off, int len) throws IOException {
+		if (readerClosed) {
+			throw new IOException("Stream closed");
+		}
+		if (len == 0) {
+			return 0;
+		}
+		
+		while (count == 0) {
+			if (writerClosed) {
+				return -1;
+			}
+			waitForChange();
+		}
+		
+		int n = Math.min(len, count);
+		int first = Math.min(n, buffer.length - readPos);
+		System.arraycopy(buffer, readPos, b, off, first);
+		System.arraycopy(buffer, 0, b, off + first, n - first);
+		readPos = (readPos + n) % buffer.length;
+		count -= n;
+		
+		notifyAll();
+		return n;
+	}
+	
+	/**
+	 * Writes all len bytes, blocks while the buffer is full.
+	 */
+	private synchronized void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (writerClosed) {
+				throw new IOException("Stream closed");
+			}
+			if (readerClosed) {
+				throw new IOException("Pipe closed");
+			}
+			
+			if (count == buffer.length) {
+				waitForChange();
+				continue;
+			}
+			
+			int writePos = (readPos + count) % buffer.length;
+			int n = Math.min(len, buffer.length - count);
+			int first = Math.min(n, buffer.length - writePos);
+			System.arraycopy(b, off, buffer, writePos, first);
+			System.arraycopy(b, off + first, buffer, 0, n - first);
+			count += n;
+			off += n;
+			len -= n;
+			
+			notifyAll();
+		}
+	}
+	
+	/**
+	 * Gets the number of bytes which can be read without blocking.
+	 */
+	private synchronized int available() {
+		return count;
+	}
+	
+	/**
+	 * Closes the writing side.
+	 */
+	private synchronized void closeWriter() {
+		writerClosed = true;
+		notifyAll();
+	}
+	
+	/**
+	 * Closes the reading side and drops the unread data.
+	 */
+	private synchronized void closeReader() {
+		readerClosed = true;
+		count = 0;
+		notifyAll();
+	}
+	
+	/**
+	 * Waits until the other side changes the buffer state. Must be called with the monitor held.
+	 */
+	private void waitForChange() throws InterruptedIOException {
+		try {
+			wait();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Thread interrupted");
+		}
+	}
+	
+	/**
+	 * Reading side of the buffer.
+	 */
+	private class RingBufferInputStream extends InputStream {
+		
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			int n = RingBuffer.this.read(b, 0, 1);
+			return (n == -1) ? -1 : (b[0] & 0xFF);
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return RingBuffer.this.read(b, off, len);
+		}
+		
+		@Override
+		public int available() throws IOException {
+			return RingBuffer.this.available();
+		}
+		
+		@Override
+		public void close() throws IOException {
+			closeReader();
+		}
+		
+	}
+	
+	/**
+	 * Writing side of the buffer.
+	 */
+	private class RingBufferOutputStream extends OutputStream {
+		
+		@Override
+		public void write(int b) throws IOException {
+			RingBuffer.this.write(new byte[] { (byte) b }, 0, 1);
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			RingBuffer.this.write(b, off, len);
+		}
+		
+		@Override
+		public void close() throws IOException {
+			closeWriter();
+		}
+		
+	}
+	
+}
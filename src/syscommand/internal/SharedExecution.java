@@ -0,0 +1,462 @@
+package syscommand.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import syscommand.ResourceUsage;
+import syscommand.exception.CommandException;
+
+/**
+ * One execution of a process shared by more commands (participants) running at the same time.
+ * The output of the process is stored until all the participants have read it, so each participant reads it from the beginning, even if it has attached later.
+ * Once the beginning of the output has been dropped, no participant can attach anymore.
+ * At most {@link #MAX_BUFFERED} bytes are stored, the reading from the process waits for the slowest participant then (as a process writing to a pipe does).
+ * The process is started by the first participant, the others wait for it to start.
+ */
+public class SharedExecution {
+	
+	/**
+	 * Initial capacity (in bytes) of the output storage.
+	 */
+	private static final int INITIAL_CAPACITY = 4 * 1024;
+	
+	/**
+	 * Maximum number of the stored bytes of the output which have not been read by all the participants yet
+	 * (exceeded only by one write to the empty storage).
+	 */
+	public static final int MAX_BUFFERED = 16 * 1024 * 1024;
+	
+	/**
+	 * If the start has been claimed by a participant.
+	 */
+	private boolean startClaimed = false;
+	
+	/**
+	 * If the process has been started (or failed to start).
+	 */
+	private boolean started = false;
+	
+	/**
+	 * Why the process could not be started or null.
+	 */
+	private CommandException startFailure = null;
+	
+	/**
+	 * Started process.
+	 */
+	private Process process = null;
+	
+	/**
+	 * Standard error output of the process.
+	 */
+	private ByteArrayOutputStream stderr = null;
+	
+	/**
+	 * Output of the process read so far and not read by all the participants yet.
+	 */
+	private byte[] output = new byte[INITIAL_CAPACITY];
+	
+	/**
+	 * Index of the first valid byte in {@link #output}.
+	 */
+	private int outputStart = 0;
+	
+	/**
+	 * Number of valid bytes in {@link #output}.
+	 */
+	private int outputLength = 0;
+	
+	/**
+	 * Position of the first valid byte of {@link #output} in the whole output (number of the dropped bytes).
+	 */
+	private long outputBase = 0;
+	
+	/**
+	 * Readers of the participants which have not been closed.
+	 */
+	private final List<Participant> readers = new ArrayList<Participant>();
+	
+	/**
+	 * If the reading from the process waits for the participants to read the stored output.
+	 */
+	private boolean writerWaiting = false;
+	
+	/**
+	 * If the whole output has been read from the process.
+	 */
+	private boolean outputFinished = false;
+	
+	/**
+	 * If the process has exited (or the execution failed).
+	 */
+	private boolean exited = false;
+	
+	/**
+	 * Exit status of the process.
+	 */
+	private int exitStatus = -1;
+	
+	/**
+	 * Why the execution failed or null.
+	 */
+	private Throwable failure = null;
+	
+	/**
+	 * Resources used by the process or null if they have not been measured.
+	 */
+	private ResourceUsage resourceUsage = null;
+	
+	/**
+	 * Number of participants which have not terminated their participation.
+	 */
+	private int participants = 0;
+	
+	/**
+	 * Adds a participant.
+	 * @return participant reading the output of the process from the beginning (the first one has to start the process and then call
+	 *   {@link #started(Process, ByteArrayOutputStream)} or {@link #startFailed(CommandException)}) or null if the beginning of the output has already been dropped
+	 */
+	public synchronized Participant attach() {
+		if (startClaimed && (outputBase > 0)) {
+			return null;
+		}
+		++participants;
+		Participant participant = new Participant(! startClaimed);
+		startClaimed = true;
+		readers.add(participant);
+		return participant;
+	}
+	
+	/**
+	 * Called by the first participant after the process has been started.
+	 * @param process started process
+	 * @param stderr buffer receiving the standard error output of the process
+	 */
+	public synchronized void started(Process process, ByteArrayOutputStream stderr) {
+		this.process = process;
+		this.stderr = stderr;
+		this.started = true;
+		notifyAll();
+	}
+	
+	/**
+	 * Called by the first participant if the process could not be started.
+	 * @param e why the process could not be started
+	 */
+	public synchronized void startFailed(CommandException e) {
+		this.startFailure = e;
+		this.started = true;
+		notifyAll();
+	}
+	
+	/**
+	 * Waits until the process is started.
+	 * @throws CommandException if the process could not be started
+	 */
+	public synchronized void awaitStarted() throws CommandException {
+		try {
+			while (! started) {
+				wait();
+			}
+		} catch (InterruptedException e) {
+			throw new CommandException("Thread interrupted", e);
+		}
+		if (startFailure != null) {
+			throw new CommandException("Unable to start shared process", startFailure);
+		}
+	}
+	
+	/**
+	 * Gets the stream storing the output of the process. Closing it marks the end of the output.
+	 * @return output stream
+	 */
+	public OutputStream getOutputSink() {
+		return new OutputStream() {
+			
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[] { (byte) b }, 0, 1);
+			}
+			
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				append(b, off, len);
+			}
+			
+			@Override
+			public void close() throws IOException {
+				finishOutput();
+			}
+			
+		};
+	}
+	
+	/**
+	 * Called after the process has exited.
+	 * @param exitStatus exit status of the process
+	 */
+	public synchronized void exited(int exitStatus) {
+		if (! exited) {
+			this.exitStatus = exitStatus;
+			this.exited = true;
+			notifyAll();
+		}
+	}
+	
+	/**
+	 * Called after the process has exited (before {@link #exited(int)}) if its resource usage has been measured.
+	 * @param resourceUsage resources used by the process or null
+	 */
+	public synchronized void setResourceUsage(ResourceUsage resourceUsage) {
+		this.resourceUsage = resourceUsage;
+	}
+	
+	/**
+	 * Gets the resources used by the process.
+	 * @return resource usage or null if it has not been measured
+	 */
+	public synchronized ResourceUsage getResourceUsage() {
+		return resourceUsage;
+	}
+	
+	/**
+	 * Called if the execution failed.
+	 * @param t why the execution failed
+	 */
+	public synchronized void failed(Throwable t) {
+		if (! exited) {
+			this.failure = t;
+			this.exited = true;
+			this.outputFinished = true;
+			notifyAll();
+		}
+	}
+	
+	/**
+	 * Waits for the process to exit.
+	 * @return exit status
+	 * @throws CommandException if the execution failed
+	 */
+	public synchronized int awaitExit() throws CommandException {
+		try {
+			while (! exited) {
+				wait();
+			}
+		} catch (InterruptedException e) {
+			throw new CommandException("Thread interrupted", e);
+		}
+		if (failure != null) {
+			throw new CommandException("Shared process execution failed", failure);
+		}
+		return exitStatus;
+	}
+	
+	/**
+	 * Gets the standard error output of the process written so far.
+	 * @return standard error output data
+	 */
+	public byte[] getStderr() {
+		ByteArrayOutputStream s;
+		synchronized(this) {
+			s = stderr;
+		}
+		return (s != null) ? s.toByteArray() : new byte[0];
+	}
+	
+	/**
+	 * Removes a participant. The process is terminated if there are no participants anymore.
+	 */
+	private void detach(Participant participant) {
+		Process p;
+		synchronized(this) {
+			closeReader(participant);
+			if (participant.detached) {
+				return;
+			}
+			participant.detached = true;
+			--participants;
+			if ((participants > 0) || exited) {
+				return;
+			}
+			p = process;
+		}
+		if (p != null) {
+			p.destroy();
+		}
+	}
+	
+	private synchronized void append(byte[] b, int off, int len) throws IOException {
+		dropRead();
+		// the empty storage takes any write, so a write larger than the limit does not wait forever
+		while ((! readers.isEmpty()) && (outputLength > 0) && (outputLength + len > MAX_BUFFERED)) {
+			writerWaiting = true;
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Thread interrupted");
+			} finally {
+				writerWaiting = false;
+			}
+			dropRead();
+		}
+		if (readers.isEmpty()) {
+			// nobody is going to read the data
+			outputBase += len;
+			return;
+		}
+		
+		if (outputStart + outputLength + len > output.length) {
+			if (outputLength + len <= output.length) {
+				System.arraycopy(output, outputStart, output, 0, outputLength);
+			} else {
+				byte[] newOutput = new byte[Math.max(output.length * 2, outputLength + len)];
+				System.arraycopy(output, outputStart, newOutput, 0, outputLength);
+				output = newOutput;
+			}
+			outputStart = 0;
+		}
+		System.arraycopy(b, off, output, outputStart + outputLength, len);
+		outputLength += len;
+		notifyAll();
+	}
+	
+	/**
+	 * Drops the stored bytes which all the participants have read.
+	 */
+	private void dropRead() {
+		long min = outputBase + outputLength;
+		for (Participant reader : readers) {
+			min = Math.min(min, reader.position);
+		}
+		int dropped = (int) (min - outputBase);
+		if (dropped > 0) {
+			outputStart += dropped;
+			outputLength -= dropped;
+			outputBase = min;
+			if (outputLength == 0) {
+				outputStart = 0;
+			}
+		}
+	}
+	
+	private synchronized void closeReader(Participant participant) {
+		if (readers.remove(participant)) {
+			// the writer can be waiting for this reader
+			notifyAll();
+		}
+	}
+	
+	private synchronized void finishOutput() {
+		outputFinished = true;
+		notifyAll();
+	}
+	
+	private synchronized int readOutput(Participant participant, byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		while (participant.position >= outputBase + outputLength) {
+			if (failure != null) {
+				throw new IOException("Shared process execution failed", failure);
+			}
+			if (outputFinished) {
+				return -1;
+			}
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Thread interrupted");
+			}
+		}
+		int index = (int) (participant.position - outputBase);
+		int n = Math.min(len, outputLength - index);
+		System.arraycopy(output, outputStart + index, b, off, n);
+		participant.position += n;
+		if (writerWaiting) {
+			notifyAll();
+		}
+		return n;
+	}
+	
+	private synchronized int availableOutput(Participant participant) {
+		return (int) (outputBase + outputLength - participant.position);
+	}
+	
+	/**
+	 * Participant of the execution reading the output of the process from the beginning.
+	 */
+	public class Participant extends InputStream {
+		
+		private final boolean first;
+		
+		/**
+		 * Position of the next byte to read in the whole output.
+		 */
+		private long position = 0;
+		
+		private boolean closed = false;
+		
+		/**
+		 * If the participant has terminated its participation.
+		 */
+		private boolean detached = false;
+		
+		private Participant(boolean first) {
+			this.first = first;
+		}
+		
+		/**
+		 * Returns if this is the first participant, which has to start the process.
+		 * @return if this is the first participant
+		 */
+		public boolean isFirst() {
+			return first;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			int n = read(b, 0, 1);
+			return (n == -1) ? -1 : (b[0] & 0xFF);
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed");
+			}
+			return readOutput(this, b, off, len);
+		}
+		
+		@Override
+		public int available() throws IOException {
+			return availableOutput(this);
+		}
+		
+		/**
+		 * Closes the reading, the output is not stored for this participant anymore.
+		 */
+		@Override
+		public void close() throws IOException {
+			closed = true;
+			closeReader(this);
+		}
+		
+		/**
+		 * Terminates the participation (also closes the reading). The process is terminated if there are no participants anymore.
+		 */
+		public void detach() {
+			closed = true;
+			SharedExecution.this.detach(this);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,38 @@
+package syscommand.internal;
+
+import java.util.List;
+
+/**
+ * Quoting of arguments for the POSIX shell (sh).
+ */
+public class ShellQuoting {
+	
+	/**
+	 * Quotes one argument, so the shell passes it to the command unchanged. Single quotes are used, so no character except the single quote itself is special.
+	 * @param arg argument to quote
+	 * @return quoted argument
+	 */
+	public static String quote(String arg) {
+		return "'" + arg.replace("'", "'\\''") + "'";
+	}
+	
+	/**
+	 * Quotes all the arguments and joins them using spaces.
+	 * @param args arguments to quote
+	 * @return shell command line
+	 */
+	public static String quoteAll(List<String> args) {
+		StringBuilder sb = new StringBuilder();
+		boolean first = true;
+		for (String arg : args) {
+			if (first) {
+				first = false;
+			} else {
+				sb.append(' ');
+			}
+			sb.append(quote(arg));
+		}
+		return sb.toString();
+	}
+	
+}
@@ -3,10 +3,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
+import syscommand.CommandListener;
+import syscommand.OutputDigests;
+
 /**
  * Runnable copying all data from the provided input stream to the provided output stream.
  * Allows getting copying status (if it was successful).
- * Closes both streams after copying.
+ * Closes both streams after copying (a failure of closing the output stream is a copying failure).
  */
 public class StreamCopyRunnable implements Runnable {
 	
@@ -15,6 +18,11 @@ public class StreamCopyRunnable implements Runnable {
 	 */
 	private static final int BUFFER_SIZE = 4 * 1024 * 1024;
 	
+	/**
+	 * Buffer size (in bytes) for copying.
+	 */
+	private final int bufferSize;
+	
 	/**
 	 * Input stream to copy from.
 	 */
@@ -28,7 +36,37 @@ public class StreamCopyRunnable implements Runnable {
 	/**
 	 * If the copying was successful.
 	 */
-	private boolean success;
+	private volatile boolean success;
+	
+	/**
+	 * Exception which caused the copying to fail or null.
+	 */
+	private volatile Throwable exception = null;
+	
+	/**
+	 * Listener notified when the copying finishes or null.
+	 */
+	private final CommandListener listener;
+	
+	/**
+	 * Copying description for the listener.
+	 */
+	private final String description;
+	
+	/**
+	 * Index of the pipeline stage receiving the data (for the listener) or -1.
+	 */
+	private final int stageIndex;
+	
+	/**
+	 * Digests updated with the copied data or null.
+	 */
+	private OutputDigests digests = null;
+	
+	/**
+	 * Number of bytes copied so far.
+	 */
+	private volatile long bytesCopied = 0;
 	
 	/**
 	 * Creates new stream copy runnable with the specified streams.
@@ -36,9 +74,39 @@ public class StreamCopyRunnable implements Runnable {
 	 * @param os output stream to copy to
 	 */
 	public StreamCopyRunnable(InputStream is, OutputStream os) {
+		this(is, os, null, null, -1);
+	}
+	
+	/**
+	 * Creates new stream copy runnable with the specified streams and buffer size (use a small buffer for a small amount of data, e.g. for the standard error output).
+	 * @param is input stream to copy from
+	 * @param os output stream to copy to
+	 * @param bufferSize buffer size in bytes
+	 */
+	public StreamCopyRunnable(InputStream is, OutputStream os, int bufferSize) {
+		this(is, os, null, null, -1, bufferSize);
+	}
+	
+	/**
+	 * Creates new stream copy runnable with the specified streams notifying the listener when the copying finishes.
+	 * @param is input stream to copy from
+	 * @param os output stream to copy to
+	 * @param listener listener or null
+	 * @param description copying description for the listener
+	 * @param stageIndex index of the pipeline stage receiving the data or -1 if the copying is not between pipeline stages
+	 */
+	public StreamCopyRunnable(InputStream is, OutputStream os, CommandListener listener, String description, int stageIndex) {
+		this(is, os, listener, description, stageIndex, BUFFER_SIZE);
+	}
+	
+	private StreamCopyRunnable(InputStream is, OutputStream os, CommandListener listener, String description, int stageIndex, int bufferSize) {
+		this.bufferSize = bufferSize;
 		this.is = is;
 		this.os = os;
 		this.success = false;
+		this.listener = listener;
+		this.description = description;
+		this.stageIndex = stageIndex;
 	}
 	
 	/**
@@ -47,22 +115,32 @@ public class StreamCopyRunnable implements Runnable {
 	 */
 	@Override
 	public void run() {
+		long start = (listener != null) ? System.nanoTime() : 0;
+		Throwable failure = null;
 		try {
-			copy(is, os);
-			
-			success = true;
+			copy();
 		} catch (Throwable t) {
-			success = false;
+			failure = t;
 		} finally {
 			try {
 				is.close();
 			} catch (Throwable t) {
-				// nothing
+				// nothing (all the data have been read)
 			}
 			try {
 				os.close();
 			} catch (Throwable t) {
-				// nothing
+				// closing can flush buffered data, so the data may not have been delivered
+				if (failure == null) {
+					failure = t;
+				}
+			}
+			
+			exception = failure;
+			success = (failure == null);
+			
+			if (listener != null) {
+				listener.dataCopied(description, stageIndex, bytesCopied, System.nanoTime() - start, success);
 			}
 		}
 	}
@@ -76,16 +154,44 @@ public class StreamCopyRunnable implements Runnable {
 	}
 	
 	/**
-	 * Copies all date from an input stream to an output stream.
-	 * @param is input stream to copy data from
-	 * @param os input stream to copy data to
+	 * Gets the exception which caused the copying to fail.
+	 * @return exception or null if the copying has not failed
+	 */
+	public Throwable getException() {
+		return exception;
+	}
+	
+	/**
+	 * Sets the digests updated with the copied data (during the copying, so no second pass over the data is needed). Must be called before running.
+	 * @param digests digests to update or null
+	 */
+	public void setDigests(OutputDigests digests) {
+		this.digests = digests;
+	}
+	
+	/**
+	 * Gets the number of bytes copied so far.
+	 * @return number of copied bytes
+	 */
+	public long getBytesCopied() {
+		return bytesCopied;
+	}
+	
+	/**
+	 * Copies all date from the input stream to the output stream.
 	 * @throws IOException if some input or output has failed
 	 */
-	private static void copy(InputStream is, OutputStream os) throws IOException {
-		byte[] b = new byte[BUFFER_SIZE];
+	private void copy() throws IOException {
+		byte[] b = new byte[bufferSize];
 		int partLen;
+		long total = 0;
 		while ((partLen = is.read(b)) != -1) {
+			if (digests != null) {
+				digests.update(b, 0, partLen);
+			}
 			os.write(b, 0, partLen);
+			total += partLen;
+			bytesCopied = total;
 		}
 	}
 
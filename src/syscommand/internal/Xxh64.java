@@ -0,0 +1,145 @@
+package syscommand.internal;
+
+/**
+ * XXH64 hash (xxHash, 64-bit variant) computed incrementally.
+ */
+public class Xxh64 {
+	
+	private static final long PRIME1 = 0x9E3779B185EBCA87L;
+	private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long PRIME3 = 0x165667B19E3779F9L;
+	private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+	private static final long PRIME5 = 0x27D4EB2F165667C5L;
+	
+	private final long seed;
+	
+	private long v1;
+	private long v2;
+	private long v3;
+	private long v4;
+	
+	/**
+	 * Number of bytes processed so far.
+	 */
+	private long totalLength = 0;
+	
+	/**
+	 * Bytes not yet processed (less than one 32-byte stripe).
+	 */
+	private final byte[] buffer = new byte[32];
+	
+	private int bufferLength = 0;
+	
+	/**
+	 * Creates the hash computation.
+	 * @param seed hash seed
+	 */
+	public Xxh64(long seed) {
+		this.seed = seed;
+		v1 = seed + PRIME1 + PRIME2;
+		v2 = seed + PRIME2;
+		v3 = seed;
+		v4 = seed - PRIME1;
+	}
+	
+	/**
+	 * Updates the hash with the data.
+	 * @param b buffer with the data
+	 * @param off offset of the data in the buffer
+	 * @param len length of the data
+	 */
+	public void update(byte[] b, int off, int len) {
+		totalLength += len;
+		
+		if (bufferLength > 0) {
+			int n = Math.min(len, 32 - bufferLength);
+			System.arraycopy(b, off, buffer, bufferLength, n);
+			bufferLength += n;
+			off += n;
+			len -= n;
+			if (bufferLength < 32) {
+				return;
+			}
+			processStripe(buffer, 0);
+			bufferLength = 0;
+		}
+		
+		while (len >= 32) {
+			processStripe(b, off);
+			off += 32;
+			len -= 32;
+		}
+		
+		System.arraycopy(b, off, buffer, 0, len);
+		bufferLength = len;
+	}
+	
+	/**
+	 * Computes the hash of the data processed so far.
+	 * @return hash value
+	 */
+	public long getValue() {
+		long h;
+		if (totalLength >= 32) {
+			h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			h = mergeRound(h, v1);
+			h = mergeRound(h, v2);
+			h = mergeRound(h, v3);
+			h = mergeRound(h, v4);
+		} else {
+			h = seed + PRIME5;
+		}
+		h += totalLength;
+		
+		int p = 0;
+		while (p + 8 <= bufferLength) {
+			h ^= round(0, readLongLE(buffer, p));
+			h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+			p += 8;
+		}
+		if (p + 4 <= bufferLength) {
+			h ^= (readIntLE(buffer, p) & 0xFFFFFFFFL) * PRIME1;
+			h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+			p += 4;
+		}
+		while (p < bufferLength) {
+			h ^= (buffer[p] & 0xFF) * PRIME5;
+			h = Long.rotateLeft(h, 11) * PRIME1;
+			++p;
+		}
+		
+		h ^= h >>> 33;
+		h *= PRIME2;
+		h ^= h >>> 29;
+		h *= PRIME3;
+		h ^= h >>> 32;
+		return h;
+	}
+	
+	private void processStripe(byte[] b, int off) {
+		v1 = round(v1, readLongLE(b, off));
+		v2 = round(v2, readLongLE(b, off + 8));
+		v3 = round(v3, readLongLE(b, off + 16));
+		v4 = round(v4, readLongLE(b, off + 24));
+	}
+	
+	private static long round(long acc, long input) {
+		acc += input * PRIME2;
+		acc = Long.rotateLeft(acc, 31);
+		return acc * PRIME1;
+	}
+	
+	private static long mergeRound(long acc, long v) {
+		acc ^= round(0, v);
+		return acc * PRIME1 + PRIME4;
+	}
+	
+	private static long readLongLE(byte[] b, int off) {
+		return (readIntLE(b, off) & 0xFFFFFFFFL) | (((long) readIntLE(b, off + 4)) << 32);
+	}
+	
+	private static int readIntLE(byte[] b, int off) {
+		return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8) | ((b[off + 2] & 0xFF) << 16) | ((b[off + 3] & 0xFF) << 24);
+	}
+	
+}
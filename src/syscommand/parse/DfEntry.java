@@ -0,0 +1,96 @@
+package syscommand.parse;
+
+import java.io.File;
+import java.io.IOException;
+
+import syscommand.SingleCommand;
+
+/**
+ * Usage of one filesystem as printed by df in the POSIX format with sizes in bytes (see {@link #command(File...)}).
+ * The filesystem name must not contain whitespace (as required by the POSIX format), the mount point can.
+ */
+public class DfEntry {
+	
+	private static final TableParser<DfEntry> PARSER = new TableParser<DfEntry>(new RowMapper<DfEntry>() {
+		
+		@Override
+		public DfEntry map(Row row) throws IOException {
+			// Filesystem 1-blocks Used Available Capacity Mounted-on (the capacity is not parsed)
+			return new DfEntry(row.getString(0), row.getLong(1), row.getLong(2), row.getLong(3), new File(row.getRest(5)));
+		}
+		
+	}).withSkippedLines(1);
+	
+	private final String filesystem;
+	
+	private final long totalBytes;
+	
+	private final long usedBytes;
+	
+	private final long availableBytes;
+	
+	private final File mountPoint;
+	
+	/**
+	 * Creates the entry.
+	 * @param filesystem filesystem (device etc.)
+	 * @param totalBytes size of the filesystem
+	 * @param usedBytes used space
+	 * @param availableBytes space available to unprivileged users
+	 * @param mountPoint where the filesystem is mounted
+	 */
+	public DfEntry(String filesystem, long totalBytes, long usedBytes, long availableBytes, File mountPoint) {
+		this.filesystem = filesystem;
+		this.totalBytes = totalBytes;
+		this.usedBytes = usedBytes;
+		this.availableBytes = availableBytes;
+		this.mountPoint = mountPoint;
+	}
+	
+	/**
+	 * Creates the command printing the output parsed by {@link #parser()}: df -P -B1.
+	 * @param files files whose filesystems are printed (all the filesystems if none)
+	 * @return command
+	 */
+	public static SingleCommand command(File... files) {
+		SingleCommand command = new SingleCommand("df", "-P", "-B1");
+		for (File f : files) {
+			command.addLastArg(f.getPath());
+		}
+		return command;
+	}
+	
+	/**
+	 * Gets the parser of the output of {@link #command(File...)}.
+	 * @return parser
+	 */
+	public static TableParser<DfEntry> parser() {
+		return PARSER;
+	}
+	
+	public String getFilesystem() {
+		return filesystem;
+	}
+	
+	public long getTotalBytes() {
+		return totalBytes;
+	}
+	
+	public long getUsedBytes() {
+		return usedBytes;
+	}
+	
+	public long getAvailableBytes() {
+		return availableBytes;
+	}
+	
+	public File getMountPoint() {
+		return mountPoint;
+	}
+	
+	@Override
+	public String toString() {
+		return filesystem + " on " + mountPoint.getPath() + ": " + usedBytes + " of " + totalBytes + " B used, " + availableBytes + " B available";
+	}
+	
+}
@@ -0,0 +1,58 @@
+package syscommand.parse;
+
+/**
+ * Type of a file as listed by ls -l or stat (see {@link LsEntry} and {@link StatEntry}).
+ */
+public enum FileType {
+	FILE('-', 0100000),
+	DIRECTORY('d', 0040000),
+	SYMLINK('l', 0120000),
+	CHAR_DEVICE('c', 0020000),
+	BLOCK_DEVICE('b', 0060000),
+	FIFO('p', 0010000),
+	SOCKET('s', 0140000),
+	UNKNOWN('?', -1);
+	
+	/**
+	 * Mask of the file type bits of the mode (S_IFMT).
+	 */
+	private static final int TYPE_MASK = 0170000;
+	
+	private final char lsChar;
+	
+	private final int modeBits;
+	
+	private FileType(char lsChar, int modeBits) {
+		this.lsChar = lsChar;
+		this.modeBits = modeBits;
+	}
+	
+	/**
+	 * Gets the type by the first character of the mode printed by ls -l.
+	 * @param c type character
+	 * @return file type ({@link #UNKNOWN} for an unknown character)
+	 */
+	public static FileType fromLsChar(char c) {
+		for (FileType t : values()) {
+			if (t.lsChar == c) {
+				return t;
+			}
+		}
+		return UNKNOWN;
+	}
+	
+	/**
+	 * Gets the type by the file type bits of the raw mode (st_mode).
+	 * @param mode raw mode including the type bits
+	 * @return file type ({@link #UNKNOWN} for unknown type bits)
+	 */
+	public static FileType fromMode(int mode) {
+		for (FileType t : values()) {
+			if (t.modeBits == (mode & TYPE_MASK)) {
+				return t;
+			}
+		}
+		return UNKNOWN;
+	}
+	
+}
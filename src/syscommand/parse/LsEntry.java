@@ -0,0 +1,187 @@
+package syscommand.parse;
+
+import java.io.File;
+import java.io.IOException;
+
+import syscommand.SingleCommand;
+
+/**
+ * One file as printed by ls -l with numeric owners and modification times (see {@link #command(File...)}).
+ * The names are printed literally, so a name containing a line end can not be parsed.
+ */
+public class LsEntry {
+	
+	private static final TableParser<LsEntry> PARSER = new TableParser<LsEntry>(new RowMapper<LsEntry>() {
+		
+		@Override
+		public LsEntry map(Row row) throws IOException {
+			if ((row.getFieldCount() == 2) && row.fieldEquals(0, "total")) {
+				return null;
+			}
+			// mode links uid gid size mtime name (devices have "major, minor" instead of the size)
+			FileType type = FileType.fromLsChar(row.getChar(0, 0));
+			int permissions = parsePermissions(row);
+			long size;
+			int mtimeField;
+			if (row.getChar(4, row.getLength(4) - 1) == ',') {
+				size = -1;
+				mtimeField = 6;
+			} else {
+				size = row.getLong(4);
+				mtimeField = 5;
+			}
+			String name = row.getRest(mtimeField + 1);
+			String linkTarget = null;
+			if (type == FileType.SYMLINK) {
+				int p = name.indexOf(" -> ");
+				if (p != -1) {
+					linkTarget = name.substring(p + 4);
+					name = name.substring(0, p);
+				}
+			}
+			return new LsEntry(type, permissions, row.getLong(1), row.getLong(2), row.getLong(3), size, row.getLong(mtimeField), name, linkTarget);
+		}
+		
+	});
+	
+	/**
+	 * Permission bits in the order of the characters printed by ls (after the type character).
+	 */
+	private static final int[] PERMISSION_BITS = { 0400, 0200, 0100, 040, 020, 010, 04, 02, 01 };
+	
+	private final FileType type;
+	
+	private final int permissions;
+	
+	private final long links;
+	
+	private final long uid;
+	
+	private final long gid;
+	
+	private final long size;
+	
+	private final long mtimeSeconds;
+	
+	private final String name;
+	
+	private final String linkTarget;
+	
+	/**
+	 * Creates the entry.
+	 * @param type file type
+	 * @param permissions permission bits including the setuid, setgid and sticky bits (e.g. 04755)
+	 * @param links number of hard links
+	 * @param uid owner user identifier
+	 * @param gid owner group identifier
+	 * @param size size in bytes or -1 for a device
+	 * @param mtimeSeconds modification time (seconds since the epoch)
+	 * @param name file name as printed by ls
+	 * @param linkTarget target of a symbolic link or null
+	 */
+	public LsEntry(FileType type, int permissions, long links, long uid, long gid, long size, long mtimeSeconds, String name, String linkTarget) {
+		this.type = type;
+		this.permissions = permissions;
+		this.links = links;
+		this.uid = uid;
+		this.gid = gid;
+		this.size = size;
+		this.mtimeSeconds = mtimeSeconds;
+		this.name = name;
+		this.linkTarget = linkTarget;
+	}
+	
+	/**
+	 * Creates the command printing the output parsed by {@link #parser()}: ls -l -n --time-style=+%s --quoting-style=literal.
+	 * List either one directory or files (more directories are printed with headers).
+	 * @param files files or directory to list (the working directory if none)
+	 * @return command
+	 */
+	public static SingleCommand command(File... files) {
+		SingleCommand command = new SingleCommand("ls", "-l", "-n", "--time-style=+%s", "--quoting-style=literal");
+		for (File f : files) {
+			command.addLastArg(f.getPath());
+		}
+		return command;
+	}
+	
+	/**
+	 * Gets the parser of the output of {@link #command(File...)}.
+	 * @return parser
+	 */
+	public static TableParser<LsEntry> parser() {
+		return PARSER;
+	}
+	
+	/**
+	 * Parses the permission characters (e.g. "rwsr-xr-t") of the mode field.
+	 */
+	private static int parsePermissions(Row row) throws IOException {
+		if (row.getLength(0) < 10) {
+			throw row.invalid("invalid mode");
+		}
+		int permissions = 0;
+		for (int i = 0; i < PERMISSION_BITS.length; ++i) {
+			char c = row.getChar(0, i + 1);
+			if ((c == 'r') || (c == 'w') || (c == 'x')) {
+				permissions |= PERMISSION_BITS[i];
+			} else if ((c == 's') || (c == 't')) {
+				permissions |= PERMISSION_BITS[i] | specialBit(i);
+			} else if ((c == 'S') || (c == 'T')) {
+				permissions |= specialBit(i);
+			} else if (c != '-') {
+				throw row.invalid("invalid mode");
+			}
+		}
+		return permissions;
+	}
+	
+	/**
+	 * Gets the setuid, setgid or sticky bit shown instead of the execute permission.
+	 */
+	private static int specialBit(int index) {
+		return (index == 2) ? 04000 : ((index == 5) ? 02000 : 01000);
+	}
+	
+	public FileType getType() {
+		return type;
+	}
+	
+	public int getPermissions() {
+		return permissions;
+	}
+	
+	public long getLinks() {
+		return links;
+	}
+	
+	public long getUid() {
+		return uid;
+	}
+	
+	public long getGid() {
+		return gid;
+	}
+	
+	public long getSize() {
+		return size;
+	}
+	
+	public long getMtimeSeconds() {
+		return mtimeSeconds;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public String getLinkTarget() {
+		return linkTarget;
+	}
+	
+	@Override
+	public String toString() {
+		return type + " " + Integer.toOctalString(permissions) + " " + uid + ":" + gid + " " + size + " B " + name + ((linkTarget != null) ? " -> " + linkTarget : "");
+	}
+	
+}
@@ -0,0 +1,94 @@
+package syscommand.parse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import syscommand.SingleCommand;
+
+/**
+ * One mount as printed by the mount command without arguments: "source on target type fs-type (options)".
+ * The target can contain spaces (the fields are located from both ends of the line), the source must not.
+ * Note that {@link syscommand.concrete.MountTable} reads the mounts without creating a process.
+ */
+public class MountListEntry {
+	
+	private static final TableParser<MountListEntry> PARSER = new TableParser<MountListEntry>(new RowMapper<MountListEntry>() {
+		
+		@Override
+		public MountListEntry map(Row row) throws IOException {
+			int n = row.getFieldCount();
+			if ((n < 6) || (! row.fieldEquals(1, "on")) || (! row.fieldEquals(n - 3, "type"))) {
+				throw row.invalid("not a mount line");
+			}
+			String options = row.getString(n - 1);
+			if ((options.length() < 2) || (options.charAt(0) != '(') || (options.charAt(options.length() - 1) != ')')) {
+				throw row.invalid("invalid options");
+			}
+			return new MountListEntry(row.getString(0), new File(row.getString(2, n - 4)), row.getString(n - 2), options.substring(1, options.length() - 1));
+		}
+		
+	});
+	
+	private final String source;
+	
+	private final File target;
+	
+	private final String fsType;
+	
+	private final List<String> options;
+	
+	/**
+	 * Creates the entry.
+	 * @param source mount source (device etc.)
+	 * @param target mount point
+	 * @param fsType filesystem type
+	 * @param options mount options (comma separated)
+	 */
+	public MountListEntry(String source, File target, String fsType, String options) {
+		this.source = source;
+		this.target = target;
+		this.fsType = fsType;
+		this.options = Collections.unmodifiableList(Arrays.asList(options.split(",")));
+	}
+	
+	/**
+	 * Creates the command printing the output parsed by {@link #parser()}: mount.
+	 * @return command
+	 */
+	public static SingleCommand command() {
+		return new SingleCommand("mount");
+	}
+	
+	/**
+	 * Gets the parser of the output of {@link #command()}.
+	 * @return parser
+	 */
+	public static TableParser<MountListEntry> parser() {
+		return PARSER;
+	}
+	
+	public String getSource() {
+		return source;
+	}
+	
+	public File getTarget() {
+		return target;
+	}
+	
+	public String getFsType() {
+		return fsType;
+	}
+	
+	public List<String> getOptions() {
+		return options;
+	}
+	
+	@Override
+	public String toString() {
+		return source + " on " + target.getPath() + " type " + fsType + " " + options;
+	}
+	
+}
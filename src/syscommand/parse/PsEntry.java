@@ -0,0 +1,126 @@
+package syscommand.parse;
+
+import java.io.IOException;
+
+import syscommand.SingleCommand;
+
+/**
+ * One process as printed by ps with the columns selected by {@link #command()}.
+ */
+public class PsEntry {
+	
+	/**
+	 * State of a process (the first character of the ps state).
+	 */
+	public enum State {
+		RUNNING('R'),
+		SLEEPING('S'),
+		DISK_SLEEP('D'),
+		IDLE('I'),
+		STOPPED('T'),
+		TRACED('t'),
+		PAGING('W'),
+		ZOMBIE('Z'),
+		DEAD('X'),
+		UNKNOWN('?');
+		
+		private final char code;
+		
+		private State(char code) {
+			this.code = code;
+		}
+		
+		/**
+		 * Gets the state by its code.
+		 * @param code state character printed by ps
+		 * @return state ({@link #UNKNOWN} for an unknown code)
+		 */
+		public static State fromCode(char code) {
+			for (State s : values()) {
+				if (s.code == code) {
+					return s;
+				}
+			}
+			return UNKNOWN;
+		}
+	}
+	
+	private static final TableParser<PsEntry> PARSER = new TableParser<PsEntry>(new RowMapper<PsEntry>() {
+		
+		@Override
+		public PsEntry map(Row row) throws IOException {
+			// pid ppid stat rss args (the args of some processes can be missing)
+			String args = (row.getFieldCount() > 4) ? row.getRest(4) : "";
+			return new PsEntry(row.getLong(0), row.getLong(1), State.fromCode(row.getChar(2, 0)), row.getLong(3) * 1024, args);
+		}
+		
+	});
+	
+	private final long pid;
+	
+	private final long parentPid;
+	
+	private final State state;
+	
+	private final long rssBytes;
+	
+	private final String args;
+	
+	/**
+	 * Creates the entry.
+	 * @param pid process identifier
+	 * @param parentPid identifier of the parent process
+	 * @param state process state
+	 * @param rssBytes resident set size
+	 * @param args command with arguments (as one string)
+	 */
+	public PsEntry(long pid, long parentPid, State state, long rssBytes, String args) {
+		this.pid = pid;
+		this.parentPid = parentPid;
+		this.state = state;
+		this.rssBytes = rssBytes;
+		this.args = args;
+	}
+	
+	/**
+	 * Creates the command printing the output parsed by {@link #parser()}: ps -e -o pid=,ppid=,stat=,rss=,args= (all the processes, no header).
+	 * @return command
+	 */
+	public static SingleCommand command() {
+		return new SingleCommand("ps", "-e", "-o", "pid=,ppid=,stat=,rss=,args=");
+	}
+	
+	/**
+	 * Gets the parser of the output of {@link #command()}.
+	 * @return parser
+	 */
+	public static TableParser<PsEntry> parser() {
+		return PARSER;
+	}
+	
+	public long getPid() {
+		return pid;
+	}
+	
+	public long getParentPid() {
+		return parentPid;
+	}
+	
+	public State getState() {
+		return state;
+	}
+	
+	public long getRssBytes() {
+		return rssBytes;
+	}
+	
+	public String getArgs() {
+		return args;
+	}
+	
+	@Override
+	public String toString() {
+		return pid + " (parent " + parentPid + ", " + state + ", RSS " + (rssBytes / 1024) + " KiB): " + args;
+	}
+	
+}
@@ -0,0 +1,267 @@
+package syscommand.parse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * One line of a command output split into whitespace separated fields (see {@link TableParser}).
+ * Only the positions of the fields are known, a field is converted to a value (string, number etc.) only when it is requested,
+ * so the fields not needed by the {@link RowMapper} are never materialized.
+ * The row is reused for the next line, it must not be used after {@link RowMapper#map(Row)} returns.
+ */
+public final class Row {
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/**
+	 * Buffer containing the line.
+	 */
+	private byte[] b;
+	
+	/**
+	 * Start of the line in the buffer.
+	 */
+	private int lineStart;
+	
+	/**
+	 * End of the line in the buffer (exclusive).
+	 */
+	private int lineEnd;
+	
+	/**
+	 * Start positions of the fields in the buffer.
+	 */
+	private int[] starts = new int[16];
+	
+	/**
+	 * End positions of the fields in the buffer (exclusive).
+	 */
+	private int[] ends = new int[16];
+	
+	private int fieldCount;
+	
+	private long lineNumber;
+	
+	Row() {
+	}
+	
+	/**
+	 * Sets the line and finds its fields (separated by spaces and tabs, the leading and trailing whitespace is ignored).
+	 */
+	void set(byte[] b, int start, int end, long lineNumber) {
+		this.b = b;
+		this.lineStart = start;
+		this.lineEnd = end;
+		this.lineNumber = lineNumber;
+		fieldCount = 0;
+		int i = start;
+		while (true) {
+			while ((i < end) && ((b[i] == ' ') || (b[i] == '\t'))) {
+				++i;
+			}
+			if (i == end) {
+				break;
+			}
+			if (fieldCount == starts.length) {
+				starts = grow(starts);
+				ends = grow(ends);
+			}
+			starts[fieldCount] = i;
+			while ((i < end) && (b[i] != ' ') && (b[i] != '\t')) {
+				++i;
+			}
+			ends[fieldCount] = i;
+			++fieldCount;
+		}
+	}
+	
+	/**
+	 * Gets the number of the fields.
+	 * @return number of the fields (at least one, the empty lines are skipped)
+	 */
+	public int getFieldCount() {
+		return fieldCount;
+	}
+	
+	/**
+	 * Gets the number of the line in the output.
+	 * @return line number (starting with 1, including the skipped lines)
+	 */
+	public long getLineNumber() {
+		return lineNumber;
+	}
+	
+	/**
+	 * Gets the length of a field.
+	 * @param field field index (starting with 0)
+	 * @return number of bytes of the field
+	 * @throws IOException if the line has no such field
+	 */
+	public int getLength(int field) throws IOException {
+		check(field);
+		return ends[field] - starts[field];
+	}
+	
+	/**
+	 * Gets one character of a field (the fields containing codes, flags etc. are usually ASCII).
+	 * @param field field index (starting with 0)
+	 * @param index index of the byte in the field
+	 * @return byte of the field as a character
+	 * @throws IOException if the line has no such field or the field is shorter
+	 */
+	public char getChar(int field, int index) throws IOException {
+		if ((index < 0) || (index >= getLength(field))) {
+			throw invalid(field, "no character " + index);
+		}
+		return (char) (b[starts[field] + index] & 0xFF);
+	}
+	
+	/**
+	 * Compares a field to a string without converting the field.
+	 * @param field field index (starting with 0)
+	 * @param value ASCII string
+	 * @return if the field is equal to the string (false if the line has no such field)
+	 */
+	public boolean fieldEquals(int field, String value) {
+		if ((field < 0) || (field >= fieldCount) || (ends[field] - starts[field] != value.length())) {
+			return false;
+		}
+		for (int i = 0; i < value.length(); ++i) {
+			if (b[starts[field] + i] != value.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Gets a field as a string.
+	 * @param field field index (starting with 0)
+	 * @return field (bytes are converted using UTF-8 encoding to string)
+	 * @throws IOException if the line has no such field
+	 */
+	public String getString(int field) throws IOException {
+		return getString(field, field);
+	}
+	
+	/**
+	 * Gets the fields from one to another including the whitespace between them as a string (e.g. a path containing spaces).
+	 * @param fromField index of the first field (starting with 0)
+	 * @param toField index of the last field (inclusive)
+	 * @return fields (bytes are converted using UTF-8 encoding to string)
+	 * @throws IOException if the line has no such fields
+	 */
+	public String getString(int fromField, int toField) throws IOException {
+		check(fromField);
+		check(toField);
+		if (toField < fromField) {
+			throw invalid(fromField, "invalid field range to " + toField);
+		}
+		return new String(b, starts[fromField], ends[toField] - starts[fromField], UTF8);
+	}
+	
+	/**
+	 * Gets the rest of the line from a field (e.g. a command with arguments or a path containing spaces which is the last column).
+	 * @param field index of the first field (starting with 0)
+	 * @return fields to the end of the line (bytes are converted using UTF-8 encoding to string)
+	 * @throws IOException if the line has no such field
+	 */
+	public String getRest(int field) throws IOException {
+		return getString(field, fieldCount - 1);
+	}
+	
+	/**
+	 * Gets a field as a path.
+	 * @param field field index (starting with 0)
+	 * @return path
+	 * @throws IOException if the line has no such field
+	 */
+	public File getFile(int field) throws IOException {
+		return new File(getString(field));
+	}
+	
+	/**
+	 * Gets a field as a decimal number.
+	 * @param field field index (starting with 0)
+	 * @return number
+	 * @throws IOException if the line has no such field or the field is not a valid number
+	 */
+	public long getLong(int field) throws IOException {
+		return getLong(field, 10);
+	}
+	
+	/**
+	 * Gets a field as a number (without converting the field to a string).
+	 * @param field field index (starting with 0)
+	 * @param radix radix of the number (e.g. 16 for the hexadecimal numbers without a prefix)
+	 * @return number
+	 * @throws IOException if the line has no such field or the field is not a valid number
+	 */
+	public long getLong(int field, int radix) throws IOException {
+		check(field);
+		int i = starts[field];
+		int end = ends[field];
+		boolean negative = (b[i] == '-');
+		if (negative || (b[i] == '+')) {
+			++i;
+		}
+		if (i == end) {
+			throw invalid(field, "not a number");
+		}
+		long limit = Long.MIN_VALUE / radix;
+		long result = 0;
+		for (; i < end; ++i) {
+			int digit = Character.digit((char) (b[i] & 0xFF), radix);
+			if (digit == -1) {
+				throw invalid(field, "not a number");
+			}
+			// accumulated negatively, so Long.MIN_VALUE can be parsed
+			if ((result < limit) || (result * radix < Long.MIN_VALUE + digit)) {
+				throw invalid(field, "number out of range");
+			}
+			result = result * radix - digit;
+		}
+		if (negative) {
+			return result;
+		}
+		if (result == Long.MIN_VALUE) {
+			throw invalid(field, "number out of range");
+		}
+		return -result;
+	}
+	
+	/**
+	 * Gets the whole line (e.g. for an error message).
+	 * @return line (bytes are converted using UTF-8 encoding to string)
+	 */
+	public String getLine() {
+		return new String(b, lineStart, lineEnd - lineStart, UTF8);
+	}
+	
+	/**
+	 * Creates the exception about an invalid line.
+	 * @param message what is wrong with the line
+	 * @return exception with the line number and the line
+	 */
+	public IOException invalid(String message) {
+		return new IOException("Invalid line " + lineNumber + " of the output (" + message + "): " + getLine());
+	}
+	
+	private IOException invalid(int field, String message) {
+		return invalid("field " + field + ": " + message);
+	}
+	
+	private void check(int field) throws IOException {
+		if ((field < 0) || (field >= fieldCount)) {
+			throw invalid(field, "missing field");
+		}
+	}
+	
+	private static int[] grow(int[] a) {
+		int[] n = new int[a.length * 2];
+		System.arraycopy(a, 0, n, 0, a.length);
+		return n;
+	}
+	
+}
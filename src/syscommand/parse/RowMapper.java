@@ -0,0 +1,19 @@
+package syscommand.parse;
+
+import java.io.IOException;
+
+/**
+ * Converts one line of a command output to a typed record (see {@link TableParser}).
+ * @param <T> type of the records
+ */
+public interface RowMapper<T> {
+	
+	/**
+	 * Converts the line, reading only the fields needed by the record.
+	 * @param row fields of the line (must not be used after this method returns)
+	 * @return record or null to skip the line
+	 * @throws IOException if the line is not valid (see {@link Row#invalid(String)})
+	 */
+	T map(Row row) throws IOException;
+	
+}
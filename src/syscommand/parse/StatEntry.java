@@ -0,0 +1,128 @@
+package syscommand.parse;
+
+import java.io.File;
+import java.io.IOException;
+
+import syscommand.SingleCommand;
+
+/**
+ * Status of one file as printed by stat with the format of {@link #command(File...)}.
+ * The name is the last field, so it can contain spaces, but not a line end.
+ */
+public class StatEntry {
+	
+	private static final TableParser<StatEntry> PARSER = new TableParser<StatEntry>(new RowMapper<StatEntry>() {
+		
+		@Override
+		public StatEntry map(Row row) throws IOException {
+			// raw-mode(hex) links uid gid size mtime name
+			return new StatEntry((int) row.getLong(0, 16), row.getLong(1), row.getLong(2), row.getLong(3), row.getLong(4), row.getLong(5), new File(row.getRest(6)));
+		}
+		
+	});
+	
+	/**
+	 * Mask of the permission bits of the mode (including the setuid, setgid and sticky bits).
+	 */
+	private static final int PERMISSIONS_MASK = 07777;
+	
+	private final int mode;
+	
+	private final long links;
+	
+	private final long uid;
+	
+	private final long gid;
+	
+	private final long size;
+	
+	private final long mtimeSeconds;
+	
+	private final File file;
+	
+	/**
+	 * Creates the entry.
+	 * @param mode raw mode (st_mode) including the file type bits
+	 * @param links number of hard links
+	 * @param uid owner user identifier
+	 * @param gid owner group identifier
+	 * @param size size in bytes
+	 * @param mtimeSeconds modification time (seconds since the epoch)
+	 * @param file file as given to stat
+	 */
+	public StatEntry(int mode, long links, long uid, long gid, long size, long mtimeSeconds, File file) {
+		this.mode = mode;
+		this.links = links;
+		this.uid = uid;
+		this.gid = gid;
+		this.size = size;
+		this.mtimeSeconds = mtimeSeconds;
+		this.file = file;
+	}
+	
+	/**
+	 * Creates the command printing the output parsed by {@link #parser()}: stat -c '%f %h %u %g %s %Y %n'.
+	 * @param files files to print the status of
+	 * @return command
+	 */
+	public static SingleCommand command(File... files) {
+		if (files.length == 0) {
+			throw new IllegalArgumentException("No file specified");
+		}
+		SingleCommand command = new SingleCommand("stat", "-c", "%f %h %u %g %s %Y %n");
+		for (File f : files) {
+			command.addLastArg(f.getPath());
+		}
+		return command;
+	}
+	
+	/**
+	 * Gets the parser of the output of {@link #command(File...)}.
+	 * @return parser
+	 */
+	public static TableParser<StatEntry> parser() {
+		return PARSER;
+	}
+	
+	public FileType getType() {
+		return FileType.fromMode(mode);
+	}
+	
+	public int getMode() {
+		return mode;
+	}
+	
+	public int getPermissions() {
+		return mode & PERMISSIONS_MASK;
+	}
+	
+	public long getLinks() {
+		return links;
+	}
+	
+	public long getUid() {
+		return uid;
+	}
+	
+	public long getGid() {
+		return gid;
+	}
+	
+	public long getSize() {
+		return size;
+	}
+	
+	public long getMtimeSeconds() {
+		return mtimeSeconds;
+	}
+	
+	public File getFile() {
+		return file;
+	}
+	
+	@Override
+	public String toString() {
+		return getType() + " " + Integer.toOctalString(getPermissions()) + " " + uid + ":" + gid + " " + size + " B " + file.getPath();
+	}
+	
+}
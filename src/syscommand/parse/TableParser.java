@@ -0,0 +1,170 @@
+package syscommand.parse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import syscommand.CommandBase;
+import syscommand.CommandContext;
+import syscommand.OutputConsumer;
+import syscommand.exception.CommandException;
+
+/**
+ * Parses a tabular command output (lines of whitespace separated fields, e.g. of df, ps or ls -l) into typed records.
+ * The output bytes are scanned while they are read from the command (see {@link CommandBase#run_consume(CommandContext, OutputConsumer)}),
+ * neither the whole output nor the lines are converted to strings - only the fields requested by the {@link RowMapper} are materialized.
+ * A line is copied only if it spans more chunks of the output.
+ * Empty lines are skipped (as by {@link CommandBase#run_lines(CommandContext)}), the line ends can be \n or \r\n.
+ * Immutable, the with* methods return a modified copy. Thread safe (each parsing has its own state).
+ * @param <T> type of the records
+ */
+public final class TableParser<T> {
+	
+	/**
+	 * Initial size (in bytes) of the buffer for a line spanning more chunks.
+	 */
+	private static final int LINE_BUFFER_SIZE = 256;
+	
+	private final RowMapper<T> mapper;
+	
+	/**
+	 * Number of the lines skipped at the beginning of the output (headers).
+	 */
+	private final int skipLines;
+	
+	/**
+	 * Creates the parser without skipping any line.
+	 * @param mapper converts each line to a record
+	 */
+	public TableParser(RowMapper<T> mapper) {
+		this(mapper, 0);
+	}
+	
+	private TableParser(RowMapper<T> mapper, int skipLines) {
+		this.mapper = mapper;
+		this.skipLines = skipLines;
+	}
+	
+	/**
+	 * Sets the number of the lines skipped at the beginning of the output (e.g. the header of df).
+	 * @param lines number of the lines (including the empty ones)
+	 * @return modified parser
+	 */
+	public TableParser<T> withSkippedLines(int lines) {
+		if (lines < 0) {
+			throw new IllegalArgumentException("Invalid number of lines: " + lines);
+		}
+		return new TableParser<T>(mapper, lines);
+	}
+	
+	/**
+	 * Runs the command and parses its output while it is running.
+	 * @param command command producing the output
+	 * @param context command context with logging and execution environment settings
+	 * @return records in the order of the lines
+	 * @throws CommandException if the command creating or running failed (this include input/output exceptions, invalid exit status, terminating etc.) or if a line is not valid
+	 */
+	public List<T> run(CommandBase command, CommandContext context) throws CommandException {
+		Scanner scanner = new Scanner();
+		command.run_consume(context, scanner);
+		try {
+			scanner.finish();
+		} catch (IOException e) {
+			throw new CommandException("Unable to parse the output of: " + command, e);
+		}
+		return scanner.records;
+	}
+	
+	/**
+	 * Parses the output which has already been read.
+	 * @param output output data
+	 * @return records in the order of the lines
+	 * @throws IOException if a line is not valid
+	 */
+	public List<T> parse(byte[] output) throws IOException {
+		Scanner scanner = new Scanner();
+		scanner.consume(output, 0, output.length);
+		scanner.finish();
+		return scanner.records;
+	}
+	
+	/**
+	 * State of one parsing.
+	 */
+	private class Scanner implements OutputConsumer {
+		
+		private final List<T> records = new ArrayList<T>();
+		
+		private final Row row = new Row();
+		
+		/**
+		 * Beginning of the current line read in the previous chunks.
+		 */
+		private byte[] pending = new byte[LINE_BUFFER_SIZE];
+		
+		private int pendingLength = 0;
+		
+		private long lineNumber = 0;
+		
+		@Override
+		public void consume(byte[] b, int off, int len) throws IOException {
+			int end = off + len;
+			int lineStart = off;
+			for (int i = off; i < end; ++i) {
+				if (b[i] != '\n') {
+					continue;
+				}
+				if (pendingLength > 0) {
+					append(b, lineStart, i);
+					line(pending, 0, pendingLength);
+					pendingLength = 0;
+				} else {
+					line(b, lineStart, i);
+				}
+				lineStart = i + 1;
+			}
+			append(b, lineStart, end);
+		}
+		
+		/**
+		 * Parses the last line if it is not terminated.
+		 */
+		private void finish() throws IOException {
+			if (pendingLength > 0) {
+				line(pending, 0, pendingLength);
+				pendingLength = 0;
+			}
+		}
+		
+		private void append(byte[] b, int start, int end) {
+			int length = end - start;
+			if (pendingLength + length > pending.length) {
+				byte[] n = new byte[Math.max(pending.length * 2, pendingLength + length)];
+				System.arraycopy(pending, 0, n, 0, pendingLength);
+				pending = n;
+			}
+			System.arraycopy(b, start, pending, pendingLength, length);
+			pendingLength += length;
+		}
+		
+		private void line(byte[] b, int start, int end) throws IOException {
+			++lineNumber;
+			if (lineNumber <= skipLines) {
+				return;
+			}
+			if ((end > start) && (b[end - 1] == '\r')) {
+				--end;
+			}
+			row.set(b, start, end, lineNumber);
+			if (row.getFieldCount() == 0) {
+				return;
+			}
+			T record = mapper.map(row);
+			if (record != null) {
+				records.add(record);
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,74 @@
+package syscommand.tools;
+
+import java.util.Arrays;
+
+/**
+ * Latencies measured by a benchmark or a soak run. Thread safe.
+ */
+final class LatencyStats {
+	
+	/**
+	 * Measured latencies (in nanoseconds).
+	 */
+	private long[] latencies;
+	
+	private int count = 0;
+	
+	/**
+	 * Creates the statistics.
+	 * @param expected expected number of measurements (the storage grows if it is exceeded)
+	 */
+	public LatencyStats(int expected) {
+		latencies = new long[Math.max(expected, 16)];
+	}
+	
+	/**
+	 * Adds one measurement.
+	 * @param nanos latency in nanoseconds
+	 */
+	public synchronized void add(long nanos) {
+		if (count == latencies.length) {
+			latencies = Arrays.copyOf(latencies, count * 2);
+		}
+		latencies[count++] = nanos;
+	}
+	
+	/**
+	 * Gets the number of the measurements.
+	 * @return number of the measurements
+	 */
+	public synchronized int getCount() {
+		return count;
+	}
+	
+	/**
+	 * Describes the latency distribution.
+	 * @return mean, p50, p99, p999 and maximum in microseconds
+	 */
+	public synchronized String describe() {
+		if (count == 0) {
+			return "no measurements";
+		}
+		long[] sorted = Arrays.copyOf(latencies, count);
+		Arrays.sort(sorted);
+		long sum = 0;
+		for (long l : sorted) {
+			sum += l;
+		}
+		return "mean " + micros(sum / count) + ", p50 " + micros(percentile(sorted, 0.5)) + ", p99 " + micros(percentile(sorted, 0.99))
+				+ ", p999 " + micros(percentile(sorted, 0.999)) + ", max " + micros(sorted[count - 1]);
+	}
+	
+	/**
+	 * Gets a percentile by the nearest rank method.
+	 */
+	private static long percentile(long[] sorted, double fraction) {
+		int rank = (int) Math.ceil(fraction * sorted.length);
+		return sorted[Math.max(rank, 1) - 1];
+	}
+	
+	private static String micros(long nanos) {
+		return (nanos / 1000) + " us";
+	}
+	
+}
@@ -0,0 +1,76 @@
+package syscommand.tools;
+
+import java.io.IOException;
+
+import syscommand.CommandContext;
+import syscommand.FakeProcessLauncher;
+import syscommand.HelperProcessLauncher;
+import syscommand.ProcessBuilderLauncher;
+import syscommand.ProcessLauncher;
+import syscommand.SingleCommand;
+import syscommand.exception.CommandException;
+
+/**
+ * Measures the spawn latency of the process launchers: the time of executing a trivial command (true) one after another
+ * using {@link ProcessBuilderLauncher}, {@link HelperProcessLauncher} and {@link FakeProcessLauncher} (the overhead of the library itself).
+ * The forking cost of {@link ProcessBuilderLauncher} grows with the heap of the java process, so the benchmark should be run also with a large heap (e.g. -Xmx8g -Xms8g).
+ *
+ * Usage: java syscommand.tools.LauncherBenchmark [iterations [warmup iterations]]
+ */
+public final class LauncherBenchmark {
+	
+	private static final int DEFAULT_ITERATIONS = 1000;
+	
+	private static final int DEFAULT_WARMUP = 100;
+	
+	private LauncherBenchmark() {
+	}
+	
+	/**
+	 * Runs the benchmark and prints the latencies of each launcher.
+	 * @param args number of the measured iterations and number of the warmup iterations (optional)
+	 * @throws IOException if the helper process can not be started
+	 * @throws CommandException if a command fails
+	 */
+	public static void main(String[] args) throws IOException, CommandException {
+		int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+		int warmup = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_WARMUP;
+		
+		System.out.println("iterations " + iterations + ", warmup " + warmup + ", max heap " + (Runtime.getRuntime().maxMemory() >> 20) + " MiB");
+		
+		measure("ProcessBuilderLauncher", new ProcessBuilderLauncher(), iterations, warmup);
+		
+		HelperProcessLauncher helper = new HelperProcessLauncher();
+		try {
+			measure("HelperProcessLauncher", helper, iterations, warmup);
+		} finally {
+			helper.close();
+		}
+		
+		measure("FakeProcessLauncher", new FakeProcessLauncher().setDefaultResponse(0, "", ""), iterations, warmup);
+	}
+	
+	/**
+	 * Executes the command repeatedly using the launcher and prints the latencies.
+	 */
+	private static void measure(String name, ProcessLauncher launcher, int iterations, int warmup) throws CommandException {
+		CommandContext context = new CommandContext();
+		context.setProcessLauncher(launcher);
+		
+		for (int i = 0; i < warmup; ++i) {
+			new SingleCommand("true").run_noout(context);
+		}
+		
+		LatencyStats stats = new LatencyStats(iterations);
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; ++i) {
+			long t = System.nanoTime();
+			new SingleCommand("true").run_noout(context);
+			stats.add(System.nanoTime() - t);
+		}
+		long elapsed = System.nanoTime() - start;
+		
+		System.out.println(name + ": " + (iterations * 1000000000L / Math.max(elapsed, 1)) + " spawns/s, " + stats.describe());
+	}
+	
+}
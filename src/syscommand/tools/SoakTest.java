@@ -0,0 +1,158 @@
+package syscommand.tools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import syscommand.CommandContext;
+import syscommand.LeakSnapshot;
+import syscommand.OutputConsumer;
+import syscommand.SingleCommand;
+import syscommand.exception.CommandException;
+
+/**
+ * Soak test running many {@link SingleCommand} and pipeline executions concurrently, a part of them failing in various ways
+ * (invalid exit status, missing command, consumer failure, terminated pipefail stages, closed pipes).
+ * Prints the throughput and the latency percentiles, then checks that no file descriptor, thread or child process has leaked
+ * (see {@link LeakSnapshot}). Exits with the status 1 if anything has leaked.
+ *
+ * Usage: java syscommand.tools.SoakTest [runs [concurrency [random seed]]]
+ */
+public final class SoakTest {
+	
+	private static final int DEFAULT_RUNS = 10000;
+	
+	private static final int DEFAULT_CONCURRENCY = 256;
+	
+	/**
+	 * Number of the kinds of the executions (see {@link #execute(CommandContext, int)}).
+	 */
+	private static final int KINDS = 8;
+	
+	/**
+	 * Tolerated increase of the open file descriptors and live threads after the test.
+	 */
+	private static final int SLACK = 2;
+	
+	/**
+	 * How long (in milliseconds) to wait for the resources to be released after the test.
+	 */
+	private static final long SETTLE_MILLIS = 10000;
+	
+	private SoakTest() {
+	}
+	
+	/**
+	 * Runs the soak test.
+	 * @param args number of the runs, number of the concurrent runs and the random seed (optional)
+	 * @throws Exception if the test could not be executed
+	 */
+	public static void main(String[] args) throws Exception {
+		int runs = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_RUNS;
+		int concurrency = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_CONCURRENCY;
+		long seed = (args.length > 2) ? Long.parseLong(args[2]) : System.nanoTime();
+		
+		final CommandContext context = new CommandContext();
+		// the threads started once (e.g. the process reaper) are part of the baseline
+		new SingleCommand("true").run_noout(context);
+		LeakSnapshot baseline = LeakSnapshot.take();
+		System.out.println("runs " + runs + ", concurrency " + concurrency + ", seed " + seed + ", baseline " + baseline);
+		
+		Random random = new Random(seed);
+		final LatencyStats stats = new LatencyStats(runs);
+		final AtomicInteger failures = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(runs);
+		long start = System.nanoTime();
+		for (int i = 0; i < runs; ++i) {
+			final int kind = random.nextInt(KINDS);
+			futures.add(pool.submit(new Callable<Void>() {
+				
+				@Override
+				public Void call() {
+					long t = System.nanoTime();
+					try {
+						execute(context, kind);
+					} catch (CommandException e) {
+						failures.incrementAndGet();
+					} finally {
+						stats.add(System.nanoTime() - t);
+					}
+					return null;
+				}
+				
+			}));
+		}
+		for (Future<Void> f : futures) {
+			try {
+				f.get();
+			} catch (ExecutionException e) {
+				// an unexpected exception (not a command failure) is a bug
+				System.out.println("unexpected exception: " + e.getCause());
+				e.getCause().printStackTrace();
+				System.exit(1);
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		pool.shutdown();
+		pool.awaitTermination(1, TimeUnit.MINUTES);
+		
+		System.out.println("failed runs " + failures.get() + " (expected), " + (runs * 1000000000L / Math.max(elapsed, 1)) + " runs/s, " + stats.describe());
+		
+		LeakSnapshot end = LeakSnapshot.awaitBaseline(baseline, SLACK, SLACK, SETTLE_MILLIS);
+		boolean ok = end.isWithin(baseline, SLACK, SLACK);
+		System.out.println("end " + end + (ok ? ", no leaks" : ", LEAKED"));
+		if (! ok) {
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Executes one command of the kind.
+	 * @throws CommandException if the command fails (all the kinds except 0 and 7 always fail)
+	 */
+	private static void execute(CommandContext context, int kind) throws CommandException {
+		switch (kind) {
+			case 0:
+				new SingleCommand("echo", "x").run_str(context);
+				break;
+			case 1:
+				new SingleCommand("sh", "-c", "exit 3").run_noout(context);
+				break;
+			case 2:
+				new SingleCommand("yes").pipe("head", "-1").run_str(context);
+				break;
+			case 3:
+				new SingleCommand("seq", "1", "1000").pipe("no-such-command-syscommand-soak").run_noout(context);
+				break;
+			case 4:
+				new SingleCommand("seq", "1", "100000").run_consume(context, new OutputConsumer() {
+					
+					@Override
+					public void consume(byte[] b, int off, int len) throws IOException {
+						throw new IOException("Consumer failure");
+					}
+					
+				});
+				break;
+			case 5:
+				new SingleCommand("seq", "1", "1000").pipe("sh", "-c", "head -1; exit 4").pipefail().run_noout(context);
+				break;
+			case 6:
+				new SingleCommand("sh", "-c", "sleep 0.2; exit 5").pipe("cat").pipe("sleep", "5").pipefail().run_raw(context);
+				break;
+			default:
+				new SingleCommand("cat").input_string("abc").pipe("wc", "-c").run_long(context);
+				break;
+		}
+	}
+	
+}
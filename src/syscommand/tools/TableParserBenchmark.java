@@ -0,0 +1,117 @@
+package syscommand.tools;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import syscommand.CommandBase;
+import syscommand.CommandContext;
+import syscommand.SingleCommand;
+import syscommand.exception.CommandException;
+import syscommand.parse.Row;
+import syscommand.parse.RowMapper;
+import syscommand.parse.TableParser;
+
+/**
+ * Compares parsing a tabular command output (ps-like lines) by {@link TableParser} with {@link CommandBase#run_lines(CommandContext)}
+ * and splitting each line by a regular expression. Both the whole execution (the command generates the lines) and the parsing
+ * of an output which has already been read are measured, the median time of the rounds is printed.
+ *
+ * Usage: java syscommand.tools.TableParserBenchmark [lines [rounds]]
+ */
+public final class TableParserBenchmark {
+	
+	private static final int DEFAULT_LINES = 200000;
+	
+	private static final int DEFAULT_ROUNDS = 10;
+	
+	/**
+	 * Extracts the first and the fourth field of each line.
+	 */
+	private static final TableParser<long[]> PARSER = new TableParser<long[]>(new RowMapper<long[]>() {
+		
+		@Override
+		public long[] map(Row row) throws IOException {
+			return new long[] { row.getLong(0), row.getLong(3) };
+		}
+		
+	});
+	
+	private TableParserBenchmark() {
+	}
+	
+	/**
+	 * Runs the benchmark and prints the median times.
+	 * @param args number of the lines and number of the rounds (optional)
+	 * @throws CommandException if the generating command fails
+	 * @throws IOException if a line can not be parsed
+	 */
+	public static void main(String[] args) throws CommandException, IOException {
+		int lines = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_LINES;
+		int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_ROUNDS;
+		
+		CommandContext context = new CommandContext();
+		CommandBase command = new SingleCommand("seq", "1", Integer.toString(lines))
+				.pipe("awk", "{ print \"  \" $1 \"  1 S \" ($1 * 7) \" /usr/bin/some-command --arg \" $1 \" --other value\" }");
+		byte[] output = command.run_raw(context);
+		
+		long expected = sumBySplit(new String(output, "UTF-8").split("\n"));
+		long[] split = new long[rounds];
+		long[] table = new long[rounds];
+		long[] splitParse = new long[rounds];
+		long[] tableParse = new long[rounds];
+		for (int round = 0; round < rounds; ++round) {
+			long t = System.nanoTime();
+			check(expected, sumBySplit(command.run_lines(context)));
+			split[round] = System.nanoTime() - t;
+			
+			t = System.nanoTime();
+			check(expected, sumRecords(PARSER.run(command, context)));
+			table[round] = System.nanoTime() - t;
+			
+			t = System.nanoTime();
+			check(expected, sumBySplit(new String(output, "UTF-8").split("\n")));
+			splitParse[round] = System.nanoTime() - t;
+			
+			t = System.nanoTime();
+			check(expected, sumRecords(PARSER.parse(output)));
+			tableParse[round] = System.nanoTime() - t;
+		}
+		
+		System.out.println(lines + " lines (" + output.length + " bytes), median of " + rounds + " rounds");
+		System.out.println("run_lines + split: " + medianMillis(split) + " ms, TableParser.run: " + medianMillis(table) + " ms");
+		System.out.println("parsing only - split: " + medianMillis(splitParse) + " ms, TableParser.parse: " + medianMillis(tableParse) + " ms");
+	}
+	
+	private static long sumBySplit(String[] lines) {
+		long sum = 0;
+		for (String line : lines) {
+			if (line.isEmpty()) {
+				continue;
+			}
+			String[] fields = line.trim().split("\\s+");
+			sum += Long.parseLong(fields[0]) + Long.parseLong(fields[3]);
+		}
+		return sum;
+	}
+	
+	private static long sumRecords(Iterable<long[]> records) {
+		long sum = 0;
+		for (long[] r : records) {
+			sum += r[0] + r[1];
+		}
+		return sum;
+	}
+	
+	private static void check(long expected, long sum) {
+		if (sum != expected) {
+			throw new IllegalStateException("Different result: " + sum + " instead of " + expected);
+		}
+	}
+	
+	private static long medianMillis(long[] nanos) {
+		long[] sorted = nanos.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2] / 1000000;
+	}
+	
+}